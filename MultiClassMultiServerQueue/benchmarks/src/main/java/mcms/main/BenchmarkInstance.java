@@ -0,0 +1,103 @@
+package mcms.main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import mcms.input.InputSrvTime;
+import mcms.input.RouteTable;
+
+/**
+ * <h1> Random Instances for the Benchmarks </h1>
+ *  <p>
+ *  Builds a random instance from the benchmark parameters:
+ *  <ul>
+ *  <li> <b> Routes: </b> type k can be served by group {@code k mod I}, and by every other group with probability {@code density};
+ *  the mean service times are uniform in [0.5, 1.5].</li>
+ *  <li> <b> Agents: </b> {@code agentsPerGroup} agents in every group and every period.</li>
+ *  <li> <b> Demand: </b> the same rate for every type, chosen so that the offered load, with each type served at the
+ *  average speed of its groups, is {@code load} times the number of agents.</li>
+ *  </ul>
+ *  The same seed gives the same instance, so the parameter combinations of a benchmark are comparable across runs.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+class BenchmarkInstance {
+	final int numContacts;
+	final int numGroups;
+	final int numRoutes;
+	final int[] contact; // [R] contact type of each row, in file order
+	final int[] group; // [R] agent group of each row, in file order
+	final double[] tau; // [R] mean service time of each row, in file order
+	final RouteTable routes;
+	final int[][] numAgents; // [group][period]
+	final double[][] demand; // [type][period]
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numContacts		Number of contact types K
+	 * @param numGroups			Number of agent groups I
+	 * @param density			Probability that a group can serve a type, besides the group {@code k mod I}
+	 * @param agentsPerGroup	Number of agents in each group
+	 * @param load				Offered load per agent
+	 * @param numPeriods		Number of main periods
+	 * @param seed				Seed of the instance
+	 */
+	BenchmarkInstance(int numContacts, int numGroups, double density, int agentsPerGroup, double load, int numPeriods, long seed) {
+		this.numContacts = numContacts;
+		this.numGroups = numGroups;
+		Random random = new Random(seed);
+		int[] c = new int[numContacts * numGroups];
+		int[] g = new int[numContacts * numGroups];
+		double[] t = new double[numContacts * numGroups];
+		double[] sumTau = new double[numContacts];
+		int[] count = new int[numContacts];
+		int n = 0;
+		for (int k = 0; k < numContacts; k++) {
+			for (int i = 0; i < numGroups; i++) {
+				if (i != k % numGroups && random.nextDouble() >= density) continue;
+				c[n] = k;
+				g[n] = i;
+				t[n] = 0.5 + random.nextDouble();
+				sumTau[k] += t[n];
+				count[k]++;
+				n++;
+			}
+		}
+		this.numRoutes = n;
+		this.contact = Arrays.copyOf(c, n);
+		this.group = Arrays.copyOf(g, n);
+		this.tau = Arrays.copyOf(t, n);
+		this.routes = RouteTable.build(numContacts, numGroups, contact, group, tau, numRoutes);
+
+		// One preliminary period, P main periods and one wrap-up period (no arrivals, same staffing)
+		numAgents = new int[numGroups][numPeriods + 2];
+		for (int i = 0; i < numGroups; i++) Arrays.fill(numAgents[i], agentsPerGroup);
+		demand = new double[numContacts][numPeriods + 2];
+		for (int k = 0; k < numContacts; k++) {
+			final double meanTau = sumTau[k] / count[k];
+			for (int p = 1; p <= numPeriods; p++) demand[k][p] = load * numGroups * agentsPerGroup / (numContacts * meanTau);
+		}
+	}
+
+	/**
+	 * Returns the routes as the list of rows used by {@link InputSrvTime#buildTypeToGroup} and {@link InputSrvTime#buildGroupToType}.
+	 */
+	ArrayList<InputSrvTime> serviceTimes() {
+		ArrayList<InputSrvTime> serviceTimeVec = new ArrayList<InputSrvTime>(numRoutes);
+		for (int r = 0; r < numRoutes; r++) serviceTimeVec.add(new InputSrvTime(contact[r], group[r], tau[r]));
+		return serviceTimeVec;
+	}
+
+	/**
+	 * Returns the total arrival rate of a main period.
+	 */
+	double totalDemand() {
+		double sum = 0;
+		for (int k = 0; k < numContacts; k++) sum += demand[k][1];
+		return sum;
+	}
+}
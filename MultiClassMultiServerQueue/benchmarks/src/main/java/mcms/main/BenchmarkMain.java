@@ -0,0 +1,34 @@
+package mcms.main;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <h1> Benchmark Launcher </h1>
+ *  <p>
+ *  Runs the JMH benchmarks with the usual JMH command line, and always adds the GC profiler,
+ *  so every result also reports the allocation rate ({@code gc.alloc.rate.norm}: bytes per operation).
+ * 	</p>
+ *  <p>
+ *  Examples: <br>
+ *  {@code java -jar benchmarks/target/benchmarks.jar} (all benchmarks, all parameters) <br>
+ *  {@code java -jar benchmarks/target/benchmarks.jar RouterBenchmark -p numContacts=64 -p load=0.95} <br>
+ *  {@code java -jar benchmarks/target/benchmarks.jar ReplicationBenchmark -p engine=KERNEL -rf json} (also saves the results for later comparisons)
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		Options options = new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,86 @@
+package mcms.main;
+
+import java.util.concurrent.TimeUnit;
+import mcms.contactcenters.MCMSContactFactory;
+import mcms.contactcenters.MCMSContactPool;
+import mcms.contactcenters.MCMSStatistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import umontreal.iro.lecuyer.contactcenters.contact.Contact;
+import umontreal.iro.lecuyer.simevents.Simulator;
+
+/**
+ * <h1> Benchmark: Contact Lifecycle </h1>
+ *  <p>
+ *  Measures the contacts of the CONTACT_CENTERS engine, with and without the pool (see {@link MCMSContactPool}):
+ *  each operation is an arrival from a {@link MCMSContactFactory} and the exit of the contact that arrived {@code inSystem}
+ *  arrivals before it, which the pool takes back as the router does. The allocation rate ({@code gc.alloc.rate.norm}) is the
+ *  number of interest: the bytes allocated per arrival. The size of a contact is mostly that of the library's base class, so the
+ *  benchmark refuses to run if the ContactCenters library cannot simulate (see {@link SimRunner#isContactCentersAvailable()}):
+ *  with an API-only stand-in, the numbers would say nothing about the real contacts.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContactBenchmark {
+	static final int BATCH = 1024; // Arrivals per benchmark invocation
+
+	@Param({"false", "true"})
+	boolean pooled;
+
+	@Param({"64", "4096"})
+	int inSystem;
+
+	@Param({"16"})
+	int numContacts;
+
+	private MCMSContactFactory[] factories;
+	private MCMSContactPool pool;
+	private Contact[] system; // Ring of the contacts in the system, oldest first from position next
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		if (!SimRunner.isContactCentersAvailable()) throw new IllegalStateException("ContactBenchmark needs the ContactCenters library on the classpath");
+		Simulator sim = new Simulator();
+		MCMSStatistics stats = new MCMSStatistics(numContacts, 1);
+		pool = pooled ? new MCMSContactPool(sim) : null;
+		factories = new MCMSContactFactory[numContacts];
+		for (int k = 0; k < numContacts; k++) factories[k] = new MCMSContactFactory(sim, k, stats, pool, null);
+		system = new Contact[inSystem];
+		for (int c = 0; c < inSystem; c++) system[c] = factories[c % numContacts].newInstance();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void arrival(Blackhole bh) {
+		for (int a = 0; a < BATCH; a++) {
+			final Contact exiting = system[next];
+			if (pool != null) pool.blocked(null, exiting, 0); // The pool is the last exited-contact listener of the router
+			final Contact contact = factories[a % numContacts].newInstance();
+			bh.consume(contact);
+			system[next] = contact;
+			if (++next == inSystem) next = 0;
+		}
+	}
+}
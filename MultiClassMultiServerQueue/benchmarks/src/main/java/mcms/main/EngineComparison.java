@@ -0,0 +1,121 @@
+package mcms.main;
+
+import mcms.input.InputAgent;
+import mcms.input.InputContact;
+import mcms.input.InputSrvTime;
+import mcms.input.RouteTable;
+
+/**
+ * <h1> Check: the Engines Side by Side </h1>
+ *  <p>
+ *  Simulates the bundled test instances with every engine of {@link SimRunner.Engine} and compares EW and SL (per replication,
+ *  see {@link SimRunner#getRepEW()}), overall and for each contact type (see {@link SimRunner#getRepEW(int)}), of each engine
+ *  with those of the reference, the CONTACT_CENTERS engine. The engines draw different random numbers, so the replications are
+ *  independent: an engine passes if each difference is within {@value #Z} standard errors. The wall time and the throughput in events per second (two per contact) are reported as well;
+ *  {@link ReplicationBenchmark} measures the throughput under JMH.
+ * 	</p>
+ *  <p>
+ *  If the ContactCenters library on the classpath cannot simulate (see {@link SimRunner#isContactCentersAvailable()}), e.g., with
+ *  an API-only stand-in of the library, the CONTACT_CENTERS engine is reported as unavailable and the other engines are compared
+ *  with the first one that ran. Any other failure of an engine is an error. The exit status is 1 if an engine differs,
+ *  and 2 if none differs but the comparison with CONTACT_CENTERS was not made.
+ * 	</p>
+ *  <p>
+ *  Arguments: inputPath [numReps=100] [scale=1] [numPeriods=12] [periodDuration=720] <br>
+ *  The demand and the number of agents of every group are multiplied by {@code scale}, which keeps the utilization. <br>
+ *  Example: {@code java -cp benchmarks/target/benchmarks.jar mcms.main.EngineComparison ./mcms/resources/test/input/ 100}
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class EngineComparison {
+	static final int[][] INSTANCES = {{1, 1, 1}, {2, 2, 2}}; // Bundled test instances: exNum, number of contact types, number of groups
+	static final double Z = 3.29; // Two-sided 0.1% quantile of the normal distribution
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Arguments: inputPath [numReps=100] [scale=1] [numPeriods=12] [periodDuration=720]");
+			return;
+		}
+		final String inputPath = args[0];
+		final int numReps = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		final double scale = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+		final int numPeriods = args.length > 3 ? Integer.parseInt(args[3]) : 12;
+		final double periodDuration = args.length > 4 ? Double.parseDouble(args[4]) : 30 * 24;
+		final double acceptableWaitTime = 10;
+
+		final boolean contactCenters = SimRunner.isContactCentersAvailable();
+		boolean passed = true;
+		for (int[] instance : INSTANCES) {
+			final int exNum = instance[0];
+			final int numContactTypes = instance[1];
+			final int numGroups = instance[2];
+
+			// Read and scale the instance
+			int[] agents = InputAgent.readAgentGroups(exNum + "agents.dat", inputPath, numGroups);
+			double[] demands = InputContact.readDemands(exNum + "demands.dat", inputPath, numContactTypes);
+			for (int i = 0; i < numGroups; i++) agents[i] = (int) Math.round(agents[i] * scale);
+			for (int k = 0; k < numContactTypes; k++) demands[k] *= scale;
+			int[][] groups = InputAgent.expGroupsAcrosPs(agents, numPeriods);
+			double[][] contacts = InputContact.expDemAcrosPs(demands, numPeriods);
+			RouteTable routes = RouteTable.build(InputSrvTime.readRoutes(exNum + "routes.dat", inputPath, numContactTypes, numGroups), numContactTypes, numGroups);
+
+			System.out.println("Instance " + exNum + ", scale " + scale + ", " + numReps + " replications of " + numPeriods + " periods of length " + periodDuration);
+			System.out.println("engine \t\t wall (s) \t events/s \t EW (+/- 95%) \t\t SL (+/- 95%) \t\t versus");
+			SimRunner reference = null;
+			for (SimRunner.Engine engine : SimRunner.Engine.values()) {
+				if (engine == SimRunner.Engine.CONTACT_CENTERS && !contactCenters) {
+					System.out.println(engine + " \t unavailable: the ContactCenters library on the classpath cannot simulate");
+					continue;
+				}
+				SimRunner model = new SimRunner(numContactTypes, numGroups, routes, groups, contacts, numReps, numPeriods, periodDuration, numReps * numPeriods * periodDuration, 0, true, acceptableWaitTime, false, engine, 1, false);
+				model.simulate(1, numPeriods); // Warm-up of the JIT
+				long start = System.nanoTime();
+				model.simulate(numReps, numPeriods);
+				final double wall = (System.nanoTime() - start) / 1e9;
+				String versus = "reference";
+				if (reference != null) {
+					double maxZ = Math.max(Math.abs(z(model.getRepEW(), reference.getRepEW())), Math.abs(z(model.getRepSL(), reference.getRepSL())));
+					StringBuilder types = new StringBuilder();
+					for (int k = 0; k < numContactTypes; k++) {
+						final double zEW = z(model.getRepEW(k), reference.getRepEW(k));
+						final double zSL = z(model.getRepSL(k), reference.getRepSL(k));
+						maxZ = Math.max(maxZ, Math.max(Math.abs(zEW), Math.abs(zSL)));
+						types.append(String.format(", type %d: z(EW) %+.2f, z(SL) %+.2f", k, zEW, zSL));
+					}
+					final boolean ok = maxZ <= Z;
+					passed &= ok;
+					versus = String.format("%s: z(EW) %+.2f, z(SL) %+.2f%s, %s", reference.getEngine(), z(model.getRepEW(), reference.getRepEW()), z(model.getRepSL(), reference.getRepSL()),
+							types, ok ? "equivalent" : "DIFFERENT");
+				}
+				else {
+					reference = model;
+					if (engine != SimRunner.Engine.CONTACT_CENTERS) versus = "reference (CONTACT_CENTERS unavailable: not compared with it)";
+				}
+				System.out.printf("%s \t %.3f \t %.3e \t %.6f +/- %.6f \t %.6f +/- %.6f \t %s%n", engine, wall, 2.0 * model.getTotNumArrived() / wall, model.getRepEW().getMean(), model.getRepEW().halfWidth(0.95),
+						model.getRepSL().getMean(), model.getRepSL().halfWidth(0.95), versus);
+				for (int k = 0; k < numContactTypes; k++) {
+					System.out.printf(" type %d \t\t\t\t\t %.6f +/- %.6f \t %.6f +/- %.6f%n", k, model.getRepEW(k).getMean(), model.getRepEW(k).halfWidth(0.95),
+							model.getRepSL(k).getMean(), model.getRepSL(k).halfWidth(0.95));
+				}
+			}
+			System.out.println();
+		}
+		if (!passed) System.exit(1);
+		if (!contactCenters) {
+			System.out.println("NOT VERIFIED: the engines were not compared with CONTACT_CENTERS; put the ContactCenters library on the classpath");
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Returns the difference between the means of two independent samples, in standard errors; 0 if both are constant and equal.
+	 */
+	static double z(RunningStatistic x, RunningStatistic reference) {
+		final double diff = x.getMean() - reference.getMean();
+		final double se = Math.sqrt(x.getVariance() / x.getNumObs() + reference.getVariance() / reference.getNumObs());
+		return se > 0 ? diff / se : diff == 0 ? 0 : Double.POSITIVE_INFINITY;
+	}
+}
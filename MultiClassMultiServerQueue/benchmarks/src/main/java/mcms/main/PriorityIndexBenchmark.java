@@ -0,0 +1,117 @@
+package mcms.main;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import mcms.input.RouteTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <h1> Benchmark: Selecting a Contact for a Free Agent </h1>
+ *  <p>
+ *  Compares the two ways of finding the fastest non-empty waiting queue of a group, as the number of contact types grows:
+ *  <ul>
+ *  <li> <b> Scan: </b> the loop over {@code groupToType[i]} that checks every queue (the former {@link FSFRouter#selectContact}).</li>
+ *  <li> <b> Index: </b> the lowest set bit of the group's bitset in {@link NonEmptyQueueIndex}.</li>
+ *  </ul>
+ *  Each operation picks a random group, selects its first non-empty queue, and then changes the state of one random queue,
+ *  i.e., one enqueue or dequeue as in the simulation. Every group can serve every type (full flexibility), in a random priority order.
+ *  The queue states are kept in a plain array, so the scan does not even pay the virtual {@code isEmpty()} calls of the simulator.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-03-18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriorityIndexBenchmark {
+	@Param({"4", "64", "1024", "4096"})
+	int numContacts;
+
+	@Param({"16"})
+	int numGroups;
+
+	@Param({"0.01", "0.05", "0.5"})
+	double occupancy; // Probability that a queue is non-empty
+
+	private Random random;
+	private int[][] groupToType;
+	private boolean[] nonEmpty;
+	private NonEmptyQueueIndex index;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		RouteTable routes = randomRoutes(numGroups, numContacts, new Random(1));
+		groupToType = routes.groupToType();
+		random = new Random(7);
+		nonEmpty = new boolean[numContacts];
+		index = new NonEmptyQueueIndex(routes);
+		for (int q = 0; q < numContacts; q++) {
+			nonEmpty[q] = random.nextDouble() < occupancy;
+			index.set(q, nonEmpty[q]);
+		}
+	}
+
+	@Benchmark
+	public int scan() {
+		final int i = random.nextInt(numGroups);
+		int selected = -1;
+		for (int t = 0; t < groupToType[i].length; t++) {
+			if (nonEmpty[groupToType[i][t]]) {
+				selected = groupToType[i][t];
+				break;
+			}
+		}
+		change();
+		return selected;
+	}
+
+	@Benchmark
+	public int index() {
+		final int i = random.nextInt(numGroups);
+		final int t = index.first(i);
+		final int selected = t >= 0 ? groupToType[i][t] : -1;
+		change();
+		return selected;
+	}
+
+	/**
+	 * One enqueue or dequeue.
+	 */
+	private void change() {
+		final int q = random.nextInt(numContacts);
+		nonEmpty[q] = random.nextDouble() < occupancy;
+		index.set(q, nonEmpty[q]);
+	}
+
+	/**
+	 * Builds routes where each group serves every type, with random service times (hence random priority orders).
+	 */
+	private static RouteTable randomRoutes(int numGroups, int numTypes, Random random) {
+		final int numRoutes = numGroups * numTypes;
+		int[] contact = new int[numRoutes];
+		int[] group = new int[numRoutes];
+		double[] tau = new double[numRoutes];
+		for (int r = 0; r < numRoutes; r++) {
+			contact[r] = r / numGroups;
+			group[r] = r % numGroups;
+			tau[r] = random.nextDouble();
+		}
+		return RouteTable.build(numTypes, numGroups, contact, group, tau, numRoutes);
+	}
+}
@@ -0,0 +1,91 @@
+package mcms.main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import mcms.input.InputSrvTime;
+import mcms.input.RouteTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <h1> Benchmark: Building the FSF Priority Lists </h1>
+ *  <p>
+ *  Measures {@link InputSrvTime#buildTypeToGroup} and {@link InputSrvTime#buildGroupToType} on the rows of a routes file,
+ *  sorted beforehand with the matching comparator as they require, and the whole list-based pipeline (sort twice, build both lists).
+ *  For comparison, {@link RouteTable#build} builds both priority lists from the same rows in primitive arrays.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriorityListBenchmark {
+	@Param({"16", "256", "4096"})
+	int numContacts;
+
+	@Param({"8", "64"})
+	int numGroups;
+
+	@Param({"0.25"})
+	double density;
+
+	private BenchmarkInstance instance;
+	private ArrayList<InputSrvTime> serviceTimeVec; // Rows in file order
+	private ArrayList<InputSrvTime> byContact; // Rows sorted by contact type, then tau
+	private ArrayList<InputSrvTime> byGroup; // Rows sorted by group, then tau
+	private ArrayList<InputSrvTime> scratch;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		instance = new BenchmarkInstance(numContacts, numGroups, density, 1, 0.5, 1, 1);
+		serviceTimeVec = instance.serviceTimes();
+		byContact = new ArrayList<InputSrvTime>(serviceTimeVec);
+		Collections.sort(byContact, InputSrvTime.contactTauComparator);
+		byGroup = new ArrayList<InputSrvTime>(serviceTimeVec);
+		Collections.sort(byGroup, InputSrvTime.groupTauComparator);
+		scratch = new ArrayList<InputSrvTime>(serviceTimeVec.size());
+	}
+
+	@Benchmark
+	public int[][] buildTypeToGroup() {
+		return InputSrvTime.buildTypeToGroup(byContact, numContacts);
+	}
+
+	@Benchmark
+	public int[][] buildGroupToType() {
+		return InputSrvTime.buildGroupToType(byGroup, numGroups);
+	}
+
+	@Benchmark
+	public void sortAndBuildBoth(Blackhole bh) {
+		scratch.clear();
+		scratch.addAll(serviceTimeVec);
+		Collections.sort(scratch, InputSrvTime.contactTauComparator);
+		bh.consume(InputSrvTime.buildTypeToGroup(scratch, numContacts));
+		Collections.sort(scratch, InputSrvTime.groupTauComparator);
+		bh.consume(InputSrvTime.buildGroupToType(scratch, numGroups));
+	}
+
+	@Benchmark
+	public RouteTable buildRouteTable() {
+		return RouteTable.build(numContacts, numGroups, instance.contact, instance.group, instance.tau, instance.numRoutes);
+	}
+}
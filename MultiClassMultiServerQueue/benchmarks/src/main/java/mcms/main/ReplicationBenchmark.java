@@ -0,0 +1,120 @@
+package mcms.main;
+
+import java.util.concurrent.TimeUnit;
+import mcms.contactcenters.MCMSStatistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <h1> Benchmark: One Replication, End to End </h1>
+ *  <p>
+ *  Measures {@link SimRunner#simulateOneReplication} with each engine: initialization, all events and the statistics of one replication.
+ *  The replication has one main period, long enough for about {@code numArrivals} arrivals, followed by the wrap-up period.
+ *  Each operation simulates the next replication, i.e., the next substream of every random stream.
+ *  With {@code monitor}, a {@link SimulationMonitor} of the model is registered, and a client thread reads all its attributes
+ *  every {@value #POLL_INTERVAL} ms, as a JMX console would (more often than most do).
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplicationBenchmark {
+	static final long POLL_INTERVAL = 100; // Milliseconds between two reads of the monitor
+
+	@Param({"CONTACT_CENTERS", "KERNEL", "CTMC"})
+	SimRunner.Engine engine;
+
+	@Param({"16", "256"})
+	int numContacts;
+
+	@Param({"8", "64"})
+	int numGroups;
+
+	@Param({"10", "1000"})
+	int agentsPerGroup;
+
+	@Param({"0.5", "0.95"})
+	double load;
+
+	@Param({"0.25"})
+	double density;
+
+	@Param({"100000"})
+	int numArrivals;
+
+	@Param({"false", "true"})
+	boolean monitor;
+
+	private SimRunner model;
+	private int rep; // Replication of the next operation
+	private SimulationMonitor jmx;
+	private Thread client;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		final int numPeriods = 1;
+		BenchmarkInstance instance = new BenchmarkInstance(numContacts, numGroups, density, agentsPerGroup, load, numPeriods, 1);
+		final double periodDuration = numArrivals / instance.totalDemand();
+		model = new SimRunner(numContacts, numGroups, instance.routes, instance.numAgents, instance.demand, 1, numPeriods, periodDuration, numPeriods * periodDuration, 0, true, 0.5, true, engine, 1, false);
+		rep = 0;
+		if (monitor) {
+			jmx = SimulationMonitor.register(model, "ReplicationBenchmark");
+			client = new Thread(() -> {
+				try {
+					while (true) {
+						jmx.getEngine();
+						jmx.getNumEvents();
+						jmx.getNumArrivals();
+						jmx.getNumServices();
+						jmx.getEventsPerSecond();
+						jmx.getArrivalsPerSecond();
+						jmx.getServicesPerSecond();
+						jmx.getNumCompletedReplications();
+						jmx.getCurrentReplications();
+						jmx.getCurrentPeriods();
+						jmx.getSimToWallTimeRatio();
+						jmx.getMaxQueueLengths();
+						jmx.getHeapUsed();
+						Thread.sleep(POLL_INTERVAL);
+					}
+				}
+				catch (InterruptedException e) {
+					// Trial over
+				}
+			}, "JMX client");
+			client.setDaemon(true);
+			client.start();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		if (!monitor) return;
+		client.interrupt();
+		client.join();
+		jmx.unregister();
+	}
+
+	@Benchmark
+	public MCMSStatistics simulateOneReplication() {
+		return model.simulateOneReplication(1, rep++);
+	}
+}
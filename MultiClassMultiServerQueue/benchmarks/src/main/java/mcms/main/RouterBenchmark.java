@@ -0,0 +1,153 @@
+package mcms.main;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import umontreal.iro.lecuyer.contactcenters.PeriodChangeEvent;
+import umontreal.iro.lecuyer.contactcenters.contact.Contact;
+import umontreal.iro.lecuyer.contactcenters.queue.StandardWaitingQueue;
+import umontreal.iro.lecuyer.contactcenters.server.AgentGroup;
+import umontreal.iro.lecuyer.rng.MRG32k3a;
+import umontreal.iro.lecuyer.rng.RandomStream;
+import umontreal.iro.lecuyer.simevents.Simulator;
+
+/**
+ * <h1> Benchmark: FSF Router Decisions </h1>
+ *  <p>
+ *  Measures {@link FSFRouter#selectAgent} and {@link FSFRouter#selectContact} on ContactCenters agent groups and waiting queues.
+ *  Before each batch of {@value #BATCH} decisions, the state is reset so that each agent is busy with probability {@code load}
+ *  (for selectAgent), or each waiting queue holds contacts with probability {@code load} (for selectContact).
+ *  The decisions then take free agents or waiting contacts, as they do in the simulation.
+ *  The reset is not measured, and the batch amortizes the overhead of running it outside the measurement.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+	static final int BATCH = 1024; // Decisions per benchmark invocation
+
+	@Param({"16", "256"})
+	int numContacts;
+
+	@Param({"8", "64"})
+	int numGroups;
+
+	@Param({"10", "1000"})
+	int agentsPerGroup;
+
+	@Param({"0.5", "0.95"})
+	double load;
+
+	@Param({"0.25"})
+	double density;
+
+	private Simulator sim;
+	private FSFRouter router;
+	private AgentGroup[] groups;
+	private StandardWaitingQueue[] queues;
+	private Contact[] arrivals; // [BATCH] arriving contacts of random types
+	private Contact[][] waiting; // [type][BATCH] contacts that wait in each queue
+	private Contact[] busy; // Contacts in service before the arrivals
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchmarkInstance instance = new BenchmarkInstance(numContacts, numGroups, density, agentsPerGroup, load, 1, 1);
+		sim = new Simulator();
+		PeriodChangeEvent pce = new PeriodChangeEvent(sim, 1, 3, 0);
+		RandomStream[] srvStream = new RandomStream[instance.numRoutes];
+		for (int r = 0; r < srvStream.length; r++) srvStream[r] = new MRG32k3a();
+		router = new FSFRouter(numContacts, numContacts, numGroups, instance.routes, new ServiceTimeGen(srvStream, instance.routes.getTau()), true);
+		groups = new AgentGroup[numGroups];
+		for (int i = 0; i < numGroups; i++) {
+			groups[i] = new AgentGroup(pce, instance.numAgents[i]);
+			router.setAgentGroup(i, groups[i]);
+		}
+		queues = new StandardWaitingQueue[numContacts];
+		for (int q = 0; q < numContacts; q++) {
+			queues[q] = new StandardWaitingQueue();
+			router.setWaitingQueue(q, queues[q]);
+		}
+		Random random = new Random(7);
+		arrivals = new Contact[BATCH];
+		for (int b = 0; b < BATCH; b++) arrivals[b] = new Contact(sim, random.nextInt(numContacts));
+		waiting = new Contact[numContacts][BATCH];
+		for (int k = 0; k < numContacts; k++)
+			for (int b = 0; b < BATCH; b++) waiting[k][b] = new Contact(sim, k);
+		busy = new Contact[numGroups * agentsPerGroup];
+		for (int c = 0; c < busy.length; c++) busy[c] = new Contact(sim, c % numContacts);
+	}
+
+	/**
+	 * State of selectAgent: each agent is busy with probability {@code load}.
+	 */
+	@State(Scope.Thread)
+	public static class BusyAgents {
+		private final Random random = new Random(11);
+
+		@Setup(Level.Invocation)
+		public void reset(RouterBenchmark b) {
+			int c = 0;
+			b.sim.init(); // Drops the end-of-service events of the previous batch
+			for (int i = 0; i < b.numGroups; i++) {
+				b.groups[i].init(); // All agents free; the free-group index listens to the group
+				for (int a = 0; a < b.agentsPerGroup; a++) {
+					if (random.nextDouble() < b.load) b.groups[i].serve(b.busy[c++]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * State of selectContact: each waiting queue holds contacts with probability {@code load}; the free agents belong to random groups.
+	 */
+	@State(Scope.Thread)
+	public static class WaitingContacts {
+		private final Random random = new Random(13);
+		private final int[] freeGroup = new int[BATCH];
+
+		@Setup(Level.Invocation)
+		public void reset(RouterBenchmark b) {
+			final int depth = BATCH / b.numContacts + 1; // Contacts in a non-empty queue
+			for (int q = 0; q < b.numContacts; q++) {
+				b.queues[q].init(); // Empty queue; the non-empty-queue index listens to the queue
+				if (random.nextDouble() < b.load) {
+					for (int d = 0; d < depth; d++) b.queues[q].add(b.waiting[q][d]);
+				}
+			}
+			for (int f = 0; f < BATCH; f++) freeGroup[f] = random.nextInt(b.numGroups);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void selectAgent(BusyAgents state, Blackhole bh) {
+		for (int a = 0; a < BATCH; a++) bh.consume(router.selectAgent(arrivals[a]));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void selectContact(WaitingContacts state, Blackhole bh) {
+		for (int f = 0; f < BATCH; f++) bh.consume(router.selectContact(groups[state.freeGroup[f]], null));
+	}
+}
@@ -1,6 +1,7 @@
 package mcms.contactcenters;
 
 import umontreal.iro.lecuyer.contactcenters.contact.Contact;
+import umontreal.iro.lecuyer.simevents.Simulator;
 
 /**
  * <h1> Contact Class </h1>
@@ -9,6 +10,19 @@ import umontreal.iro.lecuyer.contactcenters.contact.Contact;
  *  Check the documentation for:
  *  	umontreal.iro.lecuyer.contactcenters.contact.Contact
  * 	</p>
+ *  <p>
+ *  Besides the state of the base class, a contact keeps the few fields the FSF statistics need:
+ *  its arrival time, its queue time and its service time. 
+ *  When contacts are pooled (see {@link MCMSContactPool}), a contact is recycled for a new arrival 
+ *  and only these fields are read by {@link MCMSMeasures}.
+ * 	</p>
+ *  <p>
+ *  A recycled contact resets the base-class state it can: its type and its default service time. The getters of the base-class
+ *  state the model depends on are overridden to return the values of the current use: {@link #getArrivalTime()} and
+ *  {@link #getTotalQueueTime()}. The rest of the base-class state (attributes, steps trace) is that of the first use:
+ *  the model does not set attributes and does not trace steps. The pooled mode is not yet validated against the ContactCenters
+ *  library, and is off by default (see {@code ModelBuilder#setPoolContacts}).
+ * 	</p>
  *  
  * @author	Vahid Nourbakhsh 
  * @version	2.0
@@ -16,7 +30,67 @@ import umontreal.iro.lecuyer.contactcenters.contact.Contact;
  */
 
 public class MCMSContact extends Contact {
-		MCMSContact(int type) {
-			super(type); // type is the contact type. Each contact type has its specific arrival rate and service time. The service time depends on the contact type and the agent group to which it is routed.
+		private double arrival; // Arrival time of the current use of the contact
+		private double queueTime; // Queue waiting time, set at the end of service
+		private double serviceTime; // Service time, set at the end of service
+		private final double defaultServiceTime; // Default service time of a new contact, restored at each reuse
+
+		MCMSContact(Simulator sim, int type) {
+			super(sim, type); // type is the contact type. Each contact type has its specific arrival rate and service time. The service time depends on the contact type and the agent group to which it is routed.
+			this.arrival = sim.time();
+			this.defaultServiceTime = getDefaultServiceTime();
+		}
+
+		/**
+		 * Prepares a recycled contact for a new arrival of the given type.
+		 * 
+		 * @param type	The contact type
+		 * @param now	The arrival time
+		 */
+		void reuse(int type, double now) {
+			setTypeId(type);
+			setDefaultServiceTime(defaultServiceTime); // The router sets the service time of each route before the service
+			arrival = now;
+			queueTime = serviceTime = 0;
+		}
+
+		/**
+		 * Returns the arrival time of the current use of the contact, also for a recycled contact.
+		 */
+		@Override
+		public double getArrivalTime() {
+			return arrival;
+		}
+
+		/**
+		 * Returns the queue waiting time of the current use of the contact, also for a recycled contact; 0 before the end of its service.
+		 */
+		@Override
+		public double getTotalQueueTime() {
+			return queueTime;
+		}
+
+		/**
+		 * Records the queue and service times of the contact at the end of service.
+		 * 
+		 * @param beginServiceTime	The time the service began
+		 * @param endServiceTime	The time the service ended
+		 */
+		void served(double beginServiceTime, double endServiceTime) {
+			queueTime = beginServiceTime - arrival;
+			serviceTime = endServiceTime - beginServiceTime;
+		}
+
+		//getters
+		public double getArrival() {
+			return arrival;
+		}
+
+		public double getQueueTime() {
+			return queueTime;
+		}
+
+		public double getServiceTime() {
+			return serviceTime;
 		}
-	}
\ No newline at end of file
+	}
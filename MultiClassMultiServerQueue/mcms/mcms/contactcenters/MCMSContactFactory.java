@@ -1,8 +1,9 @@
 package mcms.contactcenters;
 
-import mcms.main.SimRunner;
+import umontreal.iro.lecuyer.contactcenters.PeriodChangeEvent;
 import umontreal.iro.lecuyer.contactcenters.contact.Contact;
 import umontreal.iro.lecuyer.contactcenters.contact.ContactFactory;
+import umontreal.iro.lecuyer.simevents.Simulator;
 
 /**
  * <h1> Contact Factory </h1>
@@ -18,10 +19,19 @@ import umontreal.iro.lecuyer.contactcenters.contact.ContactFactory;
 
 public class MCMSContactFactory implements ContactFactory {
 	int type; // type is an identifier, here it is the contact type indexed by k
-	public MCMSContactFactory(int type) {this.type = type;}
+	Simulator sim; // simulator the generated contacts belong to
+	MCMSStatistics stats; // statistical counters of the model that owns this factory
+	MCMSContactPool pool; // pool of recycled contacts, or null to allocate a new contact per arrival
+	PeriodChangeEvent pce; // periods of the model, to leave out the arrivals of a loaded preliminary period; null: count the arrivals of all periods
+	public MCMSContactFactory(Simulator sim, int type, MCMSStatistics stats) {this(sim, type, stats, null, null);}
+	public MCMSContactFactory(Simulator sim, int type, MCMSStatistics stats, MCMSContactPool pool, PeriodChangeEvent pce) {this.sim = sim; this.type = type; this.stats = stats; this.pool = pool; this.pce = pce;}
 	public Contact newInstance() { // newInstance() is a ContactFactory interface method that returns Contact class objects
-		SimRunner.numArrivedType[type]++; // Update the counter: the number of generated contacts of type [type]
-		final MCMSContact contact = new MCMSContact(type);
+		if (pce == null || pce.getCurrentPeriod() > 0) stats.numArrivedType[type]++; // Update the counter: the number of generated contacts of type [type], after the warm-up
+		stats.numArrivals++; // Progress counters
+		stats.numEvents++;
+		stats.time = sim.time();
+		if ((stats.numEvents & MCMSStatistics.PUBLISH_MASK) == 0) stats.publishProgress();
+		final MCMSContact contact = pool == null ? new MCMSContact(sim, type) : pool.acquire(type);
 		//contact.setDefaultServiceTime (sgen.nextDouble()); // For systems where the contact service time that does not depend on the agent to which it is routed we can assign the service time here
 		// contact.setDefaultPatienceTime (pgen.nextDouble()); // For cases where the contacts abandon the system after the queue waiting time exceeds the contact's patience time 
 		return contact;
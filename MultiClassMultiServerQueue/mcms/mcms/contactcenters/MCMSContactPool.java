@@ -0,0 +1,67 @@
+package mcms.contactcenters;
+
+import java.util.ArrayDeque;
+import umontreal.iro.lecuyer.contactcenters.contact.Contact;
+import umontreal.iro.lecuyer.contactcenters.queue.DequeueEvent;
+import umontreal.iro.lecuyer.contactcenters.router.ExitedContactListener;
+import umontreal.iro.lecuyer.contactcenters.router.Router;
+import umontreal.iro.lecuyer.contactcenters.server.EndServiceEvent;
+import umontreal.iro.lecuyer.simevents.Simulator;
+
+/**
+ * <h1> Contact Pool </h1>
+ *  <p>
+ *  Recycles the contacts of a model, so that a replication does not allocate one contact per arrival. 
+ *  The contact factories take contacts from the pool, and the pool takes them back when they exit the system.
+ *  The pool must be the last exited-contact listener of the router, so that the contact is not reused 
+ *  before the other listeners (e.g., {@link MCMSMeasures}) have read it.
+ *  The pool is first in, first out: a contact that just exited is reused after all the other free contacts, so that a reference
+ *  the library may still hold to it (e.g., in the event that ended its service) is stale for as long as possible.
+ *  After a replication, the pool holds about as many contacts as were in the system at the same time.
+ * 	</p>
+ *  
+ * @author	Vahid Nourbakhsh 
+ * @version	2.0
+ * @since	2018-03-18
+ */
+public class MCMSContactPool implements ExitedContactListener {
+	private Simulator sim;
+	private ArrayDeque<MCMSContact> free = new ArrayDeque<MCMSContact>(); // Contacts ready to be reused
+
+	public MCMSContactPool(Simulator sim) {this.sim = sim;}
+
+	/**
+	 * Returns a contact of the given type: a recycled one if available, a new one otherwise.
+	 * 
+	 * @param type	The contact type
+	 * @return 		A contact that arrives now
+	 */
+	MCMSContact acquire(int type) {
+		final MCMSContact contact = free.pollFirst();
+		if (contact == null) return new MCMSContact(sim, type);
+		contact.reuse(type, sim.time());
+		return contact;
+	}
+
+	/**
+	 * Takes back a contact that exited the system.
+	 * 
+	 * @param contact	The contact
+	 */
+	void release(Contact contact) {
+		if (contact instanceof MCMSContact) free.addLast((MCMSContact) contact);
+	}
+
+	public void blocked(Router router, Contact contact, int bType) {
+		release(contact);
+	}
+
+	public void dequeued(Router router, DequeueEvent ev) {
+		// A contact dequeued to begin its service is still in the system
+		if (ev.getEffectiveDequeueType() != Router.DEQUEUETYPE_BEGINSERVICE) release(ev.getContact());
+	}
+
+	public void served(Router router, EndServiceEvent ev) {
+		release(ev.getContact());
+	}
+}
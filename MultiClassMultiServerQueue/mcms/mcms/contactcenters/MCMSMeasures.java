@@ -1,6 +1,6 @@
 package mcms.contactcenters;
 
-import mcms.main.SimRunner;
+import umontreal.iro.lecuyer.contactcenters.PeriodChangeEvent;
 import umontreal.iro.lecuyer.contactcenters.contact.Contact;
 import umontreal.iro.lecuyer.contactcenters.queue.DequeueEvent;
 import umontreal.iro.lecuyer.contactcenters.router.ExitedContactListener;
@@ -20,8 +20,12 @@ import umontreal.iro.lecuyer.contactcenters.server.EndServiceEvent;
  */
 public class MCMSMeasures implements ExitedContactListener {
 	private double acceptableWaitTime;
-	public MCMSMeasures (double acceptableWaitTime) {
+	private PeriodChangeEvent pce;
+	private MCMSStatistics stats;
+	public MCMSMeasures (double acceptableWaitTime, PeriodChangeEvent pce, MCMSStatistics stats) {
 		this.acceptableWaitTime = acceptableWaitTime;
+		this.pce = pce;
+		this.stats = stats;
 	}
 	
 	/**
@@ -39,13 +43,27 @@ public class MCMSMeasures implements ExitedContactListener {
 	 */
 	public void served(Router router, EndServiceEvent ev) {
 		final Contact contact = ev.getContact();
-		final int period = SimRunner.PCE.getPeriod(contact.getArrivalTime())-1;  // Determine the current simulation period
-		if (SimRunner.PCE.isMainPeriod(SimRunner.PCE.getCurrentPeriod())) { // If the current period is not a warm-up or wrap-up period, update the statistics.
-			SimRunner.waitTime += contact.getTotalQueueTime();  // Total wait time (across all calls)
-			++SimRunner.numServed; // Total number of served contacts
-			if (contact.getTotalQueueTime() <= acceptableWaitTime) { // If the contact is served within the Acceptable Waiting Time (AWT), update counters for contacts that received good service. 
-				++SimRunner.numGoodSL; // Total number of contacts that received good service (served within the AWT)
-				++SimRunner.numGoodSLKP[contact.getTypeId()][period]; // Number of contacts of a certain type in a certain period that received good service.
+		final MCMSContact mc = (MCMSContact) contact;
+		mc.served(ev.getBeginServiceTime(), contact.simulator().time());
+		stats.numEnded++; // Progress counters
+		stats.numEvents++;
+		stats.time = contact.simulator().time();
+		if ((stats.numEvents & MCMSStatistics.PUBLISH_MASK) == 0) stats.publishProgress();
+		if (stats.trace != null) stats.trace.record(contact.getTypeId(), ev.getAgentGroup().getId(), mc.getArrival(), mc.getQueueTime(), mc.getServiceTime());
+		if (stats.waitSeries != null) stats.waitSeries.record(stats.time, mc.getQueueTime());
+		final int period = pce.getPeriod(mc.getArrival())-1;  // Determine the current simulation period
+		if (pce.isMainPeriod(pce.getCurrentPeriod())) { // If the current period is not a warm-up or wrap-up period, update the statistics.
+			final double queueTime = mc.getQueueTime();
+			final int type = contact.getTypeId();
+			stats.waitTime += queueTime;  // Total wait time (across all calls)
+			stats.waitTimeType[type] += queueTime;
+			++stats.numServed; // Total number of served contacts
+			++stats.numServedType[type];
+			stats.recordWaitTime(contact.getTypeId(), period, queueTime); // Waiting-time distribution of the type in its arrival period
+			if (queueTime <= acceptableWaitTime) { // If the contact is served within the Acceptable Waiting Time (AWT), update counters for contacts that received good service. 
+				++stats.numGoodSL; // Total number of contacts that received good service (served within the AWT)
+				++stats.numGoodSLType[type];
+				if (period >= 0) ++stats.numGoodSLKP[contact.getTypeId()][stats.statPeriod(period)]; // Number of contacts of a certain type in a certain period that received good service; not for the arrivals of a warm-up (period -1).
 			} 
 		}
 	}
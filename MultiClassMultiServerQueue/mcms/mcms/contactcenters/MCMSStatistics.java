@@ -0,0 +1,207 @@
+package mcms.contactcenters;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import mcms.output.ContactTrace.Recorder;
+
+/**
+ * <h1> Per-Replication Statistical Counters </h1>
+ *  <p>
+ *  Holds the statistical counters of one simulation replication.
+ *  Each simulation model owns its own counters, so that several models (e.g., one per worker thread)
+ *  can simulate replications at the same time in one JVM.
+ *  The counters are updated by {@link MCMSContactFactory} (arrivals) and {@link MCMSMeasures} (services).
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-17
+ */
+public class MCMSStatistics {
+	public int[] numArrivedType; // Arrivals of each contact type [type], after the preliminary period
+	public int numBlocked; // Number of contacts that are blocked and do not enter the system
+	public int numServed; // Number of served contacts within or not within the AWT
+	public int numGoodSL; // Number of contacts that got good service, i.e., within the AWT
+	public double[][] numGoodSLKP; // Number of contacts that got good service per contact type K, and statistical period P
+	public double waitTime; // Total queue wait time of served contacts
+	public int[] numServedType; // Served contacts of each contact type [type]
+	public int[] numGoodSLType; // Contacts of each contact type served within the AWT [type]
+	public double[] waitTimeType; // Total queue wait time of the served contacts of each contact type [type]
+	public WaitTimeHistogram[][] waitTimeKP; // Waiting times of the served contacts per contact type K, and statistical period P of the arrival; null if not collected
+	public final int statPeriodLength; // Number of main periods per statistical period
+	private final int numPeriods; // Number of main periods
+
+	// Progress of the model: cumulative, neither reset by init() nor copied. Plain fields of the simulating thread; a monitor in another thread
+	// reads the copy made by publishProgress() (see mcms.main.SimulationMonitor)
+	public long numEvents; // Events processed: arrivals, ends of service and period changes (transitions of the CTMC engine)
+	public long numArrivals; // Arrivals in all periods
+	public long numEnded; // Services ended in all periods
+	public int period; // Period being simulated (kernel and CTMC engines)
+	public double time; // Simulation time of the last event
+	public int[] maxQueueLength; // Longest waiting queue of each contact type [type]; read by a monitor without synchronization, so approximate
+	public static final long PUBLISH_MASK = (1 << 16) - 1; // The engines publish the progress when the number of events is a multiple of PUBLISH_MASK + 1
+	private final AtomicLongArray progress = new AtomicLongArray(5); // Published numEvents, numArrivals, numEnded, period and the bits of time
+
+	public Recorder trace; // Records every served contact, in all periods; null if the run is not traced
+	public WaitSeries waitSeries; // Waiting times of the served contacts, in all periods, for the warm-up detection; null if not recorded
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numContacts	Number of contact types
+	 * @param numPeriods	Number of main simulation periods
+	 */
+	public MCMSStatistics(int numContacts, int numPeriods) {
+		this(numContacts, numPeriods, false);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numContacts			Number of contact types
+	 * @param numPeriods			Number of main simulation periods
+	 * @param waitTimeHistograms	True: also collect the waiting-time histograms per contact type and period
+	 */
+	public MCMSStatistics(int numContacts, int numPeriods, boolean waitTimeHistograms) {
+		this(numContacts, numPeriods, waitTimeHistograms, 1);
+	}
+
+	/**
+	 * Constructor.
+	 * The per-period counters are aggregated over statistical periods of {@code statPeriodLength} main periods,
+	 * so their size is K x ceil(P / statPeriodLength), e.g., one statistical period per day of 15-minute periods.
+	 *
+	 * @param numContacts			Number of contact types
+	 * @param numPeriods			Number of main simulation periods
+	 * @param waitTimeHistograms	True: also collect the waiting-time histograms per contact type and statistical period
+	 * @param statPeriodLength		Number of main periods per statistical period
+	 */
+	public MCMSStatistics(int numContacts, int numPeriods, boolean waitTimeHistograms, int statPeriodLength) {
+		if (statPeriodLength < 1) throw new IllegalArgumentException("A statistical period spans at least one period, found " + statPeriodLength);
+		this.statPeriodLength = statPeriodLength;
+		this.numPeriods = numPeriods;
+		final int numStatPeriods = (numPeriods + statPeriodLength - 1) / statPeriodLength;
+		numArrivedType = new int[numContacts];
+		numServedType = new int[numContacts];
+		numGoodSLType = new int[numContacts];
+		waitTimeType = new double[numContacts];
+		numGoodSLKP = new double[numContacts][numStatPeriods];
+		maxQueueLength = new int[numContacts];
+		if (waitTimeHistograms) {
+			waitTimeKP = new WaitTimeHistogram[numContacts][numStatPeriods];
+			for (int k = 0; k < numContacts; k++)
+				for (int p = 0; p < numStatPeriods; p++) waitTimeKP[k][p] = new WaitTimeHistogram();
+		}
+	}
+
+	/**
+	 * Returns the statistical period of a main period.
+	 *
+	 * @param period	Main period, starting at 0
+	 */
+	public int statPeriod(int period) {
+		return period / statPeriodLength;
+	}
+
+	/**
+	 * Returns the number of statistical periods.
+	 */
+	public int getNumStatPeriods() {
+		return numGoodSLKP.length > 0 ? numGoodSLKP[0].length : 0;
+	}
+
+	/**
+	 * Counts the waiting time of a served contact in the histogram of its type and arrival period, if the histograms are collected.
+	 *
+	 * @param type		Contact type
+	 * @param period	Main period of the arrival, starting at 0; other periods are ignored
+	 * @param wait		Queue waiting time
+	 */
+	public void recordWaitTime(int type, int period, double wait) {
+		if (waitTimeKP != null && period >= 0 && period < numPeriods) waitTimeKP[type][period / statPeriodLength].record(wait);
+	}
+
+	/**
+	 * Publishes the progress counters to the monitors in other threads. The writes are ordered ({@code lazySet}), so a reader
+	 * sees whole values, each at least as recent as the previous ones it read, without a fence on the simulating thread.
+	 * The engines call it at each period change, every {@code PUBLISH_MASK + 1} events and at the end of a replication.
+	 */
+	public void publishProgress() {
+		progress.lazySet(0, numEvents);
+		progress.lazySet(1, numArrivals);
+		progress.lazySet(2, numEnded);
+		progress.lazySet(3, period);
+		progress.lazySet(4, Double.doubleToRawLongBits(time));
+	}
+
+	/**
+	 * Returns the published number of events (see {@link #publishProgress()}); thread-safe.
+	 */
+	public long getPublishedEvents() {
+		return progress.get(0);
+	}
+
+	/**
+	 * Returns the published number of arrivals (see {@link #publishProgress()}); thread-safe.
+	 */
+	public long getPublishedArrivals() {
+		return progress.get(1);
+	}
+
+	/**
+	 * Returns the published number of ended services (see {@link #publishProgress()}); thread-safe.
+	 */
+	public long getPublishedEnded() {
+		return progress.get(2);
+	}
+
+	/**
+	 * Returns the published period of the kernel and CTMC engines (see {@link #publishProgress()}); thread-safe.
+	 */
+	public int getPublishedPeriod() {
+		return (int) progress.get(3);
+	}
+
+	/**
+	 * Returns the published simulation time (see {@link #publishProgress()}); thread-safe.
+	 */
+	public double getPublishedTime() {
+		return Double.longBitsToDouble(progress.get(4));
+	}
+
+	/**
+	 * Resets all counters at the beginning of a replication.
+	 */
+	public void init() {
+		Arrays.fill(numArrivedType, 0);
+		Arrays.fill(numServedType, 0);
+		Arrays.fill(numGoodSLType, 0);
+		Arrays.fill(waitTimeType, 0);
+		for (double[] row : numGoodSLKP) Arrays.fill(row, 0);
+		numBlocked = numServed = numGoodSL = 0;
+		waitTime = 0;
+		if (waitSeries != null) waitSeries.init();
+		if (waitTimeKP != null) {
+			for (WaitTimeHistogram[] row : waitTimeKP)
+				for (WaitTimeHistogram h : row) h.init();
+		}
+	}
+
+	/**
+	 * Copies the counters of another replication, e.g., from a worker thread into a batch buffer.
+	 * The waiting-time histograms are not copied.
+	 *
+	 * @param other	Counters with the same numbers of contact types and periods
+	 */
+	public void copyFrom(MCMSStatistics other) {
+		System.arraycopy(other.numArrivedType, 0, numArrivedType, 0, numArrivedType.length);
+		System.arraycopy(other.numServedType, 0, numServedType, 0, numServedType.length);
+		System.arraycopy(other.numGoodSLType, 0, numGoodSLType, 0, numGoodSLType.length);
+		System.arraycopy(other.waitTimeType, 0, waitTimeType, 0, waitTimeType.length);
+		for (int k = 0; k < numGoodSLKP.length; k++) System.arraycopy(other.numGoodSLKP[k], 0, numGoodSLKP[k], 0, numGoodSLKP[k].length);
+		numBlocked = other.numBlocked;
+		numServed = other.numServed;
+		numGoodSL = other.numGoodSL;
+		waitTime = other.waitTime;
+	}
+}
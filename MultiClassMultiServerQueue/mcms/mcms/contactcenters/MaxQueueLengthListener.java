@@ -0,0 +1,34 @@
+package mcms.contactcenters;
+
+import umontreal.iro.lecuyer.contactcenters.queue.DequeueEvent;
+import umontreal.iro.lecuyer.contactcenters.queue.WaitingQueue;
+import umontreal.iro.lecuyer.contactcenters.queue.WaitingQueueListener;
+
+/**
+ * <h1> Longest Waiting Queues </h1>
+ *  <p>
+ *  Records the longest length reached by each waiting queue (one queue per contact type) in {@link MCMSStatistics#maxQueueLength},
+ *  for monitoring. It listens to the waiting queues, and only compares the size of a queue after an enqueue.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class MaxQueueLengthListener implements WaitingQueueListener {
+	private MCMSStatistics stats;
+
+	public MaxQueueLengthListener(MCMSStatistics stats) {
+		this.stats = stats;
+	}
+
+	public void enqueued(DequeueEvent ev) {
+		final WaitingQueue queue = ev.getWaitingQueue();
+		final int size = queue.size();
+		if (size > stats.maxQueueLength[queue.getId()]) stats.maxQueueLength[queue.getId()] = size;
+	}
+
+	public void dequeued(DequeueEvent ev) {}
+
+	public void init(WaitingQueue queue) {}
+}
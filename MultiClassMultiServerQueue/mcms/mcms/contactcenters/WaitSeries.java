@@ -0,0 +1,76 @@
+package mcms.contactcenters;
+
+import java.util.Arrays;
+
+/**
+ * <h1> Series of Batch Means of the Waiting Times </h1>
+ *  <p>
+ *  The waiting times of the contacts of one replication, in the order their services end, from time 0 and in all periods,
+ *  averaged over consecutive batches of {@value #BATCH} contacts, with the time at which each batch ends.
+ *  The warm-up is picked from these series (see {@link mcms.main.MserWarmup}); a batch mean takes 16 bytes instead of 40 for 5 waits.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class WaitSeries {
+	public static final int BATCH = 5; // Waiting times per batch
+
+	private double[] mean = new double[64]; // [batch] mean waiting time
+	private double[] time = new double[64]; // [batch] time of the last service of the batch
+	private int size; // Number of complete batches
+	private double sum; // Waiting times of the current batch
+	private int count;
+
+	/**
+	 * Removes all waiting times, at the beginning of a replication; the arrays are kept.
+	 */
+	public void init() {
+		size = count = 0;
+		sum = 0;
+	}
+
+	/**
+	 * Adds the waiting time of a contact whose service ends at time {@code t}.
+	 */
+	public void record(double t, double wait) {
+		sum += wait;
+		if (++count < BATCH) return;
+		if (size == mean.length) {
+			mean = Arrays.copyOf(mean, 2 * size);
+			time = Arrays.copyOf(time, 2 * size);
+		}
+		mean[size] = sum / BATCH;
+		time[size++] = t;
+		sum = 0;
+		count = 0;
+	}
+
+	/**
+	 * Returns a copy of the complete batches, e.g., to keep the series of a replication after the counters are reused.
+	 */
+	public WaitSeries copy() {
+		WaitSeries c = new WaitSeries();
+		c.mean = Arrays.copyOf(mean, Math.max(1, size));
+		c.time = Arrays.copyOf(time, Math.max(1, size));
+		c.size = size;
+		return c;
+	}
+
+	//getters
+	/**
+	 * Returns the number of complete batches.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public double getMean(int batch) {
+		return mean[batch];
+	}
+
+	public double getTime(int batch) {
+		return time[batch];
+	}
+}
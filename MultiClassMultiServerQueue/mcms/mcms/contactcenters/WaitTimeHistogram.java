@@ -0,0 +1,163 @@
+package mcms.contactcenters;
+
+import java.util.Arrays;
+
+/**
+ * <h1> Log-Bucketed Histogram of Waiting Times </h1>
+ *  <p>
+ *  Counts waiting times in buckets of constant relative width (HDR-style): each power of two is split into
+ *  {@value #NUM_SUB} equal buckets, so a bucket is at most 1/{@value #NUM_SUB} of its values wide, from tiny to huge waits.
+ *  The bucket of a wait comes from the exponent and the leading mantissa bits of the double, without a search or a logarithm.
+ *  Waits below 2<sup>-20</sup> (mostly contacts served without waiting) have their own bucket.
+ * 	</p>
+ *  <p>
+ *  After the simulation, the histogram gives the service level for any acceptable waiting time and the quantiles
+ *  of the waiting time (both interpolated linearly inside a bucket). Histograms of several replications or models are
+ *  merged by adding their counts. The buckets of a power of two are allocated at its first wait; {@link #init()} keeps them,
+ *  so recording allocates nothing once the range of the waits is known (e.g., after the first replication).
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class WaitTimeHistogram {
+	private static final int SUB_BITS = 6;
+	private static final int NUM_SUB = 1 << SUB_BITS; // Buckets per power of two
+	private static final int MIN_EXP = -20; // Waits below 2^MIN_EXP are counted as no wait
+	private static final int NUM_OCTAVES = 64; // Powers of two covered; larger waits are counted in the last bucket, which extends to the largest wait
+	private static final double MIN_WAIT = Math.scalb(1.0, MIN_EXP);
+
+	private final long[][] counts = new long[NUM_OCTAVES][]; // [power of two][bucket], null until the first wait of the power
+	private long numZero; // Waits below MIN_WAIT
+	private long count; // All waits
+	private double max;
+
+	/**
+	 * Removes all waits; the allocated buckets are kept.
+	 */
+	public void init() {
+		for (long[] c : counts) if (c != null) Arrays.fill(c, 0);
+		numZero = count = 0;
+		max = 0;
+	}
+
+	/**
+	 * Counts a waiting time.
+	 *
+	 * @param wait	The waiting time, non-negative
+	 */
+	public void record(double wait) {
+		count++;
+		if (wait > max) max = wait;
+		if (!(wait >= MIN_WAIT)) {
+			numZero++;
+			return;
+		}
+		int octave = Math.getExponent(wait) - MIN_EXP;
+		int sub;
+		if (octave >= NUM_OCTAVES) {
+			octave = NUM_OCTAVES - 1;
+			sub = NUM_SUB - 1;
+		}
+		else sub = (int) ((Double.doubleToRawLongBits(wait) >>> (52 - SUB_BITS)) & (NUM_SUB - 1)); // Leading mantissa bits
+		long[] c = counts[octave];
+		if (c == null) c = counts[octave] = new long[NUM_SUB];
+		c[sub]++;
+	}
+
+	/**
+	 * Adds the waits of another histogram to this one.
+	 *
+	 * @param other	The other histogram
+	 */
+	public void merge(WaitTimeHistogram other) {
+		for (int o = 0; o < NUM_OCTAVES; o++) {
+			final long[] from = other.counts[o];
+			if (from == null) continue;
+			if (counts[o] == null) counts[o] = new long[NUM_SUB];
+			final long[] to = counts[o];
+			for (int s = 0; s < NUM_SUB; s++) to[s] += from[s];
+		}
+		numZero += other.numZero;
+		count += other.count;
+		if (other.max > max) max = other.max;
+	}
+
+	/**
+	 * Returns the (interpolated) number of waits not larger than {@code awt}.
+	 *
+	 * @param awt	Acceptable waiting time
+	 * @return		The number of waits within the AWT
+	 */
+	public double countWithin(double awt) {
+		if (awt < 0) return 0;
+		double n = numZero;
+		for (int o = 0; o < NUM_OCTAVES; o++) {
+			final long[] c = counts[o];
+			if (c == null) continue;
+			final double width = Math.scalb(1.0 / NUM_SUB, o + MIN_EXP);
+			for (int s = 0; s < NUM_SUB; s++) {
+				final double low = Math.scalb(1.0, o + MIN_EXP) + s * width;
+				if (low >= awt) return n;
+				final double high = high(o, s, low + width);
+				if (high <= awt) n += c[s];
+				else n += c[s] * (awt - low) / (high - low);
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the service level for an acceptable waiting time: the fraction of the waits not larger than {@code awt}.
+	 *
+	 * @param awt	Acceptable waiting time
+	 * @return		The service level; 1 if there is no wait
+	 */
+	public double serviceLevel(double awt) {
+		return count == 0 ? 1 : countWithin(awt) / count;
+	}
+
+	/**
+	 * Returns a quantile of the waiting time, e.g., {@code quantile(0.99)} for the 99th percentile.
+	 *
+	 * @param q		Probability in [0, 1]
+	 * @return		The quantile; NaN if there is no wait
+	 */
+	public double quantile(double q) {
+		if (count == 0) return Double.NaN;
+		final double rank = q * count;
+		if (rank <= numZero) return 0;
+		double n = numZero;
+		for (int o = 0; o < NUM_OCTAVES; o++) {
+			final long[] c = counts[o];
+			if (c == null) continue;
+			final double width = Math.scalb(1.0 / NUM_SUB, o + MIN_EXP);
+			for (int s = 0; s < NUM_SUB; s++) {
+				if (c[s] == 0) continue;
+				if (n + c[s] >= rank) {
+					final double low = Math.scalb(1.0, o + MIN_EXP) + s * width;
+					return Math.min(max, low + (high(o, s, low + width) - low) * (rank - n) / c[s]);
+				}
+				n += c[s];
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the upper end of a bucket: the last bucket, which also counts the larger waits, extends to the largest wait.
+	 */
+	private double high(int octave, int sub, double end) {
+		return octave == NUM_OCTAVES - 1 && sub == NUM_SUB - 1 ? Math.max(end, max) : end;
+	}
+
+	//getters
+	public long getCount() {
+		return count;
+	}
+
+	public double getMax() {
+		return max;
+	}
+}
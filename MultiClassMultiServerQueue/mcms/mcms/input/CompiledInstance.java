@@ -0,0 +1,219 @@
+package mcms.input;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <h1> Compiled Binary Instance </h1>
+ *  <p>
+ *  An instance (agents, demands and routes files) compiled into one binary file, so a model starts without parsing text,
+ *  sorting the routes or building the priority lists. The file holds the number of agents of each group, the demands,
+ *  and the arrays of the {@link RouteTable}: the sparse tau table and both FSF priority lists, already sorted.
+ * 	</p>
+ *  <p>
+ *  Format (little-endian): magic number, version, K, I, R, then the arrays {@code demands[K]}, {@code tau[R]},
+ *  {@code agents[I]}, {@code typeStart[K+1]}, {@code typeGroup[R]}, {@code groupStart[I+1]}, {@code groupType[R]}, {@code groupRoute[R]}.
+ *  The doubles come first, so they are aligned. The file is memory-mapped when loaded, and each array is read with one bulk copy.
+ *  Compile again after changing a text file: the compiled file does not track its sources.
+ *  {@link #load} checks the arrays before it returns, so a corrupt or stale file fails there rather than in the simulation.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public final class CompiledInstance {
+	private static final long MAGIC = 0x4D434D53494E5354L; // "MCMSINST"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8 + 4 * 4;
+
+	private final int[] agents; // [I] number of agents of each group
+	private final double[] demands; // [K] arrival rate of each contact type
+	private final RouteTable routeTable;
+
+	private CompiledInstance(int[] agents, double[] demands, RouteTable routeTable) {
+		this.agents = agents;
+		this.demands = demands;
+		this.routeTable = routeTable;
+	}
+
+	/**
+	 * Writes an instance to a binary file.
+	 *
+	 * @param file			Path and name of the compiled file
+	 * @param agents		Number of agents of each group
+	 * @param demands		Arrival rate of each contact type
+	 * @param routeTable	Routes of the instance
+	 * @throws UncheckedIOException	If the file cannot be written
+	 */
+	public static void write(String file, int[] agents, double[] demands, RouteTable routeTable) {
+		final int numContacts = routeTable.getNumContacts();
+		final int numGroups = routeTable.getNumGroups();
+		final int numRoutes = routeTable.getNumRoutes();
+		if (agents.length != numGroups || demands.length != numContacts) throw new IllegalArgumentException("The agents and demands do not match the routes");
+		final long size = size(numContacts, numGroups, numRoutes);
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			out.order(ByteOrder.LITTLE_ENDIAN);
+			out.putLong(MAGIC).putInt(VERSION).putInt(numContacts).putInt(numGroups).putInt(numRoutes);
+			out.asDoubleBuffer().put(demands).put(routeTable.getTau());
+			out.position(out.position() + 8 * (numContacts + numRoutes));
+			out.asIntBuffer().put(agents).put(routeTable.getTypeStart()).put(routeTable.getTypeGroup()).put(routeTable.getGroupStart()).put(routeTable.getGroupType()).put(routeTable.getGroupRoute());
+			out.force();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Cannot write the compiled instance " + file, e);
+		}
+	}
+
+	/**
+	 * Compiles the text files of an instance into a binary file.
+	 *
+	 * @param file			Path and name of the compiled file
+	 * @param inputPath		Path to the text files
+	 * @param agents		Agent groups file name
+	 * @param demands		Demands file name
+	 * @param routes		Routes file name
+	 * @param numContacts	Number of contact types
+	 * @param numGroups		Number of agent groups
+	 */
+	public static void compile(String file, String inputPath, String agents, String demands, String routes, int numContacts, int numGroups) {
+		write(file, InputAgent.readAgentGroups(agents, inputPath, numGroups), InputContact.readDemands(demands, inputPath, numContacts),
+				RouteTable.build(InputSrvTime.readRoutes(routes, inputPath, numContacts, numGroups), numContacts, numGroups));
+	}
+
+	private static long size(int numContacts, int numGroups, int numRoutes) {
+		return HEADER_SIZE + 8L * (numContacts + numRoutes) + 4L * (numGroups + numContacts + 1 + numRoutes + numGroups + 1 + 2L * numRoutes);
+	}
+
+	/**
+	 * Loads a compiled instance.
+	 *
+	 * @param file			Path and name of the compiled file
+	 * @param numContacts	Expected number of contact types
+	 * @param numGroups		Expected number of agent groups
+	 * @return				The instance
+	 * @throws InputFormatException	If the file cannot be read, is not a compiled instance, does not match the expected size, or holds inconsistent arrays
+	 */
+	public static CompiledInstance load(String file, int numContacts, int numGroups) {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE) throw new InputFormatException(file, 0, "not a compiled instance");
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			in.order(ByteOrder.LITTLE_ENDIAN);
+			if (in.getLong() != MAGIC) throw new InputFormatException(file, 0, "not a compiled instance");
+			final int version = in.getInt();
+			if (version != VERSION) throw new InputFormatException(file, 0, "unsupported compiled instance version " + version);
+			final int k = in.getInt();
+			final int i = in.getInt();
+			final int numRoutes = in.getInt();
+			if (k != numContacts || i != numGroups) {
+				throw new InputFormatException(file, 0, "compiled for K=" + k + " and I=" + i + ", expected K=" + numContacts + " and I=" + numGroups);
+			}
+			if (numRoutes < 0 || channel.size() != size(k, i, numRoutes)) throw new InputFormatException(file, 0, "truncated compiled instance");
+
+			double[] demands = new double[k];
+			double[] tau = new double[numRoutes];
+			in.asDoubleBuffer().get(demands).get(tau);
+			in.position(in.position() + 8 * (k + numRoutes));
+			int[] agents = new int[i];
+			int[] typeStart = new int[k + 1];
+			int[] typeGroup = new int[numRoutes];
+			int[] groupStart = new int[i + 1];
+			int[] groupType = new int[numRoutes];
+			int[] groupRoute = new int[numRoutes];
+			in.asIntBuffer().get(agents).get(typeStart).get(typeGroup).get(groupStart).get(groupType).get(groupRoute);
+			validate(file, agents, demands, tau, typeStart, typeGroup, groupStart, groupType, groupRoute);
+			return new CompiledInstance(agents, demands, new RouteTable(k, i, typeStart, typeGroup, tau, groupStart, groupType, groupRoute));
+		}
+		catch (IOException e) {
+			throw new InputFormatException(file, e);
+		}
+	}
+
+	/**
+	 * Checks the arrays of a compiled instance: non-negative agents and demands, positive finite service times, monotone row starts
+	 * from 0 to R, indices in range, and a group-to-type list that holds each route of the type-to-group list once, in its group.
+	 */
+	private static void validate(String file, int[] agents, double[] demands, double[] tau, int[] typeStart, int[] typeGroup, int[] groupStart, int[] groupType, int[] groupRoute) {
+		final int numContacts = demands.length;
+		final int numGroups = agents.length;
+		final int numRoutes = tau.length;
+		for (int i = 0; i < numGroups; i++) {
+			if (agents[i] < 0) throw new InputFormatException(file, 0, "negative number of agents " + agents[i] + " in group " + i);
+		}
+		for (int k = 0; k < numContacts; k++) {
+			if (!(demands[k] >= 0) || Double.isInfinite(demands[k])) throw new InputFormatException(file, 0, "invalid demand " + demands[k] + " of type " + k);
+		}
+		for (int r = 0; r < numRoutes; r++) {
+			if (!(tau[r] > 0) || Double.isInfinite(tau[r])) throw new InputFormatException(file, 0, "invalid mean service time " + tau[r] + " of route " + r);
+		}
+		checkStarts(file, "typeStart", typeStart, numRoutes);
+		checkStarts(file, "groupStart", groupStart, numRoutes);
+		final int[] routeType = new int[numRoutes];
+		for (int k = 0; k < numContacts; k++) {
+			for (int r = typeStart[k]; r < typeStart[k + 1]; r++) {
+				if (typeGroup[r] < 0 || typeGroup[r] >= numGroups) throw new InputFormatException(file, 0, "group " + typeGroup[r] + " of route " + r + " is out of range [0, " + numGroups + ")");
+				routeType[r] = k;
+			}
+		}
+		final boolean[] listed = new boolean[numRoutes];
+		for (int i = 0; i < numGroups; i++) {
+			for (int j = groupStart[i]; j < groupStart[i + 1]; j++) {
+				final int r = groupRoute[j];
+				if (r < 0 || r >= numRoutes) throw new InputFormatException(file, 0, "route " + r + " of the group-to-type list is out of range [0, " + numRoutes + ")");
+				if (groupType[j] < 0 || groupType[j] >= numContacts) throw new InputFormatException(file, 0, "type " + groupType[j] + " of the group-to-type list is out of range [0, " + numContacts + ")");
+				if (listed[r] || typeGroup[r] != i || routeType[r] != groupType[j]) throw new InputFormatException(file, 0, "the group-to-type list does not match the routes at position " + j);
+				listed[r] = true;
+			}
+		}
+	}
+
+	/**
+	 * Checks that the row starts of a CSR list go from 0 to {@code numRoutes} without decreasing.
+	 */
+	private static void checkStarts(String file, String name, int[] start, int numRoutes) {
+		if (start[0] != 0 || start[start.length - 1] != numRoutes) throw new InputFormatException(file, 0, name + " does not span the " + numRoutes + " routes");
+		for (int j = 1; j < start.length; j++) {
+			if (start[j] < start[j - 1]) throw new InputFormatException(file, 0, name + " decreases at " + j);
+		}
+	}
+
+	//getters
+	public int[] getAgents() {
+		return agents;
+	}
+
+	public double[] getDemands() {
+		return demands;
+	}
+
+	public RouteTable getRouteTable() {
+		return routeTable;
+	}
+
+	/**
+	 * Arguments: inputPath exNum K I [compiledFile] <br>
+	 * Compiles {@code <exNum>agents.dat}, {@code <exNum>demands.dat} and {@code <exNum>routes.dat}, by default into {@code <inputPath><exNum>instance.bin}. <br>
+	 * Example: {@code ./mcms/resources/test/input/ 2 2 2}
+	 */
+	public static void main(String[] args) {
+		if (args.length < 4) {
+			System.out.println("Arguments: inputPath exNum K I [compiledFile]");
+			return;
+		}
+		final String inputPath = args[0];
+		final int exNum = Integer.parseInt(args[1]);
+		final int numContacts = Integer.parseInt(args[2]);
+		final int numGroups = Integer.parseInt(args[3]);
+		final String file = args.length > 4 ? args[4] : inputPath + exNum + "instance.bin";
+		long start = System.nanoTime();
+		compile(file, inputPath, exNum + "agents.dat", exNum + "demands.dat", exNum + "routes.dat", numContacts, numGroups);
+		System.out.printf("Compiled example %d into %s in %.2f s%n", exNum, file, (System.nanoTime() - start) / 1e9);
+	}
+}
@@ -0,0 +1,371 @@
+package mcms.input;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * <h1> Streaming Reader for .dat Input Files </h1>
+ *  <p>
+ *  Reads the agents, demands and routes files (see {@code resources/test/input/GUIDE.txt}) in one pass.
+ *  The file is read in large blocks through a {@link FileChannel} and tokenized byte by byte,
+ *  so the numbers go directly into primitive arrays, without a {@code String} or a {@code Scanner} per line.
+ * 	</p>
+ *  <p>
+ *  Format: lines that start with {@code #} are comments and blank lines are skipped.
+ *  Every other line is a row of whitespace-separated columns: a fixed number of integer indices (k and/or i)
+ *  followed by one numeric parameter value. A malformed row raises an {@link InputFormatException} with its line number.
+ * 	</p>
+ *  <p>
+ *  {@link #read} returns all rows at once; {@link #open} returns a {@link RowStream} over the rows, for files too long to hold in memory.
+ *  {@link #readVector} reads a file with one row per index (the agents and demands files), and rejects a missing or repeated index.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-03-15
+ */
+public final class DatFileReader {
+	private static final int BLOCK_SIZE = 1 << 20; // Bytes read from the file at a time
+	private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	private static final long MAX_EXACT_MANTISSA = 1L << 53; // Larger mantissas are not exact doubles
+
+	/**
+	 * The rows of an input file, column by column.
+	 */
+	public static final class Table {
+		public final int numRows;
+		public final int[][] index; // [column][row] index columns
+		public final double[] value; // [row] parameter values
+
+		Table(int numRows, int[][] index, double[] value) {
+			this.numRows = numRows;
+			this.index = index;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Reads the rows of an input file one at a time, a block of the file at a time, so the memory does not grow with the file.
+	 * The fields of the current row are valid until the next call to {@link #next()}.
+	 */
+	public static final class RowStream implements Closeable {
+		private final DatFileReader reader;
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+		private int row; // Rows of the current block already returned
+		private boolean eof;
+
+		private RowStream(DatFileReader reader) {
+			this.reader = reader;
+			this.buffer = ByteBuffer.wrap(new byte[BLOCK_SIZE]);
+			try {
+				this.channel = FileChannel.open(Paths.get(reader.file), StandardOpenOption.READ);
+			}
+			catch (IOException e) {
+				throw new InputFormatException(reader.file, e);
+			}
+		}
+
+		/**
+		 * Moves to the next row.
+		 *
+		 * @return	False at the end of the file
+		 * @throws InputFormatException	If the file cannot be read or a row is malformed
+		 */
+		public boolean next() {
+			while (row == reader.numRows) {
+				if (eof) return false;
+				reader.discardRows();
+				row = 0;
+				readBlock();
+			}
+			row++;
+			return true;
+		}
+
+		private void readBlock() {
+			try {
+				final int n = channel.read(buffer);
+				if (n == -1) {
+					eof = true;
+					reader.endToken(); // The last line may not end with a line break
+					reader.endLine();
+					return;
+				}
+				final byte[] block = buffer.array();
+				for (int b = 0; b < n; b++) reader.accept(block[b]);
+				buffer.clear();
+			}
+			catch (IOException e) {
+				throw new InputFormatException(reader.file, e);
+			}
+		}
+
+		/**
+		 * Returns index column {@code c} of the current row.
+		 */
+		public int index(int c) {
+			return reader.index[c][row - 1];
+		}
+
+		/**
+		 * Returns the parameter value of the current row.
+		 */
+		public double value() {
+			return reader.value[row - 1];
+		}
+
+		/**
+		 * Returns the line number of the current row, for error messages.
+		 */
+		public long line() {
+			return reader.rowLine[row - 1];
+		}
+
+		public void close() {
+			try {
+				channel.close();
+			}
+			catch (IOException e) {
+				throw new InputFormatException(reader.file, e);
+			}
+		}
+	}
+
+	private final String file;
+	private final int[] indexBounds;
+	private final int numIndex;
+	private final boolean integralValue;
+	private int[][] index;
+	private double[] value;
+	private int numRows;
+	private long line = 1; // Current line number
+	private long[] rowLine; // Line number of each row, kept by a RowStream only
+	private int column; // Number of columns read on the current line
+	private byte[] token = new byte[64]; // Characters of the current token
+	private int tokenLength;
+	private boolean comment; // True if the current line is a comment
+	private boolean lineStart = true; // True if no character of the current line has been read yet
+
+	private DatFileReader(String file, int[] indexBounds, boolean integralValue) {
+		this.file = file;
+		this.indexBounds = indexBounds;
+		this.integralValue = integralValue;
+		this.numIndex = indexBounds.length;
+		this.index = new int[numIndex][1024];
+		this.value = new double[1024];
+	}
+
+	/**
+	 * Reads an input file.
+	 *
+	 * @param file			Path and name of the file
+	 * @param indexBounds	One entry per index column: the index must be in [0, indexBounds[c])
+	 * @param integralValue	True if the parameter value must be a non-negative integer (e.g., a number of agents)
+	 * @return Table		The rows of the file
+	 * @throws InputFormatException	If the file cannot be read or a row is malformed
+	 */
+	public static Table read(String file, int[] indexBounds, boolean integralValue) {
+		return new DatFileReader(file, indexBounds, integralValue).readAll();
+	}
+
+	/**
+	 * Opens an input file to read its rows one at a time.
+	 *
+	 * @param file			Path and name of the file
+	 * @param indexBounds	One entry per index column: the index must be in [0, indexBounds[c])
+	 * @param integralValue	True if the parameter value must be a non-negative integer (e.g., a number of agents)
+	 * @return RowStream	The rows of the file; close it after use
+	 * @throws InputFormatException	If the file cannot be opened
+	 */
+	public static RowStream open(String file, int[] indexBounds, boolean integralValue) {
+		DatFileReader reader = new DatFileReader(file, indexBounds, integralValue);
+		reader.rowLine = new long[reader.value.length];
+		return new RowStream(reader);
+	}
+
+	/**
+	 * Reads a file with one index column that must have exactly one row for each index in [0, size), e.g., the agents or the demands file.
+	 *
+	 * @param file			Path and name of the file
+	 * @param size			Number of indices
+	 * @param integralValue	True if the parameter value must be a non-negative integer (e.g., a number of agents)
+	 * @return double[]		The value of each index
+	 * @throws InputFormatException	If the file cannot be read, a row is malformed, an index has no row or more than one
+	 */
+	public static double[] readVector(String file, int size, boolean integralValue) {
+		final double[] vector = new double[size];
+		final long[] rowLine = new long[size]; // Line of the row of each index; 0: no row yet
+		long lastLine = 0;
+		try (RowStream rows = open(file, new int[] {size}, integralValue)) {
+			while (rows.next()) {
+				final int idx = rows.index(0);
+				if (rowLine[idx] != 0) throw new InputFormatException(file, rows.line(), "index " + idx + " is repeated, first on line " + rowLine[idx]);
+				rowLine[idx] = lastLine = rows.line();
+				vector[idx] = rows.value();
+			}
+		}
+		for (int idx = 0; idx < size; idx++) {
+			if (rowLine[idx] == 0) throw new InputFormatException(file, lastLine, "no row for index " + idx + " of [0, " + size + ")");
+		}
+		return vector;
+	}
+
+	/**
+	 * Drops the complete rows read so far, and keeps the row being read.
+	 */
+	private void discardRows() {
+		for (int c = 0; c < numIndex; c++) index[c][0] = index[c][numRows];
+		value[0] = value[numRows];
+		numRows = 0;
+	}
+
+	private Table readAll() {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			final byte[] block = new byte[BLOCK_SIZE];
+			final ByteBuffer buffer = ByteBuffer.wrap(block);
+			int n;
+			while ((n = channel.read(buffer)) != -1) {
+				for (int b = 0; b < n; b++) accept(block[b]);
+				buffer.clear();
+			}
+		}
+		catch (IOException e) {
+			throw new InputFormatException(file, e);
+		}
+		endToken(); // The last line may not end with a line break
+		endLine();
+		for (int c = 0; c < numIndex; c++) index[c] = Arrays.copyOf(index[c], numRows);
+		return new Table(numRows, index, Arrays.copyOf(value, numRows));
+	}
+
+	/**
+	 * Processes one character of the file.
+	 */
+	private void accept(byte b) {
+		if (b == '\n') {
+			endToken();
+			endLine();
+			line++;
+		}
+		else if (comment) {
+			return;
+		}
+		else if (b == ' ' || b == '\t' || b == '\r') {
+			endToken();
+			lineStart = false;
+		}
+		else if (lineStart && b == '#') {
+			comment = true;
+		}
+		else {
+			if (tokenLength == token.length) token = Arrays.copyOf(token, 2 * token.length);
+			token[tokenLength++] = b;
+			lineStart = false;
+		}
+	}
+
+	/**
+	 * Stores the current token in the current row.
+	 */
+	private void endToken() {
+		if (tokenLength == 0) return;
+		if (column < numIndex) {
+			final int idx = parseInt();
+			if (idx < 0 || idx >= indexBounds[column]) {
+				throw new InputFormatException(file, line, "index " + idx + " in column " + (column + 1) + " is out of range [0, " + indexBounds[column] + ")");
+			}
+			index[column][numRows] = idx;
+		}
+		else if (column == numIndex) {
+			value[numRows] = integralValue ? parseInt() : parseDouble();
+			if (value[numRows] < 0 || Double.isNaN(value[numRows])) {
+				throw new InputFormatException(file, line, "negative or undefined value " + value[numRows]);
+			}
+		}
+		else {
+			throw new InputFormatException(file, line, "expected " + (numIndex + 1) + " columns, found more");
+		}
+		column++;
+		tokenLength = 0;
+	}
+
+	/**
+	 * Ends the current row, and makes room for the next one.
+	 */
+	private void endLine() {
+		if (column > 0 && column != numIndex + 1) {
+			throw new InputFormatException(file, line, "expected " + (numIndex + 1) + " columns, found " + column);
+		}
+		if (column > 0 && rowLine != null) rowLine[numRows] = line;
+		if (column > 0 && ++numRows == value.length) {
+			if (rowLine != null) rowLine = Arrays.copyOf(rowLine, 2 * numRows);
+			for (int c = 0; c < numIndex; c++) index[c] = Arrays.copyOf(index[c], 2 * numRows);
+			value = Arrays.copyOf(value, 2 * numRows);
+		}
+		column = 0;
+		comment = false;
+		lineStart = true;
+	}
+
+	private int parseInt() {
+		int t = 0;
+		boolean negative = token[0] == '-';
+		if (negative || token[0] == '+') t++;
+		if (t == tokenLength) throw malformed("an integer");
+		long result = 0;
+		for (; t < tokenLength; t++) {
+			final int digit = token[t] - '0';
+			if (digit < 0 || digit > 9) throw malformed("an integer");
+			result = 10 * result + digit;
+			if (result > Integer.MAX_VALUE) throw malformed("an integer");
+		}
+		return (int) (negative ? -result : result);
+	}
+
+	private double parseDouble() {
+		// Fast path: [sign] digits [. digits] with an exactly representable mantissa; the division is then correctly rounded.
+		int t = 0;
+		boolean negative = token[0] == '-';
+		if (negative || token[0] == '+') t++;
+		long mantissa = 0;
+		int numDigits = 0;
+		int numFraction = -1; // -1: no decimal point yet
+		for (; t < tokenLength; t++) {
+			final byte b = token[t];
+			if (b >= '0' && b <= '9') {
+				mantissa = 10 * mantissa + (b - '0');
+				numDigits++;
+				if (numFraction >= 0) numFraction++;
+				if (mantissa >= MAX_EXACT_MANTISSA) break;
+			}
+			else if (b == '.' && numFraction < 0) {
+				numFraction = 0;
+			}
+			else {
+				break;
+			}
+		}
+		if (t == tokenLength && numDigits > 0 && numFraction < POW10.length) {
+			final double d = numFraction > 0 ? mantissa / POW10[numFraction] : mantissa;
+			return negative ? -d : d;
+		}
+		// Slow path: exponents, very long mantissas, Infinity, NaN, ...
+		try {
+			return Double.parseDouble(new String(token, 0, tokenLength, StandardCharsets.ISO_8859_1));
+		}
+		catch (NumberFormatException e) {
+			throw malformed("a number");
+		}
+	}
+
+	private InputFormatException malformed(String expected) {
+		return new InputFormatException(file, line, "expected " + expected + " in column " + (column + 1) + ", found '" + new String(token, 0, tokenLength, StandardCharsets.ISO_8859_1) + "'");
+	}
+}
@@ -0,0 +1,160 @@
+package mcms.input;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <h1> Streaming Writer for .dat Input Files </h1>
+ *  <p>
+ *  Writes agents, demands and routes files (see {@code resources/test/input/GUIDE.txt}) row by row,
+ *  the counterpart of {@link DatFileReader}. The numbers are formatted directly into a large buffer that is
+ *  written through a {@link FileChannel} when full, so a file with millions of rows needs no {@code String} per row.
+ * 	</p>
+ *  <p>
+ *  Values are written with a fixed number of decimals (trailing zeros removed), which {@link DatFileReader} parses exactly.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-03-15
+ */
+public final class DatFileWriter implements Closeable {
+	private static final int BLOCK_SIZE = 1 << 20; // Bytes written to the file at a time
+	private static final int MAX_DECIMALS = 15;
+
+	private final String file;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+	private final byte[] digits = new byte[20]; // Digits of a number, in reverse order
+	private final int numDecimals;
+	private final long scale; // 10^numDecimals
+
+	/**
+	 * Opens (creates or truncates) a file for writing.
+	 *
+	 * @param file			Path and name of the file
+	 * @param numDecimals	Number of decimals of the values, in [0, 15]
+	 * @throws InputFormatException	If the file cannot be opened
+	 */
+	public DatFileWriter(String file, int numDecimals) {
+		if (numDecimals < 0 || numDecimals > MAX_DECIMALS) throw new IllegalArgumentException("The number of decimals must be in [0, " + MAX_DECIMALS + "]");
+		this.file = file;
+		this.numDecimals = numDecimals;
+		long s = 1;
+		for (int d = 0; d < numDecimals; d++) s *= 10;
+		this.scale = s;
+		try {
+			this.channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		}
+		catch (IOException e) {
+			throw new InputFormatException(file, e);
+		}
+	}
+
+	/**
+	 * Writes a comment line; a {@code #} is added in front of the text.
+	 */
+	public void comment(String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+		if (bytes.length + 3 > BLOCK_SIZE) throw new IllegalArgumentException("Comment too long for " + file);
+		ensure(bytes.length + 3);
+		buffer.put((byte) '#');
+		buffer.put((byte) ' ');
+		buffer.put(bytes);
+		buffer.put((byte) '\n');
+	}
+
+	/**
+	 * Writes a row with one index, e.g., {@code i num_agents} or {@code k arrival_rate}.
+	 */
+	public void row(int index, double value) {
+		ensure(64);
+		putLong(index);
+		buffer.put((byte) '\t');
+		putValue(value);
+		buffer.put((byte) '\n');
+	}
+
+	/**
+	 * Writes a row with two indices, e.g., {@code k i service_time}.
+	 */
+	public void row(int index1, int index2, double value) {
+		ensure(64);
+		putLong(index1);
+		buffer.put((byte) '\t');
+		putLong(index2);
+		buffer.put((byte) '\t');
+		putValue(value);
+		buffer.put((byte) '\n');
+	}
+
+	private void putValue(double value) {
+		if (value < 0 || Double.isNaN(value) || value * scale >= Long.MAX_VALUE) {
+			throw new IllegalArgumentException("Cannot write the value " + value + " to " + file);
+		}
+		final long scaled = Math.round(value * scale);
+		putLong(scaled / scale);
+		long fraction = scaled % scale;
+		if (fraction == 0) return;
+		int n = numDecimals;
+		while (fraction % 10 == 0) { // Trailing zeros
+			fraction /= 10;
+			n--;
+		}
+		buffer.put((byte) '.');
+		for (int d = 0; d < n; d++) {
+			digits[d] = (byte) ('0' + fraction % 10);
+			fraction /= 10;
+		}
+		for (int d = n - 1; d >= 0; d--) buffer.put(digits[d]);
+	}
+
+	private void putLong(long value) {
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+		while (n > 0) buffer.put(digits[--n]);
+	}
+
+	/**
+	 * Makes room for {@code numBytes} bytes in the buffer.
+	 */
+	private void ensure(int numBytes) {
+		if (buffer.remaining() < numBytes) flush();
+	}
+
+	private void flush() {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) channel.write(buffer);
+		}
+		catch (IOException e) {
+			throw new InputFormatException(file, e);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Writes the buffered rows and closes the file.
+	 */
+	public void close() {
+		try {
+			flush();
+		}
+		finally {
+			try {
+				channel.close();
+			}
+			catch (IOException e) {
+				throw new InputFormatException(file, e);
+			}
+		}
+	}
+}
@@ -1,9 +1,5 @@
 package mcms.input;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
-
 /**
  * <h1> Read Simulation Input Data </h1>
  *  <p>
@@ -24,25 +20,13 @@ public class InputAgent {
 	 *  @param file_path			Path to the file location. Path+Name gives the file location and name.
 	 *  @param num_agent_groups		Total number of groups. In each group there could be multiple agents.
 	 *  @return agents 				An array of length J. Each element indicates the number of agents in the corresponding group.
+	 *  @throws InputFormatException	If the file cannot be read, a row is malformed, or a group has no row or more than one.
 	 */
 	public static int[] readAgentGroups (String file_name, String file_path, int num_agent_groups) {
-		Scanner scanner;
-		Scanner linescanner;
+		double [] rows = DatFileReader.readVector(file_path+file_name, num_agent_groups, true);
 		int [] agents = new int [num_agent_groups];
-		int i = 0;
-		try {
-			scanner = new Scanner(new File(file_path+file_name));
-			while(scanner.hasNextLine()) {
-			    String line = scanner.nextLine();
-			    if(!line.startsWith("#")) {
-			    	linescanner = new Scanner(line);
-			    	linescanner.nextInt();
-			    	agents[i++] = linescanner.nextInt();
-			    }    
-			}
-		}
-		catch (FileNotFoundException e) {
-			e.printStackTrace();
+		for (int i = 0; i < num_agent_groups; i++) {
+			agents[i] = (int) rows[i];
 		}
 		return agents;
 	}
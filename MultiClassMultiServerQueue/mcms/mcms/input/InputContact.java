@@ -1,9 +1,5 @@
 package mcms.input;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
-
 /**
  * <h1> Read Simulation Input Data </h1>
  *  <p>
@@ -26,28 +22,10 @@ public class InputContact {
 	 *  @param file_path			Path to the file location.
 	 *  @param num_contact_types 	Total number of contact types. contacts arrive randomly following a Poisson distribution.
 	 *  @return demand 				An array where each element indicates the arrival rate of the corresponding contact type.
+	 *  @throws InputFormatException	If the file cannot be read, a row is malformed, or a type has no row or more than one.
 	 */
 	public static double[] readDemands (String file_name, String file_path, int num_contact_types) {
-		Scanner scanner;
-		Scanner lineScanner;
-		double [] demand = new double [num_contact_types];
-		int i = 0;
-		String line;
-		try {
-			scanner = new Scanner(new File(file_path+file_name));
-			while(scanner.hasNextLine()) {
-			    line = scanner.nextLine();
-			    if(!line.startsWith("#")) {
-			    	lineScanner = new Scanner(line);
-			    	lineScanner.nextInt();
-			    	demand[i++] = lineScanner.nextDouble();
-			    }
-			}
-		}
-		catch (FileNotFoundException e) {
-			e.printStackTrace();
-		}
-		return demand;
+		return DatFileReader.readVector(file_path+file_name, num_contact_types, false);
 	}
 	
 	/**
@@ -0,0 +1,52 @@
+package mcms.input;
+
+/**
+ * <h1> Malformed Input Data </h1>
+ *  <p>
+ *  Thrown when an input data file cannot be read, or one of its rows is malformed.
+ *  The message gives the file and, for a malformed row, its line number.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-03-15
+ */
+public class InputFormatException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+	private final String file;
+	private final long line;
+
+	/**
+	 * Constructor for a malformed row.
+	 *
+	 * @param file		The input file
+	 * @param line		The line number of the malformed row (starting from 1)
+	 * @param message	What is wrong with the row
+	 */
+	public InputFormatException(String file, long line, String message) {
+		super(file + ":" + line + ": " + message);
+		this.file = file;
+		this.line = line;
+	}
+
+	/**
+	 * Constructor for a file that cannot be read.
+	 *
+	 * @param file		The input file
+	 * @param cause		The I/O error
+	 */
+	public InputFormatException(String file, Throwable cause) {
+		super(file + ": " + cause.getMessage(), cause);
+		this.file = file;
+		this.line = 0;
+	}
+
+	//getters
+	public String getFile() {
+		return file;
+	}
+
+	public long getLine() {
+		return line;
+	}
+}
@@ -1,12 +1,9 @@
 package mcms.input;
 
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Scanner;
 
 /**
  * <h1> Read Simulation Input Data - Service Time </h1>
@@ -106,30 +103,31 @@ public class InputSrvTime {
 	 *  @param num_contact_types 		Total number of contact types. 
 	 *  @param num_agent_groups 		Total number of groups. In each group there could be multiple agents.
 	 *  @return serviceTimeVec			A nested array list, where each inner element shows the mean service time if a contact of type "i" is routed to an agent in group "j".
+	 *  @throws InputFormatException	If the file cannot be read or a row is malformed.
 	 */
 	public static ArrayList<InputSrvTime> readServiceTimes (String file_name, String file_path, int num_contact_types, int num_agent_groups) {
-		ArrayList<InputSrvTime> serviceTimeVec = new ArrayList<InputSrvTime>();
-		Scanner scanner;
-		String line;
-		Scanner lineScanner;
-		try {
-			scanner = new Scanner(new File(file_path+file_name));
-			InputSrvTime e;
-			while(scanner.hasNextLine()) {
-			    line = scanner.nextLine();
-			    if(!line.startsWith("#")) {
-			    	lineScanner = new Scanner(line);
-					e = new InputSrvTime(lineScanner.nextInt(), lineScanner.nextInt(), lineScanner.nextDouble());
-					serviceTimeVec.add(e);
-			    }
-			}
-		}
-		catch (FileNotFoundException e) {
-			e.printStackTrace();
+		DatFileReader.Table table = readRoutes(file_name, file_path, num_contact_types, num_agent_groups);
+		ArrayList<InputSrvTime> serviceTimeVec = new ArrayList<InputSrvTime>(table.numRows);
+		for (int r = 0; r < table.numRows; r++) {
+			serviceTimeVec.add(new InputSrvTime(table.index[0][r], table.index[1][r], table.value[r]));
 		}
 		return serviceTimeVec;
 	}
 
+	/**
+	 * 	Reads the service times from input files into primitive arrays, without boxing a row per (contact, group) pair.
+	 * 
+	 *  @param file_name				Name of the routes file.
+	 *  @param file_path				Path to the file location.
+	 *  @param num_contact_types 		Total number of contact types. 
+	 *  @param num_agent_groups 		Total number of groups.
+	 *  @return table					The rows of the file: {@code index[0]} is the contact type k, {@code index[1]} the group i and {@code value} the mean service time tau.
+	 *  @throws InputFormatException	If the file cannot be read or a row is malformed.
+	 */
+	public static DatFileReader.Table readRoutes (String file_name, String file_path, int num_contact_types, int num_agent_groups) {
+		return DatFileReader.read(file_path+file_name, new int[] {num_contact_types, num_agent_groups}, false);
+	}
+
 	/**
 	 * Convert a ArrayList<List<Number>> list of service times (tau's) to a primitive [][]double 
 	 * 
@@ -0,0 +1,197 @@
+package mcms.input;
+
+import java.util.Random;
+
+/**
+ * <h1> Synthetic Instance Generator </h1>
+ *  <p>
+ *  Writes the agents, demands and routes files of a random instance (see {@code resources/test/input/GUIDE.txt}),
+ *  for scaling tests far beyond the test problems. The files are written row by row with {@link DatFileWriter}:
+ *  the generator keeps O(K + I) numbers in memory, whatever the number of routes.
+ * 	</p>
+ *  <p>
+ *  The instance:
+ *  <ul>
+ *  <li> <b> Service-time structure RANDOM: </b> type k can be served by group {@code k mod I},
+ *  and by every other group with probability {@code density}; the mean service times are uniform in [0.5, 1.5]. </li>
+ *  <li> <b> Service-time structure DISTANCE: </b> types and groups are random points in the unit square (e.g., taxi requests and
+ *  drivers' zones). Type k can be served by the groups within the radius that covers a fraction {@code density} of the square,
+ *  and always by its nearest group; the mean service time is {@code 0.1 + distance}. </li>
+ *  <li> <b> Agents: </b> {@code agentsPerGroup} agents in every group with the RANDOM structure. With the DISTANCE structure,
+ *  the same total is split among the groups in proportion to the work of the types they are nearest to (at least one agent
+ *  per group), otherwise the groups in dense areas would be overloaded while the others are idle. </li>
+ *  <li> <b> Demands: </b> random relative weights in [0.5, 1.5], scaled so that the offered load, with each type served at the
+ *  mean speed of its groups, is {@code utilization} times the number of agents. </li>
+ *  </ul>
+ *  The rows are written in increasing order of their indices, as the guide asks.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-03-15
+ */
+public class InstanceGenerator {
+	/**
+	 * Structure of the service times.
+	 */
+	public enum Structure {
+		RANDOM, // Random feasible pairs and random service times
+		DISTANCE // Service times proportional to the distance between random locations
+	}
+
+	private static final int NUM_DECIMALS = 6;
+
+	/**
+	 * Writes the three files of an instance: {@code <exNum>agents.dat}, {@code <exNum>demands.dat} and {@code <exNum>routes.dat}.
+	 *
+	 * @param path				Directory of the files, ending with a separator
+	 * @param exNum				Example number, the prefix of the file names
+	 * @param numContacts		Number of contact types K
+	 * @param numGroups			Number of agent groups I
+	 * @param density			Fraction of the groups that can serve a type, in [0, 1]
+	 * @param utilization		Target offered load per agent, e.g., 0.9
+	 * @param agentsPerGroup	Number of agents in each group (on average with the DISTANCE structure)
+	 * @param structure			Structure of the service times
+	 * @param seed				Seed of the random generator
+	 * @return long				Number of routes written
+	 */
+	public static long generate(String path, int exNum, int numContacts, int numGroups, double density, double utilization, int agentsPerGroup, Structure structure, long seed) {
+		if (numContacts < 1 || numGroups < 1) throw new IllegalArgumentException("The numbers of contact types and groups must be positive");
+		if (density < 0 || density > 1) throw new IllegalArgumentException("The density must be in [0, 1], found " + density);
+		Random random = new Random(seed);
+		double[] sumTau = new double[numContacts]; // Sum of the service times of each type
+		int[] numRoutes = new int[numContacts]; // Number of routes of each type
+		int[] nearestGroup = structure == Structure.DISTANCE ? new int[numContacts] : null;
+		long totalRoutes = 0;
+
+		// Routes
+		try (DatFileWriter out = new DatFileWriter(path + exNum + "routes.dat", NUM_DECIMALS)) {
+			out.comment("## Service Time ###");
+			out.comment("Synthetic instance: K=" + numContacts + ", I=" + numGroups + ", density=" + density + ", structure=" + structure + ", seed=" + seed);
+			out.comment("Each row defines the time it takes for contact k to be served with agent i.");
+			out.comment("k\ti\tservice_time");
+			if (structure == Structure.DISTANCE) {
+				double[] groupX = new double[numGroups];
+				double[] groupY = new double[numGroups];
+				for (int i = 0; i < numGroups; i++) {
+					groupX[i] = random.nextDouble();
+					groupY[i] = random.nextDouble();
+				}
+				final double radius2 = density / Math.PI; // Squared radius of a disk of area density
+				for (int k = 0; k < numContacts; k++) {
+					final double x = random.nextDouble();
+					final double y = random.nextDouble();
+					int nearest = 0;
+					double nearest2 = Double.POSITIVE_INFINITY;
+					for (int i = 0; i < numGroups; i++) {
+						final double d2 = (groupX[i] - x) * (groupX[i] - x) + (groupY[i] - y) * (groupY[i] - y);
+						if (d2 < nearest2) {
+							nearest2 = d2;
+							nearest = i;
+						}
+					}
+					for (int i = 0; i < numGroups; i++) {
+						final double d2 = (groupX[i] - x) * (groupX[i] - x) + (groupY[i] - y) * (groupY[i] - y);
+						if (d2 > radius2 && i != nearest) continue;
+						final double tau = 0.1 + Math.sqrt(d2);
+						out.row(k, i, tau);
+						sumTau[k] += tau;
+						numRoutes[k]++;
+					}
+					nearestGroup[k] = nearest;
+					totalRoutes += numRoutes[k];
+				}
+			}
+			else {
+				// Geometric skips over the groups: O(number of routes) random numbers instead of O(K x I)
+				final double logSkip = density < 1 ? Math.log(1 - density) : 0;
+				for (int k = 0; k < numContacts; k++) {
+					final int own = k % numGroups; // The group that can always serve type k
+					int i = nextGroup(-1, density, logSkip, numGroups, random);
+					boolean ownWritten = false;
+					while (i < numGroups || !ownWritten) {
+						int g;
+						if (!ownWritten && own <= i) {
+							g = own;
+							ownWritten = true;
+							if (own == i) i = nextGroup(i, density, logSkip, numGroups, random);
+						}
+						else {
+							g = i;
+							i = nextGroup(i, density, logSkip, numGroups, random);
+						}
+						final double tau = 0.5 + random.nextDouble();
+						out.row(k, g, tau);
+						sumTau[k] += tau;
+						numRoutes[k]++;
+					}
+					totalRoutes += numRoutes[k];
+				}
+			}
+		}
+
+		// Work of each type (relative demand times mean service time), and of the types nearest to each group
+		double[] weight = new double[numContacts];
+		double[] groupWork = new double[numGroups];
+		double work = 0;
+		for (int k = 0; k < numContacts; k++) {
+			weight[k] = 0.5 + random.nextDouble();
+			final double w = weight[k] * sumTau[k] / numRoutes[k];
+			work += w;
+			groupWork[nearestGroup != null ? nearestGroup[k] : k % numGroups] += w;
+		}
+
+		// Agents
+		int[] numAgents = new int[numGroups];
+		long totalAgents = 0;
+		for (int i = 0; i < numGroups; i++) {
+			numAgents[i] = nearestGroup == null ? agentsPerGroup : (int) Math.max(1, Math.round((double) numGroups * agentsPerGroup * groupWork[i] / work));
+			totalAgents += numAgents[i];
+		}
+		try (DatFileWriter out = new DatFileWriter(path + exNum + "agents.dat", 0)) {
+			out.comment("## Number of Agents in Groups ###");
+			out.comment("Synthetic instance: I=" + numGroups + ", agents per group=" + agentsPerGroup + ", structure=" + structure);
+			out.comment("i\tnum_agents");
+			for (int i = 0; i < numGroups; i++) out.row(i, numAgents[i]);
+		}
+
+		// Demands: sum over k of demand[k] * meanTau[k] = utilization * number of agents
+		final double factor = utilization * totalAgents / work;
+		try (DatFileWriter out = new DatFileWriter(path + exNum + "demands.dat", NUM_DECIMALS)) {
+			out.comment("## Arrival Rates ###");
+			out.comment("Synthetic instance: K=" + numContacts + ", utilization=" + utilization + ", seed=" + seed);
+			out.comment("k\tarrival_rate");
+			for (int k = 0; k < numContacts; k++) out.row(k, weight[k] * factor);
+		}
+		return totalRoutes;
+	}
+
+	/**
+	 * Returns the next group after {@code i} selected with probability {@code density}, or {@code numGroups} if there is none.
+	 * The gap is geometric, so the groups in between are skipped without drawing a random number for each.
+	 */
+	private static int nextGroup(int i, double density, double logSkip, int numGroups, Random random) {
+		if (density >= 1) return i + 1;
+		if (density <= 0) return numGroups;
+		final double gap = Math.floor(Math.log(1 - random.nextDouble()) / logSkip);
+		return gap >= numGroups - i ? numGroups : i + 1 + (int) gap;
+	}
+
+	/**
+	 * Arguments: path exNum K I density utilization agentsPerGroup [RANDOM|DISTANCE] [seed] <br>
+	 * Example: {@code ./mcms/resources/test/input/ 100 10000 500 0.01 0.9 20 RANDOM 1}
+	 */
+	public static void main(String[] args) {
+		if (args.length < 7) {
+			System.out.println("Arguments: path exNum K I density utilization agentsPerGroup [RANDOM|DISTANCE] [seed]");
+			return;
+		}
+		final int numContacts = Integer.parseInt(args[2]);
+		final int numGroups = Integer.parseInt(args[3]);
+		final Structure structure = args.length > 7 ? Structure.valueOf(args[7]) : Structure.RANDOM;
+		final long seed = args.length > 8 ? Long.parseLong(args[8]) : 1;
+		long start = System.nanoTime();
+		long numRoutes = generate(args[0], Integer.parseInt(args[1]), numContacts, numGroups, Double.parseDouble(args[4]), Double.parseDouble(args[5]), Integer.parseInt(args[6]), structure, seed);
+		System.out.printf("Wrote %d contact types, %d groups and %d routes in %.2f s%n", numContacts, numGroups, numRoutes, (System.nanoTime() - start) / 1e9);
+	}
+}
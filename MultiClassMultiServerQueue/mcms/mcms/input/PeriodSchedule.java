@@ -0,0 +1,124 @@
+package mcms.input;
+
+import java.util.Arrays;
+
+/**
+ * <h1> Staffing and Demand per Period </h1>
+ *  <p>
+ *  Gives the number of agents of each group and the arrival rate of each contact type, one period at a time,
+ *  as the simulation enters the period. Periods follow the simulation conventions: 0 is the preliminary period (no agent, no arrival),
+ *  1..P are the main periods, and P+1 is the wrap-up period (the agents of period P stay until the queues are empty, no arrival).
+ * 	</p>
+ *  <p>
+ *  A schedule only holds the values of the current period, so a long horizon (e.g., a year of 15-minute periods) does not need
+ *  K x P or I x P arrays: {@link #constant} keeps one value per type and group, and {@link StreamingSchedule} reads the changes
+ *  from per-period files as the simulation advances.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public interface PeriodSchedule {
+	/**
+	 * Reads the periods of a schedule for one model; not thread-safe.
+	 */
+	interface Reader {
+		/**
+		 * Sets the staffing and the demands of a period. The periods of a replication are read in increasing order,
+		 * starting from period 0, which restarts the schedule. The arrays keep the values of the previous period
+		 * between calls: pass the same arrays every time.
+		 *
+		 * @param period	Period: 0 preliminary, 1..P main, P+1 wrap-up
+		 * @param agents	[I] number of agents of each group, updated
+		 * @param demands	[K] arrival rate of each contact type, updated
+		 */
+		void read(int period, int[] agents, double[] demands);
+	}
+
+	/**
+	 * Returns a new reader, for one model.
+	 */
+	Reader newReader();
+
+	/**
+	 * Returns the number of main periods P.
+	 */
+	int getNumPeriods();
+
+	/**
+	 * Returns a schedule with the same staffing and the same demands in every main period.
+	 *
+	 * @param agents		Number of agents of each group
+	 * @param demands		Arrival rate of each contact type
+	 * @param numPeriods	Number of main periods
+	 */
+	static PeriodSchedule constant(int[] agents, double[] demands, int numPeriods) {
+		return new PeriodSchedule() {
+			public Reader newReader() {
+				return (period, a, d) -> {
+					if (period == 0) {
+						Arrays.fill(a, 0);
+						Arrays.fill(d, 0);
+					}
+					else if (period <= numPeriods) {
+						System.arraycopy(agents, 0, a, 0, a.length);
+						System.arraycopy(demands, 0, d, 0, d.length);
+					}
+					else {
+						System.arraycopy(agents, 0, a, 0, a.length);
+						Arrays.fill(d, 0);
+					}
+				};
+			}
+
+			public int getNumPeriods() {
+				return numPeriods;
+			}
+		};
+	}
+
+	/**
+	 * Returns a schedule whose preliminary period is a warm-up: it has the staffing and the demands of period 1 instead of
+	 * no agent and no arrival, so the first main period starts from a loaded system.
+	 *
+	 * @param schedule	The schedule of the main periods
+	 */
+	static PeriodSchedule withWarmup(PeriodSchedule schedule) {
+		return new PeriodSchedule() {
+			public Reader newReader() {
+				final Reader reader = schedule.newReader();
+				return (period, a, d) -> {
+					reader.read(period, a, d);
+					if (period == 0) reader.read(1, a, d); // Period 1 is then read again, with no change
+				};
+			}
+
+			public int getNumPeriods() {
+				return schedule.getNumPeriods();
+			}
+		};
+	}
+
+	/**
+	 * Returns a schedule from dense arrays, e.g., from {@link InputAgent#expGroupsAcrosPs} and {@link InputContact#expDemAcrosPs}.
+	 *
+	 * @param numAgents		[group][period] number of agents, periods 0..P+1
+	 * @param demand		[type][period] arrival rate, periods 0..P+1
+	 */
+	static PeriodSchedule dense(int[][] numAgents, double[][] demand) {
+		final int numPeriods = (numAgents.length > 0 ? numAgents[0].length : demand[0].length) - 2;
+		return new PeriodSchedule() {
+			public Reader newReader() {
+				return (period, a, d) -> {
+					for (int i = 0; i < a.length; i++) a[i] = numAgents[i][period];
+					for (int k = 0; k < d.length; k++) d[k] = demand[k][period];
+				};
+			}
+
+			public int getNumPeriods() {
+				return numPeriods;
+			}
+		};
+	}
+}
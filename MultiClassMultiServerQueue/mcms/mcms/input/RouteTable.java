@@ -0,0 +1,219 @@
+package mcms.input;
+
+import java.util.Arrays;
+
+/**
+ * <h1> Sparse Service-Time Model </h1>
+ *  <p>
+ *  Stores the feasible (contact type k, agent group i) pairs, called routes, in compressed sparse row (CSR) form.
+ *  Memory scales with the number of routes R, not with K x I.
+ *  Each route has an index r in [0, R), which the simulation uses to look up its mean service time and its random stream.
+ * 	</p>
+ *  <p>
+ *  The routes are stored twice, once per FSF priority list:
+ *  <ul>
+ *  <li> <b> Type rows: </b> the routes of type k are {@code typeStart[k] <= r < typeStart[k+1]},
+ *  sorted from the fastest to the slowest group (type-to-group priority list). The route index r is the position in the type rows. </li>
+ *  <li> <b> Group rows: </b> the routes of group i are {@code groupStart[i] <= g < groupStart[i+1]},
+ *  sorted from the fastest to the slowest contact type (group-to-type priority list); {@code groupRoute[g]} is the route index. </li>
+ *  </ul>
+ *  Ties in the service time are broken by the smaller index. The arrays are shared, not copied: do not modify them.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-03-15
+ */
+public class RouteTable {
+	private final int numContacts;
+	private final int numGroups;
+	private final int[] typeStart; // [K+1] first route of each type
+	private final int[] typeGroup; // [R] group of each route, in type-to-group priority order
+	private final double[] tau; // [R] mean service time of each route
+	private final int[] groupStart; // [I+1] first entry of each group in the group rows
+	private final int[] groupType; // [R] contact types, in group-to-type priority order
+	private final int[] groupRoute; // [R] route index of each entry of the group rows
+
+	/**
+	 * Constructor from prebuilt CSR arrays (e.g., loaded from a compiled instance).
+	 */
+	public RouteTable(int numContacts, int numGroups, int[] typeStart, int[] typeGroup, double[] tau, int[] groupStart, int[] groupType, int[] groupRoute) {
+		this.numContacts = numContacts;
+		this.numGroups = numGroups;
+		this.typeStart = typeStart;
+		this.typeGroup = typeGroup;
+		this.tau = tau;
+		this.groupStart = groupStart;
+		this.groupType = groupType;
+		this.groupRoute = groupRoute;
+	}
+
+	/**
+	 * Builds the route table from unsorted (k, i, tau) rows.
+	 *
+	 * @param numContacts	Number of contact types K
+	 * @param numGroups		Number of agent groups I
+	 * @param contact		[R] contact type of each row
+	 * @param group			[R] agent group of each row
+	 * @param serviceTime	[R] mean service time of each row
+	 * @param numRoutes		Number of rows R
+	 * @return				The route table
+	 * @throws IllegalArgumentException	If a (k, i) pair appears twice
+	 */
+	public static RouteTable build(int numContacts, int numGroups, int[] contact, int[] group, double[] serviceTime, int numRoutes) {
+		// Type rows: counting sort by type, then sort each row by service time
+		int[] typeStart = new int[numContacts + 1];
+		for (int r = 0; r < numRoutes; r++) typeStart[contact[r] + 1]++;
+		for (int k = 0; k < numContacts; k++) typeStart[k + 1] += typeStart[k];
+		int[] order = new int[numRoutes];
+		int[] next = Arrays.copyOf(typeStart, numContacts);
+		for (int r = 0; r < numRoutes; r++) order[next[contact[r]]++] = r;
+		int[] tmp = new int[numRoutes];
+		for (int k = 0; k < numContacts; k++) sortByTau(order, tmp, typeStart[k], typeStart[k + 1], serviceTime, group);
+
+		int[] typeGroup = new int[numRoutes];
+		double[] tau = new double[numRoutes];
+		int[] lastType = new int[numGroups]; // Last type seen for each group, to detect duplicate pairs
+		Arrays.fill(lastType, -1);
+		for (int k = 0; k < numContacts; k++) {
+			for (int r = typeStart[k]; r < typeStart[k + 1]; r++) {
+				final int i = group[order[r]];
+				if (lastType[i] == k) throw new IllegalArgumentException("Duplicate route for contact type " + k + " and group " + i);
+				lastType[i] = k;
+				typeGroup[r] = i;
+				tau[r] = serviceTime[order[r]];
+			}
+		}
+
+		// Group rows: counting sort of the route indices by group, then sort each row by service time
+		int[] groupStart = new int[numGroups + 1];
+		for (int r = 0; r < numRoutes; r++) groupStart[typeGroup[r] + 1]++;
+		for (int i = 0; i < numGroups; i++) groupStart[i + 1] += groupStart[i];
+		int[] groupRoute = new int[numRoutes];
+		next = Arrays.copyOf(groupStart, numGroups);
+		int[] routeType = new int[numRoutes];
+		for (int k = 0; k < numContacts; k++) {
+			for (int r = typeStart[k]; r < typeStart[k + 1]; r++) {
+				routeType[r] = k;
+				groupRoute[next[typeGroup[r]]++] = r;
+			}
+		}
+		for (int i = 0; i < numGroups; i++) sortByTau(groupRoute, tmp, groupStart[i], groupStart[i + 1], tau, routeType);
+		int[] groupType = new int[numRoutes];
+		for (int g = 0; g < numRoutes; g++) groupType[g] = routeType[groupRoute[g]];
+
+		return new RouteTable(numContacts, numGroups, typeStart, typeGroup, tau, groupStart, groupType, groupRoute);
+	}
+
+	/**
+	 * Builds the route table from the rows of a routes file.
+	 *
+	 * @param table			The rows read by {@link InputSrvTime#readRoutes}
+	 * @param numContacts	Number of contact types K
+	 * @param numGroups		Number of agent groups I
+	 * @return				The route table
+	 */
+	public static RouteTable build(DatFileReader.Table table, int numContacts, int numGroups) {
+		return build(numContacts, numGroups, table.index[0], table.index[1], table.value, table.numRows);
+	}
+
+	/**
+	 * Sorts {@code idx[from, to)} by increasing {@code key[idx]}, ties broken by increasing {@code tie[idx]} (stable merge sort).
+	 */
+	private static void sortByTau(int[] idx, int[] tmp, int from, int to, double[] key, int[] tie) {
+		if (to - from < 2) return;
+		if (to - from <= 16) {
+			for (int a = from + 1; a < to; a++) {
+				final int v = idx[a];
+				int b = a - 1;
+				while (b >= from && less(v, idx[b], key, tie)) {
+					idx[b + 1] = idx[b];
+					b--;
+				}
+				idx[b + 1] = v;
+			}
+			return;
+		}
+		final int mid = (from + to) >>> 1;
+		sortByTau(idx, tmp, from, mid, key, tie);
+		sortByTau(idx, tmp, mid, to, key, tie);
+		System.arraycopy(idx, from, tmp, from, to - from);
+		int a = from, b = mid, o = from;
+		while (a < mid && b < to) idx[o++] = less(tmp[b], tmp[a], key, tie) ? tmp[b++] : tmp[a++];
+		while (a < mid) idx[o++] = tmp[a++];
+		while (b < to) idx[o++] = tmp[b++];
+	}
+
+	private static boolean less(int u, int v, double[] key, int[] tie) {
+		return key[u] < key[v] || (key[u] == key[v] && tie[u] < tie[v]);
+	}
+
+	/**
+	 * Returns the route of the pair (k, i).
+	 *
+	 * @param	k		contact type {@code k}
+	 * @param	i		agent group {@code i}
+	 * @return	int		The route index, or -1 if group {@code i} cannot serve type {@code k}
+	 */
+	public int route(int k, int i) {
+		for (int r = typeStart[k]; r < typeStart[k + 1]; r++) {
+			if (typeGroup[r] == i) return r;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the type-to-group priority list of every type as a nested array (for display and compatibility).
+	 */
+	public int[][] typeToGroup() {
+		int[][] priority = new int[numContacts][];
+		for (int k = 0; k < numContacts; k++) priority[k] = Arrays.copyOfRange(typeGroup, typeStart[k], typeStart[k + 1]);
+		return priority;
+	}
+
+	/**
+	 * Returns the group-to-type priority list of every group as a nested array (for display and compatibility).
+	 */
+	public int[][] groupToType() {
+		int[][] priority = new int[numGroups][];
+		for (int i = 0; i < numGroups; i++) priority[i] = Arrays.copyOfRange(groupType, groupStart[i], groupStart[i + 1]);
+		return priority;
+	}
+
+	//getters
+	public int getNumContacts() {
+		return numContacts;
+	}
+
+	public int getNumGroups() {
+		return numGroups;
+	}
+
+	public int getNumRoutes() {
+		return tau.length;
+	}
+
+	public int[] getTypeStart() {
+		return typeStart;
+	}
+
+	public int[] getTypeGroup() {
+		return typeGroup;
+	}
+
+	public double[] getTau() {
+		return tau;
+	}
+
+	public int[] getGroupStart() {
+		return groupStart;
+	}
+
+	public int[] getGroupType() {
+		return groupType;
+	}
+
+	public int[] getGroupRoute() {
+		return groupRoute;
+	}
+}
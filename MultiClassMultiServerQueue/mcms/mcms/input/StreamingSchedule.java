@@ -0,0 +1,125 @@
+package mcms.input;
+
+import java.util.Arrays;
+
+/**
+ * <h1> Staffing and Demand Streamed from Per-Period Files </h1>
+ *  <p>
+ *  A {@link PeriodSchedule} read from two files as the simulation advances: an agents file with rows {@code p i num_agents}
+ *  and a demands file with rows {@code p k arrival_rate} (see {@code resources/test/input/GUIDE.txt}).
+ *  A row sets the value from main period {@code p} (1..P) on, until a later row changes it, so only the changes are listed;
+ *  a group or type without a row yet has no agent or no arrival. The rows are sorted by period.
+ * 	</p>
+ *  <p>
+ *  Each reader streams the files a block at a time, and starts over at period 0 of every replication (the operating system
+ *  caches the files between replications). Memory does not depend on the number of periods.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class StreamingSchedule implements PeriodSchedule {
+	private final String agentsFile;
+	private final String demandsFile;
+	private final int numContacts;
+	private final int numGroups;
+	private final int numPeriods;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param agentsFile	Path and name of the per-period agents file
+	 * @param demandsFile	Path and name of the per-period demands file
+	 * @param numContacts	Number of contact types
+	 * @param numGroups		Number of agent groups
+	 * @param numPeriods	Number of main periods
+	 * @throws InputFormatException	If a file cannot be opened
+	 */
+	public StreamingSchedule(String agentsFile, String demandsFile, int numContacts, int numGroups, int numPeriods) {
+		this.agentsFile = agentsFile;
+		this.demandsFile = demandsFile;
+		this.numContacts = numContacts;
+		this.numGroups = numGroups;
+		this.numPeriods = numPeriods;
+		for (Changes check : new Changes[] {new Changes(agentsFile, numGroups, true), new Changes(demandsFile, numContacts, false)}) {
+			check.restart(); // Fails now, not in the first replication, if a file cannot be opened
+			check.close();
+		}
+	}
+
+	public Reader newReader() {
+		return new Reader() {
+			private final Changes agents = new Changes(agentsFile, numGroups, true);
+			private final Changes demands = new Changes(demandsFile, numContacts, false);
+
+			public void read(int period, int[] a, double[] d) {
+				if (period == 0) {
+					agents.restart();
+					demands.restart();
+					Arrays.fill(a, 0);
+					Arrays.fill(d, 0);
+				}
+				else if (period <= numPeriods) {
+					agents.apply(period, a, null);
+					demands.apply(period, null, d);
+				}
+				else {
+					Arrays.fill(d, 0); // Wrap-up: the agents of the last period stay
+					agents.close();
+					demands.close();
+				}
+			}
+		};
+	}
+
+	public int getNumPeriods() {
+		return numPeriods;
+	}
+
+	/**
+	 * The rows of one file, read in period order.
+	 */
+	private final class Changes {
+		private final String file;
+		private final int numIndex;
+		private final boolean integralValue;
+		private DatFileReader.RowStream rows;
+		private boolean pending; // True if the current row of the stream is not applied yet
+		private int lastPeriod;
+
+		Changes(String file, int numIndex, boolean integralValue) {
+			this.file = file;
+			this.numIndex = numIndex;
+			this.integralValue = integralValue;
+		}
+
+		void restart() {
+			close();
+			rows = DatFileReader.open(file, new int[] {numPeriods + 1, numIndex}, integralValue);
+			pending = rows.next();
+			lastPeriod = 1;
+		}
+
+		/**
+		 * Applies the rows of the periods up to {@code period}.
+		 */
+		void apply(int period, int[] intValues, double[] values) {
+			while (pending && rows.index(0) <= period) {
+				final int p = rows.index(0);
+				if (p < lastPeriod) throw new InputFormatException(file, rows.line(), "period " + p + (p < 1 ? " is not a main period" : " after period " + lastPeriod + ": the rows must be sorted by period"));
+				lastPeriod = p;
+				if (intValues != null) intValues[rows.index(1)] = (int) rows.value();
+				else values[rows.index(1)] = rows.value();
+				pending = rows.next();
+			}
+			if (!pending) close();
+		}
+
+		void close() {
+			if (rows != null) rows.close();
+			rows = null;
+			pending = false;
+		}
+	}
+}
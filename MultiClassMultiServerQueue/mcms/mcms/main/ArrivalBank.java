@@ -0,0 +1,177 @@
+package mcms.main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <h1> Pre-Generated Arrivals of All Replications </h1>
+ *  <p>
+ *  The arrivals of replications 0..n-1 of a demand, generated once, in bulk, and replayed by any number of KERNEL models
+ *  with the same demand (see {@link SimRunner#setArrivalBank}), e.g., every staffing of a {@link ScenarioSweep} or of a
+ *  {@link StaffingOptimizer}. The arrivals are those the models would draw themselves from the same package seed
+ *  (see {@link ArrivalGenerator}), so replaying them gives identical results without drawing them again for every model.
+ * 	</p>
+ *  <p>
+ *  The arrivals are held in memory, one {@link ArrivalBuffer} per replication, or spilled to a file when they do not fit
+ *  (12 bytes per arrival). A replay then maps the columns of the replication and copies them into the buffer of the replaying model.
+ *  File format (little-endian): a header (magic number, version, K, number of replications), then each replication:
+ *  its number of arrivals n, a padding int, {@code time[n]} (doubles) and {@code type[n]} (ints), padded to a multiple of 8 bytes.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public final class ArrivalBank implements Closeable {
+	private static final long MAGIC = 0x4D434D5341525256L; // "MCMSARRV"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8 + 4 * 3;
+
+	private final int numContacts;
+	private final int numReps;
+	private final boolean antithetic;
+	private final ArrivalBuffer[] buffers; // [rep] arrivals in memory; null if spilled
+	private final String file; // Spill file; null if in memory
+	private final FileChannel channel;
+	private final long[] repStart; // Offset of each replication in the spill file
+	private final int[] repSize; // Number of arrivals of each replication
+	private long numArrivals;
+
+	/**
+	 * Generates the arrivals of replications 0..numReps-1 of a model.
+	 *
+	 * @param model		A KERNEL model with the demand of the replaying models, built from the same package seed; its staffing is not used
+	 * @param numReps	Number of replications
+	 * @param file		Path and name of the spill file (created or truncated); null: keep the arrivals in memory
+	 */
+	public ArrivalBank(SimRunner model, int numReps, String file) {
+		this.numContacts = model.getNumContacts();
+		this.numReps = numReps;
+		this.antithetic = model.isAntithetic();
+		this.file = file;
+		this.repSize = new int[numReps];
+		ArrivalGenerator generator = model.newArrivalGenerator();
+		if (file == null) {
+			buffers = new ArrivalBuffer[numReps];
+			channel = null;
+			repStart = null;
+			for (int r = 0; r < numReps; r++) {
+				buffers[r] = new ArrivalBuffer();
+				generator.generate(r, model.substreamOf(r), antithetic && r % 2 == 1, buffers[r]);
+				repSize[r] = buffers[r].size;
+				numArrivals += repSize[r];
+			}
+			return;
+		}
+		buffers = null;
+		repStart = new long[numReps];
+		try {
+			channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putLong(MAGIC).putInt(VERSION).putInt(numContacts).putInt(numReps).flip();
+			long position = write(header, 0);
+			ArrivalBuffer arrivals = new ArrivalBuffer();
+			ByteBuffer block = ByteBuffer.allocate(0);
+			for (int r = 0; r < numReps; r++) {
+				generator.generate(r, model.substreamOf(r), antithetic && r % 2 == 1, arrivals);
+				final int n = arrivals.size;
+				final int size = (int) repBytes(n);
+				if (block.capacity() < size) block = ByteBuffer.allocate(Math.max(size, 2 * block.capacity())).order(ByteOrder.LITTLE_ENDIAN);
+				block.clear();
+				block.putInt(n).putInt(0);
+				block.asDoubleBuffer().put(arrivals.time, 0, n);
+				block.position(8 + 8 * n);
+				block.asIntBuffer().put(arrivals.type, 0, n);
+				block.position(0).limit(size);
+				repStart[r] = position;
+				repSize[r] = n;
+				numArrivals += n;
+				position = write(block, position);
+			}
+			channel.force(false);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write the arrivals to " + file, e);
+		}
+	}
+
+	private long write(ByteBuffer block, long position) throws IOException {
+		while (block.hasRemaining()) position += channel.write(block, position);
+		return position;
+	}
+
+	private static long repBytes(int n) {
+		return (8 + 12L * n + 7) & ~7L;
+	}
+
+	/**
+	 * Returns the arrivals of replication {@code rep}: the buffer held in memory, which the caller must not modify,
+	 * or {@code scratch} filled from the spill file. Thread-safe.
+	 *
+	 * @param rep		Replication number
+	 * @param scratch	Buffer of the replaying model, filled if the arrivals are spilled
+	 */
+	ArrivalBuffer replication(int rep, ArrivalBuffer scratch) {
+		if (rep < 0 || rep >= numReps) throw new IllegalArgumentException("The arrival bank holds replications 0 to " + (numReps - 1) + ", not " + rep);
+		if (buffers != null) return buffers[rep];
+		final int n = repSize[rep];
+		try {
+			MappedByteBuffer columns = channel.map(FileChannel.MapMode.READ_ONLY, repStart[rep], repBytes(n));
+			columns.order(ByteOrder.LITTLE_ENDIAN).position(8);
+			scratch.clear(rep);
+			scratch.reserve(n);
+			columns.asDoubleBuffer().get(scratch.time, 0, n);
+			columns.position(8 + 8 * n);
+			columns.asIntBuffer().get(scratch.type, 0, n);
+			scratch.size = n;
+			return scratch;
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read replication " + rep + " from " + file, e);
+		}
+	}
+
+	/**
+	 * Closes and deletes the spill file, if any.
+	 */
+	public void close() {
+		if (channel == null) return;
+		try {
+			channel.close();
+			Path path = Paths.get(file);
+			Files.deleteIfExists(path);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot delete the arrivals file " + file, e);
+		}
+	}
+
+	//getters
+	public int getNumContacts() {
+		return numContacts;
+	}
+
+	public int getNumReps() {
+		return numReps;
+	}
+
+	public boolean isAntithetic() {
+		return antithetic;
+	}
+
+	public boolean isSpilled() {
+		return file != null;
+	}
+
+	public long getNumArrivals() {
+		return numArrivals;
+	}
+}
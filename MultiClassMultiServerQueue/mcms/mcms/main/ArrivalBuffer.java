@@ -0,0 +1,67 @@
+package mcms.main;
+
+import java.util.Arrays;
+
+/**
+ * <h1> Arrivals of One Replication </h1>
+ *  <p>
+ *  The arrival times and contact types of one replication, in time order, in two primitive arrays.
+ *  The arrivals are generated once (see {@link ArrivalGenerator}) and replayed by any number of KERNEL models,
+ *  e.g., one per routing policy (see {@link PolicyEvaluator}) or one per staffing (see {@link ArrivalBank});
+ *  replaying models only read the buffer.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public final class ArrivalBuffer {
+	double[] time = new double[1024]; // Arrival times, increasing
+	int[] type = new int[1024]; // Contact type of each arrival
+	int size;
+	private int rep = -1; // Replication of the arrivals
+
+	/**
+	 * Removes all arrivals, before the arrivals of replication {@code rep} are added.
+	 */
+	void clear(int rep) {
+		this.rep = rep;
+		size = 0;
+	}
+
+	/**
+	 * Makes room for {@code n} arrivals.
+	 */
+	void reserve(int n) {
+		if (n > time.length) {
+			time = Arrays.copyOf(time, n);
+			type = Arrays.copyOf(type, n);
+		}
+	}
+
+	void add(double t, int k) {
+		if (size == time.length) {
+			time = Arrays.copyOf(time, 2 * size);
+			type = Arrays.copyOf(type, 2 * size);
+		}
+		time[size] = t;
+		type[size++] = k;
+	}
+
+	//getters
+	public int getReplication() {
+		return rep;
+	}
+
+	public int getNumArrivals() {
+		return size;
+	}
+
+	public double getTime(int j) {
+		return time[j];
+	}
+
+	public int getType(int j) {
+		return type[j];
+	}
+}
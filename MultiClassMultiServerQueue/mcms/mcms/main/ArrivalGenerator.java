@@ -0,0 +1,124 @@
+package mcms.main;
+
+import mcms.input.PeriodSchedule;
+import umontreal.iro.lecuyer.randvar.ExponentialGen;
+
+/**
+ * <h1> Generator of the Arrivals of a Replication </h1>
+ *  <p>
+ *  Generates the piecewise-constant Poisson arrivals of every contact type into an {@link ArrivalBuffer}, with the same random numbers
+ *  and in the same order as the KERNEL engine ({@link FSFKernel}): each type draws its interarrival times from its own stream,
+ *  and the pending arrival of every type is drawn again at each period change. A KERNEL model replaying the buffer therefore gives
+ *  the same results as a model drawing its arrivals itself. The types are merged in time order with a binary heap.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+class ArrivalGenerator {
+	private final int numContacts;
+	private final int numPeriods;
+	private final double periodDuration;
+	private final double startTime;
+	private final PeriodSchedule.Reader schedule;
+	private final SimRunner.Stream[] arrivStream; // Own streams, positioned at the substream of each replication
+	private final int[] agents; // Staffing read with the rates, unused
+	private final double[] rate; // [type] arrival rate in the current period
+	private final double[] next; // [type] time of the pending arrival
+	private final int[] heap; // Types with a pending arrival in the current period, by time
+	private int heapSize;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numContacts		Number of contact types
+	 * @param numGroups			Number of agent groups
+	 * @param schedule			Reader of the arrival rates of each period
+	 * @param numPeriods		Number of main periods
+	 * @param periodDuration	Length of each period
+	 * @param startTime			Starting time of the first main period
+	 * @param arrivStream		Random streams of the arrival processes, one per contact type, used by this generator only
+	 */
+	ArrivalGenerator(int numContacts, int numGroups, PeriodSchedule.Reader schedule, int numPeriods, double periodDuration, double startTime, SimRunner.Stream[] arrivStream) {
+		this.numContacts = numContacts;
+		this.numPeriods = numPeriods;
+		this.periodDuration = periodDuration;
+		this.startTime = startTime;
+		this.schedule = schedule;
+		this.arrivStream = arrivStream;
+		this.agents = new int[numGroups];
+		this.rate = new double[numContacts];
+		this.next = new double[numContacts];
+		this.heap = new int[numContacts];
+	}
+
+	/**
+	 * Generates the arrivals of a replication.
+	 *
+	 * @param rep			Replication number
+	 * @param substream		Substream of the replication in every stream
+	 * @param antithetic	True: antithetic uniforms 1-u
+	 * @param buffer		Receives the arrivals
+	 */
+	void generate(int rep, int substream, boolean antithetic, ArrivalBuffer buffer) {
+		for (SimRunner.Stream s : arrivStream) {
+			s.toSubstream(substream);
+			s.setAntithetic(antithetic);
+		}
+		buffer.clear(rep);
+		schedule.read(0, agents, rate);
+		double now = 0;
+		int period = startTime <= 0 ? 1 : 0; // The preliminary period is empty
+		while (period <= numPeriods) {
+			if (period > 0) schedule.read(period, agents, rate);
+			final double end = startTime + period * periodDuration;
+
+			// The pending arrivals are drawn again at each period change
+			heapSize = 0;
+			for (int k = 0; k < numContacts; k++) {
+				if (rate[k] > 0) {
+					next[k] = now + ExponentialGen.nextDouble(arrivStream[k], rate[k]);
+					if (next[k] < end) push(k);
+				}
+			}
+			while (heapSize > 0) {
+				final int k = heap[0];
+				buffer.add(next[k], k);
+				next[k] += ExponentialGen.nextDouble(arrivStream[k], rate[k]);
+				if (next[k] < end) siftDown(k);
+				else if (--heapSize > 0) siftDown(heap[heapSize]);
+			}
+			now = end;
+			period++;
+		}
+		schedule.read(numPeriods + 1, agents, rate); // Wrap-up: no arrival
+	}
+
+	private void push(int k) {
+		int c = heapSize++;
+		while (c > 0) {
+			final int p = (c - 1) >>> 1;
+			if (next[heap[p]] <= next[k]) break;
+			heap[c] = heap[p];
+			c = p;
+		}
+		heap[c] = k;
+	}
+
+	/**
+	 * Places type {@code k} at the root and sifts it down.
+	 */
+	private void siftDown(int k) {
+		final double t = next[k];
+		int p = 0;
+		int c;
+		while ((c = 2 * p + 1) < heapSize) {
+			if (c + 1 < heapSize && next[heap[c + 1]] < next[heap[c]]) c++;
+			if (t <= next[heap[c]]) break;
+			heap[p] = heap[c];
+			p = c;
+		}
+		heap[p] = k;
+	}
+}
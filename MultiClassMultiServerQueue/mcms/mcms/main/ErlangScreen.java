@@ -0,0 +1,718 @@
+package mcms.main;
+
+import java.util.Arrays;
+import java.util.Random;
+import mcms.input.PeriodSchedule;
+import mcms.input.RouteTable;
+
+/**
+ * <h1> Analytic Screening of EW and SL </h1>
+ *  <p>
+ *  Approximates EW and SL of the FSF system in microseconds, to prune or rank scenarios before simulating them
+ *  (see {@link ModelBuilder#screen} and {@link ScenarioSweep#setPruning}). Each main period is taken in steady state with its own
+ *  staffing and demand, and the periods are weighted by their arrivals. In a period:
+ *  <ol>
+ *  <li> <b> Fluid split: </b> the routes are taken from the fastest to the slowest, as FSF pairs contacts and agents, and each one
+ *  carries as much of the remaining demand of its type as the remaining agents of its group can serve. If demand is left over, or
+ *  a pool (below) is saturated, the demand of the components concerned (the types and the groups linked by routes) is split to
+ *  minimize the highest utilization of their groups instead: an LP with sparse rows, built only then and solved by the simplex method,
+ *  or approximated to about 2% by a max concurrent flow algorithm if the components have more than {@value #MAX_EXACT_ROWS} types and groups.
+ *  If that utilization is not below 1, no split fits in the agents and the period is unstable, with infinite EW and SL 0. </li>
+ *  <li> <b> Pools: </b> the groups and the types linked by routes that carry demand form pools. A pool is taken as one M/M/c queue with
+ *  the agents of its groups, the load of its routes and their mean service time: a contact waits with the Erlang-C probability,
+ *  for an exponential time with rate {@code (c - a) / tau}. </li>
+ *  </ol>
+ *  A group that serves only its own types is its own pool, and its estimate is the exact M/M/c one. The estimates are rougher when
+ *  most of the demand overflows between groups, and FSF can be unstable although a split fits in the agents (the simulated EW then
+ *  grows with the horizon). {@link #main} checks the estimates against the KERNEL engine on generated instances: on 20 instances at
+ *  60% to 98% utilization, the mean absolute errors are about 0.05 for EW (in mean service times) and 0.02 for SL.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public final class ErlangScreen {
+	/**
+	 * Approximate EW and SL.
+	 */
+	public static final class Estimate {
+		private final double ew;
+		private final double sl;
+		private final double arrivals;
+
+		Estimate(double ew, double sl, double arrivals) {
+			this.ew = ew;
+			this.sl = sl;
+			this.arrivals = arrivals;
+		}
+
+		//getters
+		/**
+		 * Returns the expected waiting time; infinite if the groups cannot carry the load.
+		 */
+		public double getEW() {
+			return ew;
+		}
+
+		/**
+		 * Returns the fraction of the contacts that wait at most the AWT; 0 if the groups cannot carry the load.
+		 */
+		public double getSL() {
+			return sl;
+		}
+
+		/**
+		 * Returns true if the groups can carry the load.
+		 */
+		public boolean isStable() {
+			return ew < Double.POSITIVE_INFINITY;
+		}
+
+		/**
+		 * Returns the expected number of arrivals that the estimate covers: the arrival rate of a period, or the arrivals of a schedule.
+		 */
+		public double getArrivals() {
+			return arrivals;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("EW %.6f, SL %.6f%s", ew, sl, isStable() ? "" : " (unstable)");
+		}
+	}
+
+	private static final int MAX_EXACT_ROWS = 256; // Larger failed components: approximate split (LP rows: types and groups)
+	private static final double STEP = 0.05; // Growth of the lengths in the approximate split
+	private static final double TOLERANCE = 0.02; // Relative gap between the bounds that stops the approximate split
+	private static final int MAX_ROUNDS = 20000; // Rounds of the approximate split
+
+	private final int numContacts;
+	private final int numGroups;
+	private final int[] typeStart;
+	private final int[] typeGroup;
+	private final double[] tau;
+	private final int[] routeType;
+	private final int[] byTau; // Routes from the fastest to the slowest
+	private final int[] component; // [type, K + group] component of the route graph: its root type or group
+
+	// Work arrays of a period
+	private final double[] remaining; // [type] demand not carried yet
+	private final double[] capacity; // [group] agents not used yet
+	private final double[] flow; // [route] carried demand
+	private final int[] parent; // Union-find over the types (0..K-1) and the groups (K..K+I-1)
+	private final double[] poolAgents; // [pool root] agents
+	private final double[] poolLoad; // [pool root] load in agents
+	private final double[] poolRate; // [pool root] arrival rate
+	private final boolean[] failed; // [component root] the fluid split does not fit in the component
+	private final int[] local; // [type, K + group] row of the LP; -1 if not in the LP
+	private final double[] length; // [group] length of the approximate split
+	private final double[] load; // [group] load of the approximate split
+
+	// Simplex tableau of the components where the fluid split does not fit, built when needed, with sparse rows:
+	// rows [type] and [K' + group]; columns [route], 1 - utilization, [R' + 1 + group] slacks, [R' + 1 + I' + type] artificials
+	private Row[] rows = new Row[0];
+	private Row merged = new Row(); // Scratch row of a pivot
+	private double[] rhs = new double[0]; // [row] right-hand side
+	private double[] cost = new double[0]; // Reduced costs of the columns; last: minus the objective
+	private int[] basis = new int[0]; // [row] basic column
+	private int[] lpRoute = new int[0]; // [column] route of a route column
+	private int numRows;
+	private int objective; // Column of the objective in the reduced costs
+	private int maxExactRows = MAX_EXACT_ROWS;
+
+	/**
+	 * Constructor: sorts the routes by their service time and finds the components of the route graph.
+	 *
+	 * @param routes	Routes of the instance; an estimator is not thread-safe (see {@link #ErlangScreen(ErlangScreen)})
+	 */
+	public ErlangScreen(RouteTable routes) {
+		this(routes.getNumContacts(), routes.getNumGroups(), routes.getTypeStart(), routes.getTypeGroup(), routes.getTau(), PriorityDispatcher.routeTypes(routes));
+	}
+
+	/**
+	 * Constructor: another estimator of the same routes, e.g., for another thread, that shares the sorted routes and the components.
+	 *
+	 * @param shared	Estimator of the routes
+	 */
+	public ErlangScreen(ErlangScreen shared) {
+		this(shared.numContacts, shared.numGroups, shared.typeStart, shared.typeGroup, shared.tau, shared.routeType, shared.byTau, shared.component);
+	}
+
+	private ErlangScreen(int numContacts, int numGroups, int[] typeStart, int[] typeGroup, double[] tau, int[] routeType) {
+		this(numContacts, numGroups, typeStart, typeGroup, tau, routeType, sortByTau(tau), components(numContacts, numGroups, typeGroup, routeType));
+	}
+
+	private ErlangScreen(int numContacts, int numGroups, int[] typeStart, int[] typeGroup, double[] tau, int[] routeType, int[] byTau, int[] component) {
+		this.numContacts = numContacts;
+		this.numGroups = numGroups;
+		this.typeStart = typeStart;
+		this.typeGroup = typeGroup;
+		this.tau = tau;
+		this.routeType = routeType;
+		this.byTau = byTau;
+		this.component = component;
+		this.remaining = new double[numContacts];
+		this.capacity = new double[numGroups];
+		this.flow = new double[tau.length];
+		this.parent = new int[numContacts + numGroups];
+		this.poolAgents = new double[numContacts + numGroups];
+		this.poolLoad = new double[numContacts + numGroups];
+		this.poolRate = new double[numContacts + numGroups];
+		this.failed = new boolean[numContacts + numGroups];
+		this.local = new int[numContacts + numGroups];
+		this.length = new double[numGroups];
+		this.load = new double[numGroups];
+	}
+
+	/**
+	 * Returns the routes from the fastest to the slowest; ties keep the route order. A counting sort on the ranks of the distinct
+	 * service times, without boxing.
+	 */
+	private static int[] sortByTau(double[] tau) {
+		double[] distinct = tau.clone();
+		Arrays.sort(distinct);
+		int numDistinct = 0;
+		for (int r = 0; r < distinct.length; r++) {
+			if (numDistinct == 0 || distinct[r] != distinct[numDistinct - 1]) distinct[numDistinct++] = distinct[r];
+		}
+		int[] rank = new int[tau.length];
+		int[] start = new int[numDistinct + 1];
+		for (int r = 0; r < tau.length; r++) {
+			rank[r] = Arrays.binarySearch(distinct, 0, numDistinct, tau[r]);
+			start[rank[r] + 1]++;
+		}
+		for (int j = 0; j < numDistinct; j++) start[j + 1] += start[j];
+		int[] order = new int[tau.length];
+		for (int r = 0; r < tau.length; r++) order[start[rank[r]]++] = r;
+		return order;
+	}
+
+	/**
+	 * Returns the component of each type and group in the graph of all the routes, as its root.
+	 */
+	private static int[] components(int numContacts, int numGroups, int[] typeGroup, int[] routeType) {
+		int[] root = new int[numContacts + numGroups];
+		for (int j = 0; j < root.length; j++) root[j] = j;
+		for (int r = 0; r < routeType.length; r++) root[find(root, routeType[r])] = find(root, numContacts + typeGroup[r]);
+		for (int j = 0; j < root.length; j++) root[j] = find(root, j);
+		return root;
+	}
+
+	/**
+	 * Sets the largest failed components, in LP rows (types and groups), that are split by the simplex method; the larger ones are
+	 * approximated. Default: {@value #MAX_EXACT_ROWS}; the tests lower it to compare the two splits on small instances.
+	 */
+	void setMaxExactRows(int maxExactRows) {
+		this.maxExactRows = maxExactRows;
+	}
+
+	/**
+	 * Estimates EW and SL over the main periods of a schedule, weighting the periods by their arrivals.
+	 *
+	 * @param schedule			Staffing and demand of each period
+	 * @param periodDuration	Length of each period
+	 * @param awt				Acceptable waiting time
+	 */
+	public Estimate estimate(PeriodSchedule schedule, double periodDuration, double awt) {
+		final PeriodSchedule.Reader reader = schedule.newReader();
+		final int[] agents = new int[numGroups];
+		final double[] demands = new double[numContacts];
+		double arrivals = 0;
+		double waits = 0;
+		double good = 0;
+		reader.read(0, agents, demands);
+		for (int p = 1; p <= schedule.getNumPeriods(); p++) {
+			reader.read(p, agents, demands);
+			Estimate e = estimate(agents, demands, awt);
+			final double n = e.arrivals * periodDuration;
+			if (n == 0) continue;
+			arrivals += n;
+			waits += n * e.ew;
+			good += n * e.sl;
+		}
+		reader.read(schedule.getNumPeriods() + 1, agents, demands);
+		return arrivals == 0 ? new Estimate(0, 1, 0) : new Estimate(waits / arrivals, good / arrivals, arrivals);
+	}
+
+	/**
+	 * Estimates EW and SL of one period in steady state.
+	 *
+	 * @param agents	Number of agents of each group
+	 * @param demands	Arrival rate of each contact type
+	 * @param awt		Acceptable waiting time
+	 * @return			The estimate; {@link Estimate#getArrivals()} is the total arrival rate
+	 */
+	public Estimate estimate(int[] agents, double[] demands, double awt) {
+		return estimate(agents, demands, new double[] {awt})[0];
+	}
+
+	/**
+	 * Estimates EW and SL of one period in steady state for several acceptable waiting times; the demand is split once.
+	 *
+	 * @param agents	Number of agents of each group
+	 * @param demands	Arrival rate of each contact type
+	 * @param awts		Acceptable waiting times
+	 * @return			The estimate of each AWT
+	 */
+	public Estimate[] estimate(int[] agents, double[] demands, double[] awts) {
+		Estimate[] estimates = new Estimate[awts.length];
+		double total = 0;
+		for (int k = 0; k < numContacts; k++) total += demands[k];
+		if (total == 0) {
+			Arrays.fill(estimates, new Estimate(0, 1, 0));
+			return estimates;
+		}
+
+		// Fluid split in the FSF order; in the components where it does not fit, the most balanced split
+		Arrays.fill(failed, false);
+		boolean fits = greedySplit(agents, demands, total);
+		fits &= pool(agents, total);
+		if (!fits) {
+			if (balancedSplit(agents, demands, total) >= 1 - 1e-9) {
+				Arrays.fill(estimates, new Estimate(Double.POSITIVE_INFINITY, 0, total));
+				return estimates;
+			}
+			pool(agents, total);
+		}
+
+		// One M/M/c queue per pool
+		double ew = 0;
+		double[] late = new double[awts.length];
+		for (int pool = 0; pool < parent.length; pool++) {
+			if (poolRate[pool] == 0) continue;
+			final double c = poolAgents[pool];
+			final double a = poolLoad[pool];
+			final double wait = erlangC((int) c, a); // Probability of waiting
+			final double theta = (c - a) * poolRate[pool] / a; // Rate of the waiting time of a waiting contact
+			ew += poolRate[pool] * wait / theta;
+			for (int j = 0; j < awts.length; j++) late[j] += poolRate[pool] * wait * Math.exp(-theta * awts[j]);
+		}
+		for (int j = 0; j < awts.length; j++) estimates[j] = new Estimate(ew / total, 1 - late[j] / total, total);
+		return estimates;
+	}
+
+	/**
+	 * Splits the demands among the routes from the fastest to the slowest route, as FSF pairs contacts and agents:
+	 * each route carries as much of the remaining demand of its type as the remaining agents of its group can serve.
+	 * The split is left in {@link #flow}; the components of the types with demand left over are marked in {@link #failed}.
+	 *
+	 * @return	False if some demand is left over
+	 */
+	private boolean greedySplit(int[] agents, double[] demands, double total) {
+		System.arraycopy(demands, 0, remaining, 0, numContacts);
+		for (int i = 0; i < numGroups; i++) capacity[i] = agents[i];
+		for (int r : byTau) {
+			final int k = routeType[r];
+			final int i = typeGroup[r];
+			final double f = Math.min(remaining[k], capacity[i] / tau[r]);
+			flow[r] = f;
+			remaining[k] -= f;
+			capacity[i] = Math.max(0, capacity[i] - f * tau[r]);
+		}
+		boolean fits = true;
+		for (int k = 0; k < numContacts; k++) {
+			if (remaining[k] > 1e-9 * total) {
+				failed[component[k]] = true;
+				fits = false;
+			}
+		}
+		return fits;
+	}
+
+	/**
+	 * Forms the pools of the split in {@link #flow}: the types and the groups linked by the routes that carry demand.
+	 * The components of the saturated pools are marked in {@link #failed}.
+	 *
+	 * @return	False if the load of some pool is not below its agents
+	 */
+	private boolean pool(int[] agents, double total) {
+		for (int j = 0; j < parent.length; j++) parent[j] = j;
+		for (int r = 0; r < tau.length; r++) {
+			if (flow[r] > 1e-12 * total) parent[find(routeType[r])] = find(numContacts + typeGroup[r]);
+		}
+		Arrays.fill(poolAgents, 0);
+		Arrays.fill(poolLoad, 0);
+		Arrays.fill(poolRate, 0);
+		for (int i = 0; i < numGroups; i++) poolAgents[find(numContacts + i)] += agents[i];
+		for (int r = 0; r < tau.length; r++) {
+			final int pool = find(routeType[r]);
+			poolLoad[pool] += flow[r] * tau[r];
+			poolRate[pool] += flow[r];
+		}
+		boolean fits = true;
+		for (int pool = 0; pool < parent.length; pool++) {
+			if (poolRate[pool] > 0 && poolLoad[pool] >= poolAgents[pool]) {
+				failed[component[pool]] = true;
+				fits = false;
+			}
+		}
+		return fits;
+	}
+
+	/**
+	 * Splits the demands of the components marked in {@link #failed} among their routes with the lowest highest utilization of their
+	 * groups: minimizes {@code u} such that each type is carried, {@code sum x[r] = demands[k]}, and each group is busy at most
+	 * a fraction {@code u} of the time, {@code sum tau[r] x[r] <= u agents[i]}. Two-phase simplex on a tableau with sparse rows,
+	 * in {@code v = 1 - u >= 0}: phase 1 finds a split with {@code u <= 1}, if any, so that an unstable period needs no phase 2.
+	 * The split of these components is left in {@link #flow}, the other components keep theirs.
+	 *
+	 * @return	The lowest highest utilization: the groups can carry the demands iff it is below 1 (infinite if no split fits in the agents)
+	 */
+	private double balancedSplit(int[] agents, double[] demands, double total) {
+		// Rows and route columns of the marked components
+		int numTypes = 0;
+		int numLpGroups = 0;
+		for (int k = 0; k < numContacts; k++) local[k] = failed[component[k]] ? numTypes++ : -1;
+		for (int i = 0; i < numGroups; i++) local[numContacts + i] = failed[component[numContacts + i]] ? numTypes + numLpGroups++ : -1;
+		int numRoutes = 0;
+		for (int r = 0; r < tau.length; r++) {
+			if (!failed[component[routeType[r]]]) continue;
+			if (numRoutes == lpRoute.length) lpRoute = Arrays.copyOf(lpRoute, Math.max(16, 2 * numRoutes));
+			lpRoute[numRoutes++] = r;
+		}
+		if (numTypes + numLpGroups > maxExactRows) return approximateSplit(agents, demands);
+		final int v = numRoutes;
+		final int numColumns = numRoutes + 1 + numLpGroups; // Without the artificials
+		newTableau(numTypes + numLpGroups, numColumns + numTypes);
+
+		for (int c = 0; c < numRoutes; c++) { // In column order: the rows stay sorted
+			final int r = lpRoute[c];
+			rows[local[routeType[r]]].add(c, 1);
+			rows[local[numContacts + typeGroup[r]]].add(c, tau[r]);
+		}
+		for (int k = 0; k < numContacts; k++) {
+			final int row = local[k];
+			if (row < 0) continue;
+			rows[row].add(numColumns + row, 1);
+			rhs[row] = demands[k];
+			basis[row] = numColumns + row;
+		}
+		for (int i = 0; i < numGroups; i++) {
+			final int row = local[numContacts + i];
+			if (row < 0) continue;
+			if (agents[i] != 0) rows[row].add(v, agents[i]);
+			rows[row].add(v + 1 + row - numTypes, 1);
+			rhs[row] = agents[i];
+			basis[row] = v + 1 + row - numTypes;
+		}
+
+		// Phase 1: minimize the artificial demand, i.e., the demand that no route can carry with u <= 1
+		Arrays.fill(cost, 0, objective + 1, 0);
+		for (int row = 0; row < numTypes; row++) {
+			cost[numColumns + row] = 1;
+			subtractFromCost(1, row);
+		}
+		pivotToOptimum(objective);
+		if (-cost[objective] > 1e-9 * total) return Double.POSITIVE_INFINITY;
+		for (int row = 0; row < numTypes; row++) { // Artificials left in the basis are 0: replace them, if the row is not redundant
+			if (basis[row] < numColumns) continue;
+			final Row t = rows[row];
+			for (int e = 0; e < t.size && t.column[e] < numColumns; e++) {
+				if (Math.abs(t.value[e]) > 1e-12) {
+					pivot(row, t.column[e]);
+					break;
+				}
+			}
+		}
+
+		// Phase 2: minimize the utilization, i.e., maximize v, without the artificials
+		Arrays.fill(cost, 0, objective + 1, 0);
+		cost[v] = -1;
+		for (int row = 0; row < numRows; row++) {
+			final double c = cost[basis[row]];
+			if (c != 0) subtractFromCost(c, row);
+		}
+		pivotToOptimum(numColumns);
+
+		for (int c = 0; c < numRoutes; c++) flow[lpRoute[c]] = 0;
+		double utilization = 1;
+		for (int row = 0; row < numRows; row++) {
+			if (basis[row] < numRoutes) flow[lpRoute[basis[row]]] = Math.max(0, rhs[row]);
+			else if (basis[row] == v) utilization = 1 - rhs[row];
+		}
+		return utilization;
+	}
+
+	/**
+	 * Approximates the most balanced split of the components marked in {@link #failed}, when they are too large for the simplex
+	 * method (the tableau fills in): the max concurrent flow algorithm of Garg and Koenemann, with O(R) work per round. In each round,
+	 * every type sends its demand along its route of lowest {@code tau[r] length[group]}, at most the agents of the group at a time,
+	 * and the length of the group grows by the factor {@code 1 + STEP load / agents}. The average split of the rounds gives an upper
+	 * bound on the lowest highest utilization, and the lengths a lower bound: {@code sum demands[k] min tau[r] length[group] / sum
+	 * agents[i] length[i]}. The rounds stop when the bounds are within {@value #TOLERANCE} or the lower bound is not below 1.
+	 *
+	 * @return	The highest utilization of the split left in {@link #flow}; infinite if no split fits in the agents
+	 */
+	private double approximateSplit(int[] agents, double[] demands) {
+		for (int r = 0; r < tau.length; r++) {
+			if (failed[component[routeType[r]]]) flow[r] = 0;
+		}
+		for (int i = 0; i < numGroups; i++) length[i] = agents[i] > 0 ? 1.0 / agents[i] : Double.POSITIVE_INFINITY;
+		double lower = 0;
+		double upper = Double.POSITIVE_INFINITY;
+		int rounds = 0;
+		while (rounds < MAX_ROUNDS) {
+			// Each type sends its demand along its shortest routes
+			for (int k = 0; k < numContacts; k++) {
+				if (!failed[component[k]]) continue;
+				double rest = demands[k];
+				while (rest > 0) {
+					int best = -1;
+					for (int r = typeStart[k]; r < typeStart[k + 1]; r++) {
+						if (agents[typeGroup[r]] > 0 && (best < 0 || tau[r] * length[typeGroup[r]] < tau[best] * length[typeGroup[best]])) best = r;
+					}
+					if (best < 0) return Double.POSITIVE_INFINITY; // No agent can serve the type
+					final int i = typeGroup[best];
+					final double f = Math.min(rest, agents[i] / tau[best]);
+					flow[best] += f;
+					rest -= f;
+					length[i] *= 1 + STEP * f * tau[best] / agents[i];
+				}
+			}
+			rounds++;
+
+			// Bounds: the highest utilization of the average split, and the dual value of the lengths
+			double alpha = 0;
+			for (int k = 0; k < numContacts; k++) {
+				if (!failed[component[k]]) continue;
+				double shortest = Double.POSITIVE_INFINITY;
+				for (int r = typeStart[k]; r < typeStart[k + 1]; r++) shortest = Math.min(shortest, tau[r] * length[typeGroup[r]]);
+				alpha += demands[k] * shortest;
+			}
+			Arrays.fill(load, 0);
+			for (int r = 0; r < tau.length; r++) {
+				if (failed[component[routeType[r]]]) load[typeGroup[r]] += tau[r] * flow[r];
+			}
+			double d = 0;
+			upper = 0;
+			for (int i = 0; i < numGroups; i++) {
+				if (!failed[component[numContacts + i]] || agents[i] == 0) continue;
+				d += agents[i] * length[i];
+				upper = Math.max(upper, load[i] / (rounds * (double) agents[i]));
+			}
+			lower = Math.max(lower, alpha / d);
+			if (lower >= 1 - 1e-9) return Double.POSITIVE_INFINITY;
+			if (upper <= (1 + TOLERANCE) * lower) break;
+			if (d > 1e100) { // The bounds do not depend on the scale of the lengths
+				for (int i = 0; i < numGroups; i++) length[i] /= d;
+			}
+		}
+		for (int r = 0; r < tau.length; r++) {
+			if (failed[component[routeType[r]]]) flow[r] /= rounds;
+		}
+		return upper;
+	}
+
+	/**
+	 * Empties the tableau, with {@code numRows} rows and {@code objective} columns.
+	 */
+	private void newTableau(int numRows, int objective) {
+		if (rows.length < numRows) {
+			final int old = rows.length;
+			rows = Arrays.copyOf(rows, numRows);
+			for (int row = old; row < numRows; row++) rows[row] = new Row();
+			rhs = new double[numRows];
+			basis = new int[numRows];
+		}
+		for (int row = 0; row < numRows; row++) rows[row].size = 0;
+		Arrays.fill(rhs, 0, numRows, 0);
+		if (cost.length <= objective) cost = new double[objective + 1];
+		this.numRows = numRows;
+		this.objective = objective;
+	}
+
+	/**
+	 * Subtracts {@code f} times a row, with its right-hand side, from the reduced costs.
+	 */
+	private void subtractFromCost(double f, int row) {
+		final Row t = rows[row];
+		for (int e = 0; e < t.size; e++) cost[t.column[e]] -= f * t.value[e];
+		cost[objective] -= f * rhs[row];
+	}
+
+	/**
+	 * Pivots until no column before {@code numColumns} has a negative reduced cost, entering the column with the most negative one
+	 * and leaving the row with the smallest ratio. After 50 degenerate pivots in a row, enters the first such column instead
+	 * (Bland's rule: no cycling).
+	 */
+	private void pivotToOptimum(int numColumns) {
+		int degenerate = 0;
+		for (int iteration = 0; ; iteration++) {
+			if (iteration > 100 * (objective + 1)) throw new IllegalStateException("The split of the demands does not converge");
+			int enter = -1;
+			if (degenerate < 50) {
+				for (int j = 0; j < numColumns; j++) {
+					if (cost[j] < -1e-12 && (enter < 0 || cost[j] < cost[enter])) enter = j;
+				}
+			}
+			else {
+				for (int j = 0; j < numColumns && enter < 0; j++) {
+					if (cost[j] < -1e-12) enter = j;
+				}
+			}
+			if (enter < 0) return;
+			int leave = -1;
+			double ratio = Double.POSITIVE_INFINITY;
+			for (int row = 0; row < numRows; row++) {
+				final double a = rows[row].get(enter);
+				if (a <= 1e-12) continue;
+				final double t = rhs[row] / a;
+				if (t < ratio || (t == ratio && basis[row] < basis[leave])) {
+					ratio = t;
+					leave = row;
+				}
+			}
+			if (leave < 0) throw new IllegalStateException("Unbounded split of the demands"); // Cannot happen: every route is bounded by its demand
+			degenerate = ratio == 0 ? degenerate + 1 : 0;
+			pivot(leave, enter);
+		}
+	}
+
+	private void pivot(int row, int column) {
+		final Row p = rows[row];
+		final double scale = 1 / p.get(column);
+		for (int e = 0; e < p.size; e++) p.value[e] = p.column[e] == column ? 1 : p.value[e] * scale;
+		rhs[row] *= scale;
+		for (int other = 0; other < numRows; other++) {
+			if (other == row) continue;
+			final double f = rows[other].get(column);
+			if (f == 0) continue;
+			merged.subtract(rows[other], f, p, column);
+			final Row t = rows[other];
+			rows[other] = merged;
+			merged = t;
+			rhs[other] -= f * rhs[row];
+		}
+		final double f = cost[column];
+		if (f != 0) {
+			subtractFromCost(f, row);
+			cost[column] = 0;
+		}
+		basis[row] = column;
+	}
+
+	/**
+	 * Sparse row of the tableau: its non-zero entries by increasing column.
+	 */
+	private static final class Row {
+		int[] column = new int[4];
+		double[] value = new double[4];
+		int size;
+
+		void add(int j, double v) {
+			if (size == column.length) {
+				column = Arrays.copyOf(column, 2 * size);
+				value = Arrays.copyOf(value, 2 * size);
+			}
+			column[size] = j;
+			value[size++] = v;
+		}
+
+		double get(int j) {
+			final int e = Arrays.binarySearch(column, 0, size, j);
+			return e >= 0 ? value[e] : 0;
+		}
+
+		/**
+		 * Sets this row to {@code a - f p}, without the entry of column {@code zero}, which cancels.
+		 */
+		void subtract(Row a, double f, Row p, int zero) {
+			size = 0;
+			int x = 0;
+			int y = 0;
+			while (x < a.size || y < p.size) {
+				final int ja = x < a.size ? a.column[x] : Integer.MAX_VALUE;
+				final int jp = y < p.size ? p.column[y] : Integer.MAX_VALUE;
+				final int j = Math.min(ja, jp);
+				double v = 0;
+				if (ja == j) v += a.value[x++];
+				if (jp == j) v -= f * p.value[y++];
+				if (j != zero && v != 0) add(j, v);
+			}
+		}
+	}
+
+	private int find(int j) {
+		return find(parent, j);
+	}
+
+	private static int find(int[] parent, int j) {
+		while (parent[j] != j) j = parent[j] = parent[parent[j]];
+		return j;
+	}
+
+	/**
+	 * Returns the Erlang-C probability of waiting with {@code c} agents and offered load {@code a < c}, from the Erlang-B recursion.
+	 */
+	static double erlangC(int c, double a) {
+		double b = 1;
+		for (int n = 1; n <= c; n++) b = a * b / (n + a * b);
+		return c * b / (c - a * (1 - b));
+	}
+
+	/**
+	 * Arguments: [numInstances=20] [numReps=10] [seed=1] <br>
+	 * Validates the estimates against the KERNEL engine on generated instances: 2 to 6 contact types and 2 to 5 groups,
+	 * each type served by its own group and by up to two others with slower service times, at utilizations from 0.6 to 0.98.
+	 * Prints both values per instance, and the mean absolute errors.
+	 */
+	public static void main(String[] args) {
+		final int numInstances = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		final int numReps = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		final Random random = new Random(args.length > 2 ? Long.parseLong(args[2]) : 1);
+		final int numPeriods = 4;
+		final double periodDuration = 500;
+		final double awt = 0.5;
+		double errEW = 0;
+		double errSL = 0;
+		System.out.println("instance \t K \t I \t util \t EW screen \t EW sim (+/- 95%) \t SL screen \t SL sim (+/- 95%) \t screen (us)");
+		for (int n = 0; n < numInstances; n++) {
+			final int numContacts = 2 + random.nextInt(5);
+			final int numGroups = Math.min(numContacts, 2 + random.nextInt(4));
+			final double utilization = 0.6 + 0.38 * random.nextDouble();
+
+			// Routes: type k to group k % I (fastest), and to up to two other groups
+			int[] contact = new int[3 * numContacts];
+			int[] group = new int[3 * numContacts];
+			double[] serviceTime = new double[3 * numContacts];
+			double[] ownLoad = new double[numGroups];
+			double[] demands = new double[numContacts];
+			int numRoutes = 0;
+			for (int k = 0; k < numContacts; k++) {
+				final double t = 0.5 + random.nextDouble();
+				demands[k] = 2 + 8 * random.nextDouble();
+				ownLoad[k % numGroups] += demands[k] * t;
+				contact[numRoutes] = k;
+				group[numRoutes] = k % numGroups;
+				serviceTime[numRoutes++] = t;
+				for (int extra = 1; extra <= 2 && extra < numGroups; extra++) {
+					if (random.nextBoolean()) continue;
+					contact[numRoutes] = k;
+					group[numRoutes] = (k + extra) % numGroups;
+					serviceTime[numRoutes++] = t * (1.2 + random.nextDouble());
+				}
+			}
+			int[] agents = new int[numGroups];
+			for (int i = 0; i < numGroups; i++) agents[i] = Math.max(1, (int) Math.ceil(ownLoad[i] / utilization));
+			RouteTable routes = RouteTable.build(numContacts, numGroups, contact, group, serviceTime, numRoutes);
+			PeriodSchedule schedule = PeriodSchedule.constant(agents, demands, numPeriods);
+
+			ErlangScreen screen = new ErlangScreen(routes);
+			screen.estimate(schedule, periodDuration, awt); // Warm-up of the JIT
+			long start = System.nanoTime();
+			Estimate e = screen.estimate(schedule, periodDuration, awt);
+			final double micros = (System.nanoTime() - start) / 1e3;
+
+			SimRunner model = new SimRunner(numContacts, numGroups, routes, schedule, numReps, numPeriods, periodDuration, numReps * numPeriods * periodDuration, 0, true, awt, false, SimRunner.Engine.KERNEL, 1, false, 1);
+			model.simulate(numReps, numPeriods);
+			final double ew = model.getRepEW().getMean();
+			final double sl = model.getRepSL().getMean();
+			errEW += Math.abs(e.getEW() - ew);
+			errSL += Math.abs(e.getSL() - sl);
+			System.out.printf("%d \t %d \t %d \t %.2f \t %.4f \t %.4f +/- %.4f \t %.4f \t %.4f +/- %.4f \t %.1f%n", n, numContacts, numGroups, utilization,
+					e.getEW(), ew, model.getRepEW().halfWidth(0.95), e.getSL(), sl, model.getRepSL().halfWidth(0.95), micros);
+		}
+		System.out.printf("Mean absolute error: EW %.4f, SL %.4f%n", errEW / numInstances, errSL / numInstances);
+	}
+}
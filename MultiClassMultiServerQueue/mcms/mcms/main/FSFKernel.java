@@ -0,0 +1,383 @@
+package mcms.main;
+
+import java.util.Arrays;
+import mcms.contactcenters.MCMSStatistics;
+import mcms.input.PeriodSchedule;
+import mcms.input.RouteTable;
+import umontreal.iro.lecuyer.randvar.ExponentialGen;
+import umontreal.iro.lecuyer.rng.RandomStream;
+
+/**
+ * <h2> Primitive-Array FSF Simulation Kernel </h2>
+ * <p>
+ * A second simulation engine for the same Multi-Class Multi-Server model and Fastest-Server-First policy as the
+ * ContactCenters engine built by {@link SimRunner}. Instead of contact, agent group, waiting queue and event objects,
+ * the kernel keeps its whole state in primitive arrays:
+ * <ul>
+ * <li> <b> Waiting queues: </b> one ring buffer of arrival times per contact type. </li>
+ * <li> <b> Agent groups: </b> the number of agents and of busy agents per group. </li>
+ * <li> <b> Events: </b> a binary heap of (time, event) pairs. An event is a period change, the next arrival of a type,
+ * or the end of a service, which points to a slot holding the served contact (type, group, arrival and queue times). </li>
+ * <li> <b> Routing: </b> a {@link RoutingPolicy.Dispatcher}, by default FSF with the bitset indexes of the FSF router ({@link PriorityIndex})
+ * over free groups and non-empty queues. </li>
+ * </ul>
+ * The kernel either draws its arrivals itself, or replays the arrivals of an {@link ArrivalBuffer} generated with the same random numbers.
+ * It collects the same statistics as {@link mcms.contactcenters.MCMSMeasures}, with the same period conventions:
+ * one preliminary period before {@code startTime}, P main periods and one wrap-up period, during which the queues are emptied.
+ * The kernel draws its random numbers in a different order than the ContactCenters engine, so the two engines give
+ * statistically equivalent, not identical, results.
+ * </p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-17
+ */
+class FSFKernel {
+	private static final int PERIOD_CHANGE = -1; // Event code of a period change; arrivals of type k are coded -2-k, services by their slot >= 0
+	private static final int NEXT_ARRIVAL = -2; // Event code of the next arrival of the buffer, when replaying
+
+	// Model
+	private final int numContacts;
+	private final int numGroups;
+	private final int numPeriods;
+	private final PeriodSchedule.Reader schedule; // Staffing and arrival rates, read period by period
+	private final double periodDuration;
+	private final double startTime;
+	private final boolean randomServiceTime;
+	private final double acceptableWaitTime;
+	private final int[] typeGroup;
+	private final double[] tau;
+	private final int[] routeType; // [route] contact type
+	private RoutingPolicy.Dispatcher dispatcher;
+	private final RandomStream[] arrivStream;
+	private final ServiceTimeGen serviceTimes;
+	private final MCMSStatistics stats;
+
+	// State
+	private double now;
+	private int period;
+	private final int[] capacity; // [group] number of agents in the current period
+	private final double[] rate; // [type] arrival rate in the current period
+	private final int[] busy; // [group] number of busy agents
+	private final double[] nextArrival; // [type] time of the pending arrival; stale heap entries have another time
+	private ArrivalBuffer arrivals; // Arrivals to replay; null: drawn from the arrival streams
+	private int nextReplayed; // Index of the next arrival to replay
+	private double[][] queue; // [type] ring buffer of arrival times
+	private final int[] queueHead;
+	private final int[] queueSize;
+	private double[] heapTime = new double[64];
+	private int[] heapEvent = new int[64];
+	private int heapSize;
+	private double[] slotArrival = new double[64]; // arrival time of the contact in service in each slot
+	private double[] slotQueueTime = new double[64];
+	private int[] slotType = new int[64];
+	private int[] slotGroup = new int[64];
+	private int[] freeSlots = new int[64]; // stack of unused slots
+	private int numFreeSlots;
+	private int numSlots;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numContacts			Number of contact types
+	 * @param numGroups				Number of agent groups
+	 * @param routes				Feasible (contact, group) pairs with their mean service times and priority lists
+	 * @param dispatcher			Routing decisions, for these routes
+	 * @param schedule				Reader of the number of agents in each group and the arrival rate of each contact type in each period
+	 * @param numPeriods			Number of main periods
+	 * @param periodDuration		Length of each period
+	 * @param startTime				Starting time of the first main period
+	 * @param randomServiceTime		True: exponential service times, False: deterministic service times
+	 * @param acceptableWaitTime	Acceptable queue waiting time
+	 * @param arrivStream			Random streams of the arrival processes, one per contact type
+	 * @param serviceTimes			Exponential service times of each route, drawn from one random stream per route
+	 * @param stats					Statistical counters updated by the kernel
+	 */
+	FSFKernel(int numContacts, int numGroups, RouteTable routes, RoutingPolicy.Dispatcher dispatcher, PeriodSchedule.Reader schedule, int numPeriods, double periodDuration, double startTime, boolean randomServiceTime, double acceptableWaitTime, RandomStream[] arrivStream, ServiceTimeGen serviceTimes, MCMSStatistics stats) {
+		this.numContacts = numContacts;
+		this.numGroups = numGroups;
+		this.schedule = schedule;
+		this.numPeriods = numPeriods;
+		this.periodDuration = periodDuration;
+		this.startTime = startTime;
+		this.randomServiceTime = randomServiceTime;
+		this.acceptableWaitTime = acceptableWaitTime;
+		this.typeGroup = routes.getTypeGroup();
+		this.tau = routes.getTau();
+		this.routeType = PriorityDispatcher.routeTypes(routes);
+		this.dispatcher = dispatcher;
+		this.arrivStream = arrivStream;
+		this.serviceTimes = serviceTimes;
+		this.stats = stats;
+		this.capacity = new int[numGroups];
+		this.rate = new double[numContacts];
+		this.busy = new int[numGroups];
+		this.nextArrival = new double[numContacts];
+		this.queue = new double[numContacts][16];
+		this.queueHead = new int[numContacts];
+		this.queueSize = new int[numContacts];
+	}
+
+	/**
+	 * Simulates one replication and adds its statistics to the counters (which the caller initializes).
+	 */
+	void simulateOneReplication() {
+		// Initialize the state: empty system, no agent before the first period change
+		now = 0;
+		period = 0;
+		heapSize = 0;
+		numSlots = numFreeSlots = 0;
+		schedule.read(0, capacity, rate);
+		Arrays.fill(busy, 0);
+		Arrays.fill(queueSize, 0);
+		Arrays.fill(queueHead, 0);
+		dispatcher.reset();
+		enterPeriod();
+		nextReplayed = 0;
+		if (arrivals != null && arrivals.size > 0) schedule(arrivals.time[0], NEXT_ARRIVAL);
+
+		// Event loop
+		while (heapSize > 0) {
+			now = heapTime[0];
+			final int ev = heapEvent[0];
+			removeFirst();
+			if (ev >= 0) {
+				endService(ev);
+			}
+			else if (ev == PERIOD_CHANGE) {
+				period++;
+				enterPeriod();
+			}
+			else if (arrivals != null) {
+				replayArrival();
+			}
+			else {
+				final int k = -2 - ev;
+				if (heapTimeIsStale(k)) continue;
+				arrival(k);
+			}
+			stats.numEvents++;
+			stats.time = now;
+			if ((stats.numEvents & MCMSStatistics.PUBLISH_MASK) == 0) stats.publishProgress();
+		}
+	}
+
+	private boolean heapTimeIsStale(int k) {
+		return now != nextArrival[k];
+	}
+
+	/**
+	 * Applies the staffing and the arrival rates of the current period, and schedules the next period change.
+	 */
+	private void enterPeriod() {
+		if (period == 0 && startTime <= 0) period = 1; // The preliminary period is empty
+		if (period <= numPeriods) schedule(startTime + period * periodDuration, PERIOD_CHANGE);
+		if (period > 0) schedule.read(period, capacity, rate);
+
+		// Arrival rates: the interarrival times are exponential, so the pending arrivals are simply redrawn
+		for (int k = 0; arrivals == null && k < numContacts; k++) {
+			if (rate[k] > 0) {
+				nextArrival[k] = now + ExponentialGen.nextDouble(arrivStream[k], rate[k]);
+				schedule(nextArrival[k], -2 - k);
+			}
+			else {
+				nextArrival[k] = Double.NaN;
+			}
+		}
+
+		// Staffing: busy agents above the new staffing level leave after their service
+		for (int i = 0; i < numGroups; i++) dispatcher.groupFree(i, busy[i] < capacity[i]);
+		for (int i = 0; i < numGroups; i++) {
+			while (busy[i] < capacity[i] && selectContact(i)) {}
+		}
+		stats.period = period;
+		stats.publishProgress();
+	}
+
+	/**
+	 * A contact of type {@code k} arrives, and the next arrival of the type is drawn.
+	 */
+	private void arrival(int k) {
+		admit(k);
+		nextArrival[k] = now + ExponentialGen.nextDouble(arrivStream[k], rate[k]);
+		schedule(nextArrival[k], -2 - k);
+	}
+
+	/**
+	 * The next arrival of the buffer arrives, and the one after it is scheduled.
+	 */
+	private void replayArrival() {
+		admit(arrivals.type[nextReplayed++]);
+		if (nextReplayed < arrivals.size) schedule(arrivals.time[nextReplayed], NEXT_ARRIVAL);
+	}
+
+	/**
+	 * A contact of type {@code k} arrives: it is served by the free group chosen by the dispatcher (FSF: the fastest one), or waits in queue {@code k}.
+	 */
+	private void admit(int k) {
+		if (period > 0) stats.numArrivedType[k]++; // Arrivals of the warm-up (preliminary period) are not counted
+		stats.numArrivals++;
+		final int r = dispatcher.routeForContact(k);
+		if (r >= 0) {
+			beginService(r, k, now);
+		}
+		else {
+			enqueue(k, now);
+		}
+	}
+
+	/**
+	 * An agent of group {@code slotGroup[slot]} finishes a service and takes the fastest waiting contact, if any.
+	 */
+	private void endService(int slot) {
+		// Statistics, as in MCMSMeasures.served
+		stats.numEnded++;
+		if (stats.trace != null) stats.trace.record(slotType[slot], slotGroup[slot], slotArrival[slot], slotQueueTime[slot], now - slotArrival[slot] - slotQueueTime[slot]);
+		if (stats.waitSeries != null) stats.waitSeries.record(now, slotQueueTime[slot]);
+		if (period >= 1 && period <= numPeriods) {
+			final double queueTime = slotQueueTime[slot];
+			final int k = slotType[slot];
+			stats.waitTime += queueTime;
+			stats.waitTimeType[k] += queueTime;
+			++stats.numServed;
+			++stats.numServedType[k];
+			final int arrivalPeriod = periodOf(slotArrival[slot]) - 1;
+			stats.recordWaitTime(k, arrivalPeriod, queueTime);
+			if (queueTime <= acceptableWaitTime) {
+				++stats.numGoodSL;
+				++stats.numGoodSLType[k];
+				if (arrivalPeriod >= 0) ++stats.numGoodSLKP[k][stats.statPeriod(arrivalPeriod)];
+			}
+		}
+		final int i = slotGroup[slot];
+		freeSlots[numFreeSlots++] = slot;
+		busy[i]--;
+		if (busy[i] < capacity[i] && !selectContact(i)) dispatcher.groupFree(i, true);
+	}
+
+	/**
+	 * Gives the waiting contact chosen by the dispatcher (FSF: the fastest one) to a free agent of group {@code i}.
+	 *
+	 * @return	True if a contact was found
+	 */
+	private boolean selectContact(int i) {
+		final int r = dispatcher.routeForAgent(i);
+		if (r < 0) return false;
+		final int k = routeType[r];
+		beginService(r, k, dequeue(k));
+		return true;
+	}
+
+	/**
+	 * Starts the service of a contact of type {@code k} on route {@code r}.
+	 */
+	private void beginService(int r, int k, double arrivalTime) {
+		final int i = typeGroup[r];
+		if (++busy[i] >= capacity[i]) dispatcher.groupFree(i, false);
+		final int slot = numFreeSlots > 0 ? freeSlots[--numFreeSlots] : newSlot();
+		slotArrival[slot] = arrivalTime;
+		slotQueueTime[slot] = now - arrivalTime;
+		slotType[slot] = k;
+		slotGroup[slot] = i;
+		final double serviceTime = randomServiceTime ? serviceTimes.next(r) : tau[r];
+		schedule(now + serviceTime, slot);
+	}
+
+	private int newSlot() {
+		if (numSlots == slotArrival.length) {
+			final int n = 2 * numSlots;
+			slotArrival = Arrays.copyOf(slotArrival, n);
+			slotQueueTime = Arrays.copyOf(slotQueueTime, n);
+			slotType = Arrays.copyOf(slotType, n);
+			slotGroup = Arrays.copyOf(slotGroup, n);
+			freeSlots = Arrays.copyOf(freeSlots, n);
+		}
+		return numSlots++;
+	}
+
+	private void enqueue(int k, double arrivalTime) {
+		double[] q = queue[k];
+		if (queueSize[k] == q.length) {
+			// Grow the ring buffer, unrolled from its head
+			final double[] grown = new double[2 * q.length];
+			final int head = queueHead[k];
+			System.arraycopy(q, head, grown, 0, q.length - head);
+			System.arraycopy(q, 0, grown, q.length - head, head);
+			queue[k] = q = grown;
+			queueHead[k] = 0;
+		}
+		q[(queueHead[k] + queueSize[k]) & (q.length - 1)] = arrivalTime;
+		dispatcher.queueLength(k, ++queueSize[k]);
+		if (queueSize[k] > stats.maxQueueLength[k]) stats.maxQueueLength[k] = queueSize[k];
+	}
+
+	private double dequeue(int k) {
+		final double[] q = queue[k];
+		final double arrivalTime = q[queueHead[k]];
+		queueHead[k] = (queueHead[k] + 1) & (q.length - 1);
+		dispatcher.queueLength(k, --queueSize[k]);
+		return arrivalTime;
+	}
+
+	/**
+	 * Returns the period of time {@code t}: 0 before {@code startTime}, then 1..P, then P+1 (wrap-up).
+	 */
+	private int periodOf(double t) {
+		if (t < startTime) return 0;
+		return (int) Math.min(numPeriods + 1, 1 + Math.floor((t - startTime) / periodDuration));
+	}
+
+	private void schedule(double time, int event) {
+		if (heapSize == heapTime.length) {
+			heapTime = Arrays.copyOf(heapTime, 2 * heapSize);
+			heapEvent = Arrays.copyOf(heapEvent, 2 * heapSize);
+		}
+		// Sift up
+		int c = heapSize++;
+		while (c > 0) {
+			final int p = (c - 1) >>> 1;
+			if (heapTime[p] <= time) break;
+			heapTime[c] = heapTime[p];
+			heapEvent[c] = heapEvent[p];
+			c = p;
+		}
+		heapTime[c] = time;
+		heapEvent[c] = event;
+	}
+
+	private void removeFirst() {
+		final double time = heapTime[--heapSize];
+		final int event = heapEvent[heapSize];
+		// Sift down
+		int p = 0;
+		int c;
+		while ((c = 2 * p + 1) < heapSize) {
+			if (c + 1 < heapSize && heapTime[c + 1] < heapTime[c]) c++;
+			if (time <= heapTime[c]) break;
+			heapTime[p] = heapTime[c];
+			heapEvent[p] = heapEvent[c];
+			p = c;
+		}
+		heapTime[p] = time;
+		heapEvent[p] = event;
+	}
+
+	/**
+	 * Sets the routing decisions.
+	 */
+	void setDispatcher(RoutingPolicy.Dispatcher dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * Replays the arrivals of a buffer in the next replications, instead of drawing them; null: draw them.
+	 */
+	void setArrivals(ArrivalBuffer arrivals) {
+		this.arrivals = arrivals;
+	}
+
+	//getters
+	long getNumEvents() {
+		return stats.numEvents;
+	}
+}
@@ -0,0 +1,374 @@
+package mcms.main;
+
+import java.util.Arrays;
+import mcms.contactcenters.MCMSStatistics;
+import mcms.input.PeriodSchedule;
+import mcms.input.RouteTable;
+import umontreal.iro.lecuyer.randvar.ExponentialGen;
+import umontreal.iro.lecuyer.rng.RandomStream;
+
+/**
+ * <h2> Aggregated-State CTMC Simulation of the FSF Policy </h2>
+ * <p>
+ * With Poisson arrivals and exponential service times, the FSF system is a continuous-time Markov chain whose state is
+ * the queue length of each contact type and the number of busy agents on each route (contact type k, agent group i).
+ * This engine simulates that chain directly. It keeps no contact and no end-of-service event per busy agent: the
+ * {@code b[r]} busy agents of route {@code r} complete services at the superposed rate {@code b[r] / tau[r]}.
+ * </p>
+ * <p>
+ * The rates of the K arrival processes and the R routes are kept in a Fenwick tree, so one step costs O(log(K + R)):
+ * the time to the next transition is exponential with the total rate, and the transition is drawn with probability
+ * proportional to its rate (no uniformization self-loops are needed since the exact total rate is known).
+ * Period changes interrupt the current holding time, which is valid because it is memoryless.
+ * </p>
+ * <p>
+ * Statistics: the total waiting time is the time-integral of the total queue length over the main periods (Little's law),
+ * and that of each type the integral of its queue length, accrued when the queue length changes and at each period change;
+ * the service level comes from tagged contacts. A tagged contact of type k remembers how many contacts are ahead of it
+ * in queue k; it begins service when that many contacts of type k have been dequeued, which gives its exact waiting time.
+ * Each arrival is tagged with probability {@code tagFraction}; the good-service counts are scaled by {@code 1/tagFraction}.
+ * The waiting-time histograms hold the tagged contacts only, which leaves the service levels and quantiles they give unbiased.
+ * Since the chain does not know when a given contact leaves, a contact is counted as served, and a tagged one as
+ * served within the AWT, when its service begins in a main period (the other engines count it when its service ends).
+ * </p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-17
+ */
+class FSFMarkovChain {
+	// Model
+	private final int numContacts;
+	private final int numGroups;
+	private final int numRoutes;
+	private final int numPeriods;
+	private final PeriodSchedule.Reader schedule; // Staffing and arrival rates, read period by period
+	private final double periodDuration;
+	private final double startTime;
+	private final double acceptableWaitTime;
+	private final double tagFraction;
+	private final int[] typeStart;
+	private final int[] typeGroup;
+	private final double[] tau;
+	private final int[] groupStart;
+	private final int[] groupType;
+	private final int[] groupRoute;
+	private final int[] routeType; // [route] contact type of the route
+	private final RandomStream stream;
+	private final MCMSStatistics stats;
+
+	// State
+	private double now;
+	private int period;
+	private final int[] queueLength; // [type]
+	private final double[] queueSince; // [type] time from which the waiting time of queue k is not accrued yet
+	private int totalQueueLength;
+	private int totalBusy; // Busy agents in all groups
+	private double arrivalRate; // Total arrival rate of the current period
+	private final int[] busyOnRoute; // [route]
+	private final int[] busy; // [group]
+	private final int[] capacity; // [group]
+	private final double[] demand; // [type] arrival rate in the current period
+	private final long[] numDequeued; // [type] number of contacts that left queue k since the start
+	private final PriorityIndex freeGroups;
+	private final PriorityIndex nonEmptyQueues;
+	private final double[] rate; // [K + R] rate of each transition: arrivals of type k, then service completions on route r
+	private final double[] tree; // Fenwick tree over rate, 1-based
+	private final int treeTop; // Highest power of two not larger than the tree size
+	private long[][] tagTarget; // [type] ring buffer: value of numDequeued[k] at which the tagged contact begins service
+	private double[][] tagArrival; // [type] ring buffer: arrival time of the tagged contact
+	private final int[] tagHead;
+	private final int[] tagSize;
+	private double goodSL; // Tagged contacts served within the AWT in the current replication
+	private final double[] goodSLType; // [type] tagged contacts served within the AWT
+	private final double[][] goodSLKP; // [type][period] tagged contacts served within the AWT, by arrival period
+
+	/**
+	 * Constructor.
+	 *
+	 * @param numContacts			Number of contact types
+	 * @param numGroups				Number of agent groups
+	 * @param routes				Feasible (contact, group) pairs with their mean service times and priority lists
+	 * @param schedule				Reader of the number of agents in each group and the arrival rate of each contact type in each period
+	 * @param numPeriods			Number of main periods
+	 * @param periodDuration		Length of each period
+	 * @param startTime				Starting time of the first main period
+	 * @param acceptableWaitTime	Acceptable queue waiting time
+	 * @param tagFraction			Fraction of the arrivals tagged for the service level, in (0, 1]
+	 * @param stream				Random stream of the chain (holding times, transitions and tags)
+	 * @param stats					Statistical counters updated by the chain
+	 */
+	FSFMarkovChain(int numContacts, int numGroups, RouteTable routes, PeriodSchedule.Reader schedule, int numPeriods, double periodDuration, double startTime, double acceptableWaitTime, double tagFraction, RandomStream stream, MCMSStatistics stats) {
+		this.numContacts = numContacts;
+		this.numGroups = numGroups;
+		this.numRoutes = routes.getNumRoutes();
+		this.schedule = schedule;
+		this.numPeriods = numPeriods;
+		this.periodDuration = periodDuration;
+		this.startTime = startTime;
+		this.acceptableWaitTime = acceptableWaitTime;
+		this.tagFraction = tagFraction;
+		this.typeStart = routes.getTypeStart();
+		this.typeGroup = routes.getTypeGroup();
+		this.tau = routes.getTau();
+		this.groupStart = routes.getGroupStart();
+		this.groupType = routes.getGroupType();
+		this.groupRoute = routes.getGroupRoute();
+		this.stream = stream;
+		this.stats = stats;
+		this.routeType = new int[numRoutes];
+		for (int k = 0; k < numContacts; k++) Arrays.fill(routeType, typeStart[k], typeStart[k + 1], k);
+		this.queueLength = new int[numContacts];
+		this.queueSince = new double[numContacts];
+		this.busyOnRoute = new int[numRoutes];
+		this.busy = new int[numGroups];
+		this.capacity = new int[numGroups];
+		this.demand = new double[numContacts];
+		this.numDequeued = new long[numContacts];
+		this.freeGroups = new PriorityIndex(typeStart, typeGroup, numGroups);
+		this.nonEmptyQueues = new PriorityIndex(groupStart, groupType, numContacts);
+		this.rate = new double[numContacts + numRoutes];
+		this.tree = new double[rate.length + 1];
+		this.treeTop = Integer.highestOneBit(Math.max(1, rate.length));
+		this.tagTarget = new long[numContacts][16];
+		this.tagArrival = new double[numContacts][16];
+		this.tagHead = new int[numContacts];
+		this.tagSize = new int[numContacts];
+		this.goodSLType = new double[numContacts];
+		this.goodSLKP = new double[numContacts][stats.getNumStatPeriods()];
+	}
+
+	/**
+	 * Simulates one replication and adds its statistics to the counters (which the caller initializes).
+	 */
+	void simulateOneReplication() {
+		now = 0;
+		period = 0;
+		totalQueueLength = 0;
+		totalBusy = 0;
+		Arrays.fill(queueLength, 0);
+		Arrays.fill(queueSince, 0);
+		Arrays.fill(busyOnRoute, 0);
+		Arrays.fill(busy, 0);
+		schedule.read(0, capacity, demand);
+		Arrays.fill(numDequeued, 0);
+		Arrays.fill(tagSize, 0);
+		Arrays.fill(rate, 0);
+		for (int i = 0; i < numGroups; i++) freeGroups.set(i, false);
+		for (int k = 0; k < numContacts; k++) nonEmptyQueues.set(k, false);
+		goodSL = 0;
+		Arrays.fill(goodSLType, 0);
+		for (int k = 0; k < numContacts; k++) Arrays.fill(goodSLKP[k], 0);
+		if (startTime <= 0) period = 1; // The preliminary period is empty
+		enterPeriod();
+
+		while (true) {
+			// No busy agent and no arrival: the tree may still hold rounding residues, but nothing can happen
+			final double total = totalBusy == 0 && arrivalRate == 0 ? 0 : totalRate();
+			final double periodEnd = period <= numPeriods ? startTime + period * periodDuration : Double.POSITIVE_INFINITY;
+			if (total <= 0 && periodEnd == Double.POSITIVE_INFINITY) break; // Wrap-up period and empty system
+			final double next = total > 0 ? now + ExponentialGen.nextDouble(stream, total) : Double.POSITIVE_INFINITY;
+			final double until = Math.min(next, periodEnd);
+			if (period >= 1 && period <= numPeriods) stats.waitTime += totalQueueLength * (until - now);
+			now = until;
+			stats.time = now;
+			if (next >= periodEnd) {
+				for (int k = 0; k < numContacts; k++) accrueWait(k); // The waiting times up to the period change belong to this period
+				period++;
+				enterPeriod();
+				continue;
+			}
+			if ((++stats.numEvents & MCMSStatistics.PUBLISH_MASK) == 0) stats.publishProgress();
+
+			final int e = sample(stream.nextDouble() * total);
+			if (e < numContacts) {
+				// Arrival of a contact of type k: the fastest free group serves it, or it waits in queue k
+				final int k = e;
+				if (period > 0) stats.numArrivedType[k]++; // Arrivals of the warm-up (preliminary period) are not counted
+				stats.numArrivals++;
+				final int g = freeGroups.first(k);
+				final boolean tagged = tagFraction >= 1 || stream.nextDouble() < tagFraction;
+				if (g >= 0) {
+					beginService(typeStart[k] + g);
+					if (tagged) taggedService(k, now);
+				}
+				else {
+					if (tagged) tag(k, numDequeued[k] + queueLength[k] + 1);
+					accrueWait(k);
+					if (queueLength[k]++ == 0) nonEmptyQueues.set(k, true);
+					if (queueLength[k] > stats.maxQueueLength[k]) stats.maxQueueLength[k] = queueLength[k];
+					totalQueueLength++;
+				}
+			}
+			else {
+				// Service completion on route r: the agent takes the fastest waiting contact, if any
+				final int r = e - numContacts;
+				final int i = typeGroup[r];
+				busyOnRoute[r]--;
+				busy[i]--;
+				stats.numEnded++;
+				totalBusy--;
+				setRate(numContacts + r, busyOnRoute[r] / tau[r]);
+				if (busy[i] < capacity[i]) {
+					final int t = nonEmptyQueues.first(i);
+					if (t >= 0) dequeue(i, t);
+					else freeGroups.set(i, true);
+				}
+			}
+		}
+
+		// Scale the tagged counts to all contacts
+		stats.numGoodSL += (int) Math.round(goodSL / tagFraction);
+		for (int k = 0; k < numContacts; k++) stats.numGoodSLType[k] += (int) Math.round(goodSLType[k] / tagFraction);
+		for (int k = 0; k < numContacts; k++)
+			for (int p = 0; p < goodSLKP[k].length; p++)
+				stats.numGoodSLKP[k][p] += goodSLKP[k][p] / tagFraction;
+	}
+
+	/**
+	 * Applies the staffing and the arrival rates of the current period.
+	 */
+	private void enterPeriod() {
+		if (period > 0) schedule.read(period, capacity, demand);
+		arrivalRate = 0;
+		for (int k = 0; k < numContacts; k++) {
+			rate[k] = demand[k];
+			arrivalRate += rate[k];
+		}
+		rebuildTree(); // Also clears the rounding errors accumulated by the updates
+		for (int i = 0; i < numGroups; i++) freeGroups.set(i, busy[i] < capacity[i]);
+		// New agents take waiting contacts
+		for (int i = 0; i < numGroups; i++) {
+			int t;
+			while (busy[i] < capacity[i] && (t = nonEmptyQueues.first(i)) >= 0) dequeue(i, t);
+		}
+		stats.period = period;
+		stats.publishProgress();
+	}
+
+	/**
+	 * Adds the waiting time of queue {@code k} since its last change to its type, if in a main period.
+	 * Called before the queue length changes, and at each period change.
+	 */
+	private void accrueWait(int k) {
+		if (period >= 1 && period <= numPeriods) stats.waitTimeType[k] += queueLength[k] * (now - queueSince[k]);
+		queueSince[k] = now;
+	}
+
+	/**
+	 * Moves the contact at the head of a queue into service in group {@code i}.
+	 *
+	 * @param i		The agent group
+	 * @param t		Position of the queue in the group-to-type priority list of group {@code i}
+	 */
+	private void dequeue(int i, int t) {
+		final int k = groupType[groupStart[i] + t];
+		accrueWait(k);
+		if (--queueLength[k] == 0) nonEmptyQueues.set(k, false);
+		totalQueueLength--;
+		numDequeued[k]++;
+		beginService(groupRoute[groupStart[i] + t]);
+		// The tagged contact at the head of the tags of type k begins service
+		if (tagSize[k] > 0 && tagTarget[k][tagHead[k]] == numDequeued[k]) {
+			final double arrival = tagArrival[k][tagHead[k]];
+			tagHead[k] = (tagHead[k] + 1) & (tagTarget[k].length - 1);
+			tagSize[k]--;
+			taggedService(k, arrival);
+		}
+	}
+
+	/**
+	 * Counts the waiting time of a tagged contact of type {@code k} that begins service, and its good service if within the AWT.
+	 */
+	private void taggedService(int k, double arrival) {
+		if (period < 1 || period > numPeriods) return; // Same periods as the served contacts
+		final int p = periodOf(arrival) - 1;
+		stats.recordWaitTime(k, p, now - arrival);
+		if (now - arrival > acceptableWaitTime) return;
+		goodSL++;
+		goodSLType[k]++;
+		if (p >= 0 && p < numPeriods) goodSLKP[k][stats.statPeriod(p)]++;
+	}
+
+	private void beginService(int r) {
+		final int i = typeGroup[r];
+		busyOnRoute[r]++;
+		if (period >= 1 && period <= numPeriods) {
+			++stats.numServed;
+			++stats.numServedType[routeType[r]];
+		}
+		totalBusy++;
+		if (++busy[i] >= capacity[i]) freeGroups.set(i, false);
+		setRate(numContacts + r, busyOnRoute[r] / tau[r]);
+	}
+
+	private void tag(int k, long target) {
+		if (tagSize[k] == tagTarget[k].length) {
+			final int n = tagTarget[k].length;
+			final int head = tagHead[k];
+			final long[] targets = new long[2 * n];
+			final double[] arrivals = new double[2 * n];
+			System.arraycopy(tagTarget[k], head, targets, 0, n - head);
+			System.arraycopy(tagTarget[k], 0, targets, n - head, head);
+			System.arraycopy(tagArrival[k], head, arrivals, 0, n - head);
+			System.arraycopy(tagArrival[k], 0, arrivals, n - head, head);
+			tagTarget[k] = targets;
+			tagArrival[k] = arrivals;
+			tagHead[k] = 0;
+		}
+		final int slot = (tagHead[k] + tagSize[k]++) & (tagTarget[k].length - 1);
+		tagTarget[k][slot] = target;
+		tagArrival[k][slot] = now;
+	}
+
+	private int periodOf(double t) {
+		if (t < startTime) return 0;
+		return (int) Math.min(numPeriods + 1, 1 + Math.floor((t - startTime) / periodDuration));
+	}
+
+	// Fenwick tree over the transition rates
+
+	private void setRate(int e, double value) {
+		final double delta = value - rate[e];
+		rate[e] = value;
+		for (int n = e + 1; n < tree.length; n += n & -n) tree[n] += delta;
+	}
+
+	private void rebuildTree() {
+		Arrays.fill(tree, 0);
+		for (int e = 0; e < rate.length; e++) {
+			tree[e + 1] += rate[e];
+			final int parent = (e + 1) + ((e + 1) & -(e + 1));
+			if (parent < tree.length) tree[parent] += tree[e + 1];
+		}
+	}
+
+	private double totalRate() {
+		double sum = 0;
+		for (int n = rate.length; n > 0; n -= n & -n) sum += tree[n];
+		return sum;
+	}
+
+	/**
+	 * Returns the transition whose cumulative rate interval contains {@code u}.
+	 */
+	private int sample(double u) {
+		int pos = 0;
+		for (int step = treeTop; step > 0; step >>= 1) {
+			final int n = pos + step;
+			if (n < tree.length && tree[n] <= u) {
+				u -= tree[n];
+				pos = n;
+			}
+		}
+		// pos is the number of leaves before the sampled one; skip zero rates hit by rounding
+		while (pos < rate.length - 1 && rate[pos] <= 0) pos++;
+		while (pos > 0 && rate[pos] <= 0) pos--;
+		return pos;
+	}
+
+	//getters
+	long getNumTransitions() {
+		return stats.numEvents;
+	}
+}
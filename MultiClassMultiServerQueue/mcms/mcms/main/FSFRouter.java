@@ -1,5 +1,6 @@
 package mcms.main;
 
+import mcms.input.RouteTable;
 import umontreal.iro.lecuyer.contactcenters.contact.Contact;
 import umontreal.iro.lecuyer.contactcenters.queue.DequeueEvent;
 import umontreal.iro.lecuyer.contactcenters.queue.WaitingQueue;
@@ -7,13 +8,12 @@ import umontreal.iro.lecuyer.contactcenters.router.Router;
 import umontreal.iro.lecuyer.contactcenters.server.Agent;
 import umontreal.iro.lecuyer.contactcenters.server.AgentGroup;
 import umontreal.iro.lecuyer.contactcenters.server.EndServiceEvent;
-import umontreal.iro.lecuyer.randvar.RandomVariateGen;
 
 
 /**
  * <h1> Fastest-Server-First (FSF) Router </h1>
  *  <p>
- *  This class {@linkplain #FSFRouter(int, int, int, int[][], int[][], double[][], RandomVariateGen[][])} extends the Router class from {@linkplain umontreal.iro.lecuyer.contactcenters.router.Router}.
+ *  This class {@linkplain #FSFRouter(int, int, int, RouteTable, ServiceTimeGen, boolean)} extends the Router class from {@linkplain umontreal.iro.lecuyer.contactcenters.router.Router}.
  *  It implements the Fastest-Server-First (a.k.a. Closest Driver) routing policy.
  * 
  *  The router responsibilities in the Multi-Class Multi-Server queuing system:
@@ -44,23 +44,69 @@ public class FSFRouter extends Router {
 	/**
 	 * Constructor.
 	 * 
-	 * @param		typeToGroup		The priority list used when a contact should be routed to an agent.
-	 * @param		groupToType		The priority list used when an agent should be assigned to a contact.
-	 * @param		tau				The mean service time (i.e., the reciprocate of the mean service time).
-	 * @param		randomGen		Random number generator. This random number stream would be used for determining the service times, tau's.
+	 * @param		routes			The feasible (contact, group) pairs with their mean service times and both priority lists.
+	 * @param		serviceTimes	Exponential service times of each route, drawn from one random stream per route.
+	 * @param		randServiceTime	True: exponential service times, False: deterministic service times.
 	 */
-	private int[][] typeToGroup; 
-	private int[][] groupToType;
-	private double[][] tau;
-	private RandomVariateGen[][] randomGen;
+	private int[] typeStart;
+	private int[] typeGroup;
+	private double[] tau;
+	private int[] groupStart;
+	private int[] groupType;
+	private int[] groupRoute;
+	private RouteTable routes;
+	private ServiceTimeGen serviceTimes; // Service times of each route, drawn a block at a time
 	private boolean randServiceTime;
-	FSFRouter(int numTypes, int numQueues, int numGroups, int[][] typeToGroup, int[][] groupToType, double[][] tau, RandomVariateGen[][]  randomGen, boolean randServiceTime) {
+	private FreeGroupIndex freeGroups; // Groups with free agents, in the priority order of each contact type
+	private NonEmptyQueueIndex nonEmptyQueues; // Non-empty waiting queues, in the priority order of each group
+	FSFRouter(int numTypes, int numQueues, int numGroups, RouteTable routes, ServiceTimeGen serviceTimes, boolean randServiceTime) {
 		super(numTypes, numQueues, numGroups);
-		this.typeToGroup = typeToGroup;
-		this.groupToType = groupToType;
-		this.tau = tau;
-		this.randomGen = randomGen;
+		this.routes = routes;
+		this.typeStart = routes.getTypeStart();
+		this.typeGroup = routes.getTypeGroup();
+		this.tau = routes.getTau();
+		this.groupStart = routes.getGroupStart();
+		this.groupType = routes.getGroupType();
+		this.groupRoute = routes.getGroupRoute();
+		this.serviceTimes = serviceTimes;
 		this.randServiceTime = randServiceTime;
+		this.freeGroups = new FreeGroupIndex(routes);
+		this.nonEmptyQueues = new NonEmptyQueueIndex(routes);
+	}
+
+	/**
+	 * Returns a service time for a contact served on route {@code r}.
+	 * 
+	 * @param	r		The route index
+	 * @return	double	An exponential service time with mean {@code tau[r]}, or {@code tau[r]} for deterministic service times
+	 */
+	private double serviceTime(int r) {
+		if (!randServiceTime) return tau[r]; // Deterministic service time
+		return serviceTimes.next(r); // Exponentially distributed service time, TAU: mean service time
+	}
+
+	/**
+	 * Sets the agent group {@code i} and registers the free-group index as a listener of the group.
+	 * 
+	 * @param	i		agent group {@code i}
+	 * @param	group	The agent group
+	 */
+	public void setAgentGroup(int i, AgentGroup group) {
+		super.setAgentGroup(i, group);
+		group.addAgentGroupListener(freeGroups);
+		freeGroups.update(group);
+	}
+
+	/**
+	 * Sets the waiting queue {@code q} and registers the non-empty-queue index as a listener of the queue.
+	 * 
+	 * @param	q		waiting queue {@code q}
+	 * @param	queue	The waiting queue
+	 */
+	public void setWaitingQueue(int q, WaitingQueue queue) {
+		super.setWaitingQueue(q, queue);
+		queue.addWaitingQueueListener(nonEmptyQueues);
+		nonEmptyQueues.update(queue);
 	}
 
 	/**
@@ -72,7 +118,7 @@ public class FSFRouter extends Router {
 	 * @return 	boolean 	true if agent group {@code i} can serve customer type {@code k}
 	 */
 	public boolean canServe(int i, int k) {
-		if (groupToType[i][k] >= 0) {
+		if (routes.route(k, i) >= 0) {
 			return true;
 		} else {
 			return false;
@@ -88,19 +134,19 @@ public class FSFRouter extends Router {
 	 */
 	protected EndServiceEvent selectAgent (Contact ct) {
 		EndServiceEvent ese;
-		int G=typeToGroup[ct.getTypeId()].length;
-		for (int g=0; g<G; g++ ){
-			AgentGroup group = getAgentGroup(typeToGroup[ct.getTypeId()][g]);
-			if (group.getNumFreeAgents()>0){
-				if (randServiceTime){
-					ct.setDefaultServiceTime(randomGen[ct.getTypeId()][group.getId()].nextDouble()); // Exponentially distributed service time
-				}
-				else {
-					ct.setDefaultServiceTime(tau[ct.getTypeId()][group.getId()]); // Deterministic service time
-				}						
-				ese=group.serve(ct);
-				return ese;
+		final int k = ct.getTypeId();
+		int g;
+		// Take the fastest group with a free agent from the free-group index 
+		while ((g = freeGroups.first(k)) >= 0){
+			final int r = typeStart[k] + g; // route of the contact to the group
+			AgentGroup group = getAgentGroup(typeGroup[r]);
+			if (group.getNumFreeAgents()==0){
+				freeGroups.update(group); // stale entry
+				continue;
 			}
+			ct.setDefaultServiceTime(serviceTime(r));
+			ese=group.serve(ct);
+			return ese;
 		}
 		return null; // return null if all agents are busy
 	}
@@ -139,23 +185,19 @@ public class FSFRouter extends Router {
 	 */
 	protected DequeueEvent selectContact(AgentGroup group, Agent agent) {
 		DequeueEvent dqe;
-		int T=groupToType[group.getId()].length;
-		for (int t=0; t<T; t++ ){
-			WaitingQueue queue = getWaitingQueue(groupToType[group.getId()][t]);
+		final int i = group.getId();
+		int t;
+		// Take the fastest non-empty queue from the non-empty-queue index
+		while ((t = nonEmptyQueues.first(i)) >= 0){
+			WaitingQueue queue = getWaitingQueue(groupType[groupStart[i] + t]);
 			if (queue.isEmpty()){
+				nonEmptyQueues.update(queue); // stale entry
 				continue;
 			}
-			else {
-				Contact ct=queue.getFirst().getContact();
-				if (randServiceTime){
-					ct.setDefaultServiceTime(randomGen[ct.getTypeId()][group.getId()].nextDouble()); // Random (exponential) service time
-				}
-				else {
-					ct.setDefaultServiceTime(tau[ct.getTypeId()][group.getId()]); // Deterministic service time
-				}
-				dqe=queue.removeFirst(DEQUEUETYPE_BEGINSERVICE);
-				return dqe;
-			}
+			Contact ct=queue.getFirst().getContact();
+			ct.setDefaultServiceTime(serviceTime(groupRoute[groupStart[i] + t]));
+			dqe=queue.removeFirst(DEQUEUETYPE_BEGINSERVICE);
+			return dqe;
 		}
 		return null; // return null if all queues are empty
 	}
@@ -0,0 +1,58 @@
+package mcms.main;
+
+import mcms.input.RouteTable;
+import umontreal.iro.lecuyer.contactcenters.server.AgentGroup;
+import umontreal.iro.lecuyer.contactcenters.server.AgentGroupListener;
+import umontreal.iro.lecuyer.contactcenters.server.EndServiceEvent;
+
+/**
+ * <h1> Index of Agent Groups with Free Agents </h1>
+ *  <p>
+ *  Keeps, for each contact type {@code k}, a bitset over the positions of its type-to-group priority list.
+ *  Bit {@code g} of type {@code k} is set if the group of route {@code typeStart[k] + g} has at least one free agent.
+ *  The bitsets are updated by listening to the agent groups.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-03-18
+ */
+class FreeGroupIndex extends PriorityIndex implements AgentGroupListener {
+	/**
+	 * Constructor.
+	 *
+	 * @param routes	The routes; their type rows are the type-to-group priority lists
+	 */
+	FreeGroupIndex(RouteTable routes) {
+		super(routes.getTypeStart(), routes.getTypeGroup(), routes.getNumGroups());
+	}
+
+	/**
+	 * Re-reads the number of free agents of the group and updates the bitsets if the group switched state.
+	 *
+	 * @param	group	An agent group
+	 */
+	void update(AgentGroup group) {
+		set(group.getId(), group.getNumFreeAgents() > 0);
+	}
+
+	public void agentGroupChange(AgentGroup group) {
+		update(group);
+	}
+
+	public void beginService(EndServiceEvent ev) {
+		update(ev.getAgentGroup());
+	}
+
+	public void endContact(EndServiceEvent ev) {
+		update(ev.getAgentGroup());
+	}
+
+	public void endService(EndServiceEvent ev) {
+		update(ev.getAgentGroup());
+	}
+
+	public void init(AgentGroup group) {
+		update(group);
+	}
+}
@@ -0,0 +1,71 @@
+package mcms.main;
+
+import java.util.Arrays;
+import mcms.input.RouteTable;
+
+/**
+ * <h1> Longest-Queue-First Dispatcher </h1>
+ *  <p>
+ *  A free agent takes the longest queue among the contact types its group serves, the first one in FSF order on ties.
+ *  Arriving contacts go to the fastest group with a free agent, as with FSF.
+ *  The queue lengths change at every arrival and service, so a decision scans the whole priority list of the group.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+class LongestQueueDispatcher implements RoutingPolicy.Dispatcher {
+	private final int numGroups;
+	private final int[] typeStart;
+	private final int[] groupStart;
+	private final int[] groupType;
+	private final int[] groupRoute;
+	private final PriorityIndex freeGroups; // Contact types over their groups with free agents, in FSF order
+	private final int[] length; // [type] queue length
+
+	/**
+	 * Constructor.
+	 *
+	 * @param routes	The routes
+	 */
+	LongestQueueDispatcher(RouteTable routes) {
+		this.numGroups = routes.getNumGroups();
+		this.typeStart = routes.getTypeStart();
+		this.groupStart = routes.getGroupStart();
+		this.groupType = routes.getGroupType();
+		this.groupRoute = routes.getGroupRoute();
+		this.freeGroups = new PriorityIndex(typeStart, routes.getTypeGroup(), numGroups);
+		this.length = new int[routes.getNumContacts()];
+	}
+
+	public void reset() {
+		for (int i = 0; i < numGroups; i++) freeGroups.set(i, false);
+		Arrays.fill(length, 0);
+	}
+
+	public void groupFree(int i, boolean free) {
+		freeGroups.set(i, free);
+	}
+
+	public void queueLength(int k, int length) {
+		this.length[k] = length;
+	}
+
+	public int routeForContact(int k) {
+		final int g = freeGroups.first(k);
+		return g < 0 ? -1 : typeStart[k] + g;
+	}
+
+	public int routeForAgent(int i) {
+		int best = -1;
+		int bestLength = 0;
+		for (int e = groupStart[i]; e < groupStart[i + 1]; e++) {
+			if (length[groupType[e]] > bestLength) {
+				best = e;
+				bestLength = length[groupType[e]];
+			}
+		}
+		return best < 0 ? -1 : groupRoute[best];
+	}
+}
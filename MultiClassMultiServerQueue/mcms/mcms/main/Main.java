@@ -1,6 +1,8 @@
 package mcms.main;
 
+import mcms.output.ContactTrace;
 import mcms.output.Output;
+import mcms.output.ReplicationLog;
 
 /**
  * Solve an example/instance
@@ -75,6 +77,20 @@ public class Main{
 		boolean randomServiceTime = true; // 0: deterministic service time 1: Random (exponential) service time
 		double acceptableWaitTime = 10; 	// Acceptable Queue waiting time
 		int numDecimals = 6; // number of decimals for saving results
+		int numThreads = 1; // Number of threads simulating replications in parallel (1: sequential), e.g., Runtime.getRuntime().availableProcessors() with the KERNEL or CTMC engine; CONTACT_CENTERS is not yet checked to give the same results in parallel
+		boolean poolContacts = false; // Recycle the contacts after they exit the system instead of allocating one per arrival (not yet validated against the ContactCenters library)
+		SimRunner.Engine engine = SimRunner.Engine.CONTACT_CENTERS; // CONTACT_CENTERS: ContactCenters engine, KERNEL: primitive-array kernel, CTMC: aggregated Markov chain
+		long[] seed = {12345, 12345, 12345, 12345, 12345, 12345}; // Seed of the random number generator (null: default seed)
+		double targetRelHalfWidth = 0; // Sequential stopping: simulate until the 95% CIs on EW and SL are within this fraction of their means (0: numReps replications)
+		int batchSize = 10; // Sequential stopping: number of replications between two checks of the CIs
+		int maxReps = 1000; // Sequential stopping: budget of replications
+		boolean jmxMonitor = false; // Publish live progress counters over JMX during the run (see SimulationMonitor, e.g., in JConsole)
+		double[] slThresholds = {5, 10, 20, 30, 60}; // Acceptable waiting times of the service levels computed from the waiting-time histograms (null: no histograms)
+		boolean replicationLog = false; // Append each replication to a log in the results path; a rerun with the same seed resumes after the logged replications (fixed numReps only)
+		boolean antithetic = false; // Simulate pairs of antithetic replications (numReps, batchSize and maxReps must be even)
+		int statPeriodLength = 1; // Number of main periods per statistical period of the per-period counters, e.g., 4 for hourly counters of 15-minute periods
+		boolean contactTrace = false; // Record every served contact to a trace file in the results path, for later analysis by mcms.output.TraceAnalyzer (not with CTMC)
+		int warmupPilotReps = 0; // MSER-5 warm-up: number of pilot replications that pick the length of a loaded preliminary period (0: the main periods start from an empty system; not with CTMC)
 		
 		/*
 		 * Input and output files
@@ -89,6 +105,9 @@ public class Main{
 		String agents = exNum + "agents.dat"; // agent groups file name. It defines the number of agents in each group
 		String demands = exNum + "demands.dat"; // demands(or arrivals) file name. It defines the arrival rate for each contact type
 		String routes = exNum + "routes.dat"; // routes name. It defines eligible assignments of contact types to servers
+		String agentsByPeriod = null; // Per-period agents file, rows "p i num_agents" from period p on, e.g., exNum + "agentsByPeriod.dat" (null: the agents file in every period)
+		String demandsByPeriod = null; // Per-period demands file, rows "p k arrival_rate" from period p on (with agentsByPeriod)
+		String compiledInstance = null; // Binary instance compiled from the three files by mcms.input.CompiledInstance, e.g., inputPath + exNum + "instance.bin" (null: read the files)
 
 		/*
 		 * Build a routing model and run the simulation
@@ -96,15 +115,48 @@ public class Main{
 		
 		// Create the FSF routing model
 		ModelBuilder myBuilder = new ModelBuilder(exNum, numContactTypes, numGroups, numReps, numPeriods, periodDuration, simDuration, startTime, randomServiceTime, acceptableWaitTime, numDecimals, inputPath, resultsPath, agents, demands, routes); 
+		myBuilder.setSeed(seed);
+		myBuilder.setPoolContacts(poolContacts);
+		myBuilder.setEngine(engine);
+		myBuilder.setWaitTimeHistograms(slThresholds != null);
+		myBuilder.setCompiledInstance(compiledInstance);
+		myBuilder.setPeriodFiles(agentsByPeriod, demandsByPeriod);
+		myBuilder.setStatPeriodLength(statPeriodLength);
+		myBuilder.setAntithetic(antithetic);
 		SimRunner myModel = myBuilder.build();
+		if (warmupPilotReps > 0) {
+			System.out.println(myModel.selectWarmup(warmupPilotReps, targetRelHalfWidth > 0 ? Math.max(numReps, maxReps) : numReps, numThreads) + "\n");
+			startTime = myModel.getStartTime(); // The main periods start after the warm-up
+		}
+		ContactTrace trace = contactTrace ? new ContactTrace(resultsPath + exNum + "FSF_Sim.trace", numContactTypes, numGroups, numPeriods, periodDuration, startTime) : null;
+		if (trace != null) myModel.setContactTrace(trace);
+		SimulationMonitor monitor = null;
 				
 		// Run the simulation model
-		myModel.simulate(numReps, numPeriods);
+		try {
+			if (jmxMonitor) monitor = SimulationMonitor.register(myModel, "example" + exNum);
+			if (targetRelHalfWidth > 0) {
+				numReps = myModel.simulateUntil(targetRelHalfWidth, 0.95, batchSize, maxReps, numPeriods, numThreads);
+				simDuration = numReps * numPeriods * periodDuration;
+			}
+			else if (replicationLog) {
+				try (ReplicationLog log = new ReplicationLog(resultsPath + exNum + "FSF_Sim.replog", numContactTypes, myModel.getNumStatPeriods(), myModel.getRunFingerprint())) {
+					int numResumed = myModel.simulate(numReps, numPeriods, numThreads, log);
+					if (numResumed > 0) System.out.println("Resumed " + numResumed + " replications from the replication log\n");
+				}
+			}
+			else myModel.simulate(numReps, numPeriods, numThreads);
+		}
+		finally {
+			if (monitor != null) monitor.unregister();
+			if (trace != null) trace.close();
+		}
 		
 		// Print the results to the console
-		Output.printStatisticsToConsole(exNum, numGroups, numContactTypes, numReps, numPeriods, periodDuration, simDuration, startTime, randomServiceTime, acceptableWaitTime, numDecimals);
+		Output.printStatisticsToConsole(myModel, exNum, numGroups, numContactTypes, numReps, numPeriods, periodDuration, simDuration, startTime, randomServiceTime, acceptableWaitTime, numDecimals);
+		if (slThresholds != null) Output.printWaitTimeDistributionToConsole(myModel, slThresholds, numContactTypes, numDecimals);
 		
 		// Save the results
-		Output.printResultsToFile(resultsPath, exNum, numGroups, numContactTypes, numReps, numPeriods, periodDuration, simDuration, startTime, randomServiceTime, acceptableWaitTime, numDecimals);
+		Output.printResultsToFile(myModel, resultsPath, exNum, numGroups, numContactTypes, numReps, numPeriods, periodDuration, simDuration, startTime, randomServiceTime, acceptableWaitTime, numDecimals);
 	}
 }
\ No newline at end of file
@@ -1,6 +1,6 @@
 package mcms.main;
 
-import java.util.ArrayList;
+import umontreal.iro.lecuyer.rng.MRG32k3a;
 /**
  * This class defines a fastest-server-first routing model. <br>
  * The model or routing policy is able to determine agent groups or waiting queues for all types of contacts.
@@ -26,6 +26,25 @@ public class ModelBuilder {
 	String agents = exNum + "agents.dat";
 	String demands = exNum + "demands.dat";
 	String routes = exNum + "routes.dat";
+	long[] seed = null;
+	boolean poolContacts = false;
+	SimRunner.Engine engine = SimRunner.Engine.CONTACT_CENTERS;
+	double tagFraction = 1;
+	boolean waitTimeHistograms = false;
+	String compiledInstance = null;
+	String agentsByPeriod = null; // Per-period files, streamed by the simulation
+	String demandsByPeriod = null;
+	int statPeriodLength = 1;
+	boolean antithetic = false;
+	String arrivalSpillPath = null; // Directory of the spilled arrival banks; null: in memory, up to arrivalMemoryLimit
+	long arrivalMemoryLimit = Runtime.getRuntime().maxMemory() / 4; // Bytes of arrivals held in memory by the banks alive at once
+	private static final long[] DEFAULT_SEED = {12345, 12345, 12345, 12345, 12345, 12345}; // Default package seed of MRG32k3a
+	private static final Object SEED_LOCK = new Object(); // The package seed of MRG32k3a is shared by all builders
+	private int[] baseAgents; // Parsed input files, read once
+	private double[] baseDemands;
+	private mcms.input.RouteTable routeTable;
+	private ErlangScreen sharedScreen; // Routes sorted once, for the screens of all threads
+	private final ThreadLocal<ErlangScreen> screens = ThreadLocal.withInitial(() -> new ErlangScreen(getSharedScreen()));
 	/**
 	 * Constructor:
 	 * 
@@ -51,6 +70,7 @@ public class ModelBuilder {
 		this.numContactTypes = numContactTypes;
 		this.numGroups = numGroups;
 		this.numReps = numReps;
+		this.numPeriods = numPeriods;
 		this.periodDuration = periodDuration;
 		this.simDuration = simDuration;
 		this.startTime = startTime;
@@ -64,6 +84,142 @@ public class ModelBuilder {
 		this.routes = routes;
 	}
 
+	/**
+	 * Fixes the seed of the random number generator for reproducible runs.
+	 * 
+	 * @param seed	Package seed of MRG32k3a: three values in [0, 4294967086] followed by three values in [0, 4294944442], not all zero
+	 */
+	public void setSeed(long[] seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Recycles the contacts after they exit the system, instead of allocating a new contact per arrival.
+	 * 
+	 * @param poolContacts	True: pooled contacts, not yet validated against the ContactCenters library; False: one new contact per arrival (default)
+	 */
+	public void setPoolContacts(boolean poolContacts) {
+		this.poolContacts = poolContacts;
+	}
+
+	/**
+	 * Selects the simulation engine.
+	 * 
+	 * @param engine	CONTACT_CENTERS: ContactCenters/SSJ objects (default), KERNEL: primitive-array kernel,
+	 * 					CTMC: aggregated-state Markov chain (requires random service times)
+	 */
+	public void setEngine(SimRunner.Engine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Sets the fraction of the contacts whose waiting time the CTMC engine tracks to estimate the service level.
+	 * 
+	 * @param tagFraction	Fraction in (0, 1]; 1 (default) tracks every contact that waits
+	 */
+	public void setTagFraction(double tagFraction) {
+		this.tagFraction = tagFraction;
+	}
+
+	/**
+	 * Collects the histograms of the waiting times per contact type and period, which give the service level
+	 * for any acceptable waiting time and the quantiles of the waiting time after the run.
+	 * 
+	 * @param waitTimeHistograms	True: collect the histograms, False: only the counters for the acceptable waiting time (default)
+	 */
+	public void setWaitTimeHistograms(boolean waitTimeHistograms) {
+		this.waitTimeHistograms = waitTimeHistograms;
+	}
+
+	/**
+	 * Reads the instance from a binary file compiled by {@link mcms.input.CompiledInstance}, instead of the agents, demands and routes files.
+	 * The file is memory-mapped, and the sorted routes and priority lists are loaded as they are.
+	 * 
+	 * @param compiledInstance	Path and name of the compiled file; null: read the text files (default)
+	 */
+	public void setCompiledInstance(String compiledInstance) {
+		this.compiledInstance = compiledInstance;
+	}
+
+	/**
+	 * Reads the staffing and the demands period by period from two files, instead of the same values in every period
+	 * (see {@link mcms.input.StreamingSchedule}). The KERNEL and CTMC engines stream the files as they simulate,
+	 * so the horizon can be long (e.g., a year of 15-minute periods); the routes still come from the routes file or the compiled instance.
+	 * 
+	 * @param agentsByPeriod	Per-period agents file name, with rows {@code p i num_agents}; null: the agents file in every period (default)
+	 * @param demandsByPeriod	Per-period demands file name, with rows {@code p k arrival_rate}
+	 */
+	public void setPeriodFiles(String agentsByPeriod, String demandsByPeriod) {
+		if ((agentsByPeriod == null) != (demandsByPeriod == null)) throw new IllegalArgumentException("Give both per-period files, or neither");
+		this.agentsByPeriod = agentsByPeriod;
+		this.demandsByPeriod = demandsByPeriod;
+	}
+
+	/**
+	 * Aggregates the per-period counters (service level per type and period, waiting-time histograms) over statistical periods
+	 * of several consecutive main periods, so their size stays small over a long horizon.
+	 * 
+	 * @param statPeriodLength	Number of main periods per statistical period, at least 1 (default: 1, one statistical period per main period)
+	 */
+	public void setStatPeriodLength(int statPeriodLength) {
+		this.statPeriodLength = statPeriodLength;
+	}
+
+	/**
+	 * Simulates pairs of antithetic replications (see {@link SimRunner#setAntithetic(boolean)}); the numbers of replications must be even.
+	 * 
+	 * @param antithetic	True: antithetic pairs, False: independent replications (default)
+	 */
+	public void setAntithetic(boolean antithetic) {
+		this.antithetic = antithetic;
+	}
+
+	/**
+	 * Spills the pre-generated arrivals that the staffing searches replay (see {@link ArrivalBank}) to files instead of memory.
+	 * The files are deleted when the search is done.
+	 * 
+	 * @param arrivalSpillPath	Directory of the files, e.g., "/tmp/"; null: in memory up to {@link #setArrivalMemoryLimit}, then in the temporary directory (default)
+	 */
+	public void setArrivalSpillPath(String arrivalSpillPath) {
+		this.arrivalSpillPath = arrivalSpillPath;
+	}
+
+	/**
+	 * Bounds the memory of the pre-generated arrivals (12 bytes per arrival): when the expected arrivals of the banks alive at once
+	 * do not fit, a bank is spilled to the temporary directory, unless {@link #setArrivalSpillPath} gives another directory.
+	 * 
+	 * @param arrivalMemoryLimit	Number of bytes; 0: always spill (default: a quarter of the maximum heap)
+	 */
+	public void setArrivalMemoryLimit(long arrivalMemoryLimit) {
+		if (arrivalMemoryLimit < 0) throw new IllegalArgumentException("The arrival memory limit is negative: " + arrivalMemoryLimit);
+		this.arrivalMemoryLimit = arrivalMemoryLimit;
+	}
+
+	/**
+	 * Generates the arrivals of the replications of a variant, once, for all the variants with the same demand: in memory, or spilled
+	 * to a file if a spill directory is set or if {@code numBanks} such banks would exceed the memory limit.
+	 * 
+	 * @param variant			A KERNEL variant built by {@link #buildVariant}
+	 * @param demandMultiplier	Demand multiplier of the variant
+	 * @param numBanks			Number of banks of the same size that can be alive at once
+	 * @param name				Name of the spill file, without extension
+	 * @return ArrivalBank		The arrivals of replications 0..numReps-1
+	 */
+	ArrivalBank newArrivalBank(SimRunner variant, double demandMultiplier, int numBanks, String name) {
+		if (arrivalSpillPath != null) return new ArrivalBank(variant, numReps, arrivalSpillPath + name + ".bin");
+		readInstance();
+		double rate = 0;
+		for (int k = 0; k < numContactTypes; k++) rate += baseDemands[k] * demandMultiplier;
+		final double bytes = 12.0 * rate * numPeriods * periodDuration * numReps * numBanks; // Expected arrivals of the main periods
+		if (bytes <= arrivalMemoryLimit) return new ArrivalBank(variant, numReps, null);
+		try {
+			return new ArrivalBank(variant, numReps, java.io.File.createTempFile(name, ".bin").getPath()); // Unique name: other runs may spill too
+		}
+		catch (java.io.IOException e) {
+			throw new IllegalStateException("Cannot create the arrivals file " + name + " in the temporary directory", e);
+		}
+	}
+
 	/**
 	 * <p> Builds a fastest-server-first model. <br> </p>
 	 * The model has the following components:
@@ -79,31 +235,156 @@ public class ModelBuilder {
 	 * @return FSFModel	a fastest-server-first model
 	 */
 	public SimRunner build() {
+		// Read the input files, if not read yet
+		readInstance();
+		
+		// Number of agents in each group and arrival rate of each contact type at each period
+		mcms.input.PeriodSchedule schedule = newSchedule();
+		
+		// Fix the package seed of the random number generator MRG32k3a(), if one is given
+		synchronized (SEED_LOCK) {
+			if (seed != null) MRG32k3a.setPackageSeed(seed);
+			SimRunner fsfModel = new SimRunner(numContactTypes, numGroups, routeTable, schedule, numReps, numPeriods, periodDuration, simDuration, startTime, randomServiceTime, acceptableWaitTime, poolContacts, engine, tagFraction, waitTimeHistograms, statPeriodLength);
+			fsfModel.setAntithetic(antithetic);
+			return fsfModel;
+		}
+	}
+
+	/**
+	 * Builds a variant of the instance: other staffing, scaled demands and another acceptable waiting time.
+	 * The files are read once, by the first build. Every variant starts its random streams from the same package seed
+	 * (the given seed, or the default seed of MRG32k3a), so the variants are compared with common random numbers.
+	 * Variants can be built concurrently.
+	 * 
+	 * @param agents				Number of agents in each group
+	 * @param demandMultiplier		Factor applied to the arrival rate of every contact type
+	 * @param acceptableWaitTime	Acceptable queue waiting time
+	 * @param waitTimeHistograms	True: collect the waiting-time histograms
+	 * @return SimRunner			The model of the variant
+	 */
+	SimRunner buildVariant(int[] agents, double demandMultiplier, double acceptableWaitTime, boolean waitTimeHistograms) {
+		if (agentsByPeriod != null) throw new IllegalStateException("A variant sets the staffing of every period: not with per-period files");
+		readInstance();
+		double[] demands = new double[numContactTypes];
+		for (int k = 0; k < numContactTypes; k++) demands[k] = baseDemands[k] * demandMultiplier;
+		mcms.input.PeriodSchedule schedule = mcms.input.PeriodSchedule.constant(agents.clone(), demands, numPeriods);
+		synchronized (SEED_LOCK) {
+			MRG32k3a.setPackageSeed(seed != null ? seed : DEFAULT_SEED);
+			SimRunner variant = new SimRunner(numContactTypes, numGroups, routeTable, schedule, numReps, numPeriods, periodDuration, simDuration, startTime, randomServiceTime, acceptableWaitTime, poolContacts, engine, tagFraction, waitTimeHistograms, statPeriodLength);
+			variant.setAntithetic(antithetic);
+			return variant;
+		}
+	}
+
+	/**
+	 * Builds the instance with the KERNEL engine and a routing policy. Like the variants, every policy starts its random streams
+	 * from the same package seed (the given seed, or the default seed of MRG32k3a), so the policies are compared with common random numbers.
+	 *
+	 * @param policy		The routing policy
+	 * @return SimRunner	The model of the policy
+	 */
+	SimRunner buildWithPolicy(RoutingPolicy policy) {
+		readInstance();
+		mcms.input.PeriodSchedule schedule = newSchedule();
+		synchronized (SEED_LOCK) {
+			MRG32k3a.setPackageSeed(seed != null ? seed : DEFAULT_SEED);
+			SimRunner model = new SimRunner(numContactTypes, numGroups, routeTable, schedule, numReps, numPeriods, periodDuration, simDuration, startTime, randomServiceTime, acceptableWaitTime, poolContacts, SimRunner.Engine.KERNEL, tagFraction, false, statPeriodLength);
+			model.setAntithetic(antithetic);
+			model.setRoutingPolicy(policy);
+			return model;
+		}
+	}
+
+	/**
+	 * Estimates EW and SL of the instance analytically, in microseconds, without simulating it (see {@link ErlangScreen}).
+	 *
+	 * @return Estimate	Arrival-weighted estimate over the main periods
+	 */
+	public ErlangScreen.Estimate screen() {
+		readInstance();
+		return screens.get().estimate(newSchedule(), periodDuration, acceptableWaitTime);
+	}
+
+	/**
+	 * Estimates EW and SL of a variant analytically, to prune or rank variants before simulating them (see {@link ErlangScreen}).
+	 * Thread-safe: each thread reuses its own estimator.
+	 *
+	 * @param agents				Number of agents in each group
+	 * @param demandMultiplier		Factor applied to the arrival rate of every contact type
+	 * @param acceptableWaitTimes	Acceptable queue waiting times
+	 * @return Estimate[]			Steady-state estimate of a main period, for each AWT
+	 */
+	ErlangScreen.Estimate[] screen(int[] agents, double demandMultiplier, double[] acceptableWaitTimes) {
+		readInstance();
+		double[] demands = new double[numContactTypes];
+		for (int k = 0; k < numContactTypes; k++) demands[k] = baseDemands[k] * demandMultiplier;
+		return screens.get().estimate(agents, demands, acceptableWaitTimes);
+	}
+
+	/**
+	 * Returns the estimator that sorts the routes, once; each thread screens with a copy (see {@link ErlangScreen#ErlangScreen(ErlangScreen)}).
+	 */
+	private synchronized ErlangScreen getSharedScreen() {
+		if (sharedScreen == null) sharedScreen = new ErlangScreen(getRouteTable());
+		return sharedScreen;
+	}
+
+	/**
+	 * Returns the number of agents in each group and the arrival rate of each contact type at each period:
+	 * the per-period files, if set, or the base staffing and demands in every period.
+	 */
+	private mcms.input.PeriodSchedule newSchedule() {
+		return agentsByPeriod != null
+				? new mcms.input.StreamingSchedule(inputPath + agentsByPeriod, inputPath + demandsByPeriod, numContactTypes, numGroups, numPeriods)
+				: mcms.input.PeriodSchedule.constant(baseAgents, baseDemands, numPeriods);
+	}
+
+	/**
+	 * Reads the agents, demands and routes files, or the compiled instance, once.
+	 */
+	synchronized void readInstance() {
+		if (routeTable != null) return;
+		
+		// Compiled instance: no parsing, no sorting
+		if (compiledInstance != null) {
+			mcms.input.CompiledInstance instance = mcms.input.CompiledInstance.load(compiledInstance, numContactTypes, numGroups);
+			baseAgents = instance.getAgents();
+			baseDemands = instance.getDemands();
+			routeTable = instance.getRouteTable();
+			return;
+		}
+		
 		/*
-		 *  Read the number of agents in each group at each period. 
+		 *  Read the number of agents in each group. 
 		 *  Wrap-up period has the same number of agents as the one before the wrap-up period.
 		 */
-		int[][] groups = mcms.input.InputAgent.expGroupsAcrosPs(mcms.input.InputAgent.readAgentGroups(agents, inputPath, numContactTypes), numPeriods);
+		baseAgents = mcms.input.InputAgent.readAgentGroups(agents, inputPath, numGroups);
 		
-		// Arrival rate for contact type k in period p
-		double[][] contacts = mcms.input.InputContact.expDemAcrosPs(mcms.input.InputContact.readDemands(demands, inputPath, numGroups), numPeriods);
+		// Arrival rate for contact type k
+		baseDemands = mcms.input.InputContact.readDemands(demands, inputPath, numContactTypes);
 		
 		/*
-		 * Mean service time for each (contact, group) tuple at each period
+		 * Mean service time for each feasible (contact, group) tuple, stored sparsely, 
+		 * with the group-to-type and type-to-group routing priority lists
 		 * NOTE: mean Service time is the reciprocal of the mean service rate
 		 * For each (contact[k], group[i]) combination equal for all periods 
 		 */
-		ArrayList<mcms.input.InputSrvTime> serviceTimeVec = mcms.input.InputSrvTime.readServiceTimes(routes, inputPath, numGroups, numContactTypes);
-		double[][] serviceTime = mcms.input.InputSrvTime.arrayListToPrimitiveArray(serviceTimeVec, numGroups, numContactTypes); //Build TAU from TAU_Vec
+		routeTable = mcms.input.RouteTable.build(mcms.input.InputSrvTime.readRoutes(routes, inputPath, numContactTypes, numGroups), numContactTypes, numGroups);
+	}
 
-		// Build the group-to-type routing priority list
-		int[][] groupToType = mcms.input.InputSrvTime.buildGroupToType(serviceTimeVec, numGroups);
-		
-		// Build the type-to-group priority list
-		int[][] typeToGroup = mcms.input.InputSrvTime.buildTypeToGroup(serviceTimeVec, numContactTypes);
-		
-		SimRunner fsfModel = new SimRunner(numContactTypes, numGroups, typeToGroup, groupToType, groups, contacts, serviceTime, numReps, numPeriods, periodDuration, simDuration, startTime, randomServiceTime, acceptableWaitTime);
-		return fsfModel;
-		
+	//getters
+	int[] getBaseAgents() {
+		readInstance();
+		return baseAgents.clone();
+	}
+
+	double[] getBaseDemands() {
+		readInstance();
+		return baseDemands.clone();
+	}
+
+	mcms.input.RouteTable getRouteTable() {
+		readInstance();
+		return routeTable;
 	}
 }
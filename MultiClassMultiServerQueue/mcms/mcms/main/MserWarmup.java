@@ -0,0 +1,141 @@
+package mcms.main;
+
+import mcms.contactcenters.WaitSeries;
+
+/**
+ * <h1> Warm-Up Picked by MSER-5 </h1>
+ *  <p>
+ *  The length of the warm-up of a model, picked from pilot replications that start from an empty system (see {@link SimRunner#selectWarmup}).
+ *  The waiting times of each pilot replication are averaged over batches of {@value WaitSeries#BATCH} contacts, and the batch means are averaged
+ *  over the replications, batch by batch. MSER (Marginal Standard Error Rule) truncates the first {@code d} batch means of this series,
+ *  with the {@code d} that minimizes the squared standard error of the mean of the rest:
+ *  {@code sum (x_j - mean)^2 / (n - d)^2} over the batches {@code j >= d}, for {@code d <= n/2}.
+ *  The warm-up is the mean time at which batch {@code d - 1} ends.
+ * 	</p>
+ *  <p>
+ *  The waiting times of the series run over all main periods, so the rule assumes that their changes of staffing and demand are mild.
+ *  A truncation at the limit {@code n/2} means that the pilot replications are too short to see the end of the warm-up ({@link #isAtLimit()}).
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public final class MserWarmup {
+	private final double warmup;
+	private final int numBatches;
+	private final int truncated;
+	private final int numPilotReps;
+	private final double pilotTime;
+
+	private MserWarmup(double warmup, int numBatches, int truncated, int numPilotReps, double pilotTime) {
+		this.warmup = warmup;
+		this.numBatches = numBatches;
+		this.truncated = truncated;
+		this.numPilotReps = numPilotReps;
+		this.pilotTime = pilotTime;
+	}
+
+	/**
+	 * Picks the warm-up from the series of the pilot replications.
+	 *
+	 * @param series		Waiting times of each pilot replication
+	 * @param startTime		Time at which the pilot replications start to load the system
+	 * @param pilotTime		Simulated time of all pilot replications
+	 */
+	static MserWarmup of(WaitSeries[] series, double startTime, double pilotTime) {
+		int n = Integer.MAX_VALUE;
+		for (WaitSeries s : series) n = Math.min(n, s.size());
+		if (series.length == 0 || n < 4) return new MserWarmup(0, series.length == 0 ? 0 : n, 0, series.length, pilotTime); // Too few contacts: no truncation
+
+		// Batch means and end times, averaged over the replications
+		final double[] x = new double[n];
+		final double[] t = new double[n];
+		for (WaitSeries s : series) {
+			for (int j = 0; j < n; j++) {
+				x[j] += s.getMean(j);
+				t[j] += s.getTime(j);
+			}
+		}
+		for (int j = 0; j < n; j++) {
+			x[j] /= series.length;
+			t[j] /= series.length;
+		}
+
+		// MSER statistic of each truncation, from the sums over the remaining batches
+		final int d = truncation(x, n);
+		return new MserWarmup(d == 0 ? 0 : Math.max(0, t[d - 1] - startTime), n, d, series.length, pilotTime);
+	}
+
+	/**
+	 * Returns the number of batch means {@code d <= n/2} that MSER truncates from {@code x[0..n-1]}; the first one on ties.
+	 */
+	static int truncation(double[] x, int n) {
+		double sum = 0;
+		double sumSquares = 0;
+		final double[] z = new double[n / 2 + 1];
+		for (int d = n - 1; d >= 0; d--) {
+			sum += x[d];
+			sumSquares += x[d] * x[d];
+			if (d <= n / 2) {
+				final int m = n - d;
+				z[d] = Math.max(0, sumSquares - sum * sum / m) / ((double) m * m);
+			}
+		}
+		int best = 0;
+		for (int d = 1; d < z.length; d++) {
+			if (z[d] < z[best]) best = d;
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the simulated time spent on the warm-up by a run of {@code numReps} replications, pilot replications included.
+	 */
+	public double getCost(int numReps) {
+		return pilotTime + numReps * warmup;
+	}
+
+	//getters
+	/**
+	 * Returns the length of the warm-up: the preliminary period, with the staffing and the demands of period 1.
+	 */
+	public double getWarmup() {
+		return warmup;
+	}
+
+	/**
+	 * Returns the number of batch means of the series (the shortest pilot replication).
+	 */
+	public int getNumBatches() {
+		return numBatches;
+	}
+
+	/**
+	 * Returns the number of batch means truncated by MSER.
+	 */
+	public int getTruncated() {
+		return truncated;
+	}
+
+	public int getNumPilotReps() {
+		return numPilotReps;
+	}
+
+	public double getPilotTime() {
+		return pilotTime;
+	}
+
+	/**
+	 * Returns true if MSER truncated half of the series, its limit: the warm-up may be longer.
+	 */
+	public boolean isAtLimit() {
+		return numBatches >= 4 && truncated == numBatches / 2;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("MSER-5 warm-up %.4f (%d of %d batch means truncated, %d pilot replications%s)", warmup, truncated, numBatches, numPilotReps,
+				isAtLimit() ? "; at the limit of the rule: the pilot replications are too short" : "");
+	}
+}
@@ -0,0 +1,51 @@
+package mcms.main;
+
+import mcms.input.RouteTable;
+import umontreal.iro.lecuyer.contactcenters.queue.DequeueEvent;
+import umontreal.iro.lecuyer.contactcenters.queue.WaitingQueue;
+import umontreal.iro.lecuyer.contactcenters.queue.WaitingQueueListener;
+
+/**
+ * <h1> Index of Non-Empty Waiting Queues </h1>
+ *  <p>
+ *  Keeps, for each agent group {@code i}, a bitset over the positions of its group-to-type priority list.
+ *  Bit {@code t} of group {@code i} is set if the waiting queue of type {@code groupType[groupStart[i] + t]} is not empty
+ *  (there is one waiting queue per contact type).
+ *  The bitsets are updated by listening to the waiting queues on enqueue and dequeue.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-03-18
+ */
+class NonEmptyQueueIndex extends PriorityIndex implements WaitingQueueListener {
+	/**
+	 * Constructor.
+	 *
+	 * @param routes	The routes; their group rows are the group-to-type priority lists
+	 */
+	NonEmptyQueueIndex(RouteTable routes) {
+		super(routes.getGroupStart(), routes.getGroupType(), routes.getNumContacts());
+	}
+
+	/**
+	 * Re-reads the size of the queue and updates the bitsets if the queue switched state.
+	 *
+	 * @param	queue	A waiting queue
+	 */
+	void update(WaitingQueue queue) {
+		set(queue.getId(), !queue.isEmpty());
+	}
+
+	public void enqueued(DequeueEvent ev) {
+		update(ev.getWaitingQueue());
+	}
+
+	public void dequeued(DequeueEvent ev) {
+		update(ev.getWaitingQueue());
+	}
+
+	public void init(WaitingQueue queue) {
+		update(queue);
+	}
+}
@@ -0,0 +1,139 @@
+package mcms.main;
+
+/**
+ * <h1> Paired Comparison of Two Configurations </h1>
+ *  <p>
+ *  Estimates the difference in EW and SL between two models, e.g., two staffing plans of the same instance.
+ *  Both models simulate the same replications, and replication {@code r} of each one uses substream {@code r} of its streams
+ *  (see {@link SimRunner}). When both models are built from the same package seed (see {@link ModelBuilder#setSeed(long[])}
+ *  and {@link ModelBuilder#buildVariant}), they have the same arrival streams and the same service-time stream per route,
+ *  so a replication sees the same arrivals and service times in both (common random numbers).
+ * 	</p>
+ *  <p>
+ *  The confidence intervals are computed over the differences of the paired replications (or of the paired antithetic pairs),
+ *  whose variance is much smaller than the sum of the variances of two independent estimates when the models react alike to the same randomness.
+ *  Models with different routes only share the streams of the routes with the same rank. The CTMC engine draws all its transitions
+ *  from one stream, so its replications lose the synchronization as soon as the two models differ: use the KERNEL or CONTACT_CENTERS engine.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class PairedComparison {
+	private final RunningStatistic diffEW = new RunningStatistic(); // EW(A) - EW(B) per observation
+	private final RunningStatistic diffSL = new RunningStatistic(); // SL(A) - SL(B) per observation
+	private final double ewA;
+	private final double ewB;
+	private final double slA;
+	private final double slB;
+	private final int numReps;
+
+	private PairedComparison(SimRunner a, SimRunner b, int numReps) {
+		this.numReps = numReps;
+		this.ewA = a.getRepEW().getMean();
+		this.ewB = b.getRepEW().getMean();
+		this.slA = a.getRepSL().getMean();
+		this.slB = b.getRepSL().getMean();
+		final double[] ewRepA = a.getReplicationEW();
+		final double[] ewRepB = b.getReplicationEW();
+		final double[] slRepA = a.getReplicationSL();
+		final double[] slRepB = b.getReplicationSL();
+		if (ewRepA == null || ewRepB == null) throw new IllegalStateException("The models did not keep their replications (see SimRunner#keepReplications)");
+		final int step = a.isAntithetic() ? 2 : 1; // An antithetic pair is one observation
+		for (int r = 0; r < numReps; r += step) {
+			double dEW = 0;
+			double dSL = 0;
+			for (int j = r; j < r + step; j++) {
+				dEW += ewRepA[j] - ewRepB[j];
+				dSL += slRepA[j] - slRepB[j];
+			}
+			diffEW.add(dEW / step);
+			diffSL.add(dSL / step);
+		}
+	}
+
+	/**
+	 * Simulates the same replications of two models and compares them.
+	 *
+	 * @param a				First model (A)
+	 * @param b				Second model (B), built from the same package seed as A
+	 * @param numReps		Number of replications of each model
+	 * @param numPeriods	Number of simulation periods
+	 * @param numThreads	Number of worker threads of each model
+	 * @return				The differences A - B
+	 */
+	public static PairedComparison compare(SimRunner a, SimRunner b, int numReps, int numPeriods, int numThreads) {
+		if (a.isAntithetic() != b.isAntithetic()) throw new IllegalArgumentException("Both models must use antithetic replications, or neither");
+		a.keepReplications();
+		b.keepReplications();
+		a.simulate(numReps, numPeriods, numThreads);
+		b.simulate(numReps, numPeriods, numThreads);
+		return new PairedComparison(a, b, numReps);
+	}
+
+	/**
+	 * Compares two models that already simulated the same {@code numReps} replications, e.g., in lockstep (see {@link PolicyEvaluator}),
+	 * and kept them (see {@link SimRunner#keepReplications()}).
+	 */
+	static PairedComparison of(SimRunner a, SimRunner b, int numReps) {
+		if (a.isAntithetic() != b.isAntithetic()) throw new IllegalArgumentException("Both models must use antithetic replications, or neither");
+		return new PairedComparison(a, b, numReps);
+	}
+
+	/**
+	 * Compares two staffing plans of an instance, with the simulation settings, the seed and the antithetic option of the builder.
+	 *
+	 * @param base			Builder of the instance
+	 * @param agentsA		Number of agents in each group, plan A
+	 * @param agentsB		Number of agents in each group, plan B
+	 * @param numThreads	Number of worker threads of each model
+	 * @return				The differences A - B
+	 */
+	public static PairedComparison compareStaffing(ModelBuilder base, int[] agentsA, int[] agentsB, int numThreads) {
+		SimRunner a = base.buildVariant(agentsA, 1, base.acceptableWaitTime, false);
+		SimRunner b = base.buildVariant(agentsB, 1, base.acceptableWaitTime, false);
+		return compare(a, b, base.numReps, base.numPeriods, numThreads);
+	}
+
+	//getters
+	public int getNumReps() {
+		return numReps;
+	}
+
+	public double getEWA() {
+		return ewA;
+	}
+
+	public double getEWB() {
+		return ewB;
+	}
+
+	public double getSLA() {
+		return slA;
+	}
+
+	public double getSLB() {
+		return slB;
+	}
+
+	/**
+	 * Returns the differences EW(A) - EW(B) of the paired replications, or of the paired antithetic pairs.
+	 */
+	public RunningStatistic getDiffEW() {
+		return diffEW;
+	}
+
+	/**
+	 * Returns the differences SL(A) - SL(B) of the paired replications, or of the paired antithetic pairs.
+	 */
+	public RunningStatistic getDiffSL() {
+		return diffSL;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("EW: A %.6f, B %.6f, A - B %.6f +/- %.6f (95%%)%nSL: A %.6f, B %.6f, A - B %.6f +/- %.6f (95%%)",
+				ewA, ewB, diffEW.getMean(), diffEW.halfWidth(0.95), slA, slB, diffSL.getMean(), diffSL.halfWidth(0.95));
+	}
+}
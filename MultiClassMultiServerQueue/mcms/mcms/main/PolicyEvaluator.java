@@ -0,0 +1,144 @@
+package mcms.main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <h1> Evaluation of Routing Policies </h1>
+ *  <p>
+ *  Simulates one instance under several routing policies (see {@link RoutingPolicy}) and compares each one with the first.
+ *  The models run in lockstep (see {@link SimRunner#simulateLockstep}): the arrivals of a replication are generated once and replayed
+ *  under every policy, and every model draws the service time of a route from the same stream, so the policies see the same
+ *  randomness and the paired differences have a small variance. The simulation settings, the seed and the antithetic option
+ *  come from the {@link ModelBuilder}; the models use the KERNEL engine.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class PolicyEvaluator {
+	/**
+	 * Simulation results of a routing policy.
+	 */
+	public static class Evaluation {
+		private final String name;
+		private final double ew;
+		private final double ewHalfWidth;
+		private final double sl;
+		private final double slHalfWidth;
+		private final PairedComparison versusFirst;
+
+		Evaluation(String name, SimRunner model, PairedComparison versusFirst) {
+			this.name = name;
+			this.ew = model.getRepEW().getMean();
+			this.ewHalfWidth = model.getRepEW().halfWidth(0.95);
+			this.sl = model.getRepSL().getMean();
+			this.slHalfWidth = model.getRepSL().halfWidth(0.95);
+			this.versusFirst = versusFirst;
+		}
+
+		//getters
+		public String getName() {
+			return name;
+		}
+
+		public double getEW() {
+			return ew;
+		}
+
+		public double getEWHalfWidth() {
+			return ewHalfWidth;
+		}
+
+		public double getSL() {
+			return sl;
+		}
+
+		public double getSLHalfWidth() {
+			return slHalfWidth;
+		}
+
+		/**
+		 * Returns the paired differences between this policy (A) and the first policy (B); null for the first policy.
+		 */
+		public PairedComparison getVersusFirst() {
+			return versusFirst;
+		}
+
+		@Override
+		public String toString() {
+			String s = String.format("%-8s EW %.6f +/- %.6f, SL %.6f +/- %.6f", name, ew, ewHalfWidth, sl, slHalfWidth);
+			if (versusFirst != null) {
+				s += String.format(", vs first: EW %+.6f +/- %.6f, SL %+.6f +/- %.6f", versusFirst.getDiffEW().getMean(), versusFirst.getDiffEW().halfWidth(0.95),
+						versusFirst.getDiffSL().getMean(), versusFirst.getDiffSL().halfWidth(0.95));
+			}
+			return s;
+		}
+	}
+
+	private final ModelBuilder base;
+	private final List<RoutingPolicy> policies;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param base		Builder of the instance and the simulation settings (its engine is not used)
+	 * @param policies	Routing policies; the first one is the reference of the comparisons
+	 */
+	public PolicyEvaluator(ModelBuilder base, List<RoutingPolicy> policies) {
+		if (policies.isEmpty()) throw new IllegalArgumentException("At least one routing policy is needed");
+		this.base = base;
+		this.policies = new ArrayList<RoutingPolicy>(policies);
+	}
+
+	/**
+	 * Simulates the replications of the builder under every policy.
+	 *
+	 * @param numThreads	Number of policies simulated at the same time
+	 * @return				The results, in the order of the policies
+	 */
+	public List<Evaluation> evaluate(int numThreads) {
+		SimRunner[] models = new SimRunner[policies.size()];
+		for (int p = 0; p < models.length; p++) {
+			models[p] = base.buildWithPolicy(policies.get(p));
+			if (models.length > 1) models[p].keepReplications(); // For the paired comparisons with the first policy
+		}
+		SimRunner.simulateLockstep(models, base.numReps, base.numPeriods, numThreads);
+		List<Evaluation> results = new ArrayList<Evaluation>();
+		for (int p = 0; p < models.length; p++) {
+			results.add(new Evaluation(policies.get(p).getName(), models[p], p == 0 ? null : PairedComparison.of(models[p], models[0], base.numReps)));
+		}
+		return results;
+	}
+
+	/**
+	 * Arguments: inputPath exNum numContactTypes numGroups numReps [costs] [numThreads] <br>
+	 * Compares FSF, longest-queue-first and the c-mu rule; {@code costs} is the comma-separated waiting cost of each contact type (default 1). <br>
+	 * Example: {@code ./mcms/resources/test/input/ 2 2 2 10 1,2}
+	 */
+	public static void main(String[] args) {
+		if (args.length < 5) {
+			System.out.println("Arguments: inputPath exNum numContactTypes numGroups numReps [costs] [numThreads]");
+			return;
+		}
+		final String inputPath = args[0];
+		final int exNum = Integer.parseInt(args[1]);
+		final int numContactTypes = Integer.parseInt(args[2]);
+		final int numGroups = Integer.parseInt(args[3]);
+		final int numReps = Integer.parseInt(args[4]);
+		double[] costs = new double[numContactTypes];
+		Arrays.fill(costs, 1);
+		if (args.length > 5) costs = Arrays.stream(args[5].split(",")).mapToDouble(Double::parseDouble).toArray();
+		final int numThreads = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+		final int numPeriods = 12;
+		final double periodDuration = 30 * 24;
+
+		ModelBuilder builder = new ModelBuilder(exNum, numContactTypes, numGroups, numReps, numPeriods, periodDuration, numReps * numPeriods * periodDuration, 0, true, 20, 6, inputPath, "", exNum + "agents.dat", exNum + "demands.dat", exNum + "routes.dat");
+		PolicyEvaluator evaluator = new PolicyEvaluator(builder, Arrays.asList(RoutingPolicy.fastestServerFirst(), RoutingPolicy.longestQueueFirst(), RoutingPolicy.cMu(costs)));
+		long start = System.nanoTime();
+		for (Evaluation e : evaluator.evaluate(numThreads)) System.out.println(e);
+		System.out.printf("Evaluated %d policies in %.2f s%n", evaluator.policies.size(), (System.nanoTime() - start) / 1e9);
+	}
+}
@@ -0,0 +1,105 @@
+package mcms.main;
+
+import java.util.Arrays;
+import mcms.input.RouteTable;
+
+/**
+ * <h1> Dispatcher with Static Priority Lists </h1>
+ *  <p>
+ *  Routes with two sets of priority lists: each contact type ranks the routes to its groups, and each agent group ranks the routes from
+ *  the types it serves. The first route of a list whose group has a free agent (resp. whose queue is not empty) is taken,
+ *  found with the bitset indexes of the FSF router ({@link PriorityIndex}). With the lists of the route table, this is Fastest-Server-First.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+class PriorityDispatcher implements RoutingPolicy.Dispatcher {
+	private final int numContacts;
+	private final int numGroups;
+	private final int[] typeStart;
+	private final int[] groupStart;
+	private final int[] typeOrder; // Routes of each type, in priority order, aligned with typeStart
+	private final int[] groupOrder; // Routes of each group, in priority order, aligned with groupStart
+	private final PriorityIndex freeGroups; // Contact types over their groups with free agents
+	private final PriorityIndex nonEmptyQueues; // Agent groups over their non-empty queues
+
+	/**
+	 * Constructor.
+	 *
+	 * @param routes		The routes
+	 * @param typeOrder		Routes of each type in priority order: the list of type {@code k} is {@code typeOrder[typeStart[k] .. typeStart[k+1])}
+	 * @param groupOrder	Routes of each group in priority order: the list of group {@code i} is {@code groupOrder[groupStart[i] .. groupStart[i+1])}
+	 */
+	PriorityDispatcher(RouteTable routes, int[] typeOrder, int[] groupOrder) {
+		this.numContacts = routes.getNumContacts();
+		this.numGroups = routes.getNumGroups();
+		this.typeStart = routes.getTypeStart();
+		this.groupStart = routes.getGroupStart();
+		this.typeOrder = typeOrder;
+		this.groupOrder = groupOrder;
+		final int[] typeGroup = routes.getTypeGroup();
+		final int[] routeType = routeTypes(routes);
+		int[] memberGroup = new int[typeOrder.length];
+		int[] memberType = new int[groupOrder.length];
+		for (int e = 0; e < typeOrder.length; e++) memberGroup[e] = typeGroup[typeOrder[e]];
+		for (int e = 0; e < groupOrder.length; e++) memberType[e] = routeType[groupOrder[e]];
+		this.freeGroups = new PriorityIndex(typeStart, memberGroup, numGroups);
+		this.nonEmptyQueues = new PriorityIndex(groupStart, memberType, numContacts);
+	}
+
+	/**
+	 * Returns a dispatcher whose lists are sorted by score, smallest first; ties keep the FSF order.
+	 *
+	 * @param routes		The routes
+	 * @param groupScore	[route] score of the group of the route in the list of its type
+	 * @param typeScore		[route] score of the type of the route in the list of its group
+	 */
+	static PriorityDispatcher byScore(RouteTable routes, double[] groupScore, double[] typeScore) {
+		final int[] typeStart = routes.getTypeStart();
+		final int[] groupStart = routes.getGroupStart();
+		final int[] groupRoute = routes.getGroupRoute();
+		Integer[] typeOrder = new Integer[groupRoute.length];
+		Integer[] groupOrder = new Integer[groupRoute.length];
+		for (int r = 0; r < typeOrder.length; r++) typeOrder[r] = r;
+		for (int e = 0; e < groupOrder.length; e++) groupOrder[e] = groupRoute[e];
+		// The sort is stable, and the lists start in FSF order
+		for (int k = 0; k < routes.getNumContacts(); k++) Arrays.sort(typeOrder, typeStart[k], typeStart[k + 1], (u, v) -> Double.compare(groupScore[u], groupScore[v]));
+		for (int i = 0; i < routes.getNumGroups(); i++) Arrays.sort(groupOrder, groupStart[i], groupStart[i + 1], (u, v) -> Double.compare(typeScore[u], typeScore[v]));
+		return new PriorityDispatcher(routes, Arrays.stream(typeOrder).mapToInt(Integer::intValue).toArray(), Arrays.stream(groupOrder).mapToInt(Integer::intValue).toArray());
+	}
+
+	/**
+	 * Returns the contact type of each route.
+	 */
+	static int[] routeTypes(RouteTable routes) {
+		final int[] typeStart = routes.getTypeStart();
+		int[] routeType = new int[routes.getNumRoutes()];
+		for (int k = 0; k < routes.getNumContacts(); k++) Arrays.fill(routeType, typeStart[k], typeStart[k + 1], k);
+		return routeType;
+	}
+
+	public void reset() {
+		for (int i = 0; i < numGroups; i++) freeGroups.set(i, false);
+		for (int k = 0; k < numContacts; k++) nonEmptyQueues.set(k, false);
+	}
+
+	public void groupFree(int i, boolean free) {
+		freeGroups.set(i, free);
+	}
+
+	public void queueLength(int k, int length) {
+		nonEmptyQueues.set(k, length > 0);
+	}
+
+	public int routeForContact(int k) {
+		final int g = freeGroups.first(k);
+		return g < 0 ? -1 : typeOrder[typeStart[k] + g];
+	}
+
+	public int routeForAgent(int i) {
+		final int t = nonEmptyQueues.first(i);
+		return t < 0 ? -1 : groupOrder[groupStart[i] + t];
+	}
+}
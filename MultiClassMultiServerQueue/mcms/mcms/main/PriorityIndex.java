@@ -0,0 +1,88 @@
+package mcms.main;
+
+/**
+ * <h1> Bitset Index over Priority Lists </h1>
+ *  <p>
+ *  Keeps, for each owner {@code o}, a bitset over the positions of its priority list.
+ *  Bit {@code p} of owner {@code o} is set if the member at position {@code p} of the list is available.
+ *  The bitsets only change when a member switches between available and unavailable,
+ *  so the first available member of an owner's list is found with a few word operations
+ *  instead of a scan of the whole list.
+ * 	</p>
+ *  <p>
+ *  The FSF router uses two such indexes: contact types over their groups with free agents ({@link FreeGroupIndex}),
+ *  and agent groups over their non-empty waiting queues ({@link NonEmptyQueueIndex}).
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-03-18
+ */
+class PriorityIndex {
+	private long[][] mask; // [owner][word] bitset over the positions of the owner's priority list
+	private int[][] memberOwners; // [member][j] the owners whose priority list contains the member
+	private int[][] memberPos; // [member][j] the position of the member in the priority list of owner memberOwners[member][j]
+	private boolean[] available; // [member] true if the member is available
+
+	/**
+	 * Constructor.
+	 *
+	 * @param start			[numOwners+1] The priority list of owner {@code o} is {@code member[start[o] .. start[o+1])}, in priority order
+	 * @param member		The members of all priority lists
+	 * @param numMembers	Number of members
+	 */
+	PriorityIndex(int[] start, int[] member, int numMembers) {
+		final int numOwners = start.length - 1;
+		mask = new long[numOwners][];
+		int[] count = new int[numMembers];
+		for (int o = 0; o < numOwners; o++) {
+			mask[o] = new long[(start[o + 1] - start[o] + 63) >>> 6];
+			for (int e = start[o]; e < start[o + 1]; e++) count[member[e]]++;
+		}
+		memberOwners = new int[numMembers][];
+		memberPos = new int[numMembers][];
+		for (int m = 0; m < numMembers; m++) {
+			memberOwners[m] = new int[count[m]];
+			memberPos[m] = new int[count[m]];
+			count[m] = 0;
+		}
+		for (int o = 0; o < numOwners; o++) {
+			for (int e = start[o]; e < start[o + 1]; e++) {
+				final int m = member[e];
+				memberOwners[m][count[m]] = o;
+				memberPos[m][count[m]++] = e - start[o];
+			}
+		}
+		available = new boolean[numMembers];
+	}
+
+	/**
+	 * Returns the first position in the priority list of owner {@code o} whose member is available.
+	 *
+	 * @param	o		The owner
+	 * @return	int		The position in the priority list, or -1 if no member of the list is available
+	 */
+	int first(int o) {
+		final long[] m = mask[o];
+		for (int w = 0; w < m.length; w++) {
+			if (m[w] != 0) return (w << 6) + Long.numberOfTrailingZeros(m[w]);
+		}
+		return -1;
+	}
+
+	/**
+	 * Sets the availability of member {@code m} and updates the bitsets if the member switched state.
+	 *
+	 * @param	m			The member
+	 * @param	isAvailable	True if the member is available
+	 */
+	void set(int m, boolean isAvailable) {
+		if (isAvailable == available[m]) return;
+		available[m] = isAvailable;
+		for (int j = 0; j < memberOwners[m].length; j++) {
+			final int p = memberPos[m][j];
+			if (isAvailable) mask[memberOwners[m][j]][p >>> 6] |= 1L << p;
+			else mask[memberOwners[m][j]][p >>> 6] &= ~(1L << p);
+		}
+	}
+}
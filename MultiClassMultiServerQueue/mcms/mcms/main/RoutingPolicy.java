@@ -0,0 +1,148 @@
+package mcms.main;
+
+import mcms.input.RouteTable;
+
+/**
+ * <h1> Routing Policy </h1>
+ *  <p>
+ *  Makes the two routing decisions of the KERNEL engine ({@link FSFKernel}): the free agent group that serves an arriving contact,
+ *  and the waiting contact type that a freed agent serves. Each model gets its own {@link Dispatcher}, which the kernel keeps informed of
+ *  the groups with free agents and of the queue lengths. Decisions are given as routes, i.e., indexes of the {@link RouteTable}.
+ * 	</p>
+ *  <p>
+ *  Policies:
+ *  <ul>
+ *  <li> {@link #fastestServerFirst()}: the priority lists of the route table, sorted by mean service time (the default). </li>
+ *  <li> {@link #priorities}: static priority lists given by a score per route, e.g., derived from an LP. </li>
+ *  <li> {@link #cMu}: a free agent takes the waiting type with the largest cost times service rate; arriving contacts go to the fastest free group. </li>
+ *  <li> {@link #longestQueueFirst()}: a free agent takes the longest eligible queue; arriving contacts go to the fastest free group. </li>
+ *  </ul>
+ *  Several policies are compared on the same arrivals and service times by {@link PolicyEvaluator}.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public interface RoutingPolicy {
+	/**
+	 * Routing decisions of one model; not thread-safe.
+	 * Initially, and after {@link #reset()}, no group has a free agent and every queue is empty.
+	 */
+	interface Dispatcher {
+		/**
+		 * Forgets the state, at the start of a replication.
+		 */
+		void reset();
+
+		/**
+		 * Group {@code i} switched between having a free agent and having none.
+		 */
+		void groupFree(int i, boolean free);
+
+		/**
+		 * The queue of contact type {@code k} has a new length.
+		 */
+		void queueLength(int k, int length);
+
+		/**
+		 * Returns the route of an arriving contact of type {@code k} to a group with a free agent, or -1 to queue the contact.
+		 */
+		int routeForContact(int k);
+
+		/**
+		 * Returns the route of a waiting contact to a free agent of group {@code i}, or -1 to leave the agent idle.
+		 */
+		int routeForAgent(int i);
+	}
+
+	/**
+	 * Returns the name of the policy, for reports.
+	 */
+	String getName();
+
+	/**
+	 * Returns a new dispatcher of the policy, for one model.
+	 *
+	 * @param routes	The routes of the model
+	 */
+	Dispatcher newDispatcher(RouteTable routes);
+
+	/**
+	 * Returns the Fastest-Server-First policy: the priority lists of the route table.
+	 */
+	static RoutingPolicy fastestServerFirst() {
+		return new RoutingPolicy() {
+			public String getName() {
+				return "FSF";
+			}
+
+			public Dispatcher newDispatcher(RouteTable routes) {
+				final int[] typeOrder = new int[routes.getNumRoutes()];
+				for (int r = 0; r < typeOrder.length; r++) typeOrder[r] = r;
+				return new PriorityDispatcher(routes, typeOrder, routes.getGroupRoute());
+			}
+		};
+	}
+
+	/**
+	 * Returns a policy with static priority lists: an arriving contact goes to the free group of its route with the smallest {@code groupScore},
+	 * and a free agent takes the waiting type of its route with the smallest {@code typeScore}. Ties keep the FSF order.
+	 *
+	 * @param name			Name of the policy
+	 * @param groupScore	[route] score of the group of the route for the contact type
+	 * @param typeScore		[route] score of the contact type of the route for the group
+	 */
+	static RoutingPolicy priorities(String name, double[] groupScore, double[] typeScore) {
+		return new RoutingPolicy() {
+			public String getName() {
+				return name;
+			}
+
+			public Dispatcher newDispatcher(RouteTable routes) {
+				if (groupScore.length != routes.getNumRoutes() || typeScore.length != routes.getNumRoutes()) throw new IllegalArgumentException("One score per route is needed");
+				return PriorityDispatcher.byScore(routes, groupScore, typeScore);
+			}
+		};
+	}
+
+	/**
+	 * Returns the c-mu rule: a free agent of group {@code i} takes the waiting type {@code k} with the largest {@code cost[k] / tau[k][i]};
+	 * an arriving contact goes to the fastest free group.
+	 *
+	 * @param cost	[type] cost of waiting of each contact type
+	 */
+	static RoutingPolicy cMu(double[] cost) {
+		return new RoutingPolicy() {
+			public String getName() {
+				return "c-mu";
+			}
+
+			public Dispatcher newDispatcher(RouteTable routes) {
+				if (cost.length != routes.getNumContacts()) throw new IllegalArgumentException("One cost per contact type is needed, found " + cost.length);
+				final int[] typeStart = routes.getTypeStart();
+				final double[] tau = routes.getTau();
+				double[] typeScore = new double[tau.length];
+				for (int k = 0; k < cost.length; k++)
+					for (int r = typeStart[k]; r < typeStart[k + 1]; r++) typeScore[r] = -cost[k] / tau[r];
+				return PriorityDispatcher.byScore(routes, tau, typeScore);
+			}
+		};
+	}
+
+	/**
+	 * Returns the longest-queue-first policy: a free agent takes the longest queue among the types it serves (ties keep the FSF order);
+	 * an arriving contact goes to the fastest free group. A decision scans the priority list of the group.
+	 */
+	static RoutingPolicy longestQueueFirst() {
+		return new RoutingPolicy() {
+			public String getName() {
+				return "LQF";
+			}
+
+			public Dispatcher newDispatcher(RouteTable routes) {
+				return new LongestQueueDispatcher(routes);
+			}
+		};
+	}
+}
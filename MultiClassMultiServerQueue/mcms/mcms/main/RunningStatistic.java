@@ -0,0 +1,92 @@
+package mcms.main;
+
+import umontreal.iro.lecuyer.probdist.StudentDist;
+
+/**
+ * <h1> Constant-Memory Mean and Variance </h1>
+ *  <p>
+ *  Accumulates observations (e.g., the EW of each replication) with Welford's update, in constant memory:
+ *  the mean and the sum of squared deviations are updated at each observation, which is numerically stable
+ *  even after millions of observations. Two statistics can be merged (Chan et al.), e.g., the statistics of two batches.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class RunningStatistic {
+	private long numObs;
+	private double mean;
+	private double sumSquares; // Sum of the squared deviations from the mean
+
+	/**
+	 * Removes all observations.
+	 */
+	public void init() {
+		numObs = 0;
+		mean = 0;
+		sumSquares = 0;
+	}
+
+	/**
+	 * Adds an observation.
+	 *
+	 * @param x		The observation
+	 */
+	public void add(double x) {
+		numObs++;
+		final double delta = x - mean;
+		mean += delta / numObs;
+		sumSquares += delta * (x - mean);
+	}
+
+	/**
+	 * Adds all observations of another statistic.
+	 *
+	 * @param other		The other statistic
+	 */
+	public void merge(RunningStatistic other) {
+		if (other.numObs == 0) return;
+		final long n = numObs + other.numObs;
+		final double delta = other.mean - mean;
+		sumSquares += other.sumSquares + delta * delta * ((double) numObs * other.numObs / n);
+		mean += delta * other.numObs / n;
+		numObs = n;
+	}
+
+	/**
+	 * Returns the half-width of the confidence interval on the mean, based on the Student distribution.
+	 *
+	 * @param	level	Confidence level, e.g., 0.95
+	 * @return	double	The half-width, or infinity with fewer than two observations
+	 */
+	public double halfWidth(double level) {
+		if (numObs < 2) return Double.POSITIVE_INFINITY;
+		return StudentDist.inverseF((int) Math.min(numObs - 1, Integer.MAX_VALUE), 0.5 + level / 2) * Math.sqrt(getVariance() / numObs);
+	}
+
+	/**
+	 * Returns the half-width of the confidence interval relative to the mean, i.e., the relative precision of the mean.
+	 *
+	 * @param	level	Confidence level, e.g., 0.95
+	 * @return	double	The relative half-width; 0 if the half-width is 0 (e.g., all observations equal, even 0)
+	 */
+	public double relativeHalfWidth(double level) {
+		final double hw = halfWidth(level);
+		if (hw == 0) return 0;
+		return hw / Math.abs(mean);
+	}
+
+	//getters
+	public long getNumObs() {
+		return numObs;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public double getVariance() {
+		return numObs < 2 ? Double.NaN : sumSquares / (numObs - 1);
+	}
+}
@@ -0,0 +1,301 @@
+package mcms.main;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import mcms.contactcenters.WaitTimeHistogram;
+
+/**
+ * <h1> Scenario Sweep </h1>
+ *  <p>
+ *  Simulates every scenario of a grid in one JVM: demand multipliers &times; headcount deltas &times; acceptable waiting times (AWT).
+ *  A demand multiplier scales the arrival rate of every contact type; a headcount delta is added to the number of agents of each group
+ *  (a vector with one delta per group; the staffing is at least 0). The base instance is read once by a {@link ModelBuilder},
+ *  which also gives the simulation settings, and every scenario starts from the same seed (common random numbers).
+ * 	</p>
+ *  <p>
+ *  The scenarios that differ only by their AWT share one simulation: the service level for each AWT comes from the
+ *  waiting-time histograms (see {@link WaitTimeHistogram}). The simulations run on a fork-join pool, one replication loop per task,
+ *  and the result file gets one row per scenario, in scenario order, as soon as the scenario and all the previous ones are done.
+ * 	</p>
+ *  <p>
+ *  With the KERNEL engine, the scenarios with the same demand multiplier also share their arrivals: the arrivals of every replication
+ *  are generated once, by the first of its simulations, and replayed by the others (see {@link ArrivalBank}; the results are identical).
+ *  They are dropped when the last simulation of the multiplier is done. They are kept in memory up to the limit of
+ *  {@link ModelBuilder#setArrivalMemoryLimit} for the banks alive at once, and spilled to files beyond it or if {@link ModelBuilder#setArrivalSpillPath} is set.
+ * 	</p>
+ *  <p>
+ *  With {@link #setPruning}, every row also gets the analytic estimates of {@link ErlangScreen} (columns screen_EW and screen_SL,
+ *  otherwise NaN), and the simulations whose estimates are clearly outside a range of service levels are skipped: their simulated
+ *  columns are NaN.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class ScenarioSweep {
+	private final ModelBuilder base;
+	private final double[] demandMultipliers;
+	private final int[][] headcountDeltas; // [delta][group]
+	private final double[] awts;
+	private boolean pruning = false;
+	private double minSL; // Pruning range of the estimated service level
+	private double maxSL;
+	private final AtomicInteger numPruned = new AtomicInteger();
+
+	// Arrivals of each demand multiplier, shared by its headcount deltas (KERNEL engine)
+	private SharedBank[] banks;
+	private int maxBanks; // Number of banks that can be alive at once
+
+	// Rows of the finished simulations, written in order
+	private String[] rows;
+	private int numWritten;
+	private BufferedWriter out;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param base					Builder of the base instance and the simulation settings
+	 * @param demandMultipliers		Factors applied to the demands
+	 * @param headcountDeltas		Vectors of agents added to each group (negative: removed)
+	 * @param awts					Acceptable waiting times
+	 */
+	public ScenarioSweep(ModelBuilder base, double[] demandMultipliers, int[][] headcountDeltas, double[] awts) {
+		for (int[] delta : headcountDeltas) {
+			if (delta.length != base.numGroups) throw new IllegalArgumentException("A headcount delta needs one value per group, found " + Arrays.toString(delta));
+		}
+		this.base = base;
+		this.demandMultipliers = demandMultipliers;
+		this.headcountDeltas = headcountDeltas;
+		this.awts = awts;
+	}
+
+	/**
+	 * Skips the simulations of the scenarios that {@link ErlangScreen} places clearly outside {@code [minSL, maxSL]}:
+	 * unstable, or with an estimated SL below {@code minSL} at the largest AWT or above {@code maxSL} at the smallest AWT.
+	 * The estimate is approximate, so the range should have a margin around the service levels of interest.
+	 *
+	 * @param minSL		Lowest service level of interest
+	 * @param maxSL		Highest service level of interest
+	 */
+	public void setPruning(double minSL, double maxSL) {
+		if (minSL > maxSL) throw new IllegalArgumentException("Empty range of service levels: [" + minSL + ", " + maxSL + "]");
+		this.pruning = true;
+		this.minSL = minSL;
+		this.maxSL = maxSL;
+	}
+
+	/**
+	 * Returns the number of simulations skipped by the pruning of the last run; each one covers all AWTs.
+	 */
+	public int getNumPruned() {
+		return numPruned.get();
+	}
+
+	/**
+	 * Returns the number of scenarios of the grid.
+	 */
+	public int getNumScenarios() {
+		return demandMultipliers.length * headcountDeltas.length * awts.length;
+	}
+
+	/**
+	 * Simulates all scenarios and writes their results.
+	 *
+	 * @param resultsFile	Path and name of the result file (tab-separated, one row per scenario)
+	 * @param numThreads	Number of scenarios simulated at the same time
+	 */
+	public void run(String resultsFile, int numThreads) {
+		final int numSimulations = demandMultipliers.length * headcountDeltas.length;
+		rows = new String[numSimulations];
+		numWritten = 0;
+		numPruned.set(0);
+		banks = new SharedBank[demandMultipliers.length];
+		for (int d = 0; d < banks.length; d++) banks[d] = new SharedBank(headcountDeltas.length);
+		maxBanks = Math.min(demandMultipliers.length, Math.max(1, numThreads));
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(resultsFile))) {
+			out = writer;
+			out.write("scenario\tdemand_multiplier\theadcount_delta\tawt\tagents\tarrived_per_rep\tEW\tEW_hw95\tSL\tp50\tp90\tp99\tscreen_EW\tscreen_SL");
+			out.newLine();
+			pool.submit(() -> IntStream.range(0, numSimulations).parallel().forEach(this::simulate)).get();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write the results to " + resultsFile, e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while simulating the scenarios", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("A scenario failed", e.getCause());
+		}
+		finally {
+			pool.shutdownNow();
+			out = null;
+		}
+	}
+
+	/**
+	 * Simulates the scenarios of one demand multiplier and one headcount delta, for all AWTs.
+	 *
+	 * @param s		Index of the simulation: demand multiplier s / (number of deltas), headcount delta s % (number of deltas)
+	 */
+	private void simulate(int s) {
+		final int d = s / headcountDeltas.length;
+		final int h = s % headcountDeltas.length;
+		int[] agents = base.getBaseAgents();
+		int totalAgents = 0;
+		for (int i = 0; i < agents.length; i++) {
+			agents[i] = Math.max(0, agents[i] + headcountDeltas[h][i]);
+			totalAgents += agents[i];
+		}
+		final boolean replay = base.engine == SimRunner.Engine.KERNEL && headcountDeltas.length > 1;
+
+		// Analytic estimates, with pruning: skip the simulation if they are clearly outside the range of interest
+		ErlangScreen.Estimate[] screen = pruning ? base.screen(agents, demandMultipliers[d], awts) : null;
+		double lowestSL = 1; // At the smallest AWT
+		double highestSL = 0; // At the largest AWT
+		for (int a = 0; pruning && a < awts.length; a++) {
+			lowestSL = Math.min(lowestSL, screen[a].getSL());
+			highestSL = Math.max(highestSL, screen[a].getSL());
+		}
+		final boolean pruned = pruning && (!screen[0].isStable() || highestSL < minSL || lowestSL > maxSL);
+		SimRunner model = null;
+		if (pruned) {
+			numPruned.incrementAndGet();
+			if (replay) releaseBank(d);
+		}
+		else {
+			model = base.buildVariant(agents, demandMultipliers[d], awts[0], true);
+			if (replay) model.setArrivalBank(acquireBank(d, model));
+			try {
+				model.simulate(base.numReps, base.numPeriods);
+			}
+			finally {
+				if (replay) releaseBank(d);
+			}
+		}
+
+		WaitTimeHistogram waits = pruned ? null : model.getWaitTimeHistogram(-1);
+		StringBuilder row = new StringBuilder();
+		for (int a = 0; a < awts.length; a++) {
+			row.append(s * awts.length + a).append('\t').append(demandMultipliers[d]).append('\t');
+			for (int i = 0; i < headcountDeltas[h].length; i++) row.append(i == 0 ? "" : ",").append(headcountDeltas[h][i]);
+			row.append('\t').append(awts[a]).append('\t').append(totalAgents);
+			if (pruned) {
+				row.append("\tNaN\tNaN\tNaN\tNaN\tNaN\tNaN\tNaN");
+			}
+			else {
+				row.append('\t').append((double) model.getTotNumArrived() / model.getNumReps());
+				row.append('\t').append(model.getRepEW().getMean()).append('\t').append(model.getRepEW().halfWidth(0.95));
+				row.append('\t').append(waits.serviceLevel(awts[a]));
+				row.append('\t').append(waits.quantile(0.5)).append('\t').append(waits.quantile(0.9)).append('\t').append(waits.quantile(0.99));
+			}
+			if (pruning) row.append('\t').append(screen[a].getEW()).append('\t').append(screen[a].getSL());
+			else row.append("\tNaN\tNaN");
+			if (a < awts.length - 1) row.append(System.lineSeparator());
+		}
+		write(s, row.toString());
+	}
+
+	/**
+	 * Arrivals of one demand multiplier and the number of its simulations not done yet. Each multiplier has its own lock:
+	 * while the first simulation of a multiplier generates the arrivals, only the other simulations of that multiplier wait.
+	 */
+	private static final class SharedBank {
+		private ArrivalBank bank;
+		private final AtomicInteger users;
+
+		SharedBank(int users) {
+			this.users = new AtomicInteger(users);
+		}
+	}
+
+	/**
+	 * Returns the arrivals of demand multiplier {@code d}, generated from {@code model} by the first simulation of the multiplier.
+	 */
+	private ArrivalBank acquireBank(int d, SimRunner model) {
+		SharedBank shared = banks[d];
+		synchronized (shared) {
+			if (shared.bank == null) shared.bank = base.newArrivalBank(model, demandMultipliers[d], maxBanks, base.exNum + "arrivals" + d);
+			return shared.bank;
+		}
+	}
+
+	/**
+	 * Drops the arrivals of demand multiplier {@code d} after its last simulation.
+	 */
+	private void releaseBank(int d) {
+		SharedBank shared = banks[d];
+		if (shared.users.decrementAndGet() > 0) return; // Not the last one: no wait for a generation in progress
+		synchronized (shared) {
+			if (shared.bank != null) shared.bank.close();
+			shared.bank = null;
+		}
+	}
+
+	/**
+	 * Stores the rows of simulation {@code s}, and writes all stored rows that follow the ones already written.
+	 */
+	private synchronized void write(int s, String row) {
+		rows[s] = row;
+		try {
+			while (numWritten < rows.length && rows[numWritten] != null) {
+				out.write(rows[numWritten]);
+				out.newLine();
+				rows[numWritten++] = null;
+			}
+			out.flush();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write the results of scenario " + s, e);
+		}
+	}
+
+	/**
+	 * Arguments: inputPath exNum numContactTypes numGroups numReps demandMultipliers headcountDeltas awts [numThreads] [resultsFile] [engine] [arrivalSpillPath] [slRange] <br>
+	 * The lists are comma-separated; a headcount delta is added to every group, e.g., {@code -2,-1,0,1,2}. <br>
+	 * {@code arrivalSpillPath} "-" keeps the arrivals in memory up to a quarter of the heap, then spills them to the temporary directory; {@code slRange} is {@code minSL,maxSL}: the range of service levels outside of which the simulations are pruned (see {@link #setPruning}). <br>
+	 * Example: {@code ./mcms/resources/test/input/ 2 2 2 10 0.9,1,1.1 -1,0,1 5,10,20}
+	 */
+	public static void main(String[] args) {
+		if (args.length < 8) {
+			System.out.println("Arguments: inputPath exNum numContactTypes numGroups numReps demandMultipliers headcountDeltas awts [numThreads] [resultsFile] [engine] [arrivalSpillPath] [slRange]");
+			return;
+		}
+		final String inputPath = args[0];
+		final int exNum = Integer.parseInt(args[1]);
+		final int numContactTypes = Integer.parseInt(args[2]);
+		final int numGroups = Integer.parseInt(args[3]);
+		final int numReps = Integer.parseInt(args[4]);
+		final double[] demandMultipliers = Arrays.stream(args[5].split(",")).mapToDouble(Double::parseDouble).toArray();
+		final int[] deltas = Arrays.stream(args[6].split(",")).mapToInt(Integer::parseInt).toArray();
+		final double[] awts = Arrays.stream(args[7].split(",")).mapToDouble(Double::parseDouble).toArray();
+		final String resultsFile = args.length > 9 ? args[9] : exNum + "FSF_Sweep.out";
+		final int numPeriods = 12;
+		final double periodDuration = 30 * 24;
+
+		int[][] headcountDeltas = new int[deltas.length][numGroups];
+		for (int h = 0; h < deltas.length; h++) Arrays.fill(headcountDeltas[h], deltas[h]);
+		ModelBuilder builder = new ModelBuilder(exNum, numContactTypes, numGroups, numReps, numPeriods, periodDuration, numReps * numPeriods * periodDuration, 0, true, awts[0], 6, inputPath, "", exNum + "agents.dat", exNum + "demands.dat", exNum + "routes.dat");
+		if (args.length > 10) builder.setEngine(SimRunner.Engine.valueOf(args[10]));
+		final int numThreads = args.length > 8 ? Integer.parseInt(args[8]) : builder.engine == SimRunner.Engine.CONTACT_CENTERS ? 1 : Runtime.getRuntime().availableProcessors(); // CONTACT_CENTERS is not yet checked in parallel
+		if (args.length > 11 && !args[11].equals("-")) builder.setArrivalSpillPath(args[11]); // "-": in memory, bounded
+
+		ScenarioSweep sweep = new ScenarioSweep(builder, demandMultipliers, headcountDeltas, awts);
+		if (args.length > 12) {
+			final double[] range = Arrays.stream(args[12].split(",")).mapToDouble(Double::parseDouble).toArray();
+			sweep.setPruning(range[0], range[1]);
+		}
+		long start = System.nanoTime();
+		sweep.run(resultsFile, numThreads);
+		System.out.printf("Simulated %d scenarios (%d pruned) in %.2f s, results in %s%n", sweep.getNumScenarios() - sweep.getNumPruned() * awts.length, sweep.getNumPruned() * awts.length, (System.nanoTime() - start) / 1e9, resultsFile);
+	}
+}
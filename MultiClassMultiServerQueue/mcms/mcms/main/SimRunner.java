@@ -1,19 +1,35 @@
 package mcms.main;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.stream.DoubleStream;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjIntConsumer;
 import java.util.stream.IntStream;
 import mcms.contactcenters.MCMSContactFactory;
+import mcms.contactcenters.MCMSContactPool;
 import mcms.contactcenters.MCMSMeasures;
+import mcms.contactcenters.MaxQueueLengthListener;
+import mcms.contactcenters.MCMSStatistics;
+import mcms.contactcenters.WaitSeries;
+import mcms.contactcenters.WaitTimeHistogram;
+import mcms.input.PeriodSchedule;
+import mcms.input.RouteTable;
+import mcms.output.ContactTrace;
+import mcms.output.ReplicationLog;
 import umontreal.iro.lecuyer.contactcenters.PeriodChangeEvent;
 import umontreal.iro.lecuyer.contactcenters.contact.PiecewiseConstantPoissonArrivalProcess;
 import umontreal.iro.lecuyer.contactcenters.queue.StandardWaitingQueue;
 import umontreal.iro.lecuyer.contactcenters.router.Router;
 import umontreal.iro.lecuyer.contactcenters.server.AgentGroup;
-import umontreal.iro.lecuyer.randvar.ExponentialGen;
-import umontreal.iro.lecuyer.randvar.RandomVariateGen;
 import umontreal.iro.lecuyer.rng.MRG32k3a;
-import umontreal.iro.lecuyer.simevents.Sim;
+import umontreal.iro.lecuyer.simevents.Simulator;
 import umontreal.iro.lecuyer.stat.Tally;
 import umontreal.iro.lecuyer.stat.matrix.MatrixOfTallies;
 
@@ -25,6 +41,32 @@ import umontreal.iro.lecuyer.stat.matrix.MatrixOfTallies;
  * The simulation runs for the specified period length (measured in any desired unit time such as minute, hours, etc.).
  * Also the simulator repeats the simulation for the specified number of replications.
  * </p> 
+ * <p>
+ * Each model owns its simulator, its random streams and its statistical counters, so replications can be
+ * simulated in parallel (see {@link #simulate(int, int, int)}). Replication {@code r} always uses substream {@code r}
+ * of every random stream; with a fixed package seed, the parallel results are identical to the sequential ones.
+ * </p>
+ * <p>
+ * The number of replications is either fixed ({@link #simulate(int, int, int)}), or chosen by sequential stopping
+ * ({@link #simulateUntil(double, double, int, int, int, int)}): batches of replications are simulated until the
+ * confidence intervals on EW and SL are tight enough. The latter keeps constant-memory running statistics only.
+ * </p>
+ * <p>
+ * A run can also log each replication as soon as it is done ({@link #simulate(int, int, int, ReplicationLog)}),
+ * and resume after a crash from the replications in the log.
+ * </p>
+ * <p>
+ * Every arrival process and every route (feasible (contact, group) pair) has its own stream, created in a fixed order from the package seed.
+ * Two models built from the same seed therefore give the same arrivals and the same service times to replication {@code r}
+ * (common random numbers, see {@link PairedComparison}). With antithetic replications ({@link #setAntithetic(boolean)}),
+ * replications {@code 2j} and {@code 2j+1} share substream {@code j}, the second one with antithetic uniforms {@code 1-u};
+ * the confidence intervals of {@link #getRepEW()} and {@link #getRepSL()} are then computed over the pair means.
+ * </p>
+ * <p>
+ * The preliminary period before {@code startTime} is empty, so the first main period starts from an empty system. With a warm-up
+ * ({@link #setWarmup(double)}), the preliminary period has the staffing and the demands of period 1 and the given length instead;
+ * {@link #selectWarmup(int, int)} picks the length with MSER-5 from pilot replications (see {@link MserWarmup}).
+ * </p>
  * 
  * 
  * @author	Vahid Nourbakhsh 
@@ -33,125 +75,292 @@ import umontreal.iro.lecuyer.stat.matrix.MatrixOfTallies;
  */
 
 public class SimRunner {
-	public static PeriodChangeEvent PCE;  // Event marking the beginning of each simulation period
+	/**
+	 * Simulation engines for the FSF model.
+	 */
+	public enum Engine {
+		CONTACT_CENTERS, // ContactCenters/SSJ objects: router, agent groups, waiting queues and events
+		KERNEL, // Primitive-array kernel with its own event heap (see FSFKernel)
+		CTMC // Aggregated-state Markov chain, exponential service times only (see FSFMarkovChain)
+	}
+
+	/**
+	 * MRG32k3a stream that is positioned at the substream of a replication, and whose antithetic flag can be switched between replications.
+	 */
+	static final class Stream extends MRG32k3a {
+		private int substream; // Substream the stream is currently positioned at
+
+		/**
+		 * Positions the stream at the beginning of substream {@code s}.
+		 * Substreams are only moved forward, unless a smaller substream is requested.
+		 */
+		void toSubstream(int s) {
+			if (s < substream) resetStartStream();
+			if (s == substream) resetStartSubstream();
+			for (; substream < s; substream++) resetNextSubstream();
+		}
+
+		void setAntithetic(boolean antithetic) {
+			anti = antithetic; // Every uniform u is returned as 1-u
+		}
+
+		@Override
+		public void resetStartStream() {
+			super.resetStartStream();
+			substream = 0;
+		}
+
+		@Override
+		public Stream clone() {
+			return (Stream) super.clone();
+		}
+	}
+
+	private Simulator sim; // Simulator owned by this model
+	private PeriodChangeEvent PCE;  // Event marking the beginning of each simulation period
 	
 	// Statistical collectors
-	public static int numArrived; // Counter for arrival of contacts to the system (arrivals of any type) at the current replication
-	public static int totNumArrived; // total arrival across all replications
-	public static int[] repNumArrived; // Number of contacts arrived at contact centers NOT agent groups
-	public static int[] numArrivedType;  // Arrivals tuple for the current replication [type]
-	public static int[][] numArrivedTypeRep; // Arrivals tuple [type][replication]
-	public static int numBlocked; // Counter for number of calls that are blocked and do not enter the system
-	public static int totNumBlocked;
-	public static int[] repNumBlocked; // Number of blocked contacts at the current replication
-	public static int numServed; // Counter for number of served within or not within the AWT
-	public static int totNumServed;
-	public static int[] repNumServed; // Number of served contacts at the current replication
-	public static int numGoodSL; // Counter for the contacts that got good service, i.e., within the AWT
-	public static int totNumGoodSL;
-	public static int[] repNumGoodSL; // Number of contacts served within AWT at the current replication
-	public static double[][] numGoodSLKP;  // Counter for the calls that got good service per call type K, and period P
-	public static double[][] totNumGoodSLKP;
-	public static MatrixOfTallies<Tally> repNumGoodSLKP;
-	public static double waitTime; // Wait time tracker at the current replication
-	public static double[] repWaitTime;
-	public static double totWaitTime;
+	private MCMSStatistics stats; // Counters of the current replication
+	private final int maxNumReps; // Number of replications given to the constructor
+	private int totNumArrived; // total arrival across all replications
+	private int totNumBlocked;
+	private int totNumServed;
+	private int totNumGoodSL;
+	private MatrixOfTallies<Tally> repNumGoodSLKP;
+	private double totWaitTime;
+	private RunningStatistic repEW = new RunningStatistic(); // EW of each replication: total wait time per arrival
+	private RunningStatistic repSL = new RunningStatistic(); // SL of each replication: fraction of the served contacts served within the AWT
+	private int numRepsDone; // Number of replications of the last run
+	private double pairEW; // Antithetic replications: EW and SL of the first replication of the current pair
+	private double pairSL;
+	private RunningStatistic[] repEWType; // EW and SL of each contact type, over the replications [type]
+	private RunningStatistic[] repSLType;
+	private double[] pairEWType; // Antithetic replications: EW and SL of each type in the first replication of the current pair
+	private double[] pairSLType;
+	private double[] replicationEW; // EW and SL of each replication, kept for a paired comparison only; null if not kept
+	private double[] replicationSL;
+	private WaitTimeHistogram[][] waitTimeKP; // Waiting times over all replications [type][period]; null if not collected
+	private List<SimRunner> replicas = new CopyOnWriteArrayList<SimRunner>(); // Replicas of this model for the worker threads, kept across runs (read by monitors)
+
+	// Progress, read by SimulationMonitor from its own thread
+	private volatile int currentRep = -1; // Replication being simulated by this model, -1 if none
+	private volatile int numCompletedReps; // Replications simulated by this model since it was created
+	private volatile double completedTime; // Simulation time of these replications
 	
 	// Instance Variables
 	private int numContacts; 
 	private int numGroups;  
-	private int[][] typeToGroup; 
-	private int[][] groupToType;  
-	private int[][] numAgents;  
-	private double[][] demand; 
-	private double[][] tau; 
-	private int currentRep; 
+	private RouteTable routes;
+	private PeriodSchedule schedule; // Staffing and demands, read period by period
+	private PeriodSchedule mainSchedule; // The schedule without a warm-up
+	private double mainStartTime; // The starting time of the main periods without a warm-up
+	private MserWarmup warmup; // Warm-up picked by MSER-5; null if none
+	private int firstPilotRep = Integer.MAX_VALUE; // First replication of the pilots of the warm-up: the runs stay below it
+	private boolean waitSeries; // Record the series of the waiting times, for the warm-up detection
+	private int numPeriods;
+	private int statPeriodLength; // Number of main periods aggregated in each statistical period
+	private double periodDuration;
+	private double startTime;
+	private boolean randomServiceTime;
+	private double acceptableWaitTime;
+	private boolean poolContacts; // Recycle the contacts instead of allocating one per arrival
+	private Engine engine;
+	private double tagFraction; // Fraction of the contacts tagged for the service level by the CTMC engine
+	private boolean antithetic; // Pairs of antithetic replications: 2j and 2j+1 both use substream j, 2j+1 with 1-u
+	private RoutingPolicy policy = RoutingPolicy.fastestServerFirst(); // Routing of the KERNEL engine
+	private ArrivalBank arrivalBank; // Pre-generated arrivals replayed by the KERNEL engine; null: drawn
+	private final ArrivalBuffer replayBuffer = new ArrivalBuffer(); // Arrivals of the current replication, read from a spilled bank
+	private boolean waitTimeHistograms; // Collect the waiting-time histograms per type and period
+	private ContactTrace contactTrace; // Trace of the served contacts; null if not traced
+	private FSFKernel kernel; // The primitive-array kernel, when it is the engine
+	private FSFMarkovChain chain; // The aggregated-state Markov chain, when it is the engine
+	private Stream[] arrivStream; // Random streams of the arrival processes [type]
+	private Stream[] srvStream; // Random streams of the service times [route]
+	private ServiceTimeGen serviceTimes; // Service times drawn a block at a time from srvStream
+	private Stream chainStream; // Random stream of the Markov chain, CTMC engine only
 	private PiecewiseConstantPoissonArrivalProcess[] arrivProc; 
 	private AgentGroup[] groups; 
 	private StandardWaitingQueue[] queues; 
-	private RandomVariateGen[][] randStream; 
 	
 	/**
 	* Constructor
 	*  
 	* @param numContacts 				Number of contact types
 	* @param numGroups				Number of agent groups (simply called groups) 
-	* @param typeToGroup	Priority list for assigning contact types to groups when a contact arrives
-	* @param groupToType	Priority list for assigning groups to contact types when an agent in the group becomes free
+	* @param routes		Feasible (contact, group) pairs with their mean service times, and both priority lists:
+	* 						type-to-group for assigning contact types to groups when a contact arrives,
+	* 						group-to-type for assigning groups to contact types when an agent in the group becomes free
 	* @param numAgents		Number of agents in each group in each period 
 	* @param demand			Demand (arrival) rate of each contact type in each period
-	* @param tau			Mean service time for each (contact, group) tuple
 	* @param arriProc		Distribution of the contacts arrivals. Each contact type has a separate arrival rate. Contact arrival follows Poisson distribution.
 	* @param groups			Number of agents in each group
 	* @param queue			Waiting queues for cotacts that find agents busy. There is one queue per agent group.
-	* @param randomStream	Random number generator for service times. Service Time depends on the agent and the group.
+	* @param randomStream	Random number generator for service times, one per route. Service Time depends on the agent and the group.
+	* @param poolContacts	True: recycle the contacts after they exit the system, False: allocate a new contact per arrival
+	* @param engine			The simulation engine
+	* @param tagFraction	CTMC engine: fraction of the contacts tagged for the service level, in (0, 1]
+	* @param waitTimeHistograms	True: collect the histograms of the waiting times per contact type and period
+	*/
+	SimRunner(int numContacts, int numGroups, RouteTable routes, int[][] numAgents, double[][] demand, int num_runs, int numPeriods, double periodDuration, double simDuration, double startTime, boolean randomServiceTime, double acceptableWaitTime, boolean poolContacts, Engine engine, double tagFraction, boolean waitTimeHistograms) {
+		this(numContacts, numGroups, routes, PeriodSchedule.dense(numAgents, demand), num_runs, numPeriods, periodDuration, simDuration, startTime, randomServiceTime, acceptableWaitTime, poolContacts, engine, tagFraction, waitTimeHistograms, 1);
+	}
+
+	/**
+	* Constructor with a staffing and demand schedule read period by period, and statistics aggregated over several main periods.
+	* Only the CONTACT_CENTERS engine expands the schedule into arrays over all periods; the KERNEL and CTMC engines
+	* hold one period at a time, so their memory does not depend on the number of periods.
+	*
+	* @param schedule			Number of agents of each group and demand rate of each contact type, per period
+	* @param statPeriodLength	Number of consecutive main periods per statistical period of the per-period counters, e.g., 4 for hours of 15-minute periods
+	* @see #SimRunner(int, int, RouteTable, int[][], double[][], int, int, double, double, double, boolean, double, boolean, Engine, double, boolean)
 	*/
-	SimRunner(int numContacts, int numGroups, int[][] typeToGroup, int[][] groupToType, int[][] numAgents, double[][] demand, double[][] tau, int num_runs, int numPeriods, double periodDuration, double simDuration, double startTime, boolean randomServiceTime, double acceptableWaitTime) {
+	SimRunner(int numContacts, int numGroups, RouteTable routes, PeriodSchedule schedule, int num_runs, int numPeriods, double periodDuration, double simDuration, double startTime, boolean randomServiceTime, double acceptableWaitTime, boolean poolContacts, Engine engine, double tagFraction, boolean waitTimeHistograms, int statPeriodLength) {
+		if (engine == Engine.CTMC && !randomServiceTime) throw new IllegalArgumentException("The CTMC engine requires exponential (random) service times");
+		if (!(tagFraction > 0 && tagFraction <= 1)) throw new IllegalArgumentException("The tag fraction must be in (0, 1], found " + tagFraction);
 		this.numContacts = numContacts;
 		this.numGroups = numGroups;
-		this.typeToGroup = typeToGroup;
-		this.groupToType = groupToType;
-		this.numAgents = numAgents;
-		this.demand = demand;
-		this.tau = tau;
+		this.routes = routes;
+		this.schedule = this.mainSchedule = schedule;
+		this.numPeriods = numPeriods;
+		this.statPeriodLength = statPeriodLength;
+		this.periodDuration = periodDuration;
+		this.startTime = this.mainStartTime = startTime;
+		this.randomServiceTime = randomServiceTime;
+		this.acceptableWaitTime = acceptableWaitTime;
+		this.poolContacts = poolContacts;
+		this.engine = engine;
+		this.tagFraction = tagFraction;
+		this.waitTimeHistograms = waitTimeHistograms;
+
+		// Initialize Statistical collectors
+		this.maxNumReps = num_runs;
+		repEWType = new RunningStatistic[numContacts];
+		repSLType = new RunningStatistic[numContacts];
+		for (int k = 0; k < numContacts; k++) {
+			repEWType[k] = new RunningStatistic();
+			repSLType[k] = new RunningStatistic();
+		}
+		pairEWType = new double[numContacts];
+		pairSLType = new double[numContacts];
+		final MCMSStatistics shape = new MCMSStatistics(numContacts, numPeriods, waitTimeHistograms, statPeriodLength); // Checks the length and sizes the statistical periods
+		repNumGoodSLKP = MatrixOfTallies.createWithTally(numContacts, shape.getNumStatPeriods());	// Number of good-served contacts: contact k and statistical period p
+		if (waitTimeHistograms) waitTimeKP = shape.waitTimeKP; // Waiting times: contact k and statistical period p
+
+		/* Create one random stream per arrival process and per route, i.e., feasible (contact, group) pair.
+		 * MRG32k3a() is a random number generator. The streams are created in a fixed order,
+		 * so a fixed package seed (see ModelBuilder#setSeed) makes the whole run reproducible.
+		 */
+		arrivStream = new Stream[numContacts];
+		srvStream = new Stream[routes.getNumRoutes()];
+		for (int k = 0; k < numContacts; k++) arrivStream[k] = new Stream();
+		for (int r = 0; r < srvStream.length; r++) srvStream[r] = new Stream();
+		if (engine == Engine.CTMC) chainStream = new Stream(); // Created last, so it does not shift the other streams
+
+		buildModel();
+	}
+
+	/**
+	 * Creates a replica of the given model for a worker thread.
+	 * The replica shares the (read-only) input data, but has its own simulator,
+	 * its own clones of the random streams and its own statistical counters.
+	 *
+	 * @param master	The model to replicate
+	 */
+	private SimRunner(SimRunner master) {
+		this.numContacts = master.numContacts;
+		this.numGroups = master.numGroups;
+		this.maxNumReps = master.maxNumReps;
+		this.routes = master.routes;
+		this.schedule = master.schedule;
+		this.numPeriods = master.numPeriods;
+		this.statPeriodLength = master.statPeriodLength;
+		this.periodDuration = master.periodDuration;
+		this.startTime = master.startTime;
+		this.randomServiceTime = master.randomServiceTime;
+		this.acceptableWaitTime = master.acceptableWaitTime;
+		this.poolContacts = master.poolContacts;
+		this.engine = master.engine;
+		this.tagFraction = master.tagFraction;
+		this.antithetic = master.antithetic;
+		this.policy = master.policy;
+		this.arrivalBank = master.arrivalBank;
+		this.waitTimeHistograms = master.waitTimeHistograms;
+		this.waitSeries = master.waitSeries;
+
+		arrivStream = new Stream[numContacts];
+		srvStream = new Stream[master.srvStream.length];
+		for (int k = 0; k < numContacts; k++) {
+			arrivStream[k] = master.arrivStream[k].clone();
+			arrivStream[k].resetStartStream();
+		}
+		for (int r = 0; r < srvStream.length; r++) {
+			srvStream[r] = master.srvStream[r].clone();
+			srvStream[r].resetStartStream();
+		}
+		if (master.chainStream != null) {
+			chainStream = master.chainStream.clone();
+			chainStream.resetStartStream();
+		}
+
+		buildModel();
+		if (master.contactTrace != null) {
+			this.contactTrace = master.contactTrace;
+			stats.trace = contactTrace.newRecorder();
+		}
+	}
+
+	/**
+	 * Builds the simulator, the arrival processes, the agent groups, the waiting queues and the router.
+	 * Every event-scheduling object is bound to the simulator of this model, never to the default one, so that models
+	 * in different threads do not share an event list: the period change event directly, and through it the arrival processes
+	 * and the agent groups; the contacts and the waiting queues directly.
+	 */
+	private void buildModel() {
+		this.sim = new Simulator();
+		this.stats = new MCMSStatistics(numContacts, numPeriods, waitTimeHistograms, statPeriodLength);
+		if (waitSeries) stats.waitSeries = new WaitSeries();
 		this.arrivProc = new PiecewiseConstantPoissonArrivalProcess[numContacts];
 		this.groups = new AgentGroup[numGroups]; 
 		this.queues = new StandardWaitingQueue[numContacts];
-		this.randStream = new RandomVariateGen[numContacts][numGroups];
-		
-		// Initialize Statistical collectors
-		repNumArrived = new int[num_runs]; // Number of contacts arrived at contact centers NOT agent groups
-		numArrivedTypeRep = new int[numContacts][num_runs]; // Number of contacts arrived at contact centers NOT agent groups
-		totNumArrived = 0; // Total arrival across all replications
-		repNumServed = new int[num_runs]; // Number of served contacts at the current replication
-		totNumServed = 0; // Total across all replications
-		repNumBlocked = new int[num_runs]; // Number of blocked contacts at the current replication
-		totNumBlocked = 0; // Total across all replications
-		numArrivedType = new int[numContacts]; // Arrivals of contact type k
-		repWaitTime = new double[num_runs]; // Total queue wait time of contacts for each replication
-		totWaitTime = 0; // Total across all replications
-		numGoodSLKP = new double[numContacts][numPeriods]; // Number of contacts served within AWT: contact type k and period p
-		repNumGoodSL= new int[num_runs]; // Number of contacts served within AWT: replication
-		totNumGoodSL = 0; // Total across all replications
-		repNumGoodSLKP = MatrixOfTallies.createWithTally(numContacts, numPeriods);	// Number of good-served contacts: contact k and period p
 		
 		/* PeriodChangeEvent: One dummy preliminary warm-up period, P main periods, and one wrap-up period,
 		 * main periods start at time STARTINGTIME. 
 		 */
-		PCE = new PeriodChangeEvent(periodDuration, numPeriods + 2, startTime);  
+		PCE = new PeriodChangeEvent(sim, periodDuration, numPeriods + 2, startTime);
+		this.serviceTimes = new ServiceTimeGen(srvStream, routes.getTau());
 
-		/* For each contact type create a Poisson arrival process. 
-		 * MRG32k3a() is a random number generator.
-		 */
-		for (int k = 0; k < this.numContacts; k++) { 
-			arrivProc[k] = new PiecewiseConstantPoissonArrivalProcess(PCE, new MCMSContactFactory(k), this.demand[k], new MRG32k3a());
+		if (engine == Engine.KERNEL) {
+			kernel = new FSFKernel(numContacts, numGroups, routes, policy.newDispatcher(routes), schedule.newReader(), numPeriods, periodDuration, startTime, randomServiceTime, acceptableWaitTime, arrivStream, serviceTimes, stats);
+			return;
+		}
+		if (engine == Engine.CTMC) {
+			chain = new FSFMarkovChain(numContacts, numGroups, routes, schedule.newReader(), numPeriods, periodDuration, startTime, acceptableWaitTime, tagFraction, chainStream, stats);
+			return;
 		}
 		
-		// Initialize groups and queues
-		for (int i = 0; i < numGroups; i++) groups[i] = new AgentGroup(PCE, this.numAgents[i]);
-		for (int q = 0; q < queues.length; q++) queues[q] = new StandardWaitingQueue();
-
-		// For Debugging: Fix the random seed
-		// Set the random seeds for random number generator MRG32k3a().
-		/*
-		long[] randomseed = new long[6];
-		for (int i = 0; i < randomseed.length; i++) {
-			if (i < 3) {randomseed[i]=Math.round(4294967086L*Math.random())+1;}
-			if (i >= 3) {randomseed[i]=Math.round(4294944442L*Math.random())+1;}
-		}
-		MRG32k3a.setPackageSeed(randomseed);
-		*/
-		
-		// Assign ExponentialGen[K][I] a random number stream for service times 
-		// ExponentialGen follows exponential distribution
-		for (int q = 0; q < this.numContacts; q++) {
-			for (int i = 0; i < this.numGroups; i++) {
-				randStream[q][i] = new ExponentialGen(new MRG32k3a(), 1/tau[q][i]); // TAU: mean service time and 1/TAU: mean service rate 
-			}
+		// The ContactCenters objects take the values of all periods at once: expand the schedule
+		final int[][] numAgents = new int[numGroups][numPeriods + 2];
+		final double[][] demand = new double[numContacts][numPeriods + 2];
+		final int[] agentsP = new int[numGroups];
+		final double[] demandP = new double[numContacts];
+		final PeriodSchedule.Reader reader = schedule.newReader();
+		for (int p = 0; p < numPeriods + 2; p++) {
+			reader.read(p, agentsP, demandP);
+			for (int i = 0; i < numGroups; i++) numAgents[i][p] = agentsP[i];
+			for (int k = 0; k < numContacts; k++) demand[k][p] = demandP[k];
+		}
+
+		// For each contact type create a Poisson arrival process. All contact factories share one pool in the pooled mode.
+		final MCMSContactPool pool = poolContacts ? new MCMSContactPool(sim) : null;
+		for (int k = 0; k < this.numContacts; k++) {
+			arrivProc[k] = new PiecewiseConstantPoissonArrivalProcess(PCE, new MCMSContactFactory(sim, k, stats, pool, PCE), demand[k], arrivStream[k]);
 		}
 
-		// Create a router 
-		Router router = new FSFRouter(this.numContacts, this.numContacts, this.numGroups, this.typeToGroup, this.groupToType, this.tau, this.randStream, randomServiceTime);  // int numTypes, int numQueues, int numGroups, int[][] TypeToGroup, int[][] GroupToType, double[][] TAU
+		// Initialize groups
+		for (int i = 0; i < numGroups; i++) groups[i] = new AgentGroup(PCE, numAgents[i]);
+
+		// Create a router. It draws the exponential service times of each route from its stream, a block at a time.
+		Router router = new FSFRouter(this.numContacts, this.numContacts, this.numGroups, this.routes, this.serviceTimes, randomServiceTime);  // int numTypes, int numQueues, int numGroups, RouteTable routes, ServiceTimeGen serviceTimes
 
 		// Define a listener (statistic collector): Upon a contact arrival notify the router.
 		for (int k = 0; k < this.numContacts; k++) arrivProc[k].addNewContactListener(router);
@@ -160,11 +369,48 @@ public class SimRunner {
 		for (int i = 0; i < this.numGroups; i++)	router.setAgentGroup(i, groups[i]); 
 
 		// Define waiting queues for the router
-		for (int q = 0; q < queues.length; q++)	queues[q] = new StandardWaitingQueue();
+		for (int q = 0; q < queues.length; q++)	queues[q] = new StandardWaitingQueue(sim);
 		for (int q = 0; q < queues.length; q++) router.setWaitingQueue(q, queues[q]); 
 		
+		// Define a listener (progress monitor): record the longest queues
+		final MaxQueueLengthListener maxQueueLength = new MaxQueueLengthListener(stats);
+		for (int q = 0; q < queues.length; q++) queues[q].addWaitingQueueListener(maxQueueLength);
+
 		// Define a listener (statistic collector): Add ContactMeasures to the ExitedContactListener for updating statistics
-		router.addExitedContactListener(new MCMSMeasures(acceptableWaitTime)); 
+		router.addExitedContactListener(new MCMSMeasures(acceptableWaitTime, PCE, stats));
+
+		// The pool takes the contacts back after all other listeners are done with them
+		if (pool != null) router.addExitedContactListener(pool);
+	}
+
+	/**
+	 * Positions every random stream of this model at the beginning of substream {@code rep}.
+	 * Substreams are only moved forward, unless a smaller replication number is requested.
+	 *
+	 * @param rep	Replication number
+	 */
+	private void advanceStreamsTo(int rep) {
+		for (int k = 0; k < numContacts; k++) arrivStream[k].toSubstream(rep);
+		for (int r = 0; r < srvStream.length; r++) srvStream[r].toSubstream(rep);
+		serviceTimes.clear(); // The service times drawn ahead are from the previous substream
+		if (chainStream != null) chainStream.toSubstream(rep);
+	}
+
+	/**
+	 * Returns the substream of every random stream for replication {@code rep}.
+	 */
+	int substreamOf(int rep) {
+		return antithetic ? rep / 2 : rep;
+	}
+
+	/**
+	 * Sets the antithetic flag of every random stream of this model.
+	 */
+	private void setStreamsAntithetic(boolean a) {
+		for (int k = 0; k < numContacts; k++) arrivStream[k].setAntithetic(a);
+		for (int r = 0; r < srvStream.length; r++) srvStream[r].setAntithetic(a);
+		serviceTimes.clear();
+		if (chainStream != null) chainStream.setAntithetic(a);
 	}
 	
 	/**
@@ -173,40 +419,248 @@ public class SimRunner {
 	 * The simulation runs for {@link #P}+2 periods (one warm-up and one wrap-up period).
 	 * 
 	 * @param numPeriods	Number of simulation periods
+	 * @param rep			Replication number; it selects the substream of every random stream (see {@link #substreamOf(int)})
+	 * @return				The statistical counters of the replication
 	 */
-	public void simulateOneReplication(int numPeriods) {
+	MCMSStatistics simulateOneReplication(int numPeriods, int rep) {
+		currentRep = rep;
+		runOneReplication(numPeriods, rep);
+		stats.publishProgress();
+		completedTime += stats.time; // Each replication starts at time 0
+		numCompletedReps++;
+		currentRep = -1;
+		return stats;
+	}
+
+	/**
+	 * Simulates one replication with the engine of this model.
+	 */
+	private void runOneReplication(int numPeriods, int rep) {
 		// Initialize the simulation
-		Sim.init(); // Initialize simulation
+		advanceStreamsTo(substreamOf(rep));
+		setStreamsAntithetic(antithetic && rep % 2 == 1);
+		if (stats.trace != null) stats.trace.setReplication(rep);
+		if (kernel != null) {
+			if (arrivalBank != null) kernel.setArrivals(arrivalBank.replication(rep, replayBuffer));
+			stats.init();
+			kernel.simulateOneReplication();
+			return;
+		}
+		if (chain != null) {
+			stats.init();
+			chain.simulateOneReplication();
+			return;
+		}
+		sim.init(); // Initialize simulation
 		PCE.init(); // Initialize the period change event
 		for (int k = 0; k < this.numContacts; k++) arrivProc[k].init(); // Initialize the arrival processes
 		for (int i = 0; i < this.numGroups; i++) groups[i].init(); // Initialize the groups with their agents
 		for (int q = 0; q < queues.length; q++) queues[q].init(); // Initialize the queues
 		
 		// Initialize statistical collectors
-		Arrays.fill(numArrivedType, 0);  waitTime = 0;
-		numArrived = numGoodSL = numServed = 0;
-		for (int k = 0; k < this.numContacts; k++)
-			for (int p = 0; p < numPeriods; p++)
-				numGoodSLKP[k][p] = 0;
+		stats.init();
 		
 		// Start the simulation
 		for (int k = 0; k < this.numContacts; k++) arrivProc[k].start();
 		PCE.start();
-		Sim.start();
+		sim.start();
 		
 		// Terminate the simulation
 		PCE.stop();
+	}
 		
-		// Collect/save statistics
-		for (int k=0; k<this.numContacts; k++) numArrivedTypeRep[k][currentRep] = numArrivedType[k];
-		numArrived = IntStream.of(numArrivedType).sum();
-		repNumArrived[currentRep] = numArrived;
-		repNumBlocked[currentRep] = numBlocked; 
-		repNumServed[currentRep] = numServed; 
-		repNumGoodSL[currentRep] = numGoodSL; 
-		repNumGoodSLKP.add(numGoodSLKP);
-		repWaitTime[currentRep] = waitTime;
+	/**
+	 * Resets the aggregate statistics before a run.
+	 *
+	 * @param waitTimes		True: also reset the waiting-time histograms
+	 */
+	private void initAggregates(boolean waitTimes) {
 		repNumGoodSLKP.init();
+		repEW.init();
+		repSL.init();
+		for (int k = 0; k < numContacts; k++) {
+			repEWType[k].init();
+			repSLType[k].init();
+		}
+		totNumArrived = totNumBlocked = totNumServed = totNumGoodSL = 0;
+		totWaitTime = 0;
+		numRepsDone = 0;
+		if (waitTimes && waitTimeKP != null) {
+			for (WaitTimeHistogram[] row : waitTimeKP)
+				for (WaitTimeHistogram h : row) h.init();
+		}
+	}
+
+	/**
+	 * Adds the waiting times of one replication to the histograms over all replications.
+	 * Merging only adds counts, so the order of the replications does not matter; worker threads take turns.
+	 */
+	private void addWaitTimes(MCMSStatistics s) {
+		if (waitTimeKP == null) return;
+		synchronized (waitTimeKP) {
+			for (int k = 0; k < numContacts; k++)
+				for (int p = 0; p < waitTimeKP[k].length; p++) waitTimeKP[k][p].merge(s.waitTimeKP[k][p]);
+		}
+	}
+
+	/**
+	 * Adds one replication to the aggregate statistics.
+	 */
+	private void addToAggregates(MCMSStatistics s) {
+		final int numArrived = IntStream.of(s.numArrivedType).sum();
+		repNumGoodSLKP.add(s.numGoodSLKP);
+		totNumArrived += numArrived;
+		totNumBlocked += s.numBlocked;
+		totNumServed += s.numServed;
+		totNumGoodSL += s.numGoodSL;
+		totWaitTime += s.waitTime;
+		final double ew = ewOf(numArrived, s.waitTime);
+		final double sl = slOf(s.numServed, s.numGoodSL);
+		if (replicationEW != null) {
+			if (numRepsDone == replicationEW.length) {
+				replicationEW = Arrays.copyOf(replicationEW, Math.max(16, 2 * numRepsDone));
+				replicationSL = Arrays.copyOf(replicationSL, replicationEW.length);
+			}
+			replicationEW[numRepsDone] = ew;
+			replicationSL[numRepsDone] = sl;
+		}
+		if (!antithetic) {
+			repEW.add(ew);
+			repSL.add(sl);
+		}
+		else if (numRepsDone % 2 == 0) { // First replication of an antithetic pair: wait for the second one
+			pairEW = ew;
+			pairSL = sl;
+		}
+		else { // The two replications of a pair are correlated: the pair mean is one observation
+			repEW.add((pairEW + ew) / 2);
+			repSL.add((pairSL + sl) / 2);
+		}
+		for (int k = 0; k < numContacts; k++) { // The same for each contact type
+			final double ewType = ewOf(s.numArrivedType[k], s.waitTimeType[k]);
+			final double slType = slOf(s.numServedType[k], s.numGoodSLType[k]);
+			if (!antithetic) {
+				repEWType[k].add(ewType);
+				repSLType[k].add(slType);
+			}
+			else if (numRepsDone % 2 == 0) {
+				pairEWType[k] = ewType;
+				pairSLType[k] = slType;
+			}
+			else {
+				repEWType[k].add((pairEWType[k] + ewType) / 2);
+				repSLType[k].add((pairSLType[k] + slType) / 2);
+			}
+		}
+		numRepsDone++;
+	}
+
+	/**
+	 * Returns the EW of a replication: total wait time per arrival.
+	 */
+	static double ewOf(int numArrived, double waitTime) {
+		return numArrived == 0 ? 0 : waitTime / numArrived;
+	}
+
+	/**
+	 * Returns the SL of a replication: fraction of the served contacts served within the AWT.
+	 */
+	static double slOf(int numServed, int numGoodSL) {
+		return numServed == 0 ? 1 : (double) numGoodSL / numServed; // No contact served: none served late
+	}
+
+	/**
+	 * Returns counters for the replications of one batch, which are added to the statistics in replication order.
+	 * A batch holds a few replications per worker thread, so the threads seldom wait for the slowest replication of a batch.
+	 *
+	 * @param size		Largest number of replications of a batch
+	 * @param numThreads	Number of worker threads
+	 */
+	private MCMSStatistics[] newBatch(int size, int numThreads) {
+		final MCMSStatistics[] batch = new MCMSStatistics[Math.max(1, Math.min(size, 8 * Math.max(1, numThreads)))];
+		for (int b = 0; b < batch.length; b++) batch[b] = new MCMSStatistics(numContacts, this.numPeriods, false, statPeriodLength);
+		return batch;
+	}
+
+	/**
+	 * Simulates replications {@code 0} to {@code numReps - 1} in batches, and adds them to the statistics in replication order,
+	 * so the result does not depend on the number of threads and the memory does not grow with the number of replications.
+	 * The replications logged before the run are read back from the log instead of simulated, and the others are appended to it.
+	 *
+	 * @param log		Log of the replications; null: no log
+	 * @param logged	Replications read back from the log; null: none
+	 */
+	private void simulateInOrder(int numReps, int numPeriods, int numThreads, ReplicationLog log, BitSet logged) {
+		final MCMSStatistics[] batch = newBatch(numReps, numThreads);
+		for (int first = 0; first < numReps; first += batch.length) {
+			final int last = Math.min(numReps, first + batch.length);
+			final int start = first;
+			runReplications(first, last, logged, numPeriods, numThreads, (s, r) -> {
+				if (log != null) log.append(r, s);
+				batch[r - start].copyFrom(s);
+				addWaitTimes(s);
+			});
+			for (int r = first; r < last; r++) {
+				if (logged != null && logged.get(r)) log.read(r, batch[r - first]);
+				addToAggregates(batch[r - first]);
+			}
+		}
+	}
+
+	/**
+	 * Simulates replications {@code first} to {@code last - 1} and hands the counters of each one to {@code sink}.
+	 * With several threads, each worker simulates replications on its own replica of this model, and the sink
+	 * is called concurrently, in no particular order; the counters are only valid during the call.
+	 *
+	 * @param first			First replication
+	 * @param last			Replication after the last one
+	 * @param numPeriods	Number of simulation periods
+	 * @param numThreads	Number of worker threads; 1 runs the replications sequentially on this model
+	 * @param sink			Receives the counters and the number of each replication
+	 */
+	private void runReplications(int first, int last, int numPeriods, int numThreads, ObjIntConsumer<MCMSStatistics> sink) {
+		runReplications(first, last, null, numPeriods, numThreads, sink);
+	}
+
+	/**
+	 * Simulates replications {@code first} to {@code last - 1}, except the ones in {@code skip}, and hands the counters of each one to {@code sink}.
+	 *
+	 * @param skip	Replications not to simulate, e.g., already logged; null: none
+	 */
+	private void runReplications(int first, int last, BitSet skip, int numPeriods, int numThreads, ObjIntConsumer<MCMSStatistics> sink) {
+		if (numThreads <= 1 || last - first <= 1) {
+			for (int r = first; r < last; r++) {
+				if (skip == null || !skip.get(r)) sink.accept(simulateOneReplication(numPeriods, r), r);
+			}
+			return;
+		}
+		final int numWorkers = Math.min(numThreads, last - first);
+		while (replicas.size() < numWorkers) replicas.add(new SimRunner(this));
+		final AtomicInteger nextRep = new AtomicInteger(first); // Next replication to be simulated
+		final ExecutorService pool = Executors.newFixedThreadPool(numWorkers);
+		final List<Future<?>> workers = new ArrayList<Future<?>>();
+		try {
+			for (int w = 0; w < numWorkers; w++) {
+				final SimRunner replica = replicas.get(w);
+				workers.add(pool.submit(() -> {
+					int r;
+					while ((r = nextRep.getAndIncrement()) < last) {
+						if (skip == null || !skip.get(r)) sink.accept(replica.simulateOneReplication(numPeriods, r), r);
+					}
+				}));
+			}
+			for (Future<?> worker : workers) worker.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while simulating the replications", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("A replication failed", e.getCause());
+		}
+		finally {
+			pool.shutdownNow();
+		}
 	}
 	
 	/**
@@ -217,16 +671,573 @@ public class SimRunner {
 	 * @param numPeriods	Number of simulation periods
 	 */
 	public void simulate(int numReps, int numPeriods) {
-		// Replication counter
+		simulate(numReps, numPeriods, 1);
+	}
+
+	/**
+	 * Simulates/runs all replications on {@code numThreads} worker threads.
+	 * Each worker simulates replications on its own replica of this model.
+	 * The results are merged in replication order, so they are identical to {@link #simulate(int, int)}.
+	 *
+	 * @param numReps		Number of simulation replications
+	 * @param numPeriods	Number of simulation periods
+	 * @param numThreads	Number of worker threads; 1 runs the replications sequentially on this model
+	 */
+	public void simulate(int numReps, int numPeriods, int numThreads) {
+		checkPairs(numReps);
+		checkPilots(numReps);
 		
 		// Run the simulation for the number of replications
-		for (int r = 0; r < numReps; r++) simulateOneReplication(numPeriods);
+		initAggregates(true);
+		simulateInOrder(numReps, numPeriods, numThreads, null, null);
+	}
 
-		// Calculate aggregate statistics
-		totNumArrived = IntStream.of(repNumArrived).sum();
-		totNumBlocked = IntStream.of(repNumBlocked).sum(); 
-		totNumServed = IntStream.of(repNumServed).sum(); 
-		totNumGoodSL = IntStream.of(repNumGoodSL).sum(); 
-		totWaitTime = DoubleStream.of(repWaitTime).sum();
+	/**
+	 * Returns a fingerprint of the run configuration, recorded by a replication log (see {@link ReplicationLog}) so that a run
+	 * with another configuration does not resume from it: the seed (the start of the first random stream), the acceptable waiting time,
+	 * the number, length and start of the periods, the engine and its options (antithetic replications, statistical periods,
+	 * service times, tag fraction, routing policy), and a hash of the routes and of the staffing and demands of every period.
+	 * The schedule is read once from period 0 to P+1.
+	 */
+	public long getRunFingerprint() {
+		final Stream first = (arrivStream.length > 0 ? arrivStream[0] : srvStream[0]).clone();
+		first.resetStartStream();
+		long h = 0;
+		for (long x : first.getState()) h = mix(h, x);
+		h = mix(h, Double.doubleToLongBits(acceptableWaitTime));
+		h = mix(h, numPeriods);
+		h = mix(h, Double.doubleToLongBits(periodDuration));
+		h = mix(h, Double.doubleToLongBits(startTime));
+		h = mix(h, engine.ordinal());
+		h = mix(h, antithetic ? 1 : 0);
+		h = mix(h, statPeriodLength);
+		h = mix(h, randomServiceTime ? 1 : 0);
+		h = mix(h, Double.doubleToLongBits(tagFraction));
+		h = mix(h, policy.getName().hashCode());
+
+		// Instance
+		h = mix(h, numContacts);
+		h = mix(h, numGroups);
+		final int[] typeStart = routes.getTypeStart();
+		final int[] typeGroup = routes.getTypeGroup();
+		final double[] tau = routes.getTau();
+		for (int k = 0; k < numContacts; k++) {
+			for (int r = typeStart[k]; r < typeStart[k + 1]; r++) {
+				h = mix(h, ((long) k << 32) | typeGroup[r]);
+				h = mix(h, Double.doubleToLongBits(tau[r]));
+			}
+		}
+		final int[] agents = new int[numGroups];
+		final double[] demands = new double[numContacts];
+		final PeriodSchedule.Reader reader = schedule.newReader();
+		for (int p = 0; p < numPeriods + 2; p++) {
+			reader.read(p, agents, demands);
+			for (int i = 0; i < numGroups; i++) h = mix(h, agents[i]);
+			for (int k = 0; k < numContacts; k++) h = mix(h, Double.doubleToLongBits(demands[k]));
+		}
+		return h;
+	}
+
+	private static long mix(long h, long x) {
+		h = (h ^ x) * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 29);
+	}
+
+	/**
+	 * Simulates/runs all replications on {@code numThreads} worker threads, and appends each simulated replication to a log.
+	 * The replications already in the log (e.g., by a run that crashed) are read back instead of simulated again;
+	 * since replication {@code r} always uses substream {@code r}, the results are identical to an uninterrupted run with the same seed.
+	 * The waiting-time histograms only cover the replications simulated by this call.
+	 *
+	 * @param numReps		Number of simulation replications
+	 * @param numPeriods	Number of simulation periods
+	 * @param numThreads	Number of worker threads; 1 runs the replications sequentially on this model
+	 * @param log			Log of the replications, opened for the numbers of contact types and statistical periods and the {@link #getRunFingerprint()} of this model
+	 * @return int			The number of replications read from the log
+	 * @throws IllegalArgumentException	If the log was opened for another run configuration
+	 */
+	public int simulate(int numReps, int numPeriods, int numThreads, ReplicationLog log) {
+		checkPairs(numReps);
+		checkPilots(numReps);
+		if (log.getFingerprint() != getRunFingerprint()) throw new IllegalArgumentException("The replication log was opened for another run configuration than this model's");
+		initAggregates(true);
+		final BitSet logged = log.getCompleted();
+		if (logged.length() > numReps) logged.clear(numReps, logged.length()); // Logged by a longer run: not part of this one
+		simulateInOrder(numReps, numPeriods, numThreads, log, logged);
+		return logged.cardinality();
+	}
+
+	/**
+	 * Simulates replications in batches until the confidence intervals on EW and SL (see {@link #getRepEW()} and {@link #getRepSL()})
+	 * both have a relative half-width of at most {@code targetRelHalfWidth}, or until {@code maxReps} replications are simulated.
+	 * <p>
+	 * The replications of a batch run on {@code numThreads} worker threads, and are added to the statistics in replication order,
+	 * so the result does not depend on the number of threads. As with a fixed number of replications, only running statistics
+	 * are kept, and the memory does not grow with the number of replications.
+	 * </p>
+	 *
+	 * @param targetRelHalfWidth	Target half-width relative to the mean, e.g., 0.01
+	 * @param level					Confidence level, e.g., 0.95
+	 * @param batchSize				Number of replications simulated between two checks of the stopping rule
+	 * @param maxReps				Budget: maximum number of replications
+	 * @param numPeriods			Number of simulation periods
+	 * @param numThreads			Number of worker threads; 1 runs the replications sequentially on this model
+	 * @return int					The number of replications simulated
+	 */
+	public int simulateUntil(double targetRelHalfWidth, double level, int batchSize, int maxReps, int numPeriods, int numThreads) {
+		if (!(targetRelHalfWidth > 0)) throw new IllegalArgumentException("The target relative half-width must be positive, found " + targetRelHalfWidth);
+		if (!(level > 0 && level < 1)) throw new IllegalArgumentException("The confidence level must be in (0, 1), found " + level);
+		if (batchSize < 1 || maxReps < 1) throw new IllegalArgumentException("The batch size and the budget must be positive");
+		checkPairs(batchSize);
+		checkPairs(maxReps);
+		checkPilots(maxReps);
+		initAggregates(true);
+		final MCMSStatistics[] batch = new MCMSStatistics[Math.min(batchSize, maxReps)]; // Counters of the replications of one batch
+		for (int b = 0; b < batch.length; b++) batch[b] = new MCMSStatistics(numContacts, this.numPeriods, false, statPeriodLength);
+		while (numRepsDone < maxReps) {
+			final int first = numRepsDone;
+			final int last = Math.min(maxReps, first + batch.length);
+			runReplications(first, last, numPeriods, numThreads, (s, r) -> {
+				batch[r - first].copyFrom(s);
+				addWaitTimes(s);
+			});
+			for (MCMSStatistics s : batch) {
+				if (numRepsDone == last) break;
+				addToAggregates(s);
+			}
+			if (repEW.relativeHalfWidth(level) <= targetRelHalfWidth && repSL.relativeHalfWidth(level) <= targetRelHalfWidth) break;
+		}
+		return numRepsDone;
+	}
+
+	/**
+	 * Simulates pairs of antithetic replications: replications {@code 2j} and {@code 2j+1} share substream {@code j},
+	 * and the second one uses the antithetic uniforms {@code 1-u} of every stream, so its arrivals and service times are negatively correlated
+	 * with those of the first one. The numbers of replications must then be even.
+	 *
+	 * @param antithetic	True: antithetic pairs, False: one substream per replication (default)
+	 */
+	public void setAntithetic(boolean antithetic) {
+		this.antithetic = antithetic;
+		for (SimRunner replica : replicas) replica.antithetic = antithetic;
+	}
+
+	/**
+	 * Routes the contacts with another policy (see {@link RoutingPolicy}); the default is Fastest-Server-First.
+	 *
+	 * @param policy	The routing policy
+	 * @throws IllegalStateException	With an engine other than KERNEL, whose routing is FSF
+	 */
+	public void setRoutingPolicy(RoutingPolicy policy) {
+		if (engine != Engine.KERNEL) throw new IllegalStateException("Only the KERNEL engine takes a routing policy; the " + engine + " engine routes with FSF");
+		this.policy = policy;
+		kernel.setDispatcher(policy.newDispatcher(routes));
+		for (SimRunner replica : replicas) {
+			replica.policy = policy;
+			replica.kernel.setDispatcher(policy.newDispatcher(routes));
+		}
+	}
+
+	/**
+	 * Loads the system before the first main period: the preliminary period gets the staffing and the demands of period 1,
+	 * and the main periods start at time {@code warmup} instead of {@code startTime}. The statistics still cover the main periods only.
+	 * The model is rebuilt, so the warm-up is set before the runs, the arrival bank and the contact trace.
+	 *
+	 * @param warmup	Length of the warm-up; 0: back to the empty preliminary period before {@code startTime}
+	 */
+	public void setWarmup(double warmup) {
+		if (!(warmup >= 0)) throw new IllegalArgumentException("The warm-up must be non-negative, found " + warmup);
+		if (arrivalBank != null) throw new IllegalStateException("The arrival bank was generated without this warm-up: set the warm-up first");
+		this.schedule = warmup > 0 ? PeriodSchedule.withWarmup(mainSchedule) : mainSchedule;
+		this.startTime = warmup > 0 ? warmup : mainStartTime;
+		this.warmup = null;
+		replicas.clear();
+		buildModel();
+		if (contactTrace != null) stats.trace = contactTrace.newRecorder();
+	}
+
+	/**
+	 * Picks the warm-up with MSER-5 for the runs of at most the number of replications given to the constructor
+	 * (see {@link #selectWarmup(int, int, int)}).
+	 *
+	 * @param numPilotReps	Number of pilot replications
+	 * @param numThreads	Number of worker threads; 1 runs the replications sequentially on this model
+	 * @return MserWarmup	The warm-up, also returned by {@link #getWarmup()}
+	 * @throws IllegalStateException	With the CTMC engine, which does not follow individual contacts
+	 */
+	public MserWarmup selectWarmup(int numPilotReps, int numThreads) {
+		return selectWarmup(numPilotReps, maxNumReps, numThreads);
+	}
+
+	/**
+	 * Picks the warm-up with MSER-5 and sets it (see {@link #setWarmup(double)} and {@link MserWarmup}). The pilot replications
+	 * start from an empty system and record their waiting times; they do not change the statistics of this model. They use the
+	 * substreams after the first {@code maxReps} replications, so they are independent of the runs of at most {@code maxReps}
+	 * replications, e.g., {@link #simulateUntil} with that budget; longer runs are refused.
+	 *
+	 * @param numPilotReps	Number of pilot replications
+	 * @param maxReps		Largest number of replications of the runs of this model
+	 * @param numThreads	Number of worker threads; 1 runs the replications sequentially on this model
+	 * @return MserWarmup	The warm-up, also returned by {@link #getWarmup()}
+	 * @throws IllegalStateException	With the CTMC engine, which does not follow individual contacts
+	 */
+	public MserWarmup selectWarmup(int numPilotReps, int maxReps, int numThreads) {
+		if (engine == Engine.CTMC) throw new IllegalStateException("The CTMC engine does not follow individual contacts: no waiting times to pick a warm-up from");
+		if (numPilotReps < 1) throw new IllegalArgumentException("At least one pilot replication is needed, found " + numPilotReps);
+		if (maxReps < 0) throw new IllegalArgumentException("The number of replications of the runs is negative: " + maxReps);
+		setWarmup(0);
+		final int first = maxReps + maxReps % 2; // Even: an antithetic pilot pair does not share a substream with a run
+		firstPilotRep = Integer.MAX_VALUE;
+		final WaitSeries[] series = new WaitSeries[numPilotReps];
+		final double[] time = new double[numPilotReps];
+		setWaitSeries(true);
+		try {
+			runReplications(first, first + numPilotReps, numPeriods, numThreads, (s, r) -> {
+				series[r - first] = s.waitSeries.copy();
+				time[r - first] = s.time;
+			});
+		}
+		finally {
+			setWaitSeries(false);
+		}
+		double pilotTime = 0;
+		for (double t : time) pilotTime += t;
+		MserWarmup selected = MserWarmup.of(series, mainStartTime, pilotTime);
+		setWarmup(selected.getWarmup());
+		this.warmup = selected;
+		this.firstPilotRep = first;
+		return selected;
+	}
+
+	/**
+	 * Records the series of the waiting times of the next replications of this model and its replicas (see {@link WaitSeries}).
+	 */
+	private void setWaitSeries(boolean on) {
+		this.waitSeries = on;
+		stats.waitSeries = on ? new WaitSeries() : null;
+		for (SimRunner replica : replicas) {
+			replica.waitSeries = on;
+			replica.stats.waitSeries = on ? new WaitSeries() : null;
+		}
+	}
+
+	/**
+	 * Replays pre-generated arrivals instead of drawing them (see {@link ArrivalBank}). The bank must come from a model
+	 * with the same demand and package seed, and hold every replication simulated; the results are then identical.
+	 *
+	 * @param bank	The arrivals to replay; null: draw the arrivals
+	 * @throws IllegalStateException	With an engine other than KERNEL
+	 */
+	public void setArrivalBank(ArrivalBank bank) {
+		if (engine != Engine.KERNEL) throw new IllegalStateException("Only the KERNEL engine replays arrivals; the " + engine + " engine draws them");
+		if (bank != null && (bank.getNumContacts() != numContacts || bank.isAntithetic() != antithetic)) {
+			throw new IllegalArgumentException("The arrival bank has " + bank.getNumContacts() + " contact types" + (bank.isAntithetic() ? ", antithetic" : "") + ": it is not from this model");
+		}
+		this.arrivalBank = bank;
+		kernel.setArrivals(null);
+		for (SimRunner replica : replicas) {
+			replica.arrivalBank = bank;
+			replica.kernel.setArrivals(null);
+		}
+	}
+
+	/**
+	 * Simulates the same replications of several KERNEL models in lockstep, e.g., one model per routing policy (see {@link PolicyEvaluator}).
+	 * The arrivals of each replication are generated once, from the arrival streams of the first model, and replayed by every model;
+	 * each model draws its service times from its own streams, at the substream of the replication. Models built from the same package seed
+	 * thus see the same arrivals and, route by route, the same service times. The models of a replication run in parallel
+	 * on up to {@code numThreads} threads, while the arrivals of the next replication are generated.
+	 * The statistics of each model are those of {@link #simulate(int, int, int)}.
+	 *
+	 * @param models		The models, with the same contact types and periods
+	 * @param numReps		Number of simulation replications
+	 * @param numPeriods	Number of simulation periods
+	 * @param numThreads	Number of threads; 1 runs the models one after the other
+	 */
+	static void simulateLockstep(SimRunner[] models, int numReps, int numPeriods, int numThreads) {
+		for (SimRunner model : models) {
+			if (model.engine != Engine.KERNEL) throw new IllegalArgumentException("Lockstep runs need the KERNEL engine, found " + model.engine);
+			if (model.numContacts != models[0].numContacts || model.numPeriods != models[0].numPeriods || model.antithetic != models[0].antithetic) {
+				throw new IllegalArgumentException("Lockstep models need the same contact types, periods and antithetic option");
+			}
+			model.checkPairs(numReps);
+			model.checkPilots(numReps);
+			model.initAggregates(true);
+		}
+		final SimRunner first = models[0];
+		final ArrivalGenerator generator = first.newArrivalGenerator();
+		final ArrivalBuffer[] buffers = {new ArrivalBuffer(), new ArrivalBuffer()}; // Replayed by the models / being generated
+		final int numWorkers = Math.max(1, Math.min(numThreads, models.length));
+		final ExecutorService pool = numWorkers > 1 ? Executors.newFixedThreadPool(numWorkers) : null;
+		try {
+			if (numReps > 0) generator.generate(0, first.substreamOf(0), false, buffers[0]);
+			for (int r = 0; r < numReps; r++) {
+				final ArrivalBuffer arrivals = buffers[r & 1];
+				final int rep = r;
+				List<Future<?>> runs = new ArrayList<Future<?>>();
+				for (SimRunner model : models) {
+					Runnable run = () -> {
+						model.kernel.setArrivals(arrivals);
+						try {
+							MCMSStatistics s = model.simulateOneReplication(numPeriods, rep);
+							model.addToAggregates(s); // A model simulates one replication at a time, in replication order
+							model.addWaitTimes(s);
+						}
+						finally {
+							model.kernel.setArrivals(null);
+						}
+					};
+					if (pool != null) runs.add(pool.submit(run));
+					else run.run();
+				}
+				if (r + 1 < numReps) generator.generate(r + 1, first.substreamOf(r + 1), first.antithetic && (r + 1) % 2 == 1, buffers[(r + 1) & 1]);
+				for (Future<?> run : runs) run.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while simulating the replications", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("A replication failed", e.getCause());
+		}
+		finally {
+			if (pool != null) pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns a generator of the arrivals of this model, with its own copies of the arrival streams (see {@link ArrivalGenerator}).
+	 */
+	ArrivalGenerator newArrivalGenerator() {
+		Stream[] streams = new Stream[numContacts];
+		for (int k = 0; k < numContacts; k++) {
+			streams[k] = arrivStream[k].clone();
+			streams[k].resetStartStream();
+		}
+		return new ArrivalGenerator(numContacts, numGroups, schedule.newReader(), numPeriods, periodDuration, startTime, streams);
+	}
+
+	/**
+	 * Returns true if the ContactCenters library on the classpath can simulate, i.e., if the CONTACT_CENTERS engine is available.
+	 * A build against an API-only stand-in of the library compiles, but its period change event schedules nothing.
+	 */
+	public static boolean isContactCentersAvailable() {
+		try {
+			final Simulator probe = new Simulator();
+			final PeriodChangeEvent periods = new PeriodChangeEvent(probe, 1, 3, 0);
+			probe.init();
+			periods.init();
+			periods.start(); // Schedules the first period change
+			return !probe.getEventList().isEmpty();
+		}
+		catch (LinkageError e) { // The library is not on the classpath
+			return false;
+		}
+	}
+
+	private void checkPairs(int numReps) {
+		if (antithetic && numReps % 2 != 0) throw new IllegalArgumentException("Antithetic replications come in pairs: an even number is needed, found " + numReps);
+	}
+
+	private void checkPilots(int numReps) {
+		if (numReps > firstPilotRep) throw new IllegalArgumentException(numReps + " replications would reuse the random numbers of the warm-up pilots, from replication " + firstPilotRep + ": pick the warm-up for this budget (see selectWarmup)");
+	}
+
+	/**
+	 * Records every contact served by the next runs of this model and its replicas to a trace (see {@link ContactTrace}).
+	 * The caller closes the trace after the runs.
+	 *
+	 * @param trace		The trace, opened for the numbers of contact types, groups and main periods of this model; null: stop tracing
+	 * @throws IllegalStateException	With the CTMC engine, which does not follow individual contacts
+	 */
+	public void setContactTrace(ContactTrace trace) {
+		if (trace != null && engine == Engine.CTMC) throw new IllegalStateException("The CTMC engine does not follow individual contacts: no contact trace");
+		this.contactTrace = trace;
+		stats.trace = trace == null ? null : trace.newRecorder();
+		for (SimRunner replica : replicas) {
+			replica.contactTrace = trace;
+			replica.stats.trace = trace == null ? null : trace.newRecorder();
+		}
+	}
+
+	/**
+	 * Returns this model and its replicas for the worker threads, for monitoring.
+	 */
+	List<SimRunner> getModels() {
+		List<SimRunner> models = new ArrayList<SimRunner>();
+		models.add(this);
+		models.addAll(replicas);
+		return models;
+	}
+
+	/**
+	 * Returns the period being simulated by this model, for monitoring.
+	 */
+	int getCurrentPeriod() {
+		return engine == Engine.CONTACT_CENTERS ? PCE.getCurrentPeriod() : stats.getPublishedPeriod(); // The period of the ContactCenters engine is read without synchronization
+	}
+
+	/**
+	 * Returns the simulation time advanced by this model since it was created (all completed replications and the current one), for monitoring.
+	 */
+	double getSimulatedTime() {
+		final int rep = currentRep;
+		return completedTime + (rep >= 0 ? stats.getPublishedTime() : 0);
+	}
+
+	//getters
+	public Engine getEngine() {
+		return engine;
+	}
+
+	public PeriodChangeEvent getPCE() {
+		return PCE;
+	}
+
+	public int getTotNumArrived() {
+		return totNumArrived;
+	}
+
+	public int getTotNumBlocked() {
+		return totNumBlocked;
+	}
+
+	public int getTotNumServed() {
+		return totNumServed;
+	}
+
+	public int getTotNumGoodSL() {
+		return totNumGoodSL;
+	}
+
+	public double getTotWaitTime() {
+		return totWaitTime;
+	}
+
+	/**
+	 * Keeps the EW and SL of each replication of the next runs, for a paired comparison with another model (see {@link PairedComparison}).
+	 * The other statistics are running statistics; only these two values per replication are kept.
+	 */
+	void keepReplications() {
+		replicationEW = new double[0];
+		replicationSL = new double[0];
+	}
+
+	/**
+	 * Returns the EW of each replication of the last run (see {@link #keepReplications()}), or null if not kept.
+	 */
+	double[] getReplicationEW() {
+		return replicationEW == null ? null : Arrays.copyOf(replicationEW, numRepsDone);
+	}
+
+	/**
+	 * Returns the SL of each replication of the last run (see {@link #keepReplications()}), or null if not kept.
+	 */
+	double[] getReplicationSL() {
+		return replicationSL == null ? null : Arrays.copyOf(replicationSL, numRepsDone);
+	}
+
+	public MatrixOfTallies<Tally> getRepNumGoodSLKP() {
+		return repNumGoodSLKP;
+	}
+
+	public RunningStatistic getRepEW() {
+		return repEW;
+	}
+
+	public RunningStatistic getRepSL() {
+		return repSL;
+	}
+
+	/**
+	 * Returns the EW of contact type {@code k} over the replications: total wait time of the type per arrival of the type.
+	 */
+	public RunningStatistic getRepEW(int k) {
+		return repEWType[k];
+	}
+
+	/**
+	 * Returns the SL of contact type {@code k} over the replications: fraction of the served contacts of the type served within the AWT.
+	 */
+	public RunningStatistic getRepSL(int k) {
+		return repSLType[k];
+	}
+
+	public int getNumReps() {
+		return numRepsDone;
+	}
+
+	public int getNumContacts() {
+		return numContacts;
+	}
+
+	public ArrivalBank getArrivalBank() {
+		return arrivalBank;
+	}
+
+	public RoutingPolicy getRoutingPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Returns the starting time of the main periods: the warm-up, if any.
+	 */
+	public double getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Returns the warm-up picked by {@link #selectWarmup(int, int)}; null if none.
+	 */
+	public MserWarmup getWarmup() {
+		return warmup;
+	}
+
+	public boolean isAntithetic() {
+		return antithetic;
+	}
+
+	public int getStatPeriodLength() {
+		return statPeriodLength;
+	}
+
+	/**
+	 * Returns the number of statistical periods of the per-period counters, i.e., the number of main periods divided by {@link #getStatPeriodLength()}, rounded up.
+	 */
+	public int getNumStatPeriods() {
+		return (numPeriods + statPeriodLength - 1) / statPeriodLength;
+	}
+
+	MCMSStatistics getStats() {
+		return stats;
+	}
+
+	int getCurrentRep() {
+		return currentRep;
+	}
+
+	int getNumCompletedReps() {
+		return numCompletedReps;
+	}
+
+	/**
+	 * Returns the histogram of the waiting times of the contacts of type {@code k} that arrived in statistical period {@code p} (starting at 0),
+	 * over all replications of the last run; null if the histograms are not collected.
+	 */
+	public WaitTimeHistogram getWaitTimeHistogram(int k, int p) {
+		return waitTimeKP == null ? null : waitTimeKP[k][p];
+	}
+
+	/**
+	 * Returns the histogram of the waiting times of the contacts of type {@code k} over all main periods,
+	 * or of all contacts if {@code k} is negative; null if the histograms are not collected.
+	 */
+	public WaitTimeHistogram getWaitTimeHistogram(int k) {
+		if (waitTimeKP == null) return null;
+		WaitTimeHistogram h = new WaitTimeHistogram();
+		for (int t = k < 0 ? 0 : k; t < (k < 0 ? numContacts : k + 1); t++)
+			for (WaitTimeHistogram hp : waitTimeKP[t]) h.merge(hp);
+		return h;
 	}
-}
\ No newline at end of file
+}
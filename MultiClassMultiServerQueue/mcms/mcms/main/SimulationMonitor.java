@@ -0,0 +1,181 @@
+package mcms.main;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import mcms.contactcenters.MCMSStatistics;
+
+/**
+ * <h1> JMX Monitor of a Simulation Model </h1>
+ *  <p>
+ *  Publishes live progress counters of a model (see {@link SimulationMonitorMBean}) while it simulates,
+ *  e.g., to detect a stalled or overloaded run early in a long study.
+ * 	</p>
+ *  <p>
+ *  The engines only increment plain counters of their {@link MCMSStatistics} on the hot path; no lock, no volatile write.
+ *  They publish a copy with ordered writes at each period change, every few tens of thousands of events and at the end of a replication
+ *  (see {@link MCMSStatistics#publishProgress()}), and the monitor reads that copy from the JMX thread when a client asks.
+ *  The counters may thus lag a little behind the simulation, but are never torn. The longest queues are read without synchronization
+ *  and are approximate.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class SimulationMonitor implements SimulationMonitorMBean {
+	private static final long SAMPLE_INTERVAL = 1000000000L; // Minimum time between two samples of the rates, in nanoseconds
+
+	private final SimRunner model;
+	private final ObjectName name;
+	private final long startNanos;
+
+	// Last sample of the rates
+	private long sampleNanos;
+	private long sampleEvents;
+	private long sampleArrivals;
+	private long sampleServices;
+	private double eventRate;
+	private double arrivalRate;
+	private double serviceRate;
+
+	private SimulationMonitor(SimRunner model, ObjectName name) {
+		this.model = model;
+		this.name = name;
+		this.startNanos = System.nanoTime();
+		this.sampleNanos = startNanos;
+		this.sampleEvents = getNumEvents();
+		this.sampleArrivals = getNumArrivals();
+		this.sampleServices = getNumServices();
+	}
+
+	/**
+	 * Registers a monitor of a model with the platform MBean server, as {@code mcms:type=SimulationMonitor,name=<name>}.
+	 *
+	 * @param model		The model to monitor
+	 * @param name		Name of the monitor, e.g., the example number
+	 * @return			The monitor
+	 */
+	public static SimulationMonitor register(SimRunner model, String name) {
+		try {
+			ObjectName objectName = new ObjectName("mcms:type=SimulationMonitor,name=" + ObjectName.quote(name));
+			SimulationMonitor monitor = new SimulationMonitor(model, objectName);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(monitor, objectName);
+			return monitor;
+		}
+		catch (JMException e) {
+			throw new IllegalStateException("Cannot register the simulation monitor " + name, e);
+		}
+	}
+
+	/**
+	 * Removes the monitor from the platform MBean server.
+	 */
+	public void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(name)) server.unregisterMBean(name);
+		}
+		catch (JMException e) {
+			throw new IllegalStateException("Cannot unregister the simulation monitor " + name, e);
+		}
+	}
+
+	/**
+	 * Updates the rates if the last sample is old enough.
+	 */
+	private synchronized void sample() {
+		final long now = System.nanoTime();
+		if (now - sampleNanos < SAMPLE_INTERVAL) return;
+		final double seconds = (now - sampleNanos) / 1e9;
+		final long events = getNumEvents();
+		final long arrivals = getNumArrivals();
+		final long services = getNumServices();
+		eventRate = (events - sampleEvents) / seconds;
+		arrivalRate = (arrivals - sampleArrivals) / seconds;
+		serviceRate = (services - sampleServices) / seconds;
+		sampleNanos = now;
+		sampleEvents = events;
+		sampleArrivals = arrivals;
+		sampleServices = services;
+	}
+
+	public String getEngine() {
+		return model.getEngine().name();
+	}
+
+	public long getNumEvents() {
+		long n = 0;
+		for (SimRunner m : model.getModels()) n += m.getStats().getPublishedEvents();
+		return n;
+	}
+
+	public long getNumArrivals() {
+		long n = 0;
+		for (SimRunner m : model.getModels()) n += m.getStats().getPublishedArrivals();
+		return n;
+	}
+
+	public long getNumServices() {
+		long n = 0;
+		for (SimRunner m : model.getModels()) n += m.getStats().getPublishedEnded();
+		return n;
+	}
+
+	public synchronized double getEventsPerSecond() {
+		sample();
+		return eventRate;
+	}
+
+	public synchronized double getArrivalsPerSecond() {
+		sample();
+		return arrivalRate;
+	}
+
+	public synchronized double getServicesPerSecond() {
+		sample();
+		return serviceRate;
+	}
+
+	public int getNumCompletedReplications() {
+		int n = 0;
+		for (SimRunner m : model.getModels()) n += m.getNumCompletedReps();
+		return n;
+	}
+
+	public int[] getCurrentReplications() {
+		List<SimRunner> models = model.getModels();
+		int[] reps = new int[models.size()];
+		for (int m = 0; m < reps.length; m++) reps[m] = models.get(m).getCurrentRep();
+		return reps;
+	}
+
+	public int[] getCurrentPeriods() {
+		List<SimRunner> models = model.getModels();
+		int[] periods = new int[models.size()];
+		for (int m = 0; m < periods.length; m++) periods[m] = models.get(m).getCurrentPeriod();
+		return periods;
+	}
+
+	public double getSimToWallTimeRatio() {
+		double simulated = 0;
+		for (SimRunner m : model.getModels()) simulated += m.getSimulatedTime();
+		return simulated / ((System.nanoTime() - startNanos) / 1e9);
+	}
+
+	public int[] getMaxQueueLengths() {
+		int[] max = null;
+		for (SimRunner m : model.getModels()) {
+			final int[] lengths = m.getStats().maxQueueLength;
+			if (max == null) max = lengths.clone();
+			else for (int k = 0; k < max.length; k++) max[k] = Math.max(max[k], lengths[k]);
+		}
+		return max;
+	}
+
+	public long getHeapUsed() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,52 @@
+package mcms.main;
+
+/**
+ * <h1> Live Progress of a Simulation over JMX </h1>
+ *  <p>
+ *  Management interface of {@link SimulationMonitor}, visible in JConsole or VisualVM under {@code mcms:type=SimulationMonitor}.
+ *  The counters cover a model and its replicas for the worker threads, since the model was created.
+ *  The rates are measured between two samples, at least one second apart.
+ *  The counters are published by the simulating threads at each period change and every few tens of thousands of events, so they may lag a little.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public interface SimulationMonitorMBean {
+	/** Simulation engine of the model */
+	String getEngine();
+
+	/** Events processed: arrivals, ends of service and period changes (transitions of the CTMC engine) */
+	long getNumEvents();
+
+	/** Contacts arrived, in all periods */
+	long getNumArrivals();
+
+	/** Services ended, in all periods */
+	long getNumServices();
+
+	double getEventsPerSecond();
+
+	double getArrivalsPerSecond();
+
+	double getServicesPerSecond();
+
+	/** Replications completed */
+	int getNumCompletedReplications();
+
+	/** Replication simulated by each model (the model, then its replicas), -1 if idle */
+	int[] getCurrentReplications();
+
+	/** Period simulated by each model (0: preliminary, 1..P: main periods, P+1: wrap-up) */
+	int[] getCurrentPeriods();
+
+	/** Simulation time advanced by all models per second of wall time since the monitor was registered */
+	double getSimToWallTimeRatio();
+
+	/** Longest waiting queue of each contact type; approximate, read without synchronization */
+	int[] getMaxQueueLengths();
+
+	/** Heap memory in use, in bytes */
+	long getHeapUsed();
+}
@@ -0,0 +1,284 @@
+package mcms.main;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import mcms.input.RouteTable;
+import umontreal.iro.lecuyer.probdist.NormalDist;
+
+/**
+ * <h1> Simulation-Based Staffing Optimizer </h1>
+ *  <p>
+ *  Searches the number of agents of each group that meets a service-level target at minimum cost.
+ *  The service level is the fraction of the served contacts served within the AWT of the base {@link ModelBuilder},
+ *  estimated by simulation (mean over the replications); the cost is the sum of the agents weighted by the cost of their group.
+ * 	</p>
+ *  <p>
+ *  The search:
+ *  <ol>
+ *  <li> <b> Start: </b> square-root staffing. Each contact type sends its load (demand times mean service time) to its fastest group,
+ *  and group {@code i} gets {@code ceil(R_i + beta sqrt(R_i))} agents for the load {@code R_i}, with {@code beta} the normal quantile of the target. </li>
+ *  <li> <b> Greedy marginal analysis, adding: </b> while the target is not met, add the agent with the largest service-level gain per unit cost. </li>
+ *  <li> <b> Greedy marginal analysis, removing: </b> while possible, remove the most expensive agent whose removal still meets the target. </li>
+ *  </ol>
+ *  Every staffing is simulated with the same random numbers (see {@link ModelBuilder#buildVariant}), so the differences between candidates
+ *  are not hidden by noise, and its result is memoized. The candidates of a step are simulated in parallel on a fork-join pool.
+ *  The demand is the same for every staffing: with the KERNEL engine, the arrivals of the replications are generated once,
+ *  by the first simulation, and replayed by all the others (see {@link ArrivalBank}).
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class StaffingOptimizer {
+	/**
+	 * Simulation results of a staffing.
+	 */
+	public static class Evaluation {
+		private final int[] agents;
+		private final double cost;
+		private final double sl;
+		private final double slHalfWidth;
+		private final double ew;
+		private final double ewHalfWidth;
+
+		Evaluation(int[] agents, double cost, SimRunner model) {
+			this.agents = agents;
+			this.cost = cost;
+			this.sl = model.getRepSL().getMean();
+			this.slHalfWidth = model.getRepSL().halfWidth(0.95);
+			this.ew = model.getRepEW().getMean();
+			this.ewHalfWidth = model.getRepEW().halfWidth(0.95);
+		}
+
+		//getters
+		public int[] getAgents() {
+			return agents.clone();
+		}
+
+		public double getCost() {
+			return cost;
+		}
+
+		public double getSL() {
+			return sl;
+		}
+
+		public double getSLHalfWidth() {
+			return slHalfWidth;
+		}
+
+		public double getEW() {
+			return ew;
+		}
+
+		public double getEWHalfWidth() {
+			return ewHalfWidth;
+		}
+	}
+
+	private final ModelBuilder base;
+	private final double[] cost; // Cost of an agent [group]
+	private final double slTarget;
+	private final Map<String, Evaluation> evaluations = new ConcurrentHashMap<String, Evaluation>(); // Memoized simulations, by staffing
+	private ForkJoinPool pool;
+	private int numThreads; // Threads of the current search
+	private ArrivalBank arrivals; // Arrivals replayed by every staffing of the current search (KERNEL engine); null: drawn
+
+	/**
+	 * Constructor.
+	 *
+	 * @param base		Builder of the instance and the simulation settings (the staffing of its agents file is not used)
+	 * @param cost		Cost of an agent of each group
+	 * @param slTarget	Service-level target, in (0, 1)
+	 */
+	public StaffingOptimizer(ModelBuilder base, double[] cost, double slTarget) {
+		if (cost.length != base.numGroups) throw new IllegalArgumentException("One cost per group is needed, found " + cost.length);
+		if (!(slTarget > 0 && slTarget < 1)) throw new IllegalArgumentException("The service-level target must be in (0, 1), found " + slTarget);
+		this.base = base;
+		this.cost = cost.clone();
+		this.slTarget = slTarget;
+	}
+
+	/**
+	 * Returns the square-root staffing of the instance, the starting point of the search.
+	 */
+	public int[] squareRootStaffing() {
+		final RouteTable routes = base.getRouteTable();
+		final double[] demands = base.getBaseDemands();
+		final int[] typeStart = routes.getTypeStart();
+		final int[] typeGroup = routes.getTypeGroup();
+		final double[] tau = routes.getTau();
+		double[] load = new double[base.numGroups];
+		for (int k = 0; k < base.numContactTypes; k++) {
+			if (typeStart[k] < typeStart[k + 1]) load[typeGroup[typeStart[k]]] += demands[k] * tau[typeStart[k]]; // First route: the fastest group
+		}
+		final double beta = Math.max(0, NormalDist.inverseF01(slTarget));
+		int[] agents = new int[base.numGroups];
+		for (int i = 0; i < agents.length; i++) agents[i] = (int) Math.ceil(load[i] + beta * Math.sqrt(load[i]));
+		return agents;
+	}
+
+	/**
+	 * Searches the cheapest staffing that meets the service-level target.
+	 *
+	 * @param numThreads	Number of threads simulating the candidates
+	 * @return Evaluation	The cheapest staffing found that meets the target, or the closest one if none does
+	 */
+	public Evaluation optimize(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+		pool = new ForkJoinPool(this.numThreads);
+		try {
+			Evaluation current = evaluate(squareRootStaffing(), this.numThreads);
+			final int maxAgents = 10 * Math.max(1, IntStream.of(current.agents).sum()) + 100; // Guard against an unreachable target
+
+			// Add agents until the target is met
+			while (current.sl < slTarget && IntStream.of(current.agents).sum() < maxAgents) {
+				Evaluation best = null;
+				double bestGain = Double.NEGATIVE_INFINITY;
+				for (Evaluation candidate : evaluateNeighbors(current.agents, +1)) {
+					final double gain = (candidate.sl - current.sl) / Math.max(candidate.cost - current.cost, Double.MIN_VALUE);
+					if (gain > bestGain) {
+						bestGain = gain;
+						best = candidate;
+					}
+				}
+				if (best == null) break;
+				current = best;
+			}
+			if (current.sl < slTarget) return current;
+
+			// Remove agents while the target is still met
+			while (true) {
+				Evaluation best = null;
+				for (Evaluation candidate : evaluateNeighbors(current.agents, -1)) {
+					if (candidate.sl < slTarget) continue;
+					if (best == null || candidate.cost < best.cost || (candidate.cost == best.cost && candidate.sl > best.sl)) best = candidate;
+				}
+				if (best == null) return current;
+				current = best;
+			}
+		}
+		finally {
+			pool.shutdownNow();
+			pool = null;
+			if (arrivals != null) arrivals.close();
+			arrivals = null;
+		}
+	}
+
+	/**
+	 * Simulates the staffing vectors with one more (or one less) agent in one group, in parallel.
+	 */
+	private List<Evaluation> evaluateNeighbors(int[] agents, int delta) {
+		final int[] groups = IntStream.range(0, agents.length).filter(i -> agents[i] + delta >= 0 && (delta > 0 || agents[i] > 1 || covers(agents, i))).toArray();
+		final int threadsPerCandidate = Math.max(1, numThreads / Math.max(1, groups.length)); // Few candidates: their replications run in parallel too
+		try {
+			return pool.submit(() -> IntStream.of(groups).parallel().mapToObj(i -> {
+				int[] neighbor = agents.clone();
+				neighbor[i] += delta;
+				return evaluate(neighbor, threadsPerCandidate);
+			}).collect(Collectors.toList())).get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while simulating the candidates", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("A candidate failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Returns true if every contact type with a demand can still be served when group {@code removed} has no agent.
+	 * Without this check, a staffing that serves no contact of some type would meet any target (no contact served late).
+	 */
+	private boolean covers(int[] agents, int removed) {
+		final RouteTable routes = base.getRouteTable();
+		final double[] demands = base.getBaseDemands();
+		for (int k = 0; k < base.numContactTypes; k++) {
+			if (demands[k] <= 0) continue;
+			boolean served = false;
+			for (int r = routes.getTypeStart()[k]; r < routes.getTypeStart()[k + 1] && !served; r++) {
+				final int i = routes.getTypeGroup()[r];
+				served = i != removed && agents[i] > 0;
+			}
+			if (!served) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Simulates a staffing on {@code numThreads} threads, unless it was simulated before.
+	 */
+	private Evaluation evaluate(int[] agents, int numThreads) {
+		final String key = Arrays.toString(agents);
+		Evaluation evaluation = evaluations.get(key);
+		if (evaluation != null) return evaluation;
+		double c = 0;
+		for (int i = 0; i < agents.length; i++) c += cost[i] * agents[i];
+		SimRunner model = base.buildVariant(agents, 1, base.acceptableWaitTime, false);
+		if (base.engine == SimRunner.Engine.KERNEL) model.setArrivalBank(arrivalsOf(model));
+		model.simulate(base.numReps, base.numPeriods, numThreads);
+		evaluation = new Evaluation(agents, c, model);
+		Evaluation previous = evaluations.putIfAbsent(key, evaluation);
+		return previous != null ? previous : evaluation;
+	}
+
+	/**
+	 * Returns the arrivals of the current search, generated from {@code model} by the first simulation.
+	 */
+	private synchronized ArrivalBank arrivalsOf(SimRunner model) {
+		if (arrivals == null) arrivals = base.newArrivalBank(model, 1, 1, base.exNum + "arrivals");
+		return arrivals;
+	}
+
+	/**
+	 * Returns the number of distinct staffing vectors simulated so far.
+	 */
+	public int getNumEvaluations() {
+		return evaluations.size();
+	}
+
+	/**
+	 * Arguments: inputPath exNum numContactTypes numGroups numReps slTarget awt [costs] [numThreads] [engine] <br>
+	 * The costs are comma-separated, one per group (default: 1 for every group). <br>
+	 * Example: {@code ./mcms/resources/test/input/ 2 2 2 10 0.8 10}
+	 */
+	public static void main(String[] args) {
+		if (args.length < 7) {
+			System.out.println("Arguments: inputPath exNum numContactTypes numGroups numReps slTarget awt [costs] [numThreads] [engine]");
+			return;
+		}
+		final String inputPath = args[0];
+		final int exNum = Integer.parseInt(args[1]);
+		final int numContactTypes = Integer.parseInt(args[2]);
+		final int numGroups = Integer.parseInt(args[3]);
+		final int numReps = Integer.parseInt(args[4]);
+		final double slTarget = Double.parseDouble(args[5]);
+		final double acceptableWaitTime = Double.parseDouble(args[6]);
+		double[] cost = new double[numGroups];
+		if (args.length > 7) cost = Arrays.stream(args[7].split(",")).mapToDouble(Double::parseDouble).toArray();
+		else Arrays.fill(cost, 1);
+		final int numPeriods = 12;
+		final double periodDuration = 30 * 24;
+
+		ModelBuilder builder = new ModelBuilder(exNum, numContactTypes, numGroups, numReps, numPeriods, periodDuration, numReps * numPeriods * periodDuration, 0, true, acceptableWaitTime, 6, inputPath, "", exNum + "agents.dat", exNum + "demands.dat", exNum + "routes.dat");
+		if (args.length > 9) builder.setEngine(SimRunner.Engine.valueOf(args[9]));
+		final int numThreads = args.length > 8 ? Integer.parseInt(args[8]) : builder.engine == SimRunner.Engine.CONTACT_CENTERS ? 1 : Runtime.getRuntime().availableProcessors(); // CONTACT_CENTERS is not yet checked in parallel
+
+		StaffingOptimizer optimizer = new StaffingOptimizer(builder, cost, slTarget);
+		long start = System.nanoTime();
+		Evaluation best = optimizer.optimize(numThreads);
+		System.out.printf("Square-root staffing: %s%n", Arrays.toString(optimizer.squareRootStaffing()));
+		System.out.printf("%s staffing: %s, cost %.2f (%d staffing vectors simulated in %.2f s)%n", best.getSL() >= slTarget ? "Cheapest" : "Target not met, best", Arrays.toString(best.getAgents()), best.getCost(), optimizer.getNumEvaluations(), (System.nanoTime() - start) / 1e9);
+		System.out.printf("\t SL(AWT=%s): %.6f +/- %.6f (95%%)%n", acceptableWaitTime, best.getSL(), best.getSLHalfWidth());
+		System.out.printf("\t EW: %.6f +/- %.6f (95%%)%n", best.getEW(), best.getEWHalfWidth());
+	}
+}
@@ -0,0 +1,256 @@
+package mcms.output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <h1> Per-Contact Trace File </h1>
+ *  <p>
+ *  Records every served contact of a run to a memory-mapped file: replication, contact type, agent group, arrival time,
+ *  queue time and service time. Metrics the run did not compute (e.g., the service level per type and group, or another warm-up cutoff)
+ *  are then computed from the file by a {@link TraceAnalyzer}, without simulating again. All periods are recorded, warm-up and wrap-up included.
+ * 	</p>
+ *  <p>
+ *  Each model records through its own {@link Recorder}, which fills the columns of a chunk of {@link #CHUNK_SIZE} records.
+ *  A full chunk is handed to the writer thread of the trace through a bounded queue, and the model goes on with an empty chunk
+ *  from a fixed pool; the simulation thread only waits if the writer falls behind by the whole pool.
+ * 	</p>
+ *  <p>
+ *  Format (little-endian): a header (magic number, version, K, I, P, period duration, start time of the first main period), then chunks.
+ *  A chunk is its number of records n and a padding int, then the columns {@code arrival[n]}, {@code queueTime[n]}, {@code serviceTime[n]}
+ *  (doubles), {@code rep[n]}, {@code type[n]}, {@code group[n]} (ints), padded to a multiple of 8 bytes. The file is written through
+ *  mapped regions, which {@link #close()} truncates to the written data; a chunk header with {@code n = 0} marks the end of the data
+ *  of a file that was not truncated, e.g., after a crash.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public final class ContactTrace implements Closeable {
+	static final long MAGIC = 0x4D434D5354524143L; // "MCMSTRAC"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 8 + 4 * 4 + 8 * 2;
+	public static final int CHUNK_SIZE = 8192; // Records per chunk
+	private static final int POOL_SIZE = 8; // Chunks per recorder
+	private static final long REGION_SIZE = 64L << 20; // Bytes mapped at a time
+
+	/**
+	 * Columns of one chunk of records.
+	 */
+	private static final class Chunk {
+		final int[] rep = new int[CHUNK_SIZE];
+		final int[] type = new int[CHUNK_SIZE];
+		final int[] group = new int[CHUNK_SIZE];
+		final double[] arrival = new double[CHUNK_SIZE];
+		final double[] queueTime = new double[CHUNK_SIZE];
+		final double[] serviceTime = new double[CHUNK_SIZE];
+		int size;
+		BlockingQueue<Chunk> owner; // Pool of the recorder the chunk goes back to
+	}
+
+	/**
+	 * Records the served contacts of one model. Not thread-safe: one recorder per simulation thread.
+	 */
+	public static final class Recorder {
+		private final ContactTrace trace;
+		private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(POOL_SIZE);
+		private Chunk chunk;
+		private int rep;
+
+		private Recorder(ContactTrace trace) {
+			this.trace = trace;
+			for (int c = 0; c < POOL_SIZE; c++) {
+				Chunk empty = new Chunk();
+				empty.owner = free;
+				free.add(empty);
+			}
+			chunk = free.poll();
+		}
+
+		/**
+		 * Sets the replication of the next records.
+		 */
+		public void setReplication(int rep) {
+			this.rep = rep;
+		}
+
+		/**
+		 * Records a served contact.
+		 *
+		 * @param type			Contact type
+		 * @param group			Agent group that served the contact
+		 * @param arrival		Arrival time
+		 * @param queueTime		Queue waiting time
+		 * @param serviceTime	Service time
+		 */
+		public void record(int type, int group, double arrival, double queueTime, double serviceTime) {
+			final Chunk c = chunk;
+			final int n = c.size;
+			c.rep[n] = rep;
+			c.type[n] = type;
+			c.group[n] = group;
+			c.arrival[n] = arrival;
+			c.queueTime[n] = queueTime;
+			c.serviceTime[n] = serviceTime;
+			if ((c.size = n + 1) == CHUNK_SIZE) flush();
+		}
+
+		/**
+		 * Hands the current chunk to the writer, if it holds records, and takes an empty one.
+		 */
+		private void flush() {
+			if (chunk.size == 0) return;
+			trace.submit(chunk);
+			try {
+				chunk = free.take(); // Waits only if all chunks of the pool are queued for writing
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for the trace writer", e);
+			}
+		}
+	}
+
+	private final String file;
+	private final FileChannel channel;
+	private final BlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(4 * POOL_SIZE);
+	private final List<Recorder> recorders = new ArrayList<Recorder>();
+	private final Thread writer;
+	private final Chunk end = new Chunk(); // Tells the writer to stop
+	private MappedByteBuffer region; // Mapped part of the file, from regionStart
+	private long regionStart;
+	private long position; // End of the written data
+	private volatile IOException failure;
+
+	/**
+	 * Creates (or truncates) a trace file and starts its writer thread.
+	 *
+	 * @param file				Path and name of the trace file
+	 * @param numContacts		Number of contact types
+	 * @param numGroups			Number of agent groups
+	 * @param numPeriods		Number of main periods
+	 * @param periodDuration	Length of each period
+	 * @param startTime			Starting time of the first main period
+	 */
+	public ContactTrace(String file, int numContacts, int numGroups, int numPeriods, double periodDuration, double startTime) {
+		this.file = file;
+		try {
+			channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			map(HEADER_SIZE);
+			region.putLong(MAGIC).putInt(VERSION).putInt(numContacts).putInt(numGroups).putInt(numPeriods).putDouble(periodDuration).putDouble(startTime);
+			position = HEADER_SIZE;
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot create the contact trace " + file, e);
+		}
+		writer = new Thread(this::write, "mcms-trace-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Returns a new recorder, for one simulation thread.
+	 */
+	public synchronized Recorder newRecorder() {
+		Recorder recorder = new Recorder(this);
+		recorders.add(recorder);
+		return recorder;
+	}
+
+	private void submit(Chunk chunk) {
+		if (failure != null) throw new IllegalStateException("Cannot write the contact trace " + file, failure);
+		try {
+			full.put(chunk);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while writing the contact trace", e);
+		}
+	}
+
+	/**
+	 * Maps the file from the end of the written data, for at least {@code minSize} bytes.
+	 */
+	private void map(long minSize) throws IOException {
+		regionStart = position;
+		region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(REGION_SIZE, minSize));
+		region.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Writer thread: copies the full chunks into the mapped file, and returns them to their recorders.
+	 */
+	private void write() {
+		try {
+			Chunk c;
+			while ((c = full.take()) != end) {
+				if (failure == null) {
+					try {
+						writeChunk(c);
+					}
+					catch (IOException e) {
+						failure = e;
+					}
+				}
+				c.size = 0;
+				c.owner.add(c);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void writeChunk(Chunk c) throws IOException {
+		final int n = c.size;
+		final long size = chunkSize(n);
+		if (position + size > regionStart + region.capacity()) map(size);
+		region.position((int) (position - regionStart));
+		region.putInt(n).putInt(0);
+		region.asDoubleBuffer().put(c.arrival, 0, n).put(c.queueTime, 0, n).put(c.serviceTime, 0, n);
+		region.position(region.position() + 24 * n);
+		region.asIntBuffer().put(c.rep, 0, n).put(c.type, 0, n).put(c.group, 0, n);
+		position += size;
+	}
+
+	static long chunkSize(int n) {
+		return (8 + 36L * n + 7) & ~7L;
+	}
+
+	/**
+	 * Writes the records left in the recorders, stops the writer and closes the file.
+	 * Call after the simulation threads are done.
+	 */
+	public synchronized void close() {
+		for (Recorder recorder : recorders) {
+			if (recorder.chunk.size > 0) submit(recorder.chunk);
+			recorder.chunk = null;
+		}
+		try {
+			full.put(end);
+			writer.join();
+			region.force();
+			region = null;
+			channel.truncate(position); // Drops the unused end of the last region
+			channel.close();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while closing the contact trace", e);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot close the contact trace " + file, e);
+		}
+		if (failure != null) throw new IllegalStateException("Cannot write the contact trace " + file, failure);
+	}
+}
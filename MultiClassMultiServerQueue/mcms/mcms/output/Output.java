@@ -1,11 +1,16 @@
 package mcms.output;
 
+import mcms.contactcenters.WaitTimeHistogram;
+import mcms.main.RunningStatistic;
 import mcms.main.SimRunner;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
 /**
  * <h1> Output the simulation results </h1>
  * Output the simulation results to the console and save it in a file.
@@ -32,40 +37,142 @@ public class Output {
 	/**
 	 * 	Prints the simulation results summary to the console.
 	 * 
+	 * 	@param model The simulated model
 	 * 	@param exNum The example/instance number. It is used for reading (writing) simulation input (output)
 	 *  @return void
 	 */
-	public static void printStatisticsToConsole(int exNum, int numContacts, int numGroups, int numReps, int numPeriods, double periodDuration, double simDuration, double startTime, boolean randomServiceTime, double acceptableWaitTime, int numDecimals) {
+	public static void printStatisticsToConsole(SimRunner model, int exNum, int numContacts, int numGroups, int numReps, int numPeriods, double periodDuration, double simDuration, double startTime, boolean randomServiceTime, double acceptableWaitTime, int numDecimals) {
 		
 		DecimalFormat decimalForm = numberFormat(numDecimals);
 
 		System.out.println("Example number: " + exNum + "\n" + "\t Number of contact types: " + numContacts + "\n \t Number of agent groups: " + numGroups + "\n \t Acceptable Waiting Time: " + acceptableWaitTime + "\n"); 
 		
-		System.out.println("Simulation setting: \n \t Number Periods: "+ SimRunner.PCE.getNumPeriods()+ "\n \t Nummer Main Periods (excluding warm-up and wrap-up periods): " + SimRunner.PCE.getNumMainPeriods() + "\n \t Each Period\'s Length: " + simDuration + "\n \t Number Replications: " + numReps);
-		System.out.println("\t Total Net Simulation Duration (Num Main Periods * Each Period\'s Length * Num Replications): " + simDuration + "\n"); 
+		System.out.println("Simulation setting: \n \t Number Periods: "+ model.getPCE().getNumPeriods()+ "\n \t Nummer Main Periods (excluding warm-up and wrap-up periods): " + model.getPCE().getNumMainPeriods() + "\n \t Each Period\'s Length: " + simDuration + "\n \t Number Replications: " + numReps);
+		System.out.println("\t Total Net Simulation Duration (Num Main Periods * Each Period\'s Length * Num Replications): " + simDuration);
+		if (model.getWarmup() != null) {
+			final double cost = model.getWarmup().getCost(numReps);
+			System.out.println("\t Warm-up (loaded preliminary period): " + model.getWarmup() + "\n \t Warm-up cost (pilot replications + Num Replications * Warm-up): " + decimalForm.format(cost) + " (" + decimalForm.format(100 * cost / (numReps * numPeriods * periodDuration)) + "% of the main periods)");
+		}
+		System.out.println(); 
 		
 		System.out.println("Simulation results (average over replications):");
-		System.out.println("\t Total number of contacts arrived at the system: " + decimalForm.format(SimRunner.totNumArrived));
-		System.out.println("\t Total number of contacts served: " + decimalForm.format(SimRunner.totNumServed));
-		System.out.println("\t Total number of contacts served within the acceptable waiting time of " + acceptableWaitTime + ": " +  decimalForm.format(SimRunner.totNumGoodSL));
-		System.out.println("\t Average number of contacts arrived at the system per unit time: " + decimalForm.format(SimRunner.totNumArrived/simDuration)); 
-		System.out.println("\t Average number of contacts served per unit time: " + decimalForm.format(SimRunner.totNumServed/simDuration));
-		System.out.println("\t Average number of contacts served within the acceptable waiting time of " + acceptableWaitTime + " per unit time: " + decimalForm.format(SimRunner.totNumServed/simDuration));
+		System.out.println("\t Total number of contacts arrived at the system: " + decimalForm.format(model.getTotNumArrived()));
+		System.out.println("\t Total number of contacts served: " + decimalForm.format(model.getTotNumServed()));
+		System.out.println("\t Total number of contacts served within the acceptable waiting time of " + acceptableWaitTime + ": " +  decimalForm.format(model.getTotNumGoodSL()));
+		System.out.println("\t Average number of contacts arrived at the system per unit time: " + decimalForm.format(model.getTotNumArrived()/simDuration)); 
+		System.out.println("\t Average number of contacts served per unit time: " + decimalForm.format(model.getTotNumServed()/simDuration));
+		System.out.println("\t Average number of contacts served within the acceptable waiting time of " + acceptableWaitTime + " per unit time: " + decimalForm.format(model.getTotNumServed()/simDuration));
 		System.out.print("\t EW(avg): Expected queue waiting time of a random contact arrived at the system: ");
-		double avgEW = SimRunner.totWaitTime/SimRunner.totNumArrived;
+		double avgEW = model.getTotWaitTime()/model.getTotNumArrived();
 		System.out.println(decimalForm.format(avgEW));	
 		System.out.print("\t SL(avg): Average number of contacts that were served within the acceptable waiting time (defined per unit time): ");
-		double totSL = SimRunner.totNumGoodSL/simDuration; 
+		double totSL = model.getTotNumGoodSL()/simDuration; 
 		System.out.println(decimalForm.format(totSL));
+		System.out.println("\t EW(rep): Mean over replications of the queue waiting time per arrival, with its 95% CI half-width: " + decimalForm.format(model.getRepEW().getMean()) + " +/- " + decimalForm.format(model.getRepEW().halfWidth(0.95)));
+		System.out.println("\t SL(rep): Mean over replications of the fraction of contacts served within the acceptable waiting time, with its 95% CI half-width: " + decimalForm.format(model.getRepSL().getMean()) + " +/- " + decimalForm.format(model.getRepSL().halfWidth(0.95)));
+	}
+
+	/**
+	 * 	Prints the waiting-time distribution to the console: the service level for each acceptable waiting time,
+	 * 	and the median, 90th and 99th percentiles of the waiting time, for all contacts and for each contact type.
+	 * 	Requires the waiting-time histograms (see {@link mcms.main.ModelBuilder#setWaitTimeHistograms(boolean)}).
+	 * 
+	 * 	@param model 		The simulated model
+	 * 	@param awts			Acceptable waiting times
+	 * 	@param numContacts	Number of contact types
+	 * 	@param numDecimals	Number of decimals
+	 *  @return void
+	 */
+	public static void printWaitTimeDistributionToConsole(SimRunner model, double[] awts, int numContacts, int numDecimals) {
+		if (model.getWaitTimeHistogram(-1) == null) return;
+		DecimalFormat decimalForm = numberFormat(numDecimals);
+		StringBuilder header = new StringBuilder("\t type");
+		for (double awt : awts) header.append("\t SL(").append(awt).append(")");
+		header.append("\t p50 \t p90 \t p99");
+		System.out.println("Waiting-time distribution (all replications, served contacts):");
+		System.out.println(header);
+		for (int k = -1; k < numContacts; k++) {
+			WaitTimeHistogram h = model.getWaitTimeHistogram(k);
+			StringBuilder line = new StringBuilder("\t ").append(k < 0 ? "all" : String.valueOf(k));
+			for (double awt : awts) line.append("\t ").append(decimalForm.format(h.serviceLevel(awt)));
+			line.append("\t ").append(decimalForm.format(h.quantile(0.5))).append("\t ").append(decimalForm.format(h.quantile(0.9))).append("\t ").append(decimalForm.format(h.quantile(0.99)));
+			System.out.println(line);
+		}
+	}
+
+	/**
+	 * 	Prints the simulation results summary rebuilt from a replication log alone (see {@link ReplicationLog}),
+	 * 	e.g., while a long run is still going, or after it crashed. With antithetic replications, each pair is averaged into one
+	 * 	observation of EW and SL, as in {@link SimRunner#getRepEW()}; a pair with only one logged replication is left out of them.
+	 *
+	 * 	@param logFile				Path and name of the replication log
+	 * 	@param acceptableWaitTime	Acceptable waiting time of the logged run, for the labels
+	 * 	@param antithetic			True if the logged run simulated antithetic pairs (see {@link SimRunner#setAntithetic(boolean)})
+	 * 	@param numDecimals			Number of decimals
+	 *  @return void
+	 */
+	public static void printLogSummaryToConsole(String logFile, double acceptableWaitTime, boolean antithetic, int numDecimals) {
+		DecimalFormat decimalForm = numberFormat(numDecimals);
+		RunningStatistic repEW = new RunningStatistic();
+		RunningStatistic repSL = new RunningStatistic();
+		final int[] size = ReplicationLog.readDimensions(logFile);
+		long[] totals = new long[4]; // arrived, blocked, served, good SL
+		double[] totWaitTime = new double[1];
+		double[][] goodSLKP = new double[size[0]][size[1]];
+		int[] numReps = new int[1];
+		Map<Integer, double[]> firstOfPair = new HashMap<Integer, double[]>(); // Antithetic pairs with one logged replication: EW and SL
+		ReplicationLog.read(logFile, (s, r) -> {
+			final int numArrived = IntStream.of(s.numArrivedType).sum();
+			totals[0] += numArrived;
+			totals[1] += s.numBlocked;
+			totals[2] += s.numServed;
+			totals[3] += s.numGoodSL;
+			totWaitTime[0] += s.waitTime;
+			final double ew = numArrived == 0 ? 0 : s.waitTime / numArrived;
+			final double sl = s.numServed == 0 ? 1 : (double) s.numGoodSL / s.numServed;
+			if (!antithetic) {
+				repEW.add(ew);
+				repSL.add(sl);
+			}
+			else { // The log is in completion order: the pair is averaged when both of its replications are read
+				final double[] first = firstOfPair.remove(r / 2);
+				if (first == null) firstOfPair.put(r / 2, new double[] {ew, sl});
+				else {
+					repEW.add((first[0] + ew) / 2);
+					repSL.add((first[1] + sl) / 2);
+				}
+			}
+			for (int k = 0; k < size[0]; k++)
+				for (int p = 0; p < size[1]; p++) goodSLKP[k][p] += s.numGoodSLKP[k][p];
+			numReps[0]++;
+		});
+
+		System.out.println("Replication log: " + logFile + "\n \t Number of contact types: " + size[0] + "\n \t Number Stat Periods: " + size[1] + "\n \t Number Replications: " + numReps[0] + "\n");
+		if (numReps[0] == 0) return;
+		System.out.println("Simulation results (logged replications):");
+		System.out.println("\t Total number of contacts arrived at the system: " + totals[0]);
+		System.out.println("\t Total number of contacts blocked: " + totals[1]);
+		System.out.println("\t Total number of contacts served: " + totals[2]);
+		System.out.println("\t Total number of contacts served within the acceptable waiting time of " + acceptableWaitTime + ": " + totals[3]);
+		System.out.println("\t EW(avg): Expected queue waiting time of a random contact arrived at the system: " + decimalForm.format(totWaitTime[0] / totals[0]));
+		System.out.println("\t EW(rep): Mean over replications of the queue waiting time per arrival, with its 95% CI half-width: " + decimalForm.format(repEW.getMean()) + " +/- " + decimalForm.format(repEW.halfWidth(0.95)));
+		System.out.println("\t SL(rep): Mean over replications of the fraction of contacts served within the acceptable waiting time, with its 95% CI half-width: " + decimalForm.format(repSL.getMean()) + " +/- " + decimalForm.format(repSL.halfWidth(0.95)));
+		System.out.println("\t Contacts served within the acceptable waiting time per replication [type][period]:");
+		for (int k = 0; k < size[0]; k++) {
+			StringBuilder line = new StringBuilder("\t ").append(k);
+			for (int p = 0; p < size[1]; p++) line.append("\t ").append(decimalForm.format(goodSLKP[k][p] / numReps[0]));
+			System.out.println(line);
+		}
 	}
 
 	/**
-	 * Prints the simulation results summary to a file.	 
+	 * Prints the simulation results summary to a file.
+	 * @param 	model			The simulated model
 	 * @param 	exNum 			The example number
 	 * @param	resultsFile		The path and name of the file to be written to.
 	 * @return  void
 	 */	
-	public static void printResultsToFile (String resultsPath, int exNum, int numContacts, int numGroups, int numReps, int numPeriods, double periodDuration, double simDuration, double startTime, boolean randomServiceTime, double acceptableWaitTime, int numDecimals) {
+	public static void printResultsToFile (SimRunner model, String resultsPath, int exNum, int numContacts, int numGroups, int numReps, int numPeriods, double periodDuration, double simDuration, double startTime, boolean randomServiceTime, double acceptableWaitTime, int numDecimals) {
 		BufferedWriter bw = null;
 		// Name and location of the file for saving the simulation results
 		File resultsFile = new File(resultsPath + exNum + "FSF_Sim" + "" + "_K" + numGroups + "_I" + numContacts + ".out");
@@ -80,22 +187,24 @@ public class Output {
 			
 			bw.write("Example number: " + exNum + "\n" + "\t Number of contact types: " + numContacts + "\n \t Number of agent groups: " + numGroups + "\n \t Acceptable Waiting Time: " + acceptableWaitTime + "\n"); bw.newLine();
 			
-			bw.write("Simulation setting: \n \t Num Periods: "+ SimRunner.PCE.getNumPeriods()+ "\n \t Num Main Periods (excluding warm-up and wrap-up periods): " + SimRunner.PCE.getNumMainPeriods() + "\n \t Each Period\'s Length: " + simDuration + "\n \t Num Replications: " + numReps + "\n");
+			bw.write("Simulation setting: \n \t Num Periods: "+ model.getPCE().getNumPeriods()+ "\n \t Num Main Periods (excluding warm-up and wrap-up periods): " + model.getPCE().getNumMainPeriods() + "\n \t Each Period\'s Length: " + simDuration + "\n \t Num Replications: " + numReps + "\n");
 			bw.write("\t Total Net Simulation Duration (Num Main Periods * Each Period\'s Length * Num Replications): " + simDuration); bw.newLine();bw.newLine();
 			
 			bw.write("Simulation results (average over replications): \n");
-			bw.write("\t Total number of contacts arrived at the system: " + decimalForm.format(SimRunner.totNumArrived)); bw.newLine();
-			bw.write("\t Total number of contacts served: " + decimalForm.format(SimRunner.totNumServed)); bw.newLine();
-			bw.write("\t Total number of contacts served within the acceptable waiting time of " + acceptableWaitTime + ": " +  decimalForm.format(SimRunner.totNumGoodSL)); bw.newLine();
-			bw.write("\t Average number of contacts arrived at the system per unit time: " + decimalForm.format(SimRunner.totNumArrived/simDuration) + "\n"); 
-			bw.write("\t Average number of contacts served per unit time: " + decimalForm.format(SimRunner.totNumServed/simDuration)); bw.newLine();
-			bw.write("\t Average number of contacts served within the acceptable waiting time of " + acceptableWaitTime + " per unit time: " + decimalForm.format(SimRunner.totNumServed/simDuration)); bw.newLine();
+			bw.write("\t Total number of contacts arrived at the system: " + decimalForm.format(model.getTotNumArrived())); bw.newLine();
+			bw.write("\t Total number of contacts served: " + decimalForm.format(model.getTotNumServed())); bw.newLine();
+			bw.write("\t Total number of contacts served within the acceptable waiting time of " + acceptableWaitTime + ": " +  decimalForm.format(model.getTotNumGoodSL())); bw.newLine();
+			bw.write("\t Average number of contacts arrived at the system per unit time: " + decimalForm.format(model.getTotNumArrived()/simDuration) + "\n"); 
+			bw.write("\t Average number of contacts served per unit time: " + decimalForm.format(model.getTotNumServed()/simDuration)); bw.newLine();
+			bw.write("\t Average number of contacts served within the acceptable waiting time of " + acceptableWaitTime + " per unit time: " + decimalForm.format(model.getTotNumServed()/simDuration)); bw.newLine();
 			bw.write("\t EW(avg): Expected queue waiting time of a random contact arrived at the system: ");
-			double avgEW = SimRunner.totWaitTime/SimRunner.totNumArrived;
+			double avgEW = model.getTotWaitTime()/model.getTotNumArrived();
 			bw.write(decimalForm.format(avgEW)); bw.newLine();	
 			bw.write("\t SL(avg): Average number of contacts that were served within the acceptable waiting time (defined per unit time): ");
-			double totSL = SimRunner.totNumGoodSL/simDuration; 
+			double totSL = model.getTotNumGoodSL()/simDuration; 
 			bw.write(decimalForm.format(totSL)); bw.newLine();
+			bw.write("\t EW(rep): Mean over replications of the queue waiting time per arrival, with its 95% CI half-width: " + decimalForm.format(model.getRepEW().getMean()) + " +/- " + decimalForm.format(model.getRepEW().halfWidth(0.95))); bw.newLine();
+			bw.write("\t SL(rep): Mean over replications of the fraction of contacts served within the acceptable waiting time, with its 95% CI half-width: " + decimalForm.format(model.getRepSL().getMean()) + " +/- " + decimalForm.format(model.getRepSL().halfWidth(0.95))); bw.newLine();
 			
 		} catch (IOException ioe) {
 			ioe.printStackTrace();
@@ -0,0 +1,314 @@
+package mcms.output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.ObjIntConsumer;
+import java.util.zip.CRC32;
+import mcms.contactcenters.MCMSStatistics;
+
+/**
+ * <h1> Append-Only Log of the Replications </h1>
+ *  <p>
+ *  Writes the counters of each replication (see {@link MCMSStatistics}) to a binary file as soon as the replication is done,
+ *  so a long run that dies keeps the replications already simulated. Since replication {@code r} always uses substream {@code r}
+ *  of every random stream, a restarted run with the same seed skips the logged replications and simulates the others only
+ *  (see {@code SimRunner#simulate(int, int, int, ReplicationLog)}), with the same results as an uninterrupted run.
+ * 	</p>
+ *  <p>
+ *  The header records a fingerprint of the run configuration (seed, AWT, periods, engine, options and instance, see
+ *  {@code SimRunner#getRunFingerprint()}): a log is only resumed by a run with the same fingerprint, and refused otherwise.
+ * 	</p>
+ *  <p>
+ *  Format: a header (magic number, version, number of contact types K, number of periods P, fingerprint), then one fixed-size record per replication:
+ *  replication number, arrivals of each type, blocked, served, served within the AWT, total wait time, served within the AWT per type
+ *  and period, served, served within the AWT and total wait time of each type, and the CRC-32 of the record. A record cut by a crash fails its check; it is dropped when the log is opened again.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public final class ReplicationLog implements Closeable {
+	private static final long MAGIC = 0x4D434D535245504CL; // "MCMSREPL"
+	private static final int VERSION = 3;
+	private static final int HEADER_SIZE = 8 + 4 + 4 + 4 + 8;
+
+	private final String file;
+	private final int numContacts;
+	private final int numPeriods;
+	private final long fingerprint;
+	private final int recordSize;
+	private final FileChannel channel;
+	private final ByteBuffer record;
+	private final CRC32 crc = new CRC32();
+	private final BitSet completed;
+	private long[] position = new long[0]; // Offset of the record of each replication in the file; 0: not logged
+
+	/**
+	 * Opens a log for appending, or creates it. The records of an existing log are checked, and a torn last record is removed.
+	 *
+	 * @param file			Path and name of the log
+	 * @param numContacts	Number of contact types
+	 * @param numPeriods	Number of (statistical) periods of the per-period counters
+	 * @param fingerprint	Fingerprint of the run configuration (see {@code SimRunner#getRunFingerprint()})
+	 * @throws IllegalArgumentException	If the existing log was written for other dimensions or another run configuration
+	 */
+	public ReplicationLog(String file, int numContacts, int numPeriods, long fingerprint) {
+		this.file = file;
+		this.numContacts = numContacts;
+		this.numPeriods = numPeriods;
+		this.fingerprint = fingerprint;
+		this.recordSize = recordSize(numContacts, numPeriods);
+		this.record = ByteBuffer.allocate(recordSize);
+		this.completed = new BitSet();
+		try {
+			Path path = Paths.get(file);
+			final boolean exists = Files.exists(path) && Files.size(path) > 0;
+			long valid = HEADER_SIZE;
+			if (exists) {
+				if (readFingerprint(file) != fingerprint) {
+					throw new IllegalArgumentException(file + " was written by a run with another configuration (seed, AWT, periods, engine, options or instance): delete it or log to another file");
+				}
+				final long[] next = {HEADER_SIZE}; // Offset of the next record: the records have a fixed size
+				valid = scan(file, numContacts, numPeriods, (s, r) -> {
+					completed.set(r);
+					index(r, next[0]);
+					next[0] += recordSize;
+				});
+			}
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			if (!exists) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putLong(MAGIC).putInt(VERSION).putInt(numContacts).putInt(numPeriods).putLong(fingerprint).flip();
+				while (header.hasRemaining()) channel.write(header, HEADER_SIZE - header.remaining());
+			}
+			channel.truncate(valid); // Drops a torn record
+			channel.position(valid);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot open the replication log " + file, e);
+		}
+	}
+
+	private static int recordSize(int numContacts, int numPeriods) {
+		return 4 + 4 * numContacts + 4 * 3 + 8 + 8 * numContacts * numPeriods + (4 + 4 + 8) * numContacts + 4;
+	}
+
+	/**
+	 * Returns the number of contact types and the number of periods of a log.
+	 *
+	 * @param file			Path and name of the log
+	 * @return int[]		{K, P}
+	 */
+	public static int[] readDimensions(String file) {
+		try (FileChannel in = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			ByteBuffer header = readHeader(in, file);
+			return new int[] {header.getInt(), header.getInt()};
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read the replication log " + file, e);
+		}
+	}
+
+	/**
+	 * Returns the fingerprint of the run configuration that wrote a log.
+	 *
+	 * @param file			Path and name of the log
+	 */
+	public static long readFingerprint(String file) {
+		try (FileChannel in = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			ByteBuffer header = readHeader(in, file);
+			return header.getLong(HEADER_SIZE - 8);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read the replication log " + file, e);
+		}
+	}
+
+	/**
+	 * Reads the valid records of a log.
+	 *
+	 * @param file			Path and name of the log
+	 * @param sink			Receives the counters and the number of each logged replication; the counters are reused between calls
+	 */
+	public static void read(String file, ObjIntConsumer<MCMSStatistics> sink) {
+		final int[] dimensions = readDimensions(file);
+		try {
+			scan(file, dimensions[0], dimensions[1], sink);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read the replication log " + file, e);
+		}
+	}
+
+	private static ByteBuffer readHeader(FileChannel in, String file) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (header.hasRemaining() && in.read(header) >= 0) {}
+		header.flip();
+		if (header.remaining() < HEADER_SIZE || header.getLong() != MAGIC) throw new IllegalArgumentException(file + " is not a replication log");
+		final int version = header.getInt();
+		if (version != VERSION) throw new IllegalArgumentException(file + ": unsupported replication log version " + version);
+		return header;
+	}
+
+	/**
+	 * Reads the records of a log written for K types and P periods, until the end or the first invalid record.
+	 *
+	 * @return long		Length of the header and the valid records
+	 */
+	private static long scan(String file, int numContacts, int numPeriods, ObjIntConsumer<MCMSStatistics> sink) throws IOException {
+		try (FileChannel in = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			ByteBuffer header = readHeader(in, file);
+			if (header.getInt() != numContacts || header.getInt() != numPeriods) {
+				throw new IllegalArgumentException(file + " was written for another number of contact types or periods");
+			}
+			final int size = recordSize(numContacts, numPeriods);
+			ByteBuffer record = ByteBuffer.allocate(size);
+			MCMSStatistics s = new MCMSStatistics(numContacts, numPeriods);
+			CRC32 crc = new CRC32();
+			long valid = HEADER_SIZE;
+			while (true) {
+				record.clear();
+				while (record.hasRemaining() && in.read(record) >= 0) {}
+				if (record.hasRemaining()) return valid; // End of the log, or a torn record
+				crc.reset();
+				crc.update(record.array(), 0, size - 4);
+				record.flip();
+				if (record.getInt(size - 4) != (int) crc.getValue()) return valid;
+				sink.accept(s, decode(record, numContacts, numPeriods, s));
+				valid += size;
+			}
+		}
+	}
+
+	/**
+	 * Reads the counters of a record, positioned at its start, into {@code s}.
+	 *
+	 * @return int		The replication number
+	 */
+	private static int decode(ByteBuffer record, int numContacts, int numPeriods, MCMSStatistics s) {
+		final int rep = record.getInt();
+		for (int k = 0; k < numContacts; k++) s.numArrivedType[k] = record.getInt();
+		s.numBlocked = record.getInt();
+		s.numServed = record.getInt();
+		s.numGoodSL = record.getInt();
+		s.waitTime = record.getDouble();
+		for (int k = 0; k < numContacts; k++)
+			for (int p = 0; p < numPeriods; p++) s.numGoodSLKP[k][p] = record.getDouble();
+		for (int k = 0; k < numContacts; k++) s.numServedType[k] = record.getInt();
+		for (int k = 0; k < numContacts; k++) s.numGoodSLType[k] = record.getInt();
+		for (int k = 0; k < numContacts; k++) s.waitTimeType[k] = record.getDouble();
+		return rep;
+	}
+
+	/**
+	 * Reads the valid records of this log.
+	 *
+	 * @param sink	Receives the counters and the number of each logged replication; the counters are reused between calls
+	 */
+	public void forEach(ObjIntConsumer<MCMSStatistics> sink) {
+		try {
+			scan(file, numContacts, numPeriods, sink);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read the replication log " + file, e);
+		}
+	}
+
+	/**
+	 * Appends the counters of a replication and flushes them to the file.
+	 * Worker threads can call this method concurrently.
+	 *
+	 * @param rep	Replication number
+	 * @param s		The counters of the replication
+	 */
+	public synchronized void append(int rep, MCMSStatistics s) {
+		record.clear();
+		record.putInt(rep);
+		for (int k = 0; k < numContacts; k++) record.putInt(s.numArrivedType[k]);
+		record.putInt(s.numBlocked);
+		record.putInt(s.numServed);
+		record.putInt(s.numGoodSL);
+		record.putDouble(s.waitTime);
+		for (int k = 0; k < numContacts; k++)
+			for (int p = 0; p < numPeriods; p++) record.putDouble(s.numGoodSLKP[k][p]);
+		for (int k = 0; k < numContacts; k++) record.putInt(s.numServedType[k]);
+		for (int k = 0; k < numContacts; k++) record.putInt(s.numGoodSLType[k]);
+		for (int k = 0; k < numContacts; k++) record.putDouble(s.waitTimeType[k]);
+		crc.reset();
+		crc.update(record.array(), 0, recordSize - 4);
+		record.putInt((int) crc.getValue());
+		record.flip();
+		try {
+			final long offset = channel.position();
+			while (record.hasRemaining()) channel.write(record);
+			channel.force(false);
+			index(rep, offset);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write replication " + rep + " to " + file, e);
+		}
+		completed.set(rep);
+	}
+
+	/**
+	 * Reads the counters of a logged replication, e.g., to add the replications to the statistics in replication order.
+	 *
+	 * @param rep	Replication number
+	 * @param s		Receives the counters, for the dimensions of this log
+	 * @throws IllegalArgumentException	If the replication is not in the log
+	 */
+	public synchronized void read(int rep, MCMSStatistics s) {
+		if (rep < 0 || rep >= position.length || position[rep] == 0) throw new IllegalArgumentException("Replication " + rep + " is not in the log " + file);
+		record.clear();
+		try {
+			while (record.hasRemaining()) {
+				if (channel.read(record, position[rep] + record.position()) < 0) throw new IOException("Unexpected end of the log");
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read replication " + rep + " from " + file, e);
+		}
+		record.flip();
+		decode(record, numContacts, numPeriods, s);
+	}
+
+	private void index(int rep, long offset) {
+		if (rep >= position.length) position = Arrays.copyOf(position, Math.max(rep + 1, 2 * position.length));
+		position[rep] = offset;
+	}
+
+	/**
+	 * Returns the fingerprint of the run configuration of this log.
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Returns the replications already in the log.
+	 */
+	public synchronized BitSet getCompleted() {
+		return (BitSet) completed.clone();
+	}
+
+	/**
+	 * Closes the log.
+	 */
+	public void close() {
+		try {
+			channel.close();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot close the replication log " + file, e);
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package mcms.output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * <h1> Parallel Analyzer of a Contact Trace </h1>
+ *  <p>
+ *  Computes aggregates over the records of a {@link ContactTrace} file. The chunks of the file are scanned in parallel,
+ *  each one memory-mapped on its own; every chunk gets a fresh accumulator, and the accumulators are combined at the end.
+ *  {@link #aggregate} takes any accumulator; {@link #serviceLevelByTypeAndGroup} and {@link #meanWaitByGroup} are the common ones.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public final class TraceAnalyzer {
+	/**
+	 * Adds one record of the trace to an accumulator.
+	 */
+	public interface RecordConsumer<A> {
+		void accept(A accumulator, int rep, int type, int group, double arrival, double queueTime, double serviceTime);
+	}
+
+	private final String file;
+	private final int numContacts;
+	private final int numGroups;
+	private final int numPeriods;
+	private final double periodDuration;
+	private final double startTime;
+	private final long[] chunkStart; // Offset of each chunk
+	private final int[] chunkRecords; // Number of records of each chunk
+	private final long numRecords;
+
+	/**
+	 * Opens a trace file and indexes its chunks.
+	 *
+	 * @param file	Path and name of the trace file
+	 */
+	public TraceAnalyzer(String file) {
+		this.file = file;
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(ContactTrace.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header) >= 0) {}
+			header.flip();
+			if (header.remaining() < ContactTrace.HEADER_SIZE || header.getLong() != ContactTrace.MAGIC) throw new IllegalArgumentException(file + " is not a contact trace");
+			final int version = header.getInt();
+			if (version != ContactTrace.VERSION) throw new IllegalArgumentException(file + ": unsupported contact trace version " + version);
+			numContacts = header.getInt();
+			numGroups = header.getInt();
+			numPeriods = header.getInt();
+			periodDuration = header.getDouble();
+			startTime = header.getDouble();
+
+			// Index: walk the chunk headers
+			long[] starts = new long[16];
+			int[] records = new int[16];
+			int numChunks = 0;
+			long total = 0;
+			long position = ContactTrace.HEADER_SIZE;
+			final long size = channel.size();
+			ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			while (position + 8 <= size) {
+				count.clear();
+				channel.read(count, position);
+				final int n = count.getInt(0);
+				if (n == 0) break; // Zero-filled end of a mapped region that was not truncated, e.g., by a run that died before ContactTrace.close
+				if (n < 0 || n > ContactTrace.CHUNK_SIZE || position + ContactTrace.chunkSize(n) > size) throw new IllegalArgumentException(file + ": corrupt chunk at byte " + position);
+				if (numChunks == starts.length) {
+					starts = Arrays.copyOf(starts, 2 * numChunks);
+					records = Arrays.copyOf(records, 2 * numChunks);
+				}
+				starts[numChunks] = position;
+				records[numChunks++] = n;
+				total += n;
+				position += ContactTrace.chunkSize(n);
+			}
+			chunkStart = Arrays.copyOf(starts, numChunks);
+			chunkRecords = Arrays.copyOf(records, numChunks);
+			numRecords = total;
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read the contact trace " + file, e);
+		}
+	}
+
+	/**
+	 * Computes an aggregate over all records, on {@code numThreads} threads.
+	 *
+	 * @param supplier		Creates an empty accumulator
+	 * @param accumulator	Adds a record to an accumulator
+	 * @param combiner		Merges two accumulators
+	 * @param numThreads	Number of threads scanning the chunks
+	 * @return				The aggregate
+	 */
+	public <A> A aggregate(Supplier<A> supplier, RecordConsumer<A> accumulator, BinaryOperator<A> combiner, int numThreads) {
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			return pool.submit(() -> IntStream.range(0, chunkStart.length).parallel()
+					.mapToObj(c -> scan(channel, c, supplier.get(), accumulator))
+					.reduce(combiner).orElseGet(supplier)).get();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read the contact trace " + file, e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while analyzing the contact trace", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Cannot analyze the contact trace " + file, e.getCause());
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Adds the records of chunk {@code c} to an accumulator.
+	 */
+	private <A> A scan(FileChannel channel, int c, A acc, RecordConsumer<A> accumulator) {
+		final int n = chunkRecords[c];
+		try {
+			MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart[c], ContactTrace.chunkSize(n));
+			chunk.order(ByteOrder.LITTLE_ENDIAN).position(8);
+			DoubleBuffer doubles = chunk.asDoubleBuffer();
+			chunk.position(8 + 24 * n);
+			IntBuffer ints = chunk.asIntBuffer();
+			for (int j = 0; j < n; j++) {
+				accumulator.accept(acc, ints.get(j), ints.get(n + j), ints.get(2 * n + j), doubles.get(j), doubles.get(n + j), doubles.get(2 * n + j));
+			}
+			return acc;
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read chunk " + c + " of the contact trace " + file, e);
+		}
+	}
+
+	/**
+	 * Returns the service level per contact type and agent group: the fraction of the contacts that arrived
+	 * in {@code [fromTime, toTime)} and were served within the AWT.
+	 *
+	 * @param awt			Acceptable waiting time
+	 * @param fromTime		Start of the window of arrival times, e.g., another warm-up cutoff
+	 * @param toTime		End of the window of arrival times
+	 * @param numThreads	Number of threads
+	 * @return double[][]	[type][group] service level; NaN for a pair that served no contact in the window
+	 */
+	public double[][] serviceLevelByTypeAndGroup(double awt, double fromTime, double toTime, int numThreads) {
+		final long[][] counts = aggregate(() -> new long[2][numContacts * numGroups], (acc, rep, type, group, arrival, queueTime, serviceTime) -> {
+			if (arrival < fromTime || arrival >= toTime) return;
+			acc[0][type * numGroups + group]++;
+			if (queueTime <= awt) acc[1][type * numGroups + group]++;
+		}, TraceAnalyzer::add, numThreads);
+		double[][] sl = new double[numContacts][numGroups];
+		for (int k = 0; k < numContacts; k++)
+			for (int i = 0; i < numGroups; i++) sl[k][i] = counts[0][k * numGroups + i] == 0 ? Double.NaN : (double) counts[1][k * numGroups + i] / counts[0][k * numGroups + i];
+		return sl;
+	}
+
+	/**
+	 * Returns the mean queue waiting time of the contacts served by each group, among the contacts that arrived in {@code [fromTime, toTime)}.
+	 *
+	 * @return double[]		[group] mean waiting time; NaN for a group that served no contact in the window
+	 */
+	public double[] meanWaitByGroup(double fromTime, double toTime, int numThreads) {
+		final double[][] sums = aggregate(() -> new double[2][numGroups], (acc, rep, type, group, arrival, queueTime, serviceTime) -> {
+			if (arrival < fromTime || arrival >= toTime) return;
+			acc[0][group]++;
+			acc[1][group] += queueTime;
+		}, TraceAnalyzer::add, numThreads);
+		double[] mean = new double[numGroups];
+		for (int i = 0; i < numGroups; i++) mean[i] = sums[0][i] == 0 ? Double.NaN : sums[1][i] / sums[0][i];
+		return mean;
+	}
+
+	private static long[][] add(long[][] a, long[][] b) {
+		for (int j = 0; j < a.length; j++)
+			for (int x = 0; x < a[j].length; x++) a[j][x] += b[j][x];
+		return a;
+	}
+
+	private static double[][] add(double[][] a, double[][] b) {
+		for (int j = 0; j < a.length; j++)
+			for (int x = 0; x < a[j].length; x++) a[j][x] += b[j][x];
+		return a;
+	}
+
+	//getters
+	public int getNumContacts() {
+		return numContacts;
+	}
+
+	public int getNumGroups() {
+		return numGroups;
+	}
+
+	public int getNumPeriods() {
+		return numPeriods;
+	}
+
+	public double getPeriodDuration() {
+		return periodDuration;
+	}
+
+	public double getStartTime() {
+		return startTime;
+	}
+
+	public long getNumRecords() {
+		return numRecords;
+	}
+
+	public int getNumChunks() {
+		return chunkStart.length;
+	}
+
+	/**
+	 * Arguments: traceFile awt [warmUpCutoff] [numThreads] <br>
+	 * Prints the service level per contact type and group, and the mean wait per group, of the contacts that arrived
+	 * between the cutoff (default: start of the first main period) and the end of the last main period.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Arguments: traceFile awt [warmUpCutoff] [numThreads]");
+			return;
+		}
+		long start = System.nanoTime();
+		TraceAnalyzer trace = new TraceAnalyzer(args[0]);
+		final double awt = Double.parseDouble(args[1]);
+		final double from = args.length > 2 ? Double.parseDouble(args[2]) : trace.getStartTime();
+		final double to = trace.getStartTime() + trace.getNumPeriods() * trace.getPeriodDuration();
+		final int numThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		double[][] sl = trace.serviceLevelByTypeAndGroup(awt, from, to, numThreads);
+		double[] wait = trace.meanWaitByGroup(from, to, numThreads);
+		System.out.printf("%d records in %d chunks, arrivals in [%s, %s)%n", trace.getNumRecords(), trace.getNumChunks(), from, to);
+		System.out.println("SL(" + awt + ") per type and group:");
+		for (int k = 0; k < sl.length; k++) System.out.println("\t " + k + "\t " + Arrays.toString(sl[k]));
+		System.out.println("Mean wait per group: " + Arrays.toString(wait));
+		System.out.printf("Analyzed in %.2f s%n", (System.nanoTime() - start) / 1e9);
+	}
+}
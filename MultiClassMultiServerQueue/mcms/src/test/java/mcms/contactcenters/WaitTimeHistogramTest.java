@@ -0,0 +1,114 @@
+package mcms.contactcenters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * <h1> Test: Histogram of Waiting Times </h1>
+ *  <p>
+ *  Checks the service levels and the quantiles of {@link WaitTimeHistogram}: the linear interpolation inside a bucket, the waits
+ *  counted as no wait, the last bucket, which also counts the larger waits, agreement with the sorted waits within the width of
+ *  a bucket, and merged histograms.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class WaitTimeHistogramTest {
+	static final double WIDTH = 1.0 / 64; // Relative width of a bucket
+
+	@Test
+	public void interpolatesInsideBucket() {
+		WaitTimeHistogram h = new WaitTimeHistogram();
+		for (int j = 0; j < 100; j++) h.record(1); // Bucket [1, 1 + WIDTH)
+		for (int j = 0; j < 100; j++) h.record(3); // Bucket [3, 3 + 2 WIDTH)
+		assertEquals(0, h.countWithin(0.5), 0);
+		assertEquals(25, h.countWithin(1 + WIDTH / 4), 1e-9);
+		assertEquals(100, h.countWithin(2), 0);
+		assertEquals(150, h.countWithin(3 + WIDTH), 1e-9);
+		assertEquals(200, h.countWithin(4), 0);
+		assertEquals(0.75, h.serviceLevel(3 + WIDTH), 1e-12);
+		assertEquals(0, h.countWithin(-1), 0);
+		assertEquals(1, new WaitTimeHistogram().serviceLevel(1), 0);
+		assertEquals(1 + WIDTH / 2, h.quantile(0.25), 1e-12);
+		assertEquals(3, h.quantile(0.75), 0); // Interpolated past the largest wait
+		assertEquals(3, h.quantile(1), 0);
+	}
+
+	@Test
+	public void countsZeroWaits() {
+		WaitTimeHistogram h = new WaitTimeHistogram();
+		for (int j = 0; j < 30; j++) h.record(0);
+		for (int j = 0; j < 10; j++) h.record(1e-9); // Below 2^-20: no wait
+		for (int j = 0; j < 60; j++) h.record(2);
+		assertEquals(100, h.getCount());
+		assertEquals(0.4, h.serviceLevel(0), 0);
+		assertEquals(0.4, h.serviceLevel(1), 0);
+		assertEquals(0, h.quantile(0), 0);
+		assertEquals(0, h.quantile(0.4), 0);
+		assertEquals(2, h.quantile(0.7), 0);
+		assertTrue(Double.isNaN(new WaitTimeHistogram().quantile(0.5)));
+	}
+
+	@Test
+	public void extendsLastBucketToLargestWait() {
+		final double top = Math.scalb(1.0, 44); // Upper end of the covered powers of two
+		WaitTimeHistogram h = new WaitTimeHistogram();
+		h.record(1);
+		h.record(4 * top);
+		h.record(2 * top);
+		assertEquals(4 * top, h.getMax(), 0);
+		assertEquals(4 * top, h.quantile(1), 0);
+		assertEquals(3, h.countWithin(4 * top), 0);
+		final double low = top * (1 - WIDTH / 2); // Lower end of the last bucket
+		assertEquals(2, h.countWithin((low + 4 * top) / 2), 1e-9);
+		assertEquals((low + 4 * top) / 2, h.quantile(2.0 / 3), 1e-3 * top);
+	}
+
+	@Test
+	public void agreesWithSortedWaits() {
+		Random random = new Random(20180724);
+		double[] waits = new double[20000];
+		WaitTimeHistogram h = new WaitTimeHistogram();
+		for (int j = 0; j < waits.length; j++) {
+			waits[j] = j % 5 == 0 ? 0 : -Math.log(random.nextDouble()) * 3;
+			h.record(waits[j]);
+		}
+		Arrays.sort(waits);
+		for (double q : new double[] {0.1, 0.25, 0.5, 0.9, 0.99}) {
+			final double exact = waits[(int) Math.ceil(q * waits.length) - 1];
+			assertEquals(exact, h.quantile(q), WIDTH * exact);
+		}
+		for (double awt : new double[] {0.1, 1, 3, 10}) {
+			int within = 0;
+			while (within < waits.length && waits[within] <= awt) within++;
+			assertEquals((double) within / waits.length, h.serviceLevel(awt), 0.005);
+		}
+	}
+
+	@Test
+	public void mergesCounts() {
+		Random random = new Random(7);
+		WaitTimeHistogram all = new WaitTimeHistogram();
+		WaitTimeHistogram first = new WaitTimeHistogram();
+		WaitTimeHistogram second = new WaitTimeHistogram();
+		for (int j = 0; j < 5000; j++) {
+			final double wait = j % 3 == 0 ? 0 : random.nextDouble() * (j < 2500 ? 2 : 50); // The second half has other buckets
+			all.record(wait);
+			(j < 2500 ? first : second).record(wait);
+		}
+		first.merge(second);
+		assertEquals(all.getCount(), first.getCount());
+		assertEquals(all.getMax(), first.getMax(), 0);
+		for (double awt : new double[] {0, 0.5, 1.7, 20, 100}) assertEquals(all.countWithin(awt), first.countWithin(awt), 0);
+		for (double q : new double[] {0.2, 0.5, 0.95, 1}) assertEquals(all.quantile(q), first.quantile(q), 0);
+		first.init();
+		assertEquals(0, first.getCount());
+		assertEquals(1, first.serviceLevel(0), 0);
+	}
+}
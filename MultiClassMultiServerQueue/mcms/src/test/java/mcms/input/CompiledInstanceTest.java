@@ -0,0 +1,187 @@
+package mcms.input;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <h1> Test: Compiled Binary Instance </h1>
+ *  <p>
+ *  Checks that {@link CompiledInstance} loads back the agents, demands and routes it was compiled from, and that
+ *  {@link CompiledInstance#load} refuses a file of another kind, version or size, or with inconsistent arrays.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class CompiledInstanceTest {
+	static final String INPUT_PATH = "resources/test/input/";
+
+	// The instance of RouteTableTest: K = 3 types, I = 3 groups, R = 6 routes, and the offsets of its arrays in the file
+	static final int K = 3;
+	static final int I = 3;
+	static final int R = 6;
+	static final int DEMANDS = 8 + 4 * 4;
+	static final int TAU = DEMANDS + 8 * K;
+	static final int AGENTS = TAU + 8 * R;
+	static final int TYPE_START = AGENTS + 4 * I;
+	static final int TYPE_GROUP = TYPE_START + 4 * (K + 1);
+	static final int GROUP_START = TYPE_GROUP + 4 * R;
+	static final int GROUP_TYPE = GROUP_START + 4 * (I + 1);
+	static final int GROUP_ROUTE = GROUP_TYPE + 4 * R;
+	static final int SIZE = GROUP_ROUTE + 4 * R;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static RouteTable routes() {
+		return RouteTable.build(K, I, new int[] {1, 0, 1, 0, 1, 2}, new int[] {2, 1, 0, 0, 1, 2}, new double[] {3, 5, 3, 1, 2, 4}, R);
+	}
+
+	private String writeInstance() throws IOException {
+		String file = new File(folder.getRoot(), "instance.bin").getPath();
+		CompiledInstance.write(file, new int[] {4, 0, 7}, new double[] {0.5, 2, 0}, routes());
+		return file;
+	}
+
+	private static void assertSameRoutes(RouteTable expected, RouteTable actual) {
+		assertEquals(expected.getNumContacts(), actual.getNumContacts());
+		assertEquals(expected.getNumGroups(), actual.getNumGroups());
+		assertArrayEquals(expected.getTau(), actual.getTau(), 0);
+		assertArrayEquals(expected.getTypeStart(), actual.getTypeStart());
+		assertArrayEquals(expected.getTypeGroup(), actual.getTypeGroup());
+		assertArrayEquals(expected.getGroupStart(), actual.getGroupStart());
+		assertArrayEquals(expected.getGroupType(), actual.getGroupType());
+		assertArrayEquals(expected.getGroupRoute(), actual.getGroupRoute());
+	}
+
+	private static void patch(String file, long position, ByteBuffer bytes) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(position);
+			raf.write(bytes.array());
+		}
+	}
+
+	private static void patchInt(String file, long position, int value) throws IOException {
+		patch(file, position, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, value));
+	}
+
+	private static void patchDouble(String file, long position, double value) throws IOException {
+		patch(file, position, ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putDouble(0, value));
+	}
+
+	/**
+	 * Asserts that loading the file fails with a message that contains {@code expected}.
+	 */
+	private static void assertRefused(String file, int numContacts, int numGroups, String expected) {
+		try {
+			CompiledInstance.load(file, numContacts, numGroups);
+			fail("Loaded a file that should fail with: " + expected);
+		}
+		catch (InputFormatException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(expected));
+			assertEquals(file, e.getFile());
+		}
+	}
+
+	@Test
+	public void loadsCompiledTextFiles() throws IOException {
+		String file = new File(folder.getRoot(), "2instance.bin").getPath();
+		CompiledInstance.compile(file, INPUT_PATH, "2agents.dat", "2demands.dat", "2routes.dat", 2, 2);
+		CompiledInstance instance = CompiledInstance.load(file, 2, 2);
+		assertArrayEquals(InputAgent.readAgentGroups("2agents.dat", INPUT_PATH, 2), instance.getAgents());
+		assertArrayEquals(InputContact.readDemands("2demands.dat", INPUT_PATH, 2), instance.getDemands(), 0);
+		assertSameRoutes(RouteTable.build(InputSrvTime.readRoutes("2routes.dat", INPUT_PATH, 2, 2), 2, 2), instance.getRouteTable());
+	}
+
+	@Test
+	public void loadsWrittenArrays() throws IOException {
+		String file = writeInstance();
+		assertEquals(SIZE, new File(file).length());
+		CompiledInstance instance = CompiledInstance.load(file, K, I);
+		assertArrayEquals(new int[] {4, 0, 7}, instance.getAgents());
+		assertArrayEquals(new double[] {0.5, 2, 0}, instance.getDemands(), 0);
+		assertSameRoutes(routes(), instance.getRouteTable());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void refusesToWriteMismatchedAgents() throws IOException {
+		CompiledInstance.write(new File(folder.getRoot(), "instance.bin").getPath(), new int[] {4, 0}, new double[] {0.5, 2, 0}, routes());
+	}
+
+	@Test
+	public void refusesOtherFiles() throws IOException {
+		String file = writeInstance();
+		assertRefused(file, K, I + 1, "compiled for K=3 and I=3, expected K=3 and I=4");
+		patchInt(file, 8, 2);
+		assertRefused(file, K, I, "unsupported compiled instance version 2");
+		patchInt(file, 0, 0);
+		assertRefused(file, K, I, "not a compiled instance");
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(10);
+		}
+		assertRefused(file, K, I, "not a compiled instance");
+
+		file = writeInstance();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(SIZE - 4);
+		}
+		assertRefused(file, K, I, "truncated compiled instance");
+		assertRefused(new File(folder.getRoot(), "missing.bin").getPath(), K, I, "missing.bin");
+	}
+
+	@Test
+	public void refusesInvalidValues() throws IOException {
+		String file = writeInstance();
+		patchInt(file, AGENTS + 4, -1);
+		assertRefused(file, K, I, "negative number of agents -1 in group 1");
+
+		file = writeInstance();
+		patchDouble(file, DEMANDS + 8, Double.NaN);
+		assertRefused(file, K, I, "invalid demand NaN of type 1");
+
+		file = writeInstance();
+		patchDouble(file, TAU + 8 * 5, 0);
+		assertRefused(file, K, I, "invalid mean service time 0.0 of route 5");
+	}
+
+	@Test
+	public void refusesInconsistentRoutes() throws IOException {
+		String file = writeInstance();
+		patchInt(file, TYPE_START + 4 * K, R - 1);
+		assertRefused(file, K, I, "typeStart does not span the 6 routes");
+
+		file = writeInstance();
+		patchInt(file, GROUP_START + 4, 5);
+		assertRefused(file, K, I, "groupStart decreases at 2");
+
+		file = writeInstance();
+		patchInt(file, TYPE_GROUP, I);
+		assertRefused(file, K, I, "group 3 of route 0 is out of range [0, 3)");
+
+		file = writeInstance();
+		patchInt(file, GROUP_ROUTE + 4, R);
+		assertRefused(file, K, I, "route 6 of the group-to-type list is out of range [0, 6)");
+
+		file = writeInstance();
+		patchInt(file, GROUP_TYPE, -1);
+		assertRefused(file, K, I, "type -1 of the group-to-type list is out of range [0, 3)");
+
+		// Group 0 lists route 0 twice instead of routes 0 and 3
+		file = writeInstance();
+		patchInt(file, GROUP_ROUTE + 4, 0);
+		patchInt(file, GROUP_TYPE + 4, 0);
+		assertRefused(file, K, I, "the group-to-type list does not match the routes at position 1");
+	}
+}
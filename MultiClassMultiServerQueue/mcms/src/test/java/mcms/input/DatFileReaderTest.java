@@ -0,0 +1,178 @@
+package mcms.input;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <h1> Test: Parser of the Input Files </h1>
+ *  <p>
+ *  Edge cases of {@link DatFileReader}: comments, blank lines, line breaks, malformed rows and the line numbers of their errors.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class DatFileReaderTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String write(String content) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+		return file.getPath();
+	}
+
+	/**
+	 * Returns the exception thrown by reading a file with two index columns in [0, 3) x [0, 2) and a real value.
+	 */
+	private InputFormatException readError(String content, boolean integralValue) throws IOException {
+		try {
+			DatFileReader.read(write(content), new int[] {3, 2}, integralValue);
+		}
+		catch (InputFormatException e) {
+			return e;
+		}
+		fail("The file is malformed: " + content);
+		return null;
+	}
+
+	@Test
+	public void skipsCommentsAndBlankLines() throws IOException {
+		DatFileReader.Table table = DatFileReader.read(write("# k\ti\ttau\n\n0 1 1.5\n   \n# 2 1 9\n2\t0\t4\n"), new int[] {3, 2}, false);
+		assertEquals(2, table.numRows);
+		assertArrayEquals(new int[] {0, 2}, table.index[0]);
+		assertArrayEquals(new int[] {1, 0}, table.index[1]);
+		assertArrayEquals(new double[] {1.5, 4}, table.value, 0);
+	}
+
+	@Test
+	public void readsLastLineWithoutLineBreak() throws IOException {
+		DatFileReader.Table table = DatFileReader.read(write("0 1 1.5\n2 0 4"), new int[] {3, 2}, false);
+		assertEquals(2, table.numRows);
+		assertEquals(4, table.value[1], 0);
+	}
+
+	@Test
+	public void readsWindowsLineBreaks() throws IOException {
+		DatFileReader.Table table = DatFileReader.read(write("# header\r\n0 1 1.5\r\n\r\n2 0 4\r\n"), new int[] {3, 2}, false);
+		assertEquals(2, table.numRows);
+		assertArrayEquals(new double[] {1.5, 4}, table.value, 0);
+	}
+
+	@Test
+	public void parsesNumbersLikeTheJdk() throws IOException {
+		final String[] tokens = {"0", "12", "1.5", "+0.1", ".25", "3.", "0.30000000000000004", "123456789.123456789", "1e3", "2.5E-3", "12345678901234567890", "Infinity"};
+		StringBuilder content = new StringBuilder();
+		for (String token : tokens) content.append("0 0 ").append(token).append('\n');
+		DatFileReader.Table table = DatFileReader.read(write(content.toString()), new int[] {1, 1}, false);
+		assertEquals(tokens.length, table.numRows);
+		for (int r = 0; r < tokens.length; r++) assertEquals(tokens[r], Double.parseDouble(tokens[r]), table.value[r], 0);
+	}
+
+	@Test
+	public void rejectsIndexOutOfRange() throws IOException {
+		InputFormatException e = readError("0 1 1.5\n3 0 4\n", false);
+		assertEquals(2, e.getLine());
+		assertTrue(e.getMessage(), e.getMessage().contains("index 3 in column 1 is out of range [0, 3)"));
+		e = readError("0 -1 1.5\n", false);
+		assertEquals(1, e.getLine());
+		assertTrue(e.getMessage(), e.getMessage().contains("in column 2 is out of range [0, 2)"));
+	}
+
+	@Test
+	public void rejectsWrongNumberOfColumns() throws IOException {
+		InputFormatException e = readError("0 1 1.5\n\n1 1 2 7\n", false);
+		assertEquals(3, e.getLine());
+		assertTrue(e.getMessage(), e.getMessage().contains("expected 3 columns, found more"));
+		e = readError("0 1 1.5\n1 1", false);
+		assertEquals(2, e.getLine());
+		assertTrue(e.getMessage(), e.getMessage().contains("expected 3 columns, found 2"));
+	}
+
+	@Test
+	public void rejectsNegativeOrUndefinedValues() throws IOException {
+		InputFormatException e = readError("0 1 -1.5\n", false);
+		assertEquals(1, e.getLine());
+		assertTrue(e.getMessage(), e.getMessage().contains("negative or undefined value"));
+		e = readError("# NaN\n0 1 NaN\n", false);
+		assertEquals(2, e.getLine());
+		assertTrue(e.getMessage(), e.getMessage().contains("negative or undefined value"));
+	}
+
+	@Test
+	public void rejectsMalformedNumbers() throws IOException {
+		InputFormatException e = readError("0 1 2.5\n", true);
+		assertTrue(e.getMessage(), e.getMessage().contains("expected an integer in column 3, found '2.5'"));
+		e = readError("0 x 2\n", false);
+		assertTrue(e.getMessage(), e.getMessage().contains("expected an integer in column 2, found 'x'"));
+		e = readError("0 1 1.5.2\n", false);
+		assertTrue(e.getMessage(), e.getMessage().contains("expected a number in column 3, found '1.5.2'"));
+		e = readError("0 1 99999999999\n", true);
+		assertTrue(e.getMessage(), e.getMessage().contains("expected an integer"));
+	}
+
+	@Test
+	public void streamsRowsWithTheirLines() throws IOException {
+		try (DatFileReader.RowStream rows = DatFileReader.open(write("# header\n0 1 1.5\n\n2 0 4"), new int[] {3, 2}, false)) {
+			assertTrue(rows.next());
+			assertEquals(0, rows.index(0));
+			assertEquals(1, rows.index(1));
+			assertEquals(1.5, rows.value(), 0);
+			assertEquals(2, rows.line());
+			assertTrue(rows.next());
+			assertEquals(2, rows.index(0));
+			assertEquals(4, rows.line());
+			assertFalse(rows.next());
+		}
+	}
+
+	@Test
+	public void readsVector() throws IOException {
+		assertArrayEquals(new double[] {5, 0, 7}, DatFileReader.readVector(write("2 7\n0 5\n1 0\n"), 3, true), 0);
+	}
+
+	@Test
+	public void rejectsRepeatedIndexInVector() throws IOException {
+		try {
+			DatFileReader.readVector(write("# agents\n0 5\n1 3\n0 7\n"), 2, true);
+			fail("Index 0 is repeated");
+		}
+		catch (InputFormatException e) {
+			assertEquals(4, e.getLine());
+			assertTrue(e.getMessage(), e.getMessage().contains("index 0 is repeated, first on line 2"));
+		}
+	}
+
+	@Test
+	public void rejectsMissingIndexInVector() throws IOException {
+		try {
+			DatFileReader.readVector(write("0 5\n\n2 3\n"), 3, true);
+			fail("Index 1 has no row");
+		}
+		catch (InputFormatException e) {
+			assertEquals(3, e.getLine());
+			assertTrue(e.getMessage(), e.getMessage().contains("no row for index 1 of [0, 3)"));
+		}
+	}
+
+	@Test
+	public void readsBundledInstance() {
+		DatFileReader.Table table = InputSrvTime.readRoutes("2routes.dat", "resources/test/input/", 2, 2);
+		assertEquals(2, table.numRows);
+		assertArrayEquals(new int[] {0, 1}, table.index[0]);
+		assertArrayEquals(new int[] {1, 0}, table.index[1]);
+		assertArrayEquals(new double[] {1.5, 4}, table.value, 0);
+	}
+}
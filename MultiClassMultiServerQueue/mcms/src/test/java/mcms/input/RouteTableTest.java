@@ -0,0 +1,108 @@
+package mcms.input;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+/**
+ * <h1> Test: Sparse Service-Time Model </h1>
+ *  <p>
+ *  Checks the CSR arrays of {@link RouteTable}: the priority lists of a small instance by hand, and those of random
+ *  instances (rows longer than the insertion sort) against a dense K x I matrix sorted by the JDK.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class RouteTableTest {
+
+	@Test
+	public void sortsPriorityListsByServiceTime() {
+		// Routes in no particular order: (k, i, tau); type 1 has a tie between groups 0 and 2
+		int[] contact = {1, 0, 1, 0, 1, 2};
+		int[] group = {2, 1, 0, 0, 1, 2};
+		double[] tau = {3, 5, 3, 1, 2, 4};
+		RouteTable routes = RouteTable.build(3, 3, contact, group, tau, 6);
+
+		assertEquals(6, routes.getNumRoutes());
+		assertArrayEquals(new int[] {0, 2, 5, 6}, routes.getTypeStart());
+		assertArrayEquals(new int[] {0, 1, 1, 0, 2, 2}, routes.getTypeGroup());
+		assertArrayEquals(new double[] {1, 5, 2, 3, 3, 4}, routes.getTau(), 0);
+		assertArrayEquals(new int[] {0, 2, 4, 6}, routes.getGroupStart());
+		assertArrayEquals(new int[][] {{0, 1}, {1, 0}, {1, 2}}, routes.groupToType());
+		assertArrayEquals(new int[] {0, 3, 2, 1, 4, 5}, routes.getGroupRoute());
+		assertEquals(4, routes.route(1, 2));
+		assertEquals(-1, routes.route(2, 0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsDuplicateRoute() {
+		RouteTable.build(2, 2, new int[] {0, 1, 0}, new int[] {1, 0, 1}, new double[] {1, 2, 3}, 3);
+	}
+
+	@Test
+	public void matchesDenseMatrix() {
+		Random random = new Random(20180724);
+		for (int trial = 0; trial < 20; trial++) {
+			final int numContacts = 1 + random.nextInt(40);
+			final int numGroups = 1 + random.nextInt(40);
+			final double density = random.nextDouble();
+
+			// Dense matrix of the service times, NaN if no route; few distinct values, to have ties
+			double[][] dense = new double[numContacts][numGroups];
+			List<int[]> pairs = new ArrayList<>();
+			for (int k = 0; k < numContacts; k++) {
+				for (int i = 0; i < numGroups; i++) {
+					dense[k][i] = random.nextDouble() < density ? 1 + random.nextInt(5) : Double.NaN;
+					if (!Double.isNaN(dense[k][i])) pairs.add(new int[] {k, i});
+				}
+			}
+			Collections.shuffle(pairs, random);
+			final int numRoutes = pairs.size();
+			int[] contact = new int[numRoutes];
+			int[] group = new int[numRoutes];
+			double[] tau = new double[numRoutes];
+			for (int r = 0; r < numRoutes; r++) {
+				contact[r] = pairs.get(r)[0];
+				group[r] = pairs.get(r)[1];
+				tau[r] = dense[contact[r]][group[r]];
+			}
+			RouteTable routes = RouteTable.build(numContacts, numGroups, contact, group, tau, numRoutes);
+
+			// Type rows: the groups of each type, by service time then group
+			int[][] typeToGroup = routes.typeToGroup();
+			for (int k = 0; k < numContacts; k++) {
+				final int row = k;
+				int[] expected = IntStream.range(0, numGroups).filter(i -> !Double.isNaN(dense[row][i])).boxed()
+						.sorted((a, b) -> dense[row][a] != dense[row][b] ? Double.compare(dense[row][a], dense[row][b]) : a - b).mapToInt(Integer::intValue).toArray();
+				assertArrayEquals(expected, typeToGroup[k]);
+			}
+
+			// Group rows: the types of each group, by service time then type, and their route indices
+			int[][] groupToType = routes.groupToType();
+			final int[] groupStart = routes.getGroupStart();
+			final int[] groupRoute = routes.getGroupRoute();
+			for (int i = 0; i < numGroups; i++) {
+				final int column = i;
+				int[] expected = IntStream.range(0, numContacts).filter(k -> !Double.isNaN(dense[k][column])).boxed()
+						.sorted((a, b) -> dense[a][column] != dense[b][column] ? Double.compare(dense[a][column], dense[b][column]) : a - b).mapToInt(Integer::intValue).toArray();
+				assertArrayEquals(expected, groupToType[i]);
+				for (int g = groupStart[i]; g < groupStart[i + 1]; g++) {
+					final int r = groupRoute[g];
+					assertEquals(r, routes.route(groupToType[i][g - groupStart[i]], i));
+					assertEquals(dense[groupToType[i][g - groupStart[i]]][i], routes.getTau()[r], 0);
+				}
+			}
+			assertEquals(numRoutes, routes.getTypeStart()[numContacts]);
+			assertEquals(numRoutes, groupStart[numGroups]);
+			assertEquals(numRoutes, routes.getNumRoutes());
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package mcms.main;
+
+import static mcms.main.TestModels.NUM_PERIODS;
+import static mcms.main.TestModels.assertSameRun;
+import static mcms.main.TestModels.builder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <h1> Test: Pre-Generated Arrivals </h1>
+ *  <p>
+ *  Checks that a model replaying an {@link ArrivalBank}, held in memory or spilled to a file, gives bit-identical results
+ *  to the same model drawing its arrivals, on the bundled instance 2 and the KERNEL engine.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class ArrivalBankTest {
+	static final int NUM_REPS = 8;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private void assertReplays(boolean antithetic, String file, int numThreads) {
+		ModelBuilder builder = builder(NUM_REPS);
+		builder.setAntithetic(antithetic);
+		SimRunner drawn = builder.build();
+		drawn.simulate(NUM_REPS, NUM_PERIODS);
+		assertTrue(drawn.getTotNumArrived() > 0);
+
+		try (ArrivalBank bank = new ArrivalBank(builder.build(), NUM_REPS, file)) {
+			assertEquals(file != null, bank.isSpilled());
+			assertTrue(bank.getNumArrivals() >= drawn.getTotNumArrived()); // The bank also holds the arrivals of the preliminary periods
+			SimRunner replayed = builder.build();
+			replayed.setArrivalBank(bank);
+			replayed.simulate(NUM_REPS, NUM_PERIODS, numThreads);
+			assertSameRun(drawn, replayed);
+		}
+		if (file != null) assertFalse("The spill file is deleted", new File(file).exists());
+	}
+
+	@Test
+	public void replaysFromMemory() {
+		assertReplays(false, null, 1);
+	}
+
+	@Test
+	public void replaysFromSpillFile() throws IOException {
+		assertReplays(false, new File(folder.getRoot(), "arrivals.bin").getPath(), 2);
+	}
+
+	@Test
+	public void replaysAntitheticPairs() {
+		assertReplays(true, null, 2);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsReplicationOutsideBank() {
+		ModelBuilder builder = builder(NUM_REPS);
+		try (ArrivalBank bank = new ArrivalBank(builder.build(), 2, null)) {
+			SimRunner replayed = builder.build();
+			replayed.setArrivalBank(bank);
+			replayed.simulate(4, NUM_PERIODS);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package mcms.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import mcms.input.RouteTable;
+import org.junit.Test;
+
+/**
+ * <h1> Test: Analytic Screening of EW and SL </h1>
+ *  <p>
+ *  Checks {@link ErlangScreen} against the closed-form M/M/c queue on a single group, its detection of the loads that no split
+ *  of the demands fits in the agents, and the agreement of the exact split (simplex) and the approximate split (max concurrent
+ *  flow) on a small instance with several components.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class ErlangScreenTest {
+
+	/**
+	 * Returns the M/M/c probability of waiting from its closed form.
+	 */
+	private static double probabilityOfWaiting(int c, double a) {
+		double term = 1; // a^n / n!
+		double sum = 0;
+		for (int n = 0; n < c; n++) {
+			sum += term;
+			term *= a / (n + 1);
+		}
+		final double last = term * c / (c - a);
+		return last / (sum + last);
+	}
+
+	@Test
+	public void matchesErlangC() {
+		ErlangScreen screen = new ErlangScreen(RouteTable.build(1, 1, new int[] {0}, new int[] {0}, new double[] {2}, 1));
+		final int c = 10;
+		final double lambda = 4.25;
+		final double tau = 2;
+		final double a = lambda * tau;
+		final double wait = probabilityOfWaiting(c, a);
+		final double[] awts = {0, 0.5, 3};
+		ErlangScreen.Estimate[] estimates = screen.estimate(new int[] {c}, new double[] {lambda}, awts);
+		for (int j = 0; j < awts.length; j++) {
+			assertTrue(estimates[j].isStable());
+			assertEquals(lambda, estimates[j].getArrivals(), 1e-12);
+			assertEquals(wait * tau / (c - a), estimates[j].getEW(), 1e-12);
+			assertEquals(1 - wait * Math.exp(-(c - a) * awts[j] / tau), estimates[j].getSL(), 1e-12);
+		}
+	}
+
+	@Test
+	public void detectsUnstableLoads() {
+		// Two groups; type 0 is fastest at group 0 and type 1 is served by group 0 only
+		RouteTable routes = RouteTable.build(2, 2, new int[] {0, 0, 1}, new int[] {0, 1, 0}, new double[] {1, 2, 1.5}, 3);
+		for (int maxExactRows : new int[] {256, 0}) {
+			ErlangScreen screen = new ErlangScreen(routes);
+			screen.setMaxExactRows(maxExactRows);
+			assertTrue(screen.estimate(new int[] {10, 20}, new double[] {8, 4}, 1).isStable()); // Highest utilization 0.7
+			ErlangScreen.Estimate unstable = screen.estimate(new int[] {10, 10}, new double[] {8, 5}, 1); // 31/30: no split fits
+			assertFalse(unstable.isStable());
+			assertEquals(Double.POSITIVE_INFINITY, unstable.getEW(), 0);
+			assertEquals(0, unstable.getSL(), 0);
+			assertFalse("No agent serves type 1", screen.estimate(new int[] {0, 10}, new double[] {0, 1}, 1).isStable());
+		}
+		ErlangScreen single = new ErlangScreen(RouteTable.build(1, 1, new int[] {0}, new int[] {0}, new double[] {2}, 1));
+		assertFalse("Load equal to the agents", single.estimate(new int[] {10}, new double[] {5}, 1).isStable());
+	}
+
+	@Test
+	public void approximateSplitAgreesWithSimplex() {
+		// Three components: {types 0, 1; groups 0, 1} and {types 2, 3; groups 2, 3}, where FSF overloads group 0 or 2, and the lowest
+		// highest utilization is 14 / 18.5 in both; {type 4; group 4}, where the FSF split fits
+		RouteTable routes = RouteTable.build(5, 5, new int[] {0, 0, 1, 2, 2, 3, 4}, new int[] {0, 1, 0, 2, 3, 2, 4}, new double[] {1, 2, 1.5, 2, 4, 3, 1}, 7);
+		final int[] agents = {10, 17, 10, 17, 5};
+		final double[] demands = {8, 4, 4, 2, 3};
+		final double[] awts = {0, 0.5, 2};
+		ErlangScreen exact = new ErlangScreen(routes);
+		ErlangScreen approximate = new ErlangScreen(exact);
+		approximate.setMaxExactRows(0);
+		ErlangScreen.Estimate[] expected = exact.estimate(agents, demands, awts);
+		ErlangScreen.Estimate[] actual = approximate.estimate(agents, demands, awts);
+		for (int j = 0; j < awts.length; j++) {
+			assertTrue(actual[j].isStable());
+			assertEquals(expected[j].getArrivals(), actual[j].getArrivals(), 1e-12);
+			assertEquals(expected[j].getEW(), actual[j].getEW(), 0.1 * expected[j].getEW());
+			assertEquals(expected[j].getSL(), actual[j].getSL(), 0.01);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package mcms.main;
+
+import static mcms.main.TestModels.NUM_PERIODS;
+import static mcms.main.TestModels.PERIOD_DURATION;
+import static mcms.main.TestModels.builder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import umontreal.iro.lecuyer.stat.matrix.MatrixOfTallies;
+
+/**
+ * <h1> Test: Warm-Up Picked by MSER-5 </h1>
+ *  <p>
+ *  Checks {@link MserWarmup#truncation}: series without and with an initial transient, a series that never settles (truncated
+ *  at the limit n/2), and random series against the MSER statistic computed directly from its definition. Also checks that the
+ *  contacts of a warm-up served within the AWT in the main periods are not counted in a statistical period by the CONTACT_CENTERS engine.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class MserWarmupTest {
+
+	/**
+	 * Returns the truncation from the definition: the first {@code d <= n/2} that minimizes {@code sum_{j >= d} (x_j - mean)^2 / (n - d)^2}.
+	 */
+	private static int definition(double[] x, int n) {
+		int best = 0;
+		double bestZ = Double.POSITIVE_INFINITY;
+		for (int d = 0; d <= n / 2; d++) {
+			double mean = 0;
+			for (int j = d; j < n; j++) mean += x[j];
+			mean /= n - d;
+			double z = 0;
+			for (int j = d; j < n; j++) z += (x[j] - mean) * (x[j] - mean);
+			z /= (double) (n - d) * (n - d);
+			if (z < bestZ) {
+				best = d;
+				bestZ = z;
+			}
+		}
+		return best;
+	}
+
+	@Test
+	public void keepsStationarySeries() {
+		double[] x = new double[40];
+		Arrays.fill(x, 2.5);
+		assertEquals(0, MserWarmup.truncation(x, x.length)); // All truncations tie: the first one
+	}
+
+	@Test
+	public void truncatesTransient() {
+		double[] x = new double[40];
+		for (int j = 0; j < x.length; j++) x[j] = j < 5 ? 20 - 4 * j : 1 + (j % 2) * 0.1;
+		assertEquals(5, MserWarmup.truncation(x, x.length));
+		assertEquals(5, MserWarmup.truncation(x, 30)); // Only the first n batch means count
+	}
+
+	@Test
+	public void stopsAtHalfOfTrend() {
+		double[] x = new double[41];
+		for (int j = 0; j < x.length; j++) x[j] = j;
+		assertEquals(20, MserWarmup.truncation(x, x.length));
+	}
+
+	/**
+	 * Simulates instance 2 with the CONTACT_CENTERS engine after a loaded warm-up, and returns the contacts served within the AWT
+	 * over all statistical periods, minus those served within the AWT in total.
+	 */
+	private static double warmupGoodSLOutsidePeriods(int statPeriodLength) {
+		final int numReps = 4;
+		ModelBuilder builder = builder(numReps, SimRunner.Engine.CONTACT_CENTERS);
+		builder.setStatPeriodLength(statPeriodLength);
+		SimRunner model = builder.build();
+		model.setWarmup(PERIOD_DURATION);
+		model.simulate(numReps, NUM_PERIODS);
+		final MatrixOfTallies<?> goodSLKP = model.getRepNumGoodSLKP();
+		double sum = 0;
+		for (int k = 0; k < model.getNumContacts(); k++)
+			for (int p = 0; p < model.getNumStatPeriods(); p++) sum += goodSLKP.get(k, p).sum();
+		return sum - model.getTotNumGoodSL();
+	}
+
+	@Test
+	public void contactCentersSkipsWarmupArrivalsInPeriods() {
+		assumeTrue("Needs the ContactCenters library", SimRunner.isContactCentersAvailable());
+		assertTrue(warmupGoodSLOutsidePeriods(1) < 0); // One statistical period: the index -1 would be out of bounds
+		assertTrue(warmupGoodSLOutsidePeriods(2) < 0); // Two: the warm-up arrivals would be counted in statistical period 0
+	}
+
+	@Test
+	public void matchesDefinition() {
+		Random random = new Random(25);
+		for (int trial = 0; trial < 200; trial++) {
+			final int n = 4 + random.nextInt(60);
+			final double transient0 = 10 * random.nextDouble();
+			final double decay = random.nextDouble();
+			double[] x = new double[n];
+			for (int j = 0; j < n; j++) x[j] = 1 + transient0 * Math.pow(decay, j) + 0.5 * random.nextGaussian();
+			assertEquals("trial " + trial, definition(x, n), MserWarmup.truncation(x, n));
+		}
+	}
+}
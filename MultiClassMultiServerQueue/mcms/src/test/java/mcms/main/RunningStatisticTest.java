@@ -0,0 +1,99 @@
+package mcms.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * <h1> Test: Constant-Memory Mean and Variance </h1>
+ *  <p>
+ *  Checks {@link RunningStatistic}: Welford's update against the two-pass mean and variance, also far from 0 where the
+ *  textbook sum of squares cancels, and the merge of batches (Chan et al.) against the same observations added one by one.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class RunningStatisticTest {
+	static final double EPS = 1e-12; // Relative tolerance of the comparisons
+
+	private static double[] sample(Random random, int n, double offset) {
+		double[] x = new double[n];
+		for (int j = 0; j < n; j++) x[j] = offset + random.nextGaussian();
+		return x;
+	}
+
+	private static void assertClose(double expected, double actual) {
+		assertEquals(expected, actual, EPS * Math.max(1, Math.abs(expected)));
+	}
+
+	@Test
+	public void matchesTwoPass() {
+		Random random = new Random(1);
+		for (double offset : new double[] {0, 1e3, 1e9}) {
+			double[] x = sample(random, 10000, offset);
+			double mean = 0;
+			for (double v : x) mean += v;
+			mean /= x.length;
+			double sumSquares = 0;
+			for (double v : x) sumSquares += (v - mean) * (v - mean);
+
+			RunningStatistic stat = new RunningStatistic();
+			for (double v : x) stat.add(v);
+			assertEquals(x.length, stat.getNumObs());
+			assertClose(mean, stat.getMean());
+			assertEquals(sumSquares / (x.length - 1), stat.getVariance(), 1e-6 * sumSquares / (x.length - 1)); // Two-pass sums lose ~1e-7 at 1e9
+		}
+	}
+
+	@Test
+	public void mergeMatchesSequential() {
+		Random random = new Random(2);
+		double[] x = sample(random, 1000, 1e6);
+		RunningStatistic sequential = new RunningStatistic();
+		for (double v : x) sequential.add(v);
+		for (int batch : new int[] {1, 7, 100, 999, 1000}) {
+			RunningStatistic merged = new RunningStatistic();
+			for (int start = 0; start < x.length; start += batch) {
+				RunningStatistic part = new RunningStatistic();
+				for (int j = start; j < Math.min(x.length, start + batch); j++) part.add(x[j]);
+				merged.merge(part);
+			}
+			assertEquals(sequential.getNumObs(), merged.getNumObs());
+			assertClose(sequential.getMean(), merged.getMean());
+			assertEquals(sequential.getVariance(), merged.getVariance(), 1e-9 * sequential.getVariance());
+		}
+	}
+
+	@Test
+	public void mergesEmptyStatistics() {
+		RunningStatistic stat = new RunningStatistic();
+		stat.add(1);
+		stat.add(3);
+		stat.merge(new RunningStatistic());
+		assertEquals(2, stat.getNumObs());
+		assertEquals(2, stat.getMean(), 0);
+		assertEquals(2, stat.getVariance(), 0);
+
+		RunningStatistic empty = new RunningStatistic();
+		empty.merge(stat);
+		assertEquals(2, empty.getNumObs());
+		assertEquals(2, empty.getMean(), 0);
+		assertEquals(2, empty.getVariance(), 0);
+	}
+
+	@Test
+	public void reportsUndefinedPrecision() {
+		RunningStatistic stat = new RunningStatistic();
+		stat.add(5);
+		assertTrue(Double.isNaN(stat.getVariance()));
+		assertEquals(Double.POSITIVE_INFINITY, stat.halfWidth(0.95), 0);
+		stat.add(5);
+		assertEquals(0, stat.relativeHalfWidth(0.95), 0);
+		stat.init();
+		assertEquals(0, stat.getNumObs());
+	}
+}
@@ -0,0 +1,171 @@
+package mcms.main;
+
+import static mcms.main.TestModels.NUM_PERIODS;
+import static mcms.main.TestModels.assertSameRun;
+import static mcms.main.TestModels.builder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.text.DecimalFormat;
+import mcms.input.CompiledInstance;
+import mcms.output.Output;
+import mcms.output.ReplicationLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <h1> Test: Reproducible Runs </h1>
+ *  <p>
+ *  Checks that the replications of {@link SimRunner} do not depend on how the run is executed: on the number of worker threads
+ *  (with the KERNEL engine, and with CONTACT_CENTERS if the ContactCenters library can simulate), on recycled contacts,
+ *  on reading the instance from a {@link CompiledInstance} instead of the text files, and on a crash, since a run resumed from its {@link ReplicationLog} reproduces the uninterrupted run bit for bit,
+ *  and the summary printed from the log alone matches the run.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class SimRunnerTest {
+	static final int NUM_REPS = 10;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static ReplicationLog openLog(String file, SimRunner model) {
+		return new ReplicationLog(file, model.getNumContacts(), model.getNumStatPeriods(), model.getRunFingerprint());
+	}
+
+	@Test
+	public void threadsDoNotChangeResults() {
+		ModelBuilder builder = builder(NUM_REPS);
+		SimRunner sequential = builder.build();
+		sequential.keepReplications();
+		sequential.simulate(NUM_REPS, NUM_PERIODS);
+		SimRunner parallel = builder.build();
+		parallel.keepReplications();
+		parallel.simulate(NUM_REPS, NUM_PERIODS, 3);
+		assertSameRun(sequential, parallel);
+	}
+
+	@Test
+	public void contactCentersThreadsDoNotChangeResults() {
+		assumeTrue("Needs the ContactCenters library", SimRunner.isContactCentersAvailable());
+		ModelBuilder builder = builder(NUM_REPS, SimRunner.Engine.CONTACT_CENTERS);
+		SimRunner sequential = builder.build();
+		sequential.keepReplications();
+		sequential.simulate(NUM_REPS, NUM_PERIODS);
+		SimRunner parallel = builder.build();
+		parallel.keepReplications();
+		parallel.simulate(NUM_REPS, NUM_PERIODS, 3);
+		assertSameRun(sequential, parallel);
+	}
+
+	@Test
+	public void pooledContactsDoNotChangeResults() {
+		assumeTrue("Needs the ContactCenters library", SimRunner.isContactCentersAvailable());
+		ModelBuilder builder = builder(NUM_REPS, SimRunner.Engine.CONTACT_CENTERS);
+		SimRunner allocated = builder.build();
+		allocated.keepReplications();
+		allocated.simulate(NUM_REPS, NUM_PERIODS);
+		builder.setPoolContacts(true);
+		SimRunner pooled = builder.build();
+		pooled.keepReplications();
+		pooled.simulate(NUM_REPS, NUM_PERIODS);
+		assertSameRun(allocated, pooled);
+	}
+
+	@Test
+	public void compiledInstanceDoesNotChangeResults() {
+		ModelBuilder builder = builder(NUM_REPS);
+		SimRunner text = builder.build();
+		text.keepReplications();
+		text.simulate(NUM_REPS, NUM_PERIODS);
+		String file = new File(folder.getRoot(), "2instance.bin").getPath();
+		CompiledInstance.compile(file, TestModels.INPUT_PATH, "2agents.dat", "2demands.dat", "2routes.dat", 2, 2);
+		builder = builder(NUM_REPS); // A builder reads its instance once
+		builder.setCompiledInstance(file);
+		SimRunner compiled = builder.build();
+		compiled.keepReplications();
+		compiled.simulate(NUM_REPS, NUM_PERIODS);
+		assertSameRun(text, compiled);
+	}
+
+	@Test
+	public void resumedRunMatchesUninterruptedRun() throws IOException {
+		ModelBuilder builder = builder(NUM_REPS);
+		SimRunner uninterrupted = builder.build();
+		uninterrupted.keepReplications();
+		uninterrupted.simulate(NUM_REPS, NUM_PERIODS);
+
+		// A run that dies after 4 replications, in the middle of writing the fifth one
+		String file = new File(folder.getRoot(), "run.replog").getPath();
+		SimRunner crashed = builder.build();
+		try (ReplicationLog log = openLog(file, crashed)) {
+			crashed.simulate(5, NUM_PERIODS, 2, log);
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 7);
+		}
+
+		// The restarted run reads the 4 valid replications back and simulates the other 6
+		SimRunner resumed = builder.build();
+		resumed.keepReplications(); // The logged replications are read back in replication order
+		try (ReplicationLog log = openLog(file, resumed)) {
+			assertEquals(4, resumed.simulate(NUM_REPS, NUM_PERIODS, 2, log));
+			assertEquals(NUM_REPS, log.getCompleted().cardinality());
+		}
+		assertSameRun(uninterrupted, resumed);
+
+		// A complete log: nothing is simulated again
+		SimRunner replayed = builder.build();
+		try (ReplicationLog log = openLog(file, replayed)) {
+			assertEquals(NUM_REPS, replayed.simulate(NUM_REPS, NUM_PERIODS, 1, log));
+		}
+		assertSameRun(uninterrupted, replayed);
+	}
+
+	@Test
+	public void logSummaryAveragesAntitheticPairs() {
+		ModelBuilder builder = builder(NUM_REPS);
+		builder.setAntithetic(true);
+		SimRunner model = builder.build();
+		String file = new File(folder.getRoot(), "run.replog").getPath();
+		try (ReplicationLog log = openLog(file, model)) {
+			model.simulate(NUM_REPS, NUM_PERIODS, 3, log); // Logged in completion order
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(out, true));
+		try {
+			Output.printLogSummaryToConsole(file, 10, true, 6);
+		}
+		finally {
+			System.setOut(console);
+		}
+		final DecimalFormat format = Output.numberFormat(6);
+		final String summary = out.toString();
+		assertTrue(summary, summary.contains("Number Replications: " + NUM_REPS));
+		assertTrue(summary, summary.contains(format.format(model.getRepEW().getMean()) + " +/- " + format.format(model.getRepEW().halfWidth(0.95))));
+		assertTrue(summary, summary.contains(format.format(model.getRepSL().getMean()) + " +/- " + format.format(model.getRepSL().halfWidth(0.95))));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void refusesLogOfAnotherSeed() {
+		String file = new File(folder.getRoot(), "run.replog").getPath();
+		SimRunner first = builder(NUM_REPS).build();
+		try (ReplicationLog log = openLog(file, first)) {
+			first.simulate(2, NUM_PERIODS, 1, log);
+		}
+		ModelBuilder other = builder(NUM_REPS);
+		other.setSeed(new long[] {7, 8, 9, 10, 11, 12});
+		openLog(file, other.build()).close();
+	}
+}
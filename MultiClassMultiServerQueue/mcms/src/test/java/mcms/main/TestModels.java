@@ -0,0 +1,65 @@
+package mcms.main;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <h1> Test Fixtures: Models of the Bundled Instances </h1>
+ *  <p>
+ *  Builders of the bundled test instance 2 (two contact types, two groups), and the comparison of two simulated runs.
+ *  The tests run from the directory of the mcms module, so the instances are read from {@value #INPUT_PATH}.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+final class TestModels {
+	static final String INPUT_PATH = "resources/test/input/";
+	static final int NUM_PERIODS = 12;
+	static final double PERIOD_DURATION = 720;
+	static final long[] SEED = {1, 2, 3, 4, 5, 6};
+
+	private TestModels() {}
+
+	/**
+	 * Returns a builder of instance 2 with the given engine and a fixed seed.
+	 */
+	static ModelBuilder builder(int numReps, SimRunner.Engine engine) {
+		ModelBuilder builder = new ModelBuilder(2, 2, 2, numReps, NUM_PERIODS, PERIOD_DURATION, numReps * NUM_PERIODS * PERIOD_DURATION, 0, true, 10, 6, INPUT_PATH, "", "2agents.dat", "2demands.dat", "2routes.dat");
+		builder.setEngine(engine);
+		builder.setSeed(SEED);
+		return builder;
+	}
+
+	/**
+	 * Returns a builder of instance 2 with the KERNEL engine and a fixed seed.
+	 */
+	static ModelBuilder builder(int numReps) {
+		return builder(numReps, SimRunner.Engine.KERNEL);
+	}
+
+	/**
+	 * Asserts that two models simulated the same replications, bit for bit: the same totals, the same running statistics over the
+	 * replications, overall and per contact type, and, if both kept them, the same EW and SL of every replication.
+	 */
+	static void assertSameRun(SimRunner expected, SimRunner actual) {
+		assertEquals(expected.getNumReps(), actual.getNumReps());
+		assertEquals(expected.getTotNumArrived(), actual.getTotNumArrived());
+		assertEquals(expected.getTotNumServed(), actual.getTotNumServed());
+		assertEquals(expected.getTotNumGoodSL(), actual.getTotNumGoodSL());
+		assertEquals(expected.getTotWaitTime(), actual.getTotWaitTime(), 0);
+		assertEquals(expected.getRepEW().getMean(), actual.getRepEW().getMean(), 0);
+		assertEquals(expected.getRepEW().getVariance(), actual.getRepEW().getVariance(), 0);
+		assertEquals(expected.getRepSL().getMean(), actual.getRepSL().getMean(), 0);
+		assertEquals(expected.getRepSL().getVariance(), actual.getRepSL().getVariance(), 0);
+		for (int k = 0; k < expected.getNumContacts(); k++) {
+			assertEquals(expected.getRepEW(k).getMean(), actual.getRepEW(k).getMean(), 0);
+			assertEquals(expected.getRepSL(k).getMean(), actual.getRepSL(k).getMean(), 0);
+		}
+		if (expected.getReplicationEW() != null && actual.getReplicationEW() != null) {
+			assertArrayEquals(expected.getReplicationEW(), actual.getReplicationEW(), 0);
+			assertArrayEquals(expected.getReplicationSL(), actual.getReplicationSL(), 0);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package mcms.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import mcms.contactcenters.MCMSStatistics;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <h1> Test: Append-Only Log of the Replications </h1>
+ *  <p>
+ *  Checks that {@link ReplicationLog} reads back what it wrote, drops a record torn or corrupted by a crash when it is opened
+ *  again, and refuses a log written by another run configuration or for other dimensions.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class ReplicationLogTest {
+	static final int K = 2; // Number of contact types
+	static final int P = 3; // Number of periods
+	static final long FINGERPRINT = 0x5EEDL;
+	static final int HEADER_SIZE = 8 + 4 + 4 + 4 + 8;
+	static final int RECORD_SIZE = 4 + 4 * K + 4 * 3 + 8 + 8 * K * P + (4 + 4 + 8) * K + 4;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Returns counters that identify replication {@code rep}.
+	 */
+	private static MCMSStatistics counters(int rep) {
+		MCMSStatistics s = new MCMSStatistics(K, P);
+		for (int k = 0; k < K; k++) s.numArrivedType[k] = 100 * rep + k;
+		s.numBlocked = rep;
+		s.numServed = 90 * rep;
+		s.numGoodSL = 80 * rep;
+		s.waitTime = rep + 0.125;
+		for (int k = 0; k < K; k++)
+			for (int p = 0; p < P; p++) s.numGoodSLKP[k][p] = rep + 10 * k + p;
+		for (int k = 0; k < K; k++) {
+			s.numServedType[k] = 45 * rep + k;
+			s.numGoodSLType[k] = 40 * rep + k;
+			s.waitTimeType[k] = rep + 0.5 * k;
+		}
+		return s;
+	}
+
+	private String writeLog(int... reps) throws IOException {
+		String file = new File(folder.getRoot(), "run.replog").getPath();
+		try (ReplicationLog log = new ReplicationLog(file, K, P, FINGERPRINT)) {
+			for (int rep : reps) log.append(rep, counters(rep));
+		}
+		return file;
+	}
+
+	private static List<Integer> readReps(String file) {
+		List<Integer> reps = new ArrayList<>();
+		ReplicationLog.read(file, (s, rep) -> {
+			MCMSStatistics expected = counters(rep);
+			for (int k = 0; k < K; k++) assertEquals(expected.numArrivedType[k], s.numArrivedType[k]);
+			assertEquals(expected.numBlocked, s.numBlocked);
+			assertEquals(expected.numServed, s.numServed);
+			assertEquals(expected.numGoodSL, s.numGoodSL);
+			assertEquals(expected.waitTime, s.waitTime, 0);
+			for (int k = 0; k < K; k++)
+				for (int p = 0; p < P; p++) assertEquals(expected.numGoodSLKP[k][p], s.numGoodSLKP[k][p], 0);
+			for (int k = 0; k < K; k++) {
+				assertEquals(expected.numServedType[k], s.numServedType[k]);
+				assertEquals(expected.numGoodSLType[k], s.numGoodSLType[k]);
+				assertEquals(expected.waitTimeType[k], s.waitTimeType[k], 0);
+			}
+			reps.add(rep);
+		});
+		return reps;
+	}
+
+	private static BitSet bits(int... reps) {
+		BitSet set = new BitSet();
+		for (int rep : reps) set.set(rep);
+		return set;
+	}
+
+	@Test
+	public void readsBackRecords() throws IOException {
+		String file = writeLog(3, 0, 5);
+		assertEquals(K, ReplicationLog.readDimensions(file)[0]);
+		assertEquals(P, ReplicationLog.readDimensions(file)[1]);
+		assertEquals(FINGERPRINT, ReplicationLog.readFingerprint(file));
+		assertEquals(Arrays.asList(3, 0, 5), readReps(file));
+		try (ReplicationLog log = new ReplicationLog(file, K, P, FINGERPRINT)) {
+			assertEquals(bits(0, 3, 5), log.getCompleted());
+			log.append(1, counters(1));
+			for (int rep : new int[] {5, 1, 0, 3}) { // Any order
+				MCMSStatistics s = new MCMSStatistics(K, P);
+				log.read(rep, s);
+				assertEquals(counters(rep).numServed, s.numServed);
+				assertEquals(counters(rep).numGoodSLKP[1][2], s.numGoodSLKP[1][2], 0);
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void refusesReadOfMissingReplication() throws IOException {
+		try (ReplicationLog log = new ReplicationLog(writeLog(0, 2), K, P, FINGERPRINT)) {
+			log.read(1, new MCMSStatistics(K, P));
+		}
+	}
+
+	@Test
+	public void dropsTornRecord() throws IOException {
+		String file = writeLog(0, 1, 2);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(HEADER_SIZE + 2L * RECORD_SIZE + RECORD_SIZE / 2); // Crash in the middle of the third record
+		}
+		try (ReplicationLog log = new ReplicationLog(file, K, P, FINGERPRINT)) {
+			assertEquals(bits(0, 1), log.getCompleted());
+			assertEquals(HEADER_SIZE + 2L * RECORD_SIZE, new File(file).length());
+			log.append(2, counters(2)); // Appended after the last valid record
+		}
+		assertEquals(Arrays.asList(0, 1, 2), readReps(file));
+	}
+
+	@Test
+	public void dropsCorruptedRecord() throws IOException {
+		String file = writeLog(0, 1, 2);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			final long position = HEADER_SIZE + 2L * RECORD_SIZE + 4 + 4 * K; // numBlocked of the third record
+			raf.seek(position);
+			final int b = raf.read();
+			raf.seek(position);
+			raf.write(b ^ 0x40);
+		}
+		assertEquals(Arrays.asList(0, 1), readReps(file));
+		try (ReplicationLog log = new ReplicationLog(file, K, P, FINGERPRINT)) {
+			assertEquals(bits(0, 1), log.getCompleted());
+		}
+	}
+
+	@Test
+	public void refusesOtherConfiguration() throws IOException {
+		String file = writeLog(0);
+		try {
+			new ReplicationLog(file, K, P, FINGERPRINT + 1).close();
+			fail("The fingerprint differs");
+		}
+		catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("another configuration"));
+		}
+		try {
+			new ReplicationLog(file, K, P + 1, FINGERPRINT).close();
+			fail("The number of periods differs");
+		}
+		catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("another number of contact types or periods"));
+		}
+		assertEquals(HEADER_SIZE + RECORD_SIZE, new File(file).length()); // Not truncated by the refused opens
+	}
+}
@@ -0,0 +1,88 @@
+package mcms.output;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <h1> Test: Contact Traces </h1>
+ *  <p>
+ *  Checks that {@link TraceAnalyzer} reads back the records written by {@link ContactTrace}, across several chunks, stops at the
+ *  zero-filled end of a trace that was not truncated, and refuses a corrupt chunk header.
+ * 	</p>
+ *
+ * @author	Vahid Nourbakhsh
+ * @version	2.0
+ * @since	2018-07-24
+ */
+public class TraceAnalyzerTest {
+	static final int K = 2; // Number of contact types
+	static final int I = 3; // Number of groups
+	static final int NUM_RECORDS = 2 * ContactTrace.CHUNK_SIZE + 100;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Writes {@value #NUM_RECORDS} records: record j has type j % K, group j % I, arrival time j and queue time j % 7.
+	 */
+	private String writeTrace() throws IOException {
+		String file = new File(folder.getRoot(), "run.trace").getPath();
+		ContactTrace trace = new ContactTrace(file, K, I, 1, NUM_RECORDS, 0);
+		ContactTrace.Recorder recorder = trace.newRecorder();
+		for (int j = 0; j < NUM_RECORDS; j++) {
+			recorder.setReplication(j / 1000);
+			recorder.record(j % K, j % I, j, j % 7, 1);
+		}
+		trace.close();
+		return file;
+	}
+
+	private static void assertRecords(TraceAnalyzer analyzer) {
+		assertEquals(NUM_RECORDS, analyzer.getNumRecords());
+		assertEquals(3, analyzer.getNumChunks());
+		final double[][] sl = analyzer.serviceLevelByTypeAndGroup(3, 0, NUM_RECORDS, 2);
+		final double[] wait = analyzer.meanWaitByGroup(0, NUM_RECORDS, 2);
+		long[][] served = new long[K][I], good = new long[K][I];
+		double[] sum = new double[I];
+		long[] count = new long[I];
+		for (int j = 0; j < NUM_RECORDS; j++) {
+			served[j % K][j % I]++;
+			if (j % 7 <= 3) good[j % K][j % I]++;
+			sum[j % I] += j % 7;
+			count[j % I]++;
+		}
+		for (int k = 0; k < K; k++)
+			for (int i = 0; i < I; i++) assertEquals((double) good[k][i] / served[k][i], sl[k][i], 1e-12);
+		for (int i = 0; i < I; i++) assertEquals(sum[i] / count[i], wait[i], 1e-12);
+	}
+
+	@Test
+	public void readsBackRecords() throws IOException {
+		assertRecords(new TraceAnalyzer(writeTrace()));
+	}
+
+	@Test
+	public void stopsAtZeroFilledEnd() throws IOException {
+		String file = writeTrace();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() + (1 << 20)); // The unused end of a mapped region, left by a run that did not close the trace
+		}
+		assertRecords(new TraceAnalyzer(file));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void refusesCorruptChunkHeader() throws IOException {
+		String file = writeTrace();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(ContactTrace.HEADER_SIZE);
+			raf.write(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x7F}); // A record count beyond the chunk size
+		}
+		new TraceAnalyzer(file);
+	}
+}